@@ -0,0 +1,155 @@
+package LMS;
+
+import java.util.*;
+
+// Bitmaps of book ordinals telling which books are issued, which have hold requests waiting, and which
+// books belong to every subject and author. "Which books of subject X are available now" is then
+// answered by combining bitmaps instead of looking at every book.
+public class AvailabilityIndex
+{
+    private final BookBitmap all = new BookBitmap();
+    private final BookBitmap issued = new BookBitmap();
+    private final BookBitmap onHold = new BookBitmap();          // books with a non empty hold request queue
+    private final BookBitmap available = new BookBitmap();       // books neither issued nor on hold, kept as they change
+    private final HashMap<String, BookBitmap> bySubject = new HashMap<>();
+    private final HashMap<String, BookBitmap> byAuthor = new HashMap<>();
+
+    /*------- Maintaining the bitmaps ---------*/
+    public void add(Book b)
+    {
+        int o = b.getOrdinal();
+
+        all.add(o);
+        issued.set(o, b.getIssuedStatus());
+        onHold.set(o, b.hasHoldRequests());
+        updateAvailable(o);
+
+        posting(bySubject, b.getSubject(), true).add(o);
+        posting(byAuthor, b.getAuthor(), true).add(o);
+    }
+
+    public void remove(Book b)
+    {
+        int o = b.getOrdinal();
+
+        all.remove(o);
+        issued.remove(o);
+        onHold.remove(o);
+        available.remove(o);
+
+        removeFrom(bySubject, b.getSubject(), o);
+        removeFrom(byAuthor, b.getAuthor(), o);
+    }
+
+    public void changeSubject(Book b, String oldSubject)
+    {
+        removeFrom(bySubject, oldSubject, b.getOrdinal());
+        posting(bySubject, b.getSubject(), true).add(b.getOrdinal());
+    }
+
+    public void changeAuthor(Book b, String oldAuthor)
+    {
+        removeFrom(byAuthor, oldAuthor, b.getOrdinal());
+        posting(byAuthor, b.getAuthor(), true).add(b.getOrdinal());
+    }
+
+    public void setIssued(Book b)
+    {
+        issued.set(b.getOrdinal(), b.getIssuedStatus());
+        updateAvailable(b.getOrdinal());
+    }
+
+    public void setOnHold(Book b)
+    {
+        onHold.set(b.getOrdinal(), b.hasHoldRequests());
+        updateAvailable(b.getOrdinal());
+    }
+
+    private void updateAvailable(int o)
+    {
+        available.set(o, !issued.contains(o) && !onHold.contains(o));
+    }
+    /*-----------------------------------------*/
+
+    /*------- Getting bitmaps ---------*/
+    public BookBitmap all()
+    {
+        return all;
+    }
+
+    public BookBitmap issued()
+    {
+        return issued;
+    }
+
+    public BookBitmap onHold()
+    {
+        return onHold;
+    }
+
+    // Books which are neither issued nor waited for by anyone. The bitmap must not be modified.
+    public BookBitmap available()
+    {
+        return available;
+    }
+
+    // Books of a subject, empty if there are none. The bitmap must not be modified.
+    public BookBitmap subject(String subject)
+    {
+        BookBitmap p = posting(bySubject, subject, false);
+        return p != null ? p : new BookBitmap();
+    }
+
+    // Books of an author, empty if there are none. The bitmap must not be modified.
+    public BookBitmap author(String author)
+    {
+        BookBitmap p = posting(byAuthor, author, false);
+        return p != null ? p : new BookBitmap();
+    }
+
+    public Map<String, BookBitmap> subjects()
+    {
+        return bySubject;
+    }
+
+    public Map<String, BookBitmap> authors()
+    {
+        return byAuthor;
+    }
+    /*---------------------------------*/
+
+    // Number of books in the given set which are available now
+    public int countAvailable(BookBitmap books)
+    {
+        return BookBitmap.andCardinality(books, available);
+    }
+
+    private static BookBitmap posting(HashMap<String, BookBitmap> map, String value, boolean create)
+    {
+        String key = Library.normalize(value);
+        BookBitmap p = map.get(key);
+
+        if (p == null && create)
+        {
+            p = new BookBitmap();
+            map.put(key, p);
+        }
+
+        return p;
+    }
+
+    private static void removeFrom(HashMap<String, BookBitmap> map, String value, int ordinal)
+    {
+        String key = Library.normalize(value);
+        BookBitmap p = map.get(key);
+
+        if (p != null)
+        {
+            p.remove(ordinal);
+
+            if (p.isEmpty())
+                map.remove(key);
+        }
+    }
+
+}   // AvailabilityIndex Class Closed
@@ -0,0 +1,301 @@
+package LMS;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Runs circulation commands from a file without asking anything, e.g. to return all the books of the
+// drop box at the end of the day. Every line of the file is one command:
+//
+//      staff <staff ID>                        commands after this are done by that clerk or librarian
+//      issue <book ID> <borrower ID>
+//      return <book ID> <borrower ID> [paid]   "paid" records the fine, if any, as paid
+//      renew <book ID> <borrower ID>
+//      hold <book ID> <borrower ID>
+//      add-borrower <name>|<address>|<phone no>
+//      add-book <title>|<subject>|<author>[|<book ID>]   the ID is given by the cluster (see ClusterCatalog)
+//
+// Empty lines and lines starting with '#' are skipped. Commands are run in groups, each group holding
+// the library's lock once and writing its changes to the database in one commit, and for every command
+// a line "<line no>\tOK\t<details>" or "<line no>\tFAILED\t<reason>" is written to the results file.
+// Once some change could not be written to the database, the commands are reported as failed.
+public class BatchRunner
+{
+    private static final int GROUP_SIZE = 1000;
+
+    private final Library lib;
+    private Staff staff;
+
+    private final String[] group = new String[GROUP_SIZE];
+    private final int[] lineNumbers = new int[GROUP_SIZE];
+    private final String[] details = new String[GROUP_SIZE];      // null if the command failed
+    private final String[] reasons = new String[GROUP_SIZE];
+    private final StringBuilder result = new StringBuilder(128);
+
+    private int succeeded;
+    private int failed;
+
+    public BatchRunner(Library l)       // para cons.
+    {
+        lib = l;
+    }
+
+    public void run(String commandFile, String resultFile) throws IOException
+    {
+        BufferedReader in = Files.newBufferedReader(Paths.get(commandFile), StandardCharsets.UTF_8);
+        ChannelWriter out = new ChannelWriter(FileChannel.open(Paths.get(resultFile), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+
+        try {
+            String line;
+            int lineNo = 0;
+            int n = 0;
+
+            while ((line = in.readLine()) != null)
+            {
+                lineNo++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                group[n] = line;
+                lineNumbers[n] = lineNo;
+                n++;
+
+                if (n == GROUP_SIZE)
+                {
+                    runGroup(n, out);
+                    n = 0;
+                }
+            }
+
+            runGroup(n, out);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    public int getSucceeded()
+    {
+        return succeeded;
+    }
+
+    public int getFailed()
+    {
+        return failed;
+    }
+
+    // Running a group of commands and writing their results
+    private void runGroup(int n, ChannelWriter out) throws IOException
+    {
+        synchronized (lib)
+        {
+            lib.beginTransaction();
+
+            try {
+                for (int i = 0; i < n; i++)
+                {
+                    try {
+                        details[i] = execute(group[i]);
+                    } catch (CirculationException e) {
+                        details[i] = null;
+                        reasons[i] = e.getMessage();
+                    }
+                }
+            } finally {
+                lib.commitTransaction();
+            }
+
+            lib.trimRecords();
+        }
+
+        // The results of a group are written once its changes are in the database
+        boolean saved = lib.awaitPersisted() || !lib.isPersisting();
+
+        for (int i = 0; i < n; i++)
+        {
+            result.setLength(0);
+            result.append(lineNumbers[i]).append('\t');
+
+            if (details[i] != null && saved)
+            {
+                result.append("OK\t").append(details[i]);
+                succeeded++;
+            }
+            else
+            {
+                result.append("FAILED\t").append(details[i] != null ? "Could not be saved to the database" : reasons[i]);
+                failed++;
+            }
+
+            result.append('\n');
+            out.write(result);
+
+            group[i] = null;
+            details[i] = null;
+            reasons[i] = null;
+        }
+
+        out.flush();
+    }
+
+    // Carrying out one command, returning what was done. Used by the shard server too.
+    String execute(String line) throws CirculationException
+    {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String rest = space < 0 ? "" : line.substring(space + 1).trim();
+
+        if (command.equals("add-borrower"))
+        {
+            String[] f = fields(rest, 3);
+            Borrower b = new Borrower(-1, f[0], f[1], number(f[2]));
+            lib.addBorrower(b);
+            return "Borrower " + b.getID();
+        }
+
+        if (command.equals("add-book"))
+        {
+            String[] f = fields(rest, rest.split("\\|", -1).length == 4 ? 4 : 3);
+            Book b;
+
+            if (f.length == 4)
+            {
+                int id = number(f[3]);
+
+                if (lib.findBook(id) != null)
+                    throw new CirculationException("A book has ID " + id + " already");
+
+                lib.reserveID(IdAllocator.BOOK, id);
+                b = new Book(id, f[0], f[1], f[2], false);
+            }
+            else
+                b = new Book(-1, f[0], f[1], f[2], false);
+
+            lib.addBookinLibrary(b);
+            return "Book " + b.getID();
+        }
+
+        String[] args = rest.isEmpty() ? new String[0] : rest.split("\\s+");
+
+        if (command.equals("staff"))
+        {
+            Staff s = lib.findStaff(number(arg(args, 0)));
+
+            if (s == null)
+                throw new CirculationException("No clerk or librarian has ID " + args[0]);
+
+            staff = s;
+            return "Staff " + s.getName();
+        }
+
+        Book book = book(arg(args, 0));
+        Borrower borrower = borrower(arg(args, 1));
+        Date today = lib.today();
+
+        if (command.equals("issue"))
+        {
+            book.checkOut(borrower, staff(), today);
+            return "Issued " + book.getID() + " to " + borrower.getID();
+        }
+
+        if (command.equals("return"))
+        {
+            Loan l = loan(borrower, book);
+            book.checkIn(borrower, l, staff(), today, args.length > 2 && args[2].equals("paid"));
+            return "Returned " + book.getID() + " by " + borrower.getID() + (l.getFineStatus() ? "" : ", fine unpaid");
+        }
+
+        if (command.equals("renew"))
+        {
+            loan(borrower, book).renew(today);
+            return "Renewed " + book.getID() + " for " + borrower.getID();
+        }
+
+        if (command.equals("hold"))
+        {
+            book.requestHold(borrower, today);
+            return "Held " + book.getID() + " for " + borrower.getID();
+        }
+
+        throw new CirculationException("Unknown command " + command);
+    }
+
+    /*------- Reading the arguments of a command ---------*/
+
+    private static String[] fields(String rest, int n) throws CirculationException
+    {
+        String[] f = rest.split("\\|", -1);
+
+        if (f.length != n)
+            throw new CirculationException("Expected " + n + " fields separated by '|'");
+
+        for (int i = 0; i < n; i++)
+            f[i] = f[i].trim();
+
+        return f;
+    }
+
+    private static String arg(String[] args, int i) throws CirculationException
+    {
+        if (i >= args.length)
+            throw new CirculationException("Missing argument " + (i + 1));
+
+        return args[i];
+    }
+
+    private static int number(String s) throws CirculationException
+    {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new CirculationException("Invalid number " + s);
+        }
+    }
+
+    private Book book(String id) throws CirculationException
+    {
+        Book b = lib.findBook(number(id));
+
+        if (b == null)
+            throw new CirculationException("No book has ID " + id);
+
+        return b;
+    }
+
+    private Borrower borrower(String id) throws CirculationException
+    {
+        Borrower b = lib.findBorrower(number(id));
+
+        if (b == null)
+            throw new CirculationException("No borrower has ID " + id);
+
+        return b;
+    }
+
+    private Staff staff() throws CirculationException
+    {
+        if (staff == null)
+            throw new CirculationException("No staff member given; use 'staff <ID>' first");
+
+        return staff;
+    }
+
+    // The loan of a book currently borrowed by the borrower
+    private static Loan loan(Borrower borrower, Book book) throws CirculationException
+    {
+        Loan l = borrower.getLoanOf(book);
+
+        if (l != null)
+            return l;
+
+        throw new CirculationException("Borrower " + borrower.getID() + " hasn't borrowed book " + book.getID());
+    }
+
+}   // BatchRunner Class Closed
@@ -7,66 +7,102 @@ import java.util.*;
 
 public class Book {
    
-    private int bookID;           // ID given by a library to a book to make it distinguishable from other books
-    private String title;         // Title of a book 
-    private String subject;       // Subject to which a book is related!
-    private String author;        // Author of book!
-    private boolean isIssued;        // this will be true if the book is currently issued to some borrower.
-    private ArrayList<HoldRequest> holdRequests; // record of all hold request on that book
+    private int record;           // number of the book's record holding its ID, title, subject, author and issued status
+    private ArrayList<HoldRequest> holdRequests; // record of all hold request on that book, created with the first one
+    private int ordinal = -1;     // position of the book in the library's indexes, given when it is added to the library
+    private boolean holdsPending; // true while the hold requests are still in the database only
  
-    static int currentIdNumber = 0;     //This will be unique for every book, since it will be incremented when everytime
-                                        //when a book is created
+    // Subjects and authors repeat a lot, so all books share them
+    private static final StringDictionary subjects = new StringDictionary(false);
+    private static final StringDictionary authors = new StringDictionary(false);
+    
+    // The fields of all books, in fixed-width records
+    private static BookRecords records = new BookRecords(false);
     
   
     public Book(int id,String t, String s, String a, boolean issued)    // Parameterise cons.
     {
-        currentIdNumber++;
         if(id==-1)
         {
-            bookID = currentIdNumber;
+            id = Library.getInstance().nextID(IdAllocator.BOOK);
         }
-        else
-            bookID=id;
         
-        title = t;
-        subject = s;
-        author = a;
-        isIssued = issued;
-        
-        holdRequests = new ArrayList();
+        record = records.allocate(id, t, subjects.encode(s), authors.encode(a), issued);
     }
     
     // adding a hold req.
     public void addHoldRequest(HoldRequest hr)
     {
+        loadHolds();
+        addLoadedHoldRequest(hr);
+    }
+    
+    // Adding a hold request loaded from the database, behind those loaded before it
+    public void addLoadedHoldRequest(HoldRequest hr)
+    {
+        if (holdRequests == null)
+            holdRequests = new ArrayList();
+        
         holdRequests.add(hr);
+        Library.getInstance().holdAdded(hr);
     }
     
     // removing a hold req.
     public void removeHoldRequest()
     {
-        if(!holdRequests.isEmpty())
+        loadHolds();
+        if(holdRequests != null && !holdRequests.isEmpty())
         {
-            holdRequests.remove(0);
+            HoldRequest hr = holdRequests.remove(0);
+            Library.getInstance().holdRemoved(hr);
         }
     }
     
     // printing all hold req on a book.
     public void printHoldRequests()
     {
+        final List<HoldRequest> holdRequests;
+        
+        synchronized (Library.getInstance())
+        {
+            holdRequests = new ArrayList<>(getHoldRequests());      // shown without holding the lock
+        }
+        
         if (!holdRequests.isEmpty())
         { 
-            System.out.println("\nHold Requests are: ");
-            
-            System.out.println("---------------------------------------------------------------------------------------------------------------------------------------");            
-            System.out.println("No.\t\tBook's Title\t\t\tBorrower's Name\t\t\tRequest Date");
-            System.out.println("---------------------------------------------------------------------------------------------------------------------------------------");
-            
-            for (int i = 0; i < holdRequests.size(); i++)
-            {                      
-                System.out.print(i + "-" + "\t\t");
-                holdRequests.get(i).print();
-            }
+            Library.getInstance().newReportWriter().show(new ReportWriter.Rows()
+            {
+                @Override
+                public int size()
+                {
+                    return holdRequests.size();
+                }
+                
+                @Override
+                public void header(StringBuilder sb, boolean machine)
+                {
+                    if (machine)
+                        sb.append("NO\tTITLE\tBORROWER\tREQ_DATE\n");
+                    else
+                    {
+                        sb.append("\nHold Requests are: \n");
+                        sb.append("---------------------------------------------------------------------------------------------------------------------------------------\n");            
+                        sb.append("No.\t\tBook's Title\t\t\tBorrower's Name\t\t\tRequest Date\n");
+                        sb.append("---------------------------------------------------------------------------------------------------------------------------------------\n");
+                    }
+                }
+                
+                @Override
+                public void row(int i, StringBuilder sb, boolean machine)
+                {
+                    HoldRequest hr = holdRequests.get(i);
+                    
+                    if (machine)
+                        sb.append(i).append('\t').append(hr.getBook().getTitle()).append('\t').append(hr.getBorrower().getName()).append('\t').append(hr.getRequestDate());
+                    else
+                        sb.append(i).append("-\t\t").append(hr.getBook().getTitle()).append("\t\t\t\t").append(hr.getBorrower().getName()).append("\t\t\t\t").append(hr.getRequestDate());
+                }
+            });
         }
         else
             System.out.println("\nNo Hold Requests.");                                
@@ -75,7 +111,40 @@ public class Book {
     // printing book's Info
     public void printInfo()
     {
-        System.out.println(title + "\t\t\t" + author + "\t\t\t" + subject);
+        System.out.println(getTitle() + "\t\t\t" + getAuthor() + "\t\t\t" + getSubject());
+    }
+    
+    // Cancelling all the hold requests at once, e.g. when the book is removed. Returns those cancelled;
+    // the borrowers still have them in their lists.
+    public List<HoldRequest> cancelHoldRequests()
+    {
+        List<HoldRequest> cancelled = getHoldRequests();
+        holdRequests = null;
+        
+        for (int i = 0; i < cancelled.size(); i++)
+            Library.getInstance().holdRemoved(cancelled.get(i));
+        
+        return cancelled;
+    }
+    
+    // removing a particular hold req., wherever it is in the queue
+    public void removeHoldRequest(HoldRequest hr)
+    {
+        loadHolds();
+        if (holdRequests != null && holdRequests.remove(hr))
+            Library.getInstance().holdRemoved(hr);
+    }
+    
+    // Changing the title, subject and author without asking anything
+    public void setInfo(String t, String s, String a)
+    {
+        String oldTitle = getTitle(), oldSubject = getSubject(), oldAuthor = getAuthor();
+        
+        records.setTitle(record(), t);
+        records.setSubject(record(), subjects.encode(s));
+        records.setAuthor(record(), authors.encode(a));
+        
+        Library.getInstance().bookInfoChanged(this, oldTitle, oldSubject, oldAuthor);
     }
     
     // changign Info of a Book
@@ -86,6 +155,8 @@ public class Book {
         
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         
+        String author = null, subject = null, title = null;     // null for unchanged
+        
         System.out.println("\nUpdate Author? (y/n)");
         input = scanner.next();
         
@@ -113,6 +184,12 @@ public class Book {
             title = reader.readLine();
         }        
         
+        // Changing the book once everything is asked
+        synchronized (Library.getInstance())
+        {
+            setInfo(title != null ? title : getTitle(), subject != null ? subject : getSubject(), author != null ? author : getAuthor());
+        }
+        
         System.out.println("\nBook is successfully updated.");
         
     }
@@ -121,44 +198,136 @@ public class Book {
     
     public String getTitle()
     {
-        return title;
+        return records.getTitle(record());
     }
 
     public String getSubject()
     {
-        return subject;
+        return subjects.decode(records.getSubject(record()));
     }
 
     public String getAuthor()
     {
-        return author;
+        return authors.decode(records.getAuthor(record()));
+    }
+    
+    public int getSubjectCode()
+    {
+        return records.getSubject(record());
+    }
+    
+    public int getAuthorCode()
+    {
+        return records.getAuthor(record());
     }
     
     public boolean getIssuedStatus()
     {
-        return isIssued;
+        return records.isIssued(record());
     }
     
     public void setIssuedStatus(boolean s)
     {
-        isIssued = s;
+        records.setIssued(record(), s);
+        Library.getInstance().bookStatusChanged(this);
     }
     
      public int getID()
     {
-        return bookID;
+        return records.getID(record());
     }
      
-     public ArrayList<HoldRequest> getHoldRequests()
+     // The hold request queue, empty if no hold request has been made yet
+     public List<HoldRequest> getHoldRequests()
     {
+        loadHolds();
+        if (holdRequests == null)
+            return Collections.emptyList();
+        
         return holdRequests;
     }
+     
+    // Whether hold requests in memory are waiting, without loading those still in the database
+    public boolean hasHoldRequests()
+    {
+        return holdRequests != null && !holdRequests.isEmpty();
+    }
+     
+    public int getOrdinal()
+    {
+        return ordinal;
+    }
+    
+    public void setOrdinal(int o)
+    {
+        ordinal = o;
+    }
+    
+    /*-- Loading Hold Requests on demand---*/
+    
+    // Called for a book loaded before its hold requests
+    public void setHoldsPending(boolean pending)
+    {
+        holdsPending = pending;
+    }
+    
+    public boolean isHoldsPending()
+    {
+        return holdsPending;
+    }
+    
+    public void loadHolds()
+    {
+        if (holdsPending)
+        {
+            holdsPending = false;
+            Library.getInstance().loadBookHolds(this);
+        }
+    }
+    
+    /*-------------------------------------------*/
     /*-----------------------------------*/
      
-    // Setter Static Func.
-    public static void setIDCount(int n)
+    /*---- Shared storage of titles, subjects and authors ----*/
+    public static StringDictionary getSubjects()
     {
-        currentIdNumber = n;
+        return subjects;
+    }
+    
+    public static StringDictionary getAuthors()
+    {
+        return authors;
+    }
+    
+    public static BookRecords getRecords()
+    {
+        return records;
+    }
+    
+    // Keeping the records of books outside the heap. Only before any book has been made.
+    public static boolean useOffHeapRecords()
+    {
+        if (records.size() > 0)
+            return false;
+        
+        records = new BookRecords(true);
+        return true;
+    }
+    
+    // Called when a book is evicted from memory, and nothing refers to it any more. Its record may be
+    // given to another book, so the book can't be used after this.
+    public void release()
+    {
+        records.free(record());
+        record = -1;
+    }
+    
+    private int record()
+    {
+        if (record < 0)
+            throw new IllegalStateException("The book has been evicted from memory");
+        
+        return record;
     }
     
 
@@ -169,12 +338,22 @@ public class Book {
     // Placing book on Hold
     public void placeBookOnHold(Borrower bor)
     {
-        HoldRequest hr = new HoldRequest(bor,this, new Date());
+        synchronized (Library.getInstance())
+        {
+            hold(bor, Library.getInstance().today());
+        }
+        
+        System.out.println("\nThe book " + getTitle() + " has been successfully placed on hold by borrower " + bor.getName() + ".\n");
+    }
+    
+    private HoldRequest hold(Borrower bor, Date today)
+    {
+        HoldRequest hr = new HoldRequest(-1,bor,this, today);
         
-        addHoldRequest(hr);        //Add this hold request to holdRequests queue of this book
         bor.addHoldRequest(hr);      //Add this hold request to that particular borrower's class as well
+        addHoldRequest(hr);        //Add this hold request to holdRequests queue of this book
         
-        System.out.println("\nThe book " + title + " has been successfully placed on hold by borrower " + bor.getName() + ".\n");
+        return hr;
     }
     
     
@@ -183,35 +362,48 @@ public class Book {
    // Request for Holding a Book
     public void makeHoldRequest(Borrower borrower)
     {
-        boolean makeRequest = true;
-
-        //If that borrower has already borrowed that particular book. Then he isn't allowed to make request for that book. He will have to renew the issued book in order to extend the return deadline.
-        for(int i=0;i<borrower.getBorrowedBooks().size();i++)
-        {
-            if(borrower.getBorrowedBooks().get(i).getBook()==this)
+        try {
+            synchronized (Library.getInstance())
             {
-                System.out.println("\n" + "You have already borrowed " + title);
-                return;                
+                checkHoldRequest(borrower);
+                hold(borrower, Library.getInstance().today());
             }
+            
+            System.out.println("\nThe book " + getTitle() + " has been successfully placed on hold by borrower " + borrower.getName() + ".\n");
+        } catch (CirculationException e) {
+            System.out.println("\n" + e.getMessage());
         }
-        
+    }
+    
+    // Request for Holding a Book, without printing anything
+    public HoldRequest requestHold(Borrower borrower, Date today) throws CirculationException
+    {
+        checkHoldRequest(borrower);
+        return hold(borrower, today);
+    }
+    
+    private void checkHoldRequest(Borrower borrower) throws CirculationException
+    {
+        //If that borrower has already borrowed that particular book. Then he isn't allowed to make request for that book. He will have to renew the issued book in order to extend the return deadline.
+        if (borrower.getLoanOf(this) != null)
+            throw new CirculationException("You have already borrowed " + getTitle());
         
         //If that borrower has already requested for that particular book. Then he isn't allowed to make the same request again.
+        if (hasHoldRequest(borrower))
+            throw new CirculationException("You already have one hold request for this book.");
+    }
+    
+    // true if the borrower is somewhere in the hold request queue of this book
+    public boolean hasHoldRequest(Borrower borrower)
+    {
+        List<HoldRequest> holdRequests = getHoldRequests();
+        
         for (int i = 0; i < holdRequests.size(); i++)
         {
-            if ((holdRequests.get(i).getBorrower() == borrower))
-            {
-                makeRequest = false;    
-                break;
-            }
-        }
-
-        if (makeRequest)
-        {
-            placeBookOnHold(borrower);
+            if (holdRequests.get(i).getBorrower() == borrower)
+                return true;
         }
-        else
-            System.out.println("\nYou already have one hold request for this book.\n");
+        return false;
     }
 
     
@@ -221,35 +413,57 @@ public class Book {
         removeHoldRequest();
         hr.getBorrower().removeHoldRequest(hr);
     }
-
     
+    // Deleting the hold requests which have expired. The queue is in order of request, so
+    // they are all at its front.
+    public void removeExpiredHoldRequests(Date today)
+    {
+        List<HoldRequest> hRequests = getHoldRequests();
         
-    // Issuing a Book
-    public void issueBook(Borrower borrower, Staff staff)
-    {        
-        //First deleting the expired hold requests
-        Date today = new Date();        
-        
-        ArrayList<HoldRequest> hRequests = holdRequests;
-        
-        for (int i = 0; i < hRequests.size(); i++)
+        while (!hRequests.isEmpty())
         {
-            HoldRequest hr = hRequests.get(i);            
+            HoldRequest hr = hRequests.get(0);
             
-            //Remove that hold request which has expired
             long days =  ChronoUnit.DAYS.between(today.toInstant(), hr.getRequestDate().toInstant());        
             days = 0-days;
             
             if(days>Library.getInstance().getHoldRequestExpiry())
+                serviceHoldRequest(hr);
+            else
+                break;
+        }
+    }
+
+    
+        
+    // Issuing a Book. The library's lock is held only while the book is checked out, not while asking
+    // whether to place it on hold.
+    public void issueBook(Borrower borrower, Staff staff)
+    {        
+        Library lib = Library.getInstance();
+        boolean offerHold;
+        
+        try {
+            synchronized (lib)
+            {
+                checkOut(borrower, staff, lib.today());
+            }
+            
+            System.out.println("\nThe book " + getTitle() + " is successfully issued to " + borrower.getName() + ".");
+            System.out.println("\nIssued by: " + staff.getName());
+            return;
+        } catch (CirculationException e) {
+            synchronized (lib)
             {
-                removeHoldRequest();
-                hr.getBorrower().removeHoldRequest(hr);
-            } 
+                //If this borrower is waiting in the queue already, there is nothing more to do
+                offerHold = !hasHoldRequest(borrower);
+            }
+            
+            System.out.println("\n" + e.getMessage());
         }
-               
-        if (isIssued)
+        
+        if (offerHold)
         {
-            System.out.println("\nThe book " + title + " is already issued.");
             System.out.println("Would you like to place the book on hold? (y/n)");
              
             Scanner sc = new Scanner(System.in);
@@ -260,77 +474,88 @@ public class Book {
                 makeHoldRequest(borrower);
             }
         }
+    }
+    
+    // Issuing a Book without asking or printing anything. Fails if the book is issued, or if someone
+    // else is ahead of the borrower in the hold request queue.
+    public Loan checkOut(Borrower borrower, Staff staff, Date today) throws CirculationException
+    {
+        removeExpiredHoldRequests(today);
         
-        else
-        {               
-            if (!holdRequests.isEmpty())
-            {
-                boolean hasRequest = false;
-                
-                for (int i = 0; i < holdRequests.size() && !hasRequest;i++)
-                {
-                    if (holdRequests.get(i).getBorrower() == borrower)
-                        hasRequest = true;
-                        
-                }
-                
-                if (hasRequest)
-                {
-                    //If this particular borrower has the earliest request for this book
-                    if (holdRequests.get(0).getBorrower() == borrower)
-                        serviceHoldRequest(holdRequests.get(0));       
-
-                    else
-                    {
-                        System.out.println("\nSorry some other users have requested for this book earlier than you. So you have to wait until their hold requests are processed.");
-                        return;
-                    }
-                }
-                else
-                {
-                    System.out.println("\nSome users have already placed this book on request and you haven't, so the book can't be issued to you.");
-                    
-                    System.out.println("Would you like to place the book on hold? (y/n)");
-
-                    Scanner sc = new Scanner(System.in);
-                    String choice = sc.next();
-                    
-                    if (choice.equals("y"))
-                    {
-                        makeHoldRequest(borrower); 
-                    }                    
-                    
-                    return;
-                }               
-            }
-                        
-            //If there are no hold requests for this book, then simply issue the book.            
-            setIssuedStatus(true);
+        if (getIssuedStatus())
+            throw new CirculationException("The book " + getTitle() + " is already issued.");
+        
+        List<HoldRequest> holdRequests = getHoldRequests();
+        
+        if (!holdRequests.isEmpty())
+        {
+            if (holdRequests.get(0).getBorrower() == borrower)
+                serviceHoldRequest(holdRequests.get(0));
             
-            Loan iHistory = new Loan(borrower,this,staff,null,new Date(),null,false);
+            else if (hasHoldRequest(borrower))
+                throw new CirculationException("Some other users have requested the book " + getTitle() + " earlier.");
             
-            Library.getInstance().addLoan(iHistory);
-            borrower.addBorrowedBook(iHistory);
-                                    
-            System.out.println("\nThe book " + title + " is successfully issued to " + borrower.getName() + ".");
-            System.out.println("\nIssued by: " + staff.getName());            
+            else
+                throw new CirculationException("Some users have placed the book " + getTitle() + " on hold.");
         }
+        
+        return issue(borrower, staff, today);
+    }
+    
+    private Loan issue(Borrower borrower, Staff staff, Date today)
+    {
+        setIssuedStatus(true);
+        
+        Loan iHistory = new Loan(-1,borrower,this,staff,null,today,null,false);
+        
+        Library.getInstance().addLoan(iHistory);
+        borrower.addBorrowedBook(iHistory);
+        
+        return iHistory;
     }
         
         
     // Returning a Book
     public void returnBook(Borrower borrower, Loan l, Staff staff)
     {
-        l.getBook().setIssuedStatus(false);        
-        l.setReturnedDate(new Date());
-        l.setReceiver(staff);        
-        
-        borrower.removeBorrowedBook(l);
+        synchronized (Library.getInstance())
+        {
+            //Another desk may have received it meanwhile
+            if (l.getReturnDate() != null)
+            {
+                System.out.println("\nThe book " + l.getBook().getTitle() + " has already been returned.");
+                return;
+            }
+            
+            receive(borrower, l, staff, Library.getInstance().today());
+        }
         
-        l.payFine();
+        l.payFine();        // asks without holding the lock
         
         System.out.println("\nThe book " + l.getBook().getTitle() + " is successfully returned by " + borrower.getName() + ".");
         System.out.println("\nReceived by: " + staff.getName());            
     }
     
+    // Returning a Book without asking or printing anything. The fine, if any, is recorded as paid
+    // only if finePaid is true.
+    public void checkIn(Borrower borrower, Loan l, Staff staff, Date today, boolean finePaid)
+    {
+        receive(borrower, l, staff, today);
+        
+        if (l.getFineStatus() || l.fineOn(today) <= 0)     // the fine up to the day given, not the clock's
+            finePaid = true;
+        
+        l.setFineStatus(finePaid);
+    }
+    
+    private void receive(Borrower borrower, Loan l, Staff staff, Date today)
+    {
+        l.getBook().setIssuedStatus(false);        
+        l.setReturnedDate(today);
+        l.setReceiver(staff);        
+        
+        borrower.removeBorrowedBook(l);
+        Library.getInstance().loanReturned(l);
+    }
+    
 }   // Book Class Closed
\ No newline at end of file
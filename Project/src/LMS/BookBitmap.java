@@ -0,0 +1,513 @@
+package LMS;
+
+import java.util.*;
+
+// Compressed set of book ordinals, organized like a Roaring bitmap: the ordinals are split by their
+// upper 16 bits into chunks, and every chunk stores its lower 16 bits either as a sorted array (while
+// it has at most 4096 of them) or as a plain bitmap of 65536 bits. Sets are combined chunk by chunk
+// with AND, OR and ANDNOT, so filters like "books of this subject which aren't issued" never have to
+// look at the Book objects.
+public class BookBitmap
+{
+    private char[] keys = new char[4];              // upper 16 bits of the chunks, sorted
+    private Chunk[] chunks = new Chunk[4];
+    private int size;                               // number of chunks
+
+    /*------- Adding and Removing ---------*/
+    public void add(int ordinal)
+    {
+        char key = (char) (ordinal >>> 16);
+        int i = find(key);
+
+        if (i < 0)
+        {
+            i = -i - 1;
+            insert(i, key, new Chunk());
+        }
+        chunks[i].add((char) ordinal);
+    }
+
+    public void remove(int ordinal)
+    {
+        int i = find((char) (ordinal >>> 16));
+
+        if (i < 0)
+            return;
+
+        chunks[i].remove((char) ordinal);
+
+        if (chunks[i].cardinality == 0)
+            delete(i);
+    }
+
+    public void set(int ordinal, boolean value)
+    {
+        if (value)
+            add(ordinal);
+        else
+            remove(ordinal);
+    }
+    /*-------------------------------------*/
+
+    public boolean contains(int ordinal)
+    {
+        int i = find((char) (ordinal >>> 16));
+        return i >= 0 && chunks[i].contains((char) ordinal);
+    }
+
+    public int cardinality()
+    {
+        int total = 0;
+
+        for (int i = 0; i < size; i++)
+            total += chunks[i].cardinality;
+
+        return total;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    // All ordinals in increasing order
+    public int[] toArray()
+    {
+        int[] ordinals = new int[cardinality()];
+        int n = 0;
+
+        for (int i = 0; i < size; i++)
+        {
+            int high = keys[i] << 16;
+            Chunk c = chunks[i];
+
+            if (c.words == null)
+            {
+                for (int j = 0; j < c.cardinality; j++)
+                    ordinals[n++] = high | c.values[j];
+            }
+            else
+            {
+                for (int w = 0; w < 1024; w++)
+                {
+                    long word = c.words[w];
+
+                    while (word != 0)
+                    {
+                        ordinals[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+
+        return ordinals;
+    }
+
+    /*------- Combining bitmaps ---------*/
+
+    public static BookBitmap and(BookBitmap a, BookBitmap b)
+    {
+        BookBitmap result = new BookBitmap();
+        int i = 0, j = 0;
+
+        while (i < a.size && j < b.size)
+        {
+            if (a.keys[i] == b.keys[j])
+            {
+                Chunk c = Chunk.and(a.chunks[i], b.chunks[j]);
+
+                if (c.cardinality > 0)
+                    result.append(a.keys[i], c);
+                i++;
+                j++;
+            }
+            else if (a.keys[i] < b.keys[j])
+                i++;
+            else
+                j++;
+        }
+
+        return result;
+    }
+
+    public static BookBitmap or(BookBitmap a, BookBitmap b)
+    {
+        BookBitmap result = new BookBitmap();
+        int i = 0, j = 0;
+
+        while (i < a.size || j < b.size)
+        {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j]))
+            {
+                result.append(a.keys[i], a.chunks[i].copy());
+                i++;
+            }
+            else if (i == a.size || b.keys[j] < a.keys[i])
+            {
+                result.append(b.keys[j], b.chunks[j].copy());
+                j++;
+            }
+            else
+            {
+                result.append(a.keys[i], Chunk.or(a.chunks[i], b.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    // Ordinals in a but not in b
+    public static BookBitmap andNot(BookBitmap a, BookBitmap b)
+    {
+        BookBitmap result = new BookBitmap();
+        int j = 0;
+
+        for (int i = 0; i < a.size; i++)
+        {
+            while (j < b.size && b.keys[j] < a.keys[i])
+                j++;
+
+            Chunk c;
+
+            if (j < b.size && b.keys[j] == a.keys[i])
+                c = Chunk.andNot(a.chunks[i], b.chunks[j]);
+            else
+                c = a.chunks[i].copy();
+
+            if (c.cardinality > 0)
+                result.append(a.keys[i], c);
+        }
+
+        return result;
+    }
+
+    // Size of the intersection, without building it
+    public static int andCardinality(BookBitmap a, BookBitmap b)
+    {
+        int total = 0;
+        int i = 0, j = 0;
+
+        while (i < a.size && j < b.size)
+        {
+            if (a.keys[i] == b.keys[j])
+            {
+                total += Chunk.andCardinality(a.chunks[i], b.chunks[j]);
+                i++;
+                j++;
+            }
+            else if (a.keys[i] < b.keys[j])
+                i++;
+            else
+                j++;
+        }
+
+        return total;
+    }
+    /*-----------------------------------*/
+
+    private int find(char key)
+    {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int i, char key, Chunk c)
+    {
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(chunks, i, chunks, i + 1, size - i);
+        keys[i] = key;
+        chunks[i] = c;
+        size++;
+    }
+
+    private void append(char key, Chunk c)
+    {
+        insert(size, key, c);
+    }
+
+    private void delete(int i)
+    {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(chunks, i + 1, chunks, i, size - i - 1);
+        size--;
+        chunks[size] = null;
+    }
+
+    // Lower 16 bits of the ordinals sharing the same upper 16 bits
+    private static class Chunk
+    {
+        static final int MAX_ARRAY = 4096;
+
+        char[] values = new char[4];        // sorted, used while words is null
+        long[] words;                       // bitmap, used once there are more than MAX_ARRAY values
+        int cardinality;
+
+        boolean contains(char v)
+        {
+            if (words != null)
+                return (words[v >>> 6] & (1L << v)) != 0;
+
+            return Arrays.binarySearch(values, 0, cardinality, v) >= 0;
+        }
+
+        void add(char v)
+        {
+            if (words != null)
+            {
+                long bit = 1L << v;
+
+                if ((words[v >>> 6] & bit) == 0)
+                {
+                    words[v >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+
+            int i = Arrays.binarySearch(values, 0, cardinality, v);
+
+            if (i >= 0)
+                return;
+
+            if (cardinality == MAX_ARRAY)
+            {
+                toWords();
+                add(v);
+                return;
+            }
+
+            i = -i - 1;
+
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, MAX_ARRAY));
+
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = v;
+            cardinality++;
+        }
+
+        void remove(char v)
+        {
+            if (words != null)
+            {
+                long bit = 1L << v;
+
+                if ((words[v >>> 6] & bit) != 0)
+                {
+                    words[v >>> 6] &= ~bit;
+                    cardinality--;
+
+                    if (cardinality <= MAX_ARRAY)
+                        toValues();
+                }
+                return;
+            }
+
+            int i = Arrays.binarySearch(values, 0, cardinality, v);
+
+            if (i >= 0)
+            {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+        }
+
+        Chunk copy()
+        {
+            Chunk c = new Chunk();
+            c.cardinality = cardinality;
+
+            if (words != null)
+                c.words = words.clone();
+            else
+                c.values = Arrays.copyOf(values, Math.max(cardinality, 1));
+
+            return c;
+        }
+
+        void toWords()
+        {
+            words = new long[1024];
+
+            for (int i = 0; i < cardinality; i++)
+                words[values[i] >>> 6] |= 1L << values[i];
+
+            values = null;
+        }
+
+        void toValues()
+        {
+            char[] v = new char[Math.max(cardinality, 1)];
+            int n = 0;
+
+            for (int w = 0; w < 1024; w++)
+            {
+                long word = words[w];
+
+                while (word != 0)
+                {
+                    v[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+
+            values = v;
+            words = null;
+        }
+
+        // Chunk built from a bitmap, turned back into an array if it has become small
+        static Chunk fromWords(long[] words)
+        {
+            Chunk c = new Chunk();
+            c.words = words;
+
+            for (int w = 0; w < 1024; w++)
+                c.cardinality += Long.bitCount(words[w]);
+
+            if (c.cardinality <= MAX_ARRAY)
+                c.toValues();
+
+            return c;
+        }
+
+        static Chunk and(Chunk a, Chunk b)
+        {
+            if (a.words != null && b.words != null)
+            {
+                long[] w = new long[1024];
+
+                for (int i = 0; i < 1024; i++)
+                    w[i] = a.words[i] & b.words[i];
+
+                return fromWords(w);
+            }
+
+            // at least one side is an array, so the result is small
+            Chunk small = a.words == null ? a : b;
+            Chunk other = small == a ? b : a;
+            Chunk c = new Chunk();
+            c.values = new char[Math.max(small.cardinality, 1)];
+
+            for (int i = 0; i < small.cardinality; i++)
+            {
+                if (other.contains(small.values[i]))
+                    c.values[c.cardinality++] = small.values[i];
+            }
+
+            return c;
+        }
+
+        static Chunk or(Chunk a, Chunk b)
+        {
+            if (a.words == null && b.words == null && a.cardinality + b.cardinality <= MAX_ARRAY)
+            {
+                Chunk c = new Chunk();
+                c.values = new char[Math.max(a.cardinality + b.cardinality, 1)];
+                int i = 0, j = 0;
+
+                while (i < a.cardinality || j < b.cardinality)
+                {
+                    char v;
+
+                    if (j == b.cardinality || (i < a.cardinality && a.values[i] < b.values[j]))
+                        v = a.values[i++];
+                    else if (i == a.cardinality || b.values[j] < a.values[i])
+                        v = b.values[j++];
+                    else
+                    {
+                        v = a.values[i++];
+                        j++;
+                    }
+                    c.values[c.cardinality++] = v;
+                }
+
+                return c;
+            }
+
+            long[] w = new long[1024];
+            a.orInto(w);
+            b.orInto(w);
+
+            return fromWords(w);
+        }
+
+        static Chunk andNot(Chunk a, Chunk b)
+        {
+            if (a.words == null)
+            {
+                Chunk c = new Chunk();
+                c.values = new char[Math.max(a.cardinality, 1)];
+
+                for (int i = 0; i < a.cardinality; i++)
+                {
+                    if (!b.contains(a.values[i]))
+                        c.values[c.cardinality++] = a.values[i];
+                }
+
+                return c;
+            }
+
+            long[] w = a.words.clone();
+
+            if (b.words != null)
+            {
+                for (int i = 0; i < 1024; i++)
+                    w[i] &= ~b.words[i];
+            }
+            else
+            {
+                for (int i = 0; i < b.cardinality; i++)
+                    w[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+            }
+
+            return fromWords(w);
+        }
+
+        static int andCardinality(Chunk a, Chunk b)
+        {
+            int total = 0;
+
+            if (a.words != null && b.words != null)
+            {
+                for (int i = 0; i < 1024; i++)
+                    total += Long.bitCount(a.words[i] & b.words[i]);
+
+                return total;
+            }
+
+            Chunk small = a.words == null ? a : b;
+            Chunk other = small == a ? b : a;
+
+            for (int i = 0; i < small.cardinality; i++)
+            {
+                if (other.contains(small.values[i]))
+                    total++;
+            }
+
+            return total;
+        }
+
+        void orInto(long[] w)
+        {
+            if (words != null)
+            {
+                for (int i = 0; i < 1024; i++)
+                    w[i] |= words[i];
+            }
+            else
+            {
+                for (int i = 0; i < cardinality; i++)
+                    w[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+    }
+
+}   // BookBitmap Class Closed
@@ -0,0 +1,281 @@
+package LMS;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Keeps the fields of all books in fixed-width records in large pages, and their titles as UTF-8 bytes
+// in an arena of pages of its own, so that a book object holds only the number of its record. The
+// pages can be allocated outside the heap (direct buffers): a catalog of tens of millions of books
+// then neither grows the heap nor gives the garbage collector anything to look at.
+//
+// Record (24 bytes): ID (int), subject code (int), author code (int), flags (byte: in use, issued),
+// and at 16 the title (long: offset in the arena << 20 | length in bytes).
+//
+// The records of evicted books are reused. The bytes of titles which are replaced, or whose record is
+// freed, are reclaimed by compacting the arena: once more than half of it is dead, the live titles are
+// copied into new pages.
+public class BookRecords
+{
+    private static final int RECORD_SIZE = 24;
+    private static final int PAGE_BITS = 16;                    // records per page: 1 << PAGE_BITS
+    private static final int ARENA_PAGE_SIZE = 1 << 20;
+    private static final int LENGTH_BITS = 20;
+    private static final int MIN_PAGES_TO_COMPACT = 4;
+
+    private static final int ID = 0, SUBJECT = 4, AUTHOR = 8, FLAGS = 12, TITLE = 16;
+    private static final byte IN_USE = 1, ISSUED = 2;
+
+    private final boolean direct;                               // pages outside the heap
+
+    private final ArrayList<ByteBuffer> recordPages = new ArrayList<>();
+    private int records;                                        // records given out so far, freed ones too
+    private int[] free = new int[64];                           // freed records, reused first
+    private int freeCount;
+
+    private ArrayList<ByteBuffer> arena = new ArrayList<>();
+    private int used = ARENA_PAGE_SIZE;                         // bytes used in the last arena page
+    private long liveBytes;                                     // bytes of the titles of records in use
+
+    // statistics
+    private long compactions;
+    private long reclaimedBytes;
+
+    public BookRecords(boolean offHeap)      // para cons.
+    {
+        direct = offHeap;
+    }
+
+    private ByteBuffer newPage(int size)
+    {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    /*------- Giving out and freeing records ---------*/
+
+    // Storing a book, returning the number of its record
+    public synchronized int allocate(int id, String title, int subject, int author, boolean issued)
+    {
+        int r;
+
+        if (freeCount > 0)
+            r = free[--freeCount];
+        else
+        {
+            r = records++;
+
+            if ((r >>> PAGE_BITS) == recordPages.size())
+                recordPages.add(newPage(RECORD_SIZE << PAGE_BITS));
+        }
+
+        ByteBuffer page = page(r);
+        int at = at(r);
+
+        page.putInt(at + ID, id);
+        page.putInt(at + SUBJECT, subject);
+        page.putInt(at + AUTHOR, author);
+        page.put(at + FLAGS, (byte) (IN_USE | (issued ? ISSUED : 0)));
+        page.putLong(at + TITLE, addTitle(title));
+
+        return r;
+    }
+
+    // Called for a book which nothing refers to any more
+    public synchronized void free(int r)
+    {
+        ByteBuffer page = page(r);
+        int at = at(r);
+
+        if ((page.get(at + FLAGS) & IN_USE) == 0)
+            return;
+
+        liveBytes -= page.getLong(at + TITLE) & ((1 << LENGTH_BITS) - 1);
+        page.put(at + FLAGS, (byte) 0);
+
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, free.length * 2);
+
+        free[freeCount++] = r;
+        compactIfMostlyDead();
+    }
+
+    private ByteBuffer page(int r)
+    {
+        return recordPages.get(r >>> PAGE_BITS);
+    }
+
+    private static int at(int r)
+    {
+        return (r & ((1 << PAGE_BITS) - 1)) * RECORD_SIZE;
+    }
+    /*------------------------------------------------*/
+
+    /*------- Reading and changing fields ---------*/
+    public synchronized int getID(int r)
+    {
+        return page(r).getInt(at(r) + ID);
+    }
+
+    public synchronized int getSubject(int r)
+    {
+        return page(r).getInt(at(r) + SUBJECT);
+    }
+
+    public synchronized int getAuthor(int r)
+    {
+        return page(r).getInt(at(r) + AUTHOR);
+    }
+
+    public synchronized boolean isIssued(int r)
+    {
+        return (page(r).get(at(r) + FLAGS) & ISSUED) != 0;
+    }
+
+    public synchronized String getTitle(int r)
+    {
+        long ref = page(r).getLong(at(r) + TITLE);
+        long offset = ref >>> LENGTH_BITS;
+        byte[] bytes = new byte[(int) (ref & ((1 << LENGTH_BITS) - 1))];
+
+        ByteBuffer p = arena.get((int) (offset / ARENA_PAGE_SIZE));
+        p.position((int) (offset % ARENA_PAGE_SIZE));
+        p.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public synchronized void setSubject(int r, int subject)
+    {
+        page(r).putInt(at(r) + SUBJECT, subject);
+    }
+
+    public synchronized void setAuthor(int r, int author)
+    {
+        page(r).putInt(at(r) + AUTHOR, author);
+    }
+
+    public synchronized void setIssued(int r, boolean issued)
+    {
+        page(r).put(at(r) + FLAGS, (byte) (IN_USE | (issued ? ISSUED : 0)));
+    }
+
+    public synchronized void setTitle(int r, String title)
+    {
+        ByteBuffer page = page(r);
+        int at = at(r);
+
+        liveBytes -= page.getLong(at + TITLE) & ((1 << LENGTH_BITS) - 1);
+        page.putLong(at + TITLE, addTitle(title));
+
+        compactIfMostlyDead();
+    }
+    /*---------------------------------------------*/
+
+    /*------- The titles arena ---------*/
+
+    // Appending a title to the arena. A null title is stored as an empty one.
+    private long addTitle(String s)
+    {
+        byte[] bytes = s != null ? s.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = Math.min(bytes.length, (1 << LENGTH_BITS) - 1);
+
+        long offset = append(arena, bytes, length);
+        liveBytes += length;
+
+        return (offset << LENGTH_BITS) | length;
+    }
+
+    private long append(ArrayList<ByteBuffer> pages, byte[] bytes, int length)
+    {
+        if (used + length > ARENA_PAGE_SIZE)
+        {
+            pages.add(newPage(ARENA_PAGE_SIZE));
+            used = 0;
+        }
+
+        ByteBuffer p = pages.get(pages.size() - 1);
+        p.position(used);
+        p.put(bytes, 0, length);
+
+        long offset = (long) (pages.size() - 1) * ARENA_PAGE_SIZE + used;
+        used += length;
+
+        return offset;
+    }
+
+    private void compactIfMostlyDead()
+    {
+        long allocated = (long) arena.size() * ARENA_PAGE_SIZE;
+
+        if (arena.size() >= MIN_PAGES_TO_COMPACT && allocated - liveBytes > allocated / 2)
+            compact();
+    }
+
+    // Copying the titles of the records in use into new pages, in the order of the records
+    private void compact()
+    {
+        ArrayList<ByteBuffer> pages = new ArrayList<>();
+        long before = (long) arena.size() * ARENA_PAGE_SIZE;
+        byte[] bytes = new byte[256];
+
+        used = ARENA_PAGE_SIZE;
+
+        for (int r = 0; r < records; r++)
+        {
+            ByteBuffer page = page(r);
+            int at = at(r);
+
+            if ((page.get(at + FLAGS) & IN_USE) == 0)
+                continue;
+
+            long ref = page.getLong(at + TITLE);
+            long offset = ref >>> LENGTH_BITS;
+            int length = (int) (ref & ((1 << LENGTH_BITS) - 1));
+
+            if (bytes.length < length)
+                bytes = new byte[length];
+
+            ByteBuffer p = arena.get((int) (offset / ARENA_PAGE_SIZE));
+            p.position((int) (offset % ARENA_PAGE_SIZE));
+            p.get(bytes, 0, length);
+
+            page.putLong(at + TITLE, (append(pages, bytes, length) << LENGTH_BITS) | length);
+        }
+
+        arena = pages;      // the old pages are freed by the garbage collector
+
+        compactions++;
+        reclaimedBytes += before - (long) arena.size() * ARENA_PAGE_SIZE;
+    }
+    /*----------------------------------*/
+
+    /*----- Getter FUNCs.--------*/
+    public boolean isOffHeap()
+    {
+        return direct;
+    }
+
+    public synchronized int size()
+    {
+        return records - freeCount;
+    }
+
+    public synchronized long getAllocatedBytes()
+    {
+        return (long) recordPages.size() * (RECORD_SIZE << PAGE_BITS) + (long) arena.size() * ARENA_PAGE_SIZE;
+    }
+
+    public synchronized long getLiveBytes()
+    {
+        return (long) size() * RECORD_SIZE + liveBytes;
+    }
+    /*--------------------------*/
+
+    public synchronized void printStatistics()
+    {
+        System.out.println("Book records: " + size() + " books in " + records + " records, " + getAllocatedBytes() / 1024 + " KB "
+                + (direct ? "off the heap" : "on the heap") + " (" + getLiveBytes() / 1024 + " KB live), "
+                + compactions + " compactions of the titles reclaiming " + reclaimedBytes / 1024 + " KB");
+    }
+
+}   // BookRecords Class Closed
@@ -8,6 +8,7 @@ public class Borrower extends Person
 {    
     private ArrayList<Loan> borrowedBooks;          //Those books which are currently borrowed by this borrower
     private ArrayList<HoldRequest> onHoldBooks;    //Those books which are currently requested by this borrower to be on hold
+    private boolean recordsPending;                 //true while the loans and hold requests are still in the database only
 
     
     
@@ -33,7 +34,15 @@ public class Borrower extends Person
     // Printing Book's Info Borrowed by Borrower
     public void printBorrowedBooks()
     {
-        if (!borrowedBooks.isEmpty())
+        ArrayList<Loan> loans;
+        
+        synchronized (Library.getInstance())
+        {
+            loadRecords();
+            loans = new ArrayList<>(borrowedBooks);     // printed without holding the lock
+        }
+        
+        if (!loans.isEmpty())
         { 
             System.out.println("\nBorrowed Books are: ");
             
@@ -41,10 +50,10 @@ public class Borrower extends Person
             System.out.println("No.\t\tTitle\t\t\tAuthor\t\t\tSubject");
             System.out.println("------------------------------------------------------------------------------");
             
-            for (int i = 0; i < borrowedBooks.size(); i++)
+            for (int i = 0; i < loans.size(); i++)
             {                      
                 System.out.print(i + "-" + "\t\t");
-                borrowedBooks.get(i).getBook().printInfo();
+                loans.get(i).getBook().printInfo();
                 System.out.print("\n");
             }
         }
@@ -55,7 +64,15 @@ public class Borrower extends Person
     // Printing Book's Info kept on Hold by Borrower
     public void printOnHoldBooks()
     {
-        if (!onHoldBooks.isEmpty())
+        ArrayList<HoldRequest> holds;
+        
+        synchronized (Library.getInstance())
+        {
+            loadRecords();
+            holds = new ArrayList<>(onHoldBooks);     // printed without holding the lock
+        }
+        
+        if (!holds.isEmpty())
         { 
             System.out.println("\nOn Hold Books are: ");
             
@@ -63,10 +80,10 @@ public class Borrower extends Person
             System.out.println("No.\t\tTitle\t\t\tAuthor\t\t\tSubject");
             System.out.println("------------------------------------------------------------------------------");
             
-            for (int i = 0; i < onHoldBooks.size(); i++)
+            for (int i = 0; i < holds.size(); i++)
             {                      
                 System.out.print(i + "-" + "\t\t");
-                onHoldBooks.get(i).getBook().printInfo();
+                holds.get(i).getBook().printInfo();
                 System.out.print("\n");
             }
         }
@@ -83,76 +100,163 @@ public class Borrower extends Person
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         
         
+        String name = null, address = null;     // null for unchanged
+        int phone = -1;
+        
         System.out.println("\nDo you want to update " + getName() + "'s Name ? (y/n)");  
         choice = sc.next();  
 
         if(choice.equals("y"))
         {
             System.out.println("\nType New Name: ");
-            setName(reader.readLine());
-            System.out.println("\nThe name is successfully updated.");            
+            name = reader.readLine();
         }    
 
                
-        System.out.println("\nDo you want to update " + getName() + "'s Address ? (y/n)");  
+        System.out.println("\nDo you want to update " + (name != null ? name : getName()) + "'s Address ? (y/n)");  
         choice = sc.next();  
 
         if(choice.equals("y"))
         {
             System.out.println("\nType New Address: ");
-            setAddress(reader.readLine());
-            System.out.println("\nThe address is successfully updated.");            
+            address = reader.readLine();
         }    
 
-        System.out.println("\nDo you want to update " + getName() + "'s Phone Number ? (y/n)");  
+        System.out.println("\nDo you want to update " + (name != null ? name : getName()) + "'s Phone Number ? (y/n)");  
         choice = sc.next();  
 
         if(choice.equals("y"))
         {
             System.out.println("\nType New Phone Number: ");
-            setPhone(sc.nextInt());
-            System.out.println("\nThe phone number is successfully updated.");
+            phone = sc.nextInt();
         }
         
+        // Changing the borrower once everything is asked
+        synchronized (Library.getInstance())
+        {
+            if (name != null)
+                setName(name);
+            
+            if (address != null)
+                setAddress(address);
+            
+            if (phone != -1)
+                setPhone(phone);
+        }
+        
+        if (name != null)
+            System.out.println("\nThe name is successfully updated.");
+        
+        if (address != null)
+            System.out.println("\nThe address is successfully updated.");
+        
+        if (phone != -1)
+            System.out.println("\nThe phone number is successfully updated.");
+        
         System.out.println("\nBorrower is successfully updated.");
         
     }
     
+    /*-- Loading Loans and Hold Requests on demand---*/
+    
+    // Called for a borrower loaded from the database without its loans and hold requests
+    public void setRecordsPending(boolean pending)
+    {
+        recordsPending = pending;
+    }
+    
+    public boolean isRecordsPending()
+    {
+        return recordsPending;
+    }
+    
+    public void loadRecords()
+    {
+        if (recordsPending)
+        {
+            recordsPending = false;
+            Library.getInstance().loadBorrowerRecords(this);
+        }
+    }
+    
+    /*-------------------------------------------*/
+    
     /*-- Adding and Removing from Borrowed Books---*/
     public void addBorrowedBook(Loan iBook)
+    {
+        loadRecords();
+        borrowedBooks.add(iBook);
+        Library.getInstance().loanOpened(iBook);
+    }
+    
+    // Adding a loan loaded from the database, without loading the others first
+    public void addLoadedBorrowedBook(Loan iBook)
     {
         borrowedBooks.add(iBook);
+        Library.getInstance().loanOpened(iBook);
     }
     
     public void removeBorrowedBook(Loan iBook)
     {
+        loadRecords();
         borrowedBooks.remove(iBook);
+        Library.getInstance().loanClosed(iBook);
     }    
     
     /*-------------------------------------------*/
     
     /*-- Adding and Removing from On Hold Books---*/
     public void addHoldRequest(HoldRequest hr)
+    {
+        loadRecords();
+        onHoldBooks.add(hr);
+    }
+    
+    // Adding a hold request loaded from the database, without loading the others first
+    public void addLoadedHoldRequest(HoldRequest hr)
     {
         onHoldBooks.add(hr);
     }
     
     public void removeHoldRequest(HoldRequest hr)
     {
+        loadRecords();
         onHoldBooks.remove(hr);
     }
     
+    // Removing many hold requests at once, going through the list only once
+    public void removeHoldRequests(Set<HoldRequest> hrs)
+    {
+        loadRecords();
+        onHoldBooks.removeAll(hrs);
+    }
+    
     /*-------------------------------------------*/
     
     /*-----------Getter FUNCs. ------------------*/
     public ArrayList<Loan> getBorrowedBooks()
     {
+        loadRecords();
         return borrowedBooks;
     }
     
     public ArrayList<HoldRequest> getOnHoldBooks()
     {
+        loadRecords();
         return onHoldBooks;
     }
+    
+    // The loan of a book which this borrower has now, null if none
+    public Loan getLoanOf(Book b)
+    {
+        loadRecords();
+        
+        Loan l = Library.getInstance().loadedOpenLoan(b);
+        
+        if (l != null && l.getBorrower() == this)
+            return l;
+        
+        return null;
+    }
     /*-------------------------------------------*/
 }
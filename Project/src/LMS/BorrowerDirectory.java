@@ -0,0 +1,105 @@
+package LMS;
+
+import java.util.*;
+
+// Finds borrowers by the start of their name (case and spacing don't matter) or by their phone
+// number, exactly or by its first digits, for patrons who don't have their card with them. Both are
+// sorted maps whose keys end with the borrower's ID, so that a prefix is a range of keys, found in
+// O(log n) and read in order.
+public class BorrowerDirectory
+{
+    private static final char END = '\u0000';       // between a name or phone number and the ID, below any character
+
+    private final TreeMap<String, Borrower> byName = new TreeMap<>();
+    private final TreeMap<String, Borrower> byPhone = new TreeMap<>();
+    private final HashMap<Integer, String[]> keys = new HashMap<>();     // the keys of each borrower: name, phone
+
+    // statistics
+    private long lookups;
+    private long found;
+
+    /*------- Maintaining the directory ---------*/
+    public void add(Borrower b)
+    {
+        String[] k = { Library.normalize(b.getName()) + END + b.getID(), Integer.toString(b.getPhoneNumber()) + END + b.getID() };
+
+        keys.put(b.getID(), k);
+        byName.put(k[0], b);
+        byPhone.put(k[1], b);
+    }
+
+    public void remove(Borrower b)
+    {
+        String[] k = keys.remove(b.getID());
+
+        if (k != null)
+        {
+            byName.remove(k[0]);
+            byPhone.remove(k[1]);
+        }
+    }
+
+    // Called when the name or phone number of a borrower is changed
+    public void update(Borrower b)
+    {
+        remove(b);
+        add(b);
+    }
+    /*-------------------------------------------*/
+
+    /*------- Looking up ---------*/
+
+    // Up to limit borrowers whose name starts with the prefix, by name
+    public ArrayList<Borrower> findByName(String prefix, int limit)
+    {
+        return range(byName, Library.normalize(prefix), limit);
+    }
+
+    // The borrowers with this phone number
+    public ArrayList<Borrower> findByPhone(int phone)
+    {
+        String key = Integer.toString(phone) + END;
+        return found(new ArrayList<>(byPhone.subMap(key, key + Character.MAX_VALUE).values()));
+    }
+
+    // Up to limit borrowers whose phone number starts with these digits, those with exactly this number first
+    public ArrayList<Borrower> findByPhonePrefix(String digits, int limit)
+    {
+        return range(byPhone, digits.trim(), limit);
+    }
+
+    private ArrayList<Borrower> range(TreeMap<String, Borrower> map, String prefix, int limit)
+    {
+        ArrayList<Borrower> result = new ArrayList<>();
+
+        for (Borrower b : map.subMap(prefix, prefix + Character.MAX_VALUE).values())
+        {
+            if (result.size() == limit)
+                break;
+
+            result.add(b);
+        }
+
+        return found(result);
+    }
+
+    private ArrayList<Borrower> found(ArrayList<Borrower> result)
+    {
+        lookups++;
+        found += result.size();
+
+        return result;
+    }
+    /*----------------------------*/
+
+    public int size()
+    {
+        return keys.size();
+    }
+
+    public void printStatistics()
+    {
+        System.out.println("Borrower directory: " + size() + " borrowers, " + lookups + " lookups finding " + found + " borrowers");
+    }
+
+}   // BorrowerDirectory Class Closed
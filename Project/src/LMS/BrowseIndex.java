@@ -0,0 +1,169 @@
+package LMS;
+
+import java.util.*;
+
+// Keeps the books in shelf order by title, by author or by subject and then title, for browsing the
+// catalog a page at a time. The books are in a sorted map (a red-black tree) kept up to date as they
+// are added, removed or changed, so a browse seeks to its starting point in O(log n) and reads on from
+// there, without ever sorting the catalog.
+//
+// A key is the normalized field (for subjects: subject, '\u0001', title), then '\u0000' and the ID of
+// the book, so that books with the same title are all kept. A cursor remembers the keys of the first and
+// last books it has shown, so its next and previous pages stay right while books are added or removed.
+public class BrowseIndex
+{
+    private static final char SUBJECT_END = '\u0001';
+    private static final char END = '\u0000';
+
+    private final int field;                    // Library.BY_TITLE, BY_AUTHOR or BY_SUBJECT (then title)
+    private final TreeMap<String, Book> books = new TreeMap<>();
+
+    // statistics
+    private long seeks;
+    private long pages;
+
+    public BrowseIndex(int f)      // para cons.
+    {
+        field = f;
+    }
+
+    /*------- Maintaining the index ---------*/
+    public void add(Book b)
+    {
+        books.put(key(b.getID(), b.getTitle(), b.getSubject(), b.getAuthor()), b);
+    }
+
+    public void remove(Book b)
+    {
+        books.remove(key(b.getID(), b.getTitle(), b.getSubject(), b.getAuthor()));
+    }
+
+    // Called when the title, subject or author of a book is changed, with the values it had before
+    public void change(Book b, String oldTitle, String oldSubject, String oldAuthor)
+    {
+        String oldKey = key(b.getID(), oldTitle, oldSubject, oldAuthor);
+        String newKey = key(b.getID(), b.getTitle(), b.getSubject(), b.getAuthor());
+
+        if (!oldKey.equals(newKey))
+        {
+            books.remove(oldKey);
+            books.put(newKey, b);
+        }
+    }
+
+    private String key(int id, String title, String subject, String author)
+    {
+        StringBuilder sb = new StringBuilder(48);
+
+        if (field == Library.BY_TITLE)
+            sb.append(Library.normalize(title));
+        else if (field == Library.BY_AUTHOR)
+            sb.append(Library.normalize(author));
+        else
+            sb.append(Library.normalize(subject)).append(SUBJECT_END).append(Library.normalize(title));
+
+        return sb.append(END).append((char) (id >>> 16)).append((char) id).toString();
+    }
+    /*---------------------------------------*/
+
+    // A cursor at the first book from the given text on. For subjects the text is "subject" or
+    // "subject|title".
+    public Cursor seek(String from, int pageSize)
+    {
+        String start;
+
+        if (field == Library.BY_SUBJECT && from.indexOf('|') >= 0)
+        {
+            int bar = from.indexOf('|');
+            start = Library.normalize(from.substring(0, bar)) + SUBJECT_END + Library.normalize(from.substring(bar + 1));
+        }
+        else
+            start = Library.normalize(from);
+
+        seeks++;
+        return new Cursor(start, pageSize);
+    }
+
+    // The books whose title or author (not subject) is the given text, ignoring letter case and extra
+    // spaces, in the order of their IDs
+    public ArrayList<Book> equalTo(String text)
+    {
+        String key = Library.normalize(text);
+
+        seeks++;
+        return new ArrayList<>(books.subMap(key + END, true, key + SUBJECT_END, false).values());
+    }
+
+    public int size()
+    {
+        return books.size();
+    }
+
+    // Reads the index a page at a time, forwards or backwards
+    public class Cursor
+    {
+        private final int pageSize;
+        private String first;           // keys of the first and last books of the page shown, null before any
+        private String last;
+        private final String start;
+
+        private Cursor(String s, int size)     // para cons.
+        {
+            start = s;
+            pageSize = Math.max(1, size);
+        }
+
+        // The page after the one shown, the first page at the start. Empty at the end of the index.
+        public ArrayList<Book> next()
+        {
+            NavigableMap<String, Book> rest = last == null ? books.tailMap(start, true) : books.tailMap(last, false);
+            return page(rest, false);
+        }
+
+        // The page before the one shown. Empty at the beginning of the index.
+        public ArrayList<Book> previous()
+        {
+            NavigableMap<String, Book> before = books.headMap(first == null ? start : first, false).descendingMap();
+            return page(before, true);
+        }
+
+        private ArrayList<Book> page(NavigableMap<String, Book> from, boolean backwards)
+        {
+            ArrayList<Book> result = new ArrayList<>(pageSize);
+            ArrayList<String> keys = new ArrayList<>(pageSize);
+
+            for (Map.Entry<String, Book> e : from.entrySet())
+            {
+                if (result.size() == pageSize)
+                    break;
+
+                result.add(e.getValue());
+                keys.add(e.getKey());
+            }
+
+            pages++;
+
+            if (result.isEmpty())
+                return result;
+
+            if (backwards)
+            {
+                Collections.reverse(result);
+                Collections.reverse(keys);
+            }
+
+            first = keys.get(0);
+            last = keys.get(keys.size() - 1);
+
+            return result;
+        }
+    }
+
+    public void printStatistics()
+    {
+        String name = field == Library.BY_TITLE ? "title" : field == Library.BY_AUTHOR ? "author" : "subject";
+
+        System.out.println("Browse by " + name + ": " + size() + " books, " + seeks + " seeks, " + pages + " pages read");
+    }
+
+}   // BrowseIndex Class Closed
@@ -0,0 +1,93 @@
+package LMS;
+
+import java.util.*;
+
+// Measures how many bytes of heap a book takes, comparing the plain representation (three Strings and
+// an eagerly created hold request list per book) with the compact one used by Book (a record number
+// into the book records, dictionary codes, and hold request lists created on demand).
+//
+// Run with: java -cp build/classes LMS.CatalogFootprint [number of books] [--off-heap]
+public class CatalogFootprint
+{
+    // A book as it used to be kept
+    private static class PlainBook
+    {
+        int bookID;
+        String title;
+        String subject;
+        String author;
+        boolean isIssued;
+        ArrayList<HoldRequest> holdRequests;
+
+        PlainBook(int id, String t, String s, String a)
+        {
+            bookID = id;
+            title = t;
+            subject = s;
+            author = a;
+            holdRequests = new ArrayList<>();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        if (Arrays.asList(args).contains("--off-heap"))
+            Book.useOffHeapRecords();
+
+        System.out.println("Measuring " + n + " books...");
+
+        long before = usedHeap();
+        Object[] plain = new Object[n];
+
+        for (int i = 0; i < n; i++)
+            plain[i] = new PlainBook(i, title(i), subject(i), author(i));
+
+        long plainBytes = usedHeap() - before;
+        plain = null;
+
+        before = usedHeap();
+        Object[] compact = new Object[n];
+
+        for (int i = 0; i < n; i++)
+            compact[i] = new Book(i, title(i), subject(i), author(i), false);
+
+        long compactBytes = usedHeap() - before;
+
+        System.out.println("Plain books:   " + plainBytes / n + " bytes per book");
+        BookRecords records = Book.getRecords();
+
+        System.out.println("Compact books: " + compactBytes / n + " bytes per book on the heap (records "
+                + records.getAllocatedBytes() / n + " bytes per book " + (records.isOffHeap() ? "off the heap" : "on the heap") + ", "
+                + Book.getSubjects().size() + " subjects, " + Book.getAuthors().size() + " authors, "
+                + compact.length + " books)");
+    }
+
+    // Sample values with as much repetition as in a real catalog: few subjects, more authors
+    private static String title(int i)
+    {
+        return "Title of book number " + i;
+    }
+
+    private static String subject(int i)
+    {
+        return "Subject " + (i % 200);
+    }
+
+    private static String author(int i)
+    {
+        return "Author " + (i % 50000);
+    }
+
+    private static long usedHeap()
+    {
+        Runtime rt = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++)
+            System.gc();
+
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+}   // CatalogFootprint Class Closed
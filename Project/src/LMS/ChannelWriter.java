@@ -0,0 +1,82 @@
+package LMS;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+// Writes text to a byte channel through one large reusable buffer, so that rows can be
+// formatted into a StringBuilder and handed over without creating Strings for every line.
+public class ChannelWriter
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder;
+    private long bytesWritten;
+
+    public ChannelWriter(WritableByteChannel ch)     // para cons.
+    {
+        channel = ch;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)        // e.g. a lone surrogate is written as '?'
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Encoding the characters in the buffer, draining it to the channel whenever it fills up
+    public void write(CharSequence text) throws IOException
+    {
+        CharBuffer in = CharBuffer.wrap(text);
+
+        while (true)
+        {
+            CoderResult result = encoder.encode(in, buffer, false);
+
+            if (result.isOverflow())
+                drain();
+            else if (result.isError())
+                result.throwException();
+            else
+                break;
+        }
+    }
+
+    public void write(StringBuilder row) throws IOException
+    {
+        write((CharSequence) row);
+    }
+
+    // Writing all buffered bytes to the channel
+    public void flush() throws IOException
+    {
+        drain();
+    }
+
+    public void close() throws IOException
+    {
+        drain();
+        channel.close();
+    }
+
+    public long getBytesWritten()
+    {
+        return bytesWritten + buffer.position();
+    }
+
+    private void drain() throws IOException
+    {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+            bytesWritten += channel.write(buffer);
+
+        buffer.clear();
+    }
+
+}   // ChannelWriter Class Closed
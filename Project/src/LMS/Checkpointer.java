@@ -0,0 +1,311 @@
+package LMS;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+// Keeps the changes which may not be in the database yet in a journal file, so that a crash or a kill
+// loses at most the changes of the last interval. Every interval the changes made since the last
+// checkpoint are taken (only swapping a list, guarded by a lock of its own rather than the library's,
+// so a checkpoint neither waits for the desks nor makes them wait) and appended to the journal, which
+// is then synced to the disk. Once the database has all of them the journal is emptied. While it can't
+// be emptied (changes are saved at exit only, or writing them failed) it is compacted to the last
+// change of each row whenever it gets long, which bounds the time a recovery takes.
+//
+// Every commit of the persistence queue records the run and the sequence it has reached in
+// LIBRARY.CHECKPOINT, so a recovery at the next start writes only the changes which came after.
+//
+// Journal: <MAGIC> <run ID>, then <sequence> <row change> for every change.
+public class Checkpointer
+{
+    private static final int MAGIC = 0x4c4d534a;        // "LMSJ"
+
+    private final Library lib;
+    private final Path file;
+    private final long runID;
+    private final long intervalMillis;
+    private final int compactAt;                        // changes in the journal after which it is compacted
+
+    private final Object pendingLock = new Object();
+    private ArrayList<RowChange> pending = new ArrayList<>();      // changes since the last checkpoint (guarded by pendingLock)
+    private final LinkedHashMap<Long, RowChange> latest = new LinkedHashMap<>();    // last change of each row in the journal
+    private DataOutputStream out;
+    private FileOutputStream fileOut;
+    private int journalChanges;
+
+    private final Thread thread;
+    private volatile boolean stopping;
+
+    // statistics
+    private volatile long checkpoints;
+    private volatile long lastMillis;
+    private volatile long lastChanges;
+    private volatile long lastBytes;
+    private volatile long truncations;
+    private volatile long compactions;
+
+    public Checkpointer(Library l, String f, long run, int intervalSeconds, int compact) throws IOException      // para cons.
+    {
+        lib = l;
+        file = Paths.get(f);
+        runID = run;
+        intervalMillis = Math.max(1, intervalSeconds) * 1000L;
+        compactAt = compact;
+
+        // A journal left by a crash has been recovered already, at start
+        rewrite(Collections.<RowChange>emptyList());
+
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                work();
+            }
+        }, "Checkpointer");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public long getRunID()
+    {
+        return runID;
+    }
+
+    // Called holding the library's lock for every change, after it has been queued for the database
+    public void record(RowChange change)
+    {
+        synchronized (pendingLock)
+        {
+            pending.add(change);
+        }
+    }
+
+    // Taking a last checkpoint and stopping. If saved is true all changes are in the database, and
+    // the journal is removed.
+    public void close(boolean saved)
+    {
+        stopping = true;
+        thread.interrupt();
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            checkpoint();
+            out.close();
+
+            if (saved)
+                Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("\nCould not write the checkpoint: " + e.getMessage());
+        }
+    }
+
+    /*------- The checkpoint thread ---------*/
+
+    private void work()
+    {
+        while (!stopping)
+        {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.out.println("\nCould not write the checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void checkpoint() throws IOException
+    {
+        long start = System.nanoTime();
+        ArrayList<RowChange> changes;
+
+        synchronized (pendingLock)
+        {
+            changes = pending;
+            pending = new ArrayList<>();
+        }
+
+        long before = out.size();
+
+        for (int i = 0; i < changes.size(); i++)
+        {
+            RowChange c = changes.get(i);
+            out.writeLong(c.getSequence());
+            c.writeTo(out);
+
+            latest.remove(c.getRowKey());       // keeping the rows in the order of their last change
+            latest.put(c.getRowKey(), c);
+        }
+
+        out.flush();
+        fileOut.getFD().sync();
+        journalChanges += changes.size();
+
+        lastChanges = changes.size();
+        lastBytes = out.size() - before;
+
+        // Once everything is in the database the journal isn't needed any more
+        if (journalChanges > 0 && lib.awaitPersisted())
+        {
+            rewrite(Collections.<RowChange>emptyList());
+            truncations++;
+        }
+        else if (journalChanges > compactAt && journalChanges > 2 * latest.size())
+        {
+            rewrite(new ArrayList<>(latest.values()));
+            compactions++;
+        }
+
+        checkpoints++;
+        lastMillis = (System.nanoTime() - start) / 1000000;
+    }
+
+    // Replacing the journal by one holding the changes given, by renaming a new file over it
+    private void rewrite(List<RowChange> changes) throws IOException
+    {
+        if (out != null)
+            out.close();
+
+        Path tmp = Paths.get(file + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp.toFile());
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos, 65536));
+
+        dos.writeInt(MAGIC);
+        dos.writeLong(runID);
+
+        for (int i = 0; i < changes.size(); i++)
+        {
+            dos.writeLong(changes.get(i).getSequence());
+            changes.get(i).writeTo(dos);
+        }
+
+        dos.flush();
+        fos.getFD().sync();
+        dos.close();
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (changes.isEmpty())
+            latest.clear();
+
+        journalChanges = changes.size();
+        fileOut = new FileOutputStream(file.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 65536));
+    }
+    /*-----------------------------------*/
+
+    // Writing the changes of a journal left by a crash which aren't in the database yet. Returns
+    // the number of changes written, or -1 if they could not all be written and the journal is kept.
+    public static int recover(Library lib, String f, Connection con)
+    {
+        Path path = Paths.get(f);
+
+        if (!Files.exists(path))
+            return 0;
+
+        ArrayList<RowChange> changes = new ArrayList<>();
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile()), 65536));
+
+            try {
+                if (in.readInt() != MAGIC)
+                    throw new IOException(f + " is not a journal");
+
+                long run = in.readLong();
+                long reached = reached(con, run);
+
+                while (true)
+                {
+                    long seq;
+                    RowChange c;
+
+                    try {
+                        seq = in.readLong();
+                        c = RowChange.readFrom(in);
+                    } catch (EOFException e) {
+                        break;      // the end, or a change cut short by the crash
+                    }
+
+                    // Changes not given to the database, or after the last one it committed
+                    if (seq == 0 || seq > reached)
+                        changes.add(c);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException | SQLException e) {
+            System.out.println("\nCould not read the checkpoint " + f + ": " + e.getMessage());
+            return -1;
+        }
+
+        if (!changes.isEmpty())
+        {
+            Connection c = lib.makeConnection();
+
+            if (c == null)
+                return -1;
+
+            try {
+                PersistenceQueue queue = new PersistenceQueue(c);
+
+                for (int i = 0; i < changes.size(); i++)
+                    queue.add(changes.get(i));
+
+                if (!queue.close())
+                    return -1;
+            } catch (SQLException e) {
+                System.out.println("\n" + e.getMessage());
+                return -1;
+            }
+        }
+
+        try {
+            Files.delete(path);
+        } catch (IOException e) {
+            System.out.println("\n" + e.getMessage());
+        }
+
+        return changes.size();
+    }
+
+    // The sequence the database has reached in a run, 0 if it has nothing of that run
+    private static long reached(Connection con, long run) throws SQLException
+    {
+        Statement stmt = con.createStatement();
+
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT RUN_ID, SEQ FROM LIBRARY.CHECKPOINT");
+            return rs.next() && rs.getLong(1) == run ? rs.getLong(2) : 0;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    public void printStatistics()
+    {
+        System.out.println("Checkpoints: " + checkpoints + " taken, the last of " + lastChanges + " changes (" + lastBytes + " bytes) in "
+                + lastMillis + " ms, " + journalChanges + " changes in the journal, " + truncations + " times emptied, "
+                + compactions + " compactions");
+    }
+
+}   // Checkpointer Class Closed
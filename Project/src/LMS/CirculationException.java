@@ -0,0 +1,13 @@
+package LMS;
+
+// Thrown when a circulation request (issuing, returning, renewing or holding a book) can't be
+// carried out. The message says why, in words that can be shown to the borrower.
+public class CirculationException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    public CirculationException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,665 @@
+package LMS;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Runs months of circulation against the library in memory on its own clock, as fast as it can be
+// computed, for studying the fines and the hold request policy (deadline, fine per day, hold request
+// and pickup expiry) without waiting for them. Events are kept in a priority queue by time; the clock
+// is set to the time of each event before it is carried out by the same code the desks use. Only the
+// events of the day being run are in the queue; later ones wait in a list for their day, which is put
+// in the queue when the day starts, so the queue stays small however many borrowers there are.
+//
+// The circulation is either made up or recorded:
+//  - run: borrowers visit every VISIT_INTERVAL days on average and ask for one or two books, popular
+//    ones more often. A book which isn't available is placed on hold, or they leave. Books are returned
+//    in time, late or after a renewal, and the fine is paid or not. A returned book with hold requests
+//    is kept for the first borrower in its queue for the pickup expiry (as HoldFulfilment does), who
+//    picks it up in time or not.
+//  - replay: a file of commands in the format of BatchRunner, each line starting with its time,
+//    "yyyy-MM-dd" or "yyyy-MM-ddTHH:mm:ss", in order of time. The results are written like a batch's.
+//
+// At the end of every day the expired hold requests are removed and the queues are measured. The
+// fines are those of the loans made during the run: assessed on return, or due so far if not returned.
+public class CirculationSimulation
+{
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    // the made up borrowers
+    private static final double VISIT_INTERVAL = 14;        // mean days between the visits of a borrower
+    private static final int MAX_LOANS = 5;                 // books a borrower has at once
+    private static final double HOLD_PROBABILITY = 0.5;     // placing a hold on a book which isn't available
+    private static final double RENEW_PROBABILITY = 0.1;    // renewing a loan at its deadline
+    private static final double LATE_PROBABILITY = 0.2;     // returning a book after its deadline
+    private static final double LATE_DAYS = 7;              // mean days a late book is kept past its deadline
+    private static final double FINE_PAID_PROBABILITY = 0.7;
+    private static final double PICKUP_DAYS = 2;            // mean days to come for a book kept for them
+
+    private static final int VISIT = 0, RETURN = 1, RENEW = 2, PICKUP = 3, LAPSE = 4;
+
+    private static class Event
+    {
+        final long time;
+        final long order;           // events at the same time are carried out in the order made
+        final int kind;
+        final Borrower borrower;
+        final Book book;
+        final Loan loan;
+
+        Event(long t, long o, int k, Borrower bor, Book b, Loan l)     // para cons.
+        {
+            time = t;
+            order = o;
+            kind = k;
+            borrower = bor;
+            book = b;
+            loan = l;
+        }
+    }
+
+    private final Library lib;
+    private final LibraryClock clock;
+    private final Random random;
+    private Staff staff;
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>(1024, new Comparator<Event>()
+    {
+        @Override
+        public int compare(Event a, Event b)
+        {
+            return a.time != b.time ? Long.compare(a.time, b.time) : Long.compare(a.order, b.order);
+        }
+    });
+    private final ArrayList<ArrayList<Event>> later = new ArrayList<>();    // events of the days after the one being run, by day
+    private int day;                                                        // the day being run, from 0
+    private long eventsMade;
+
+    private final ArrayList<Book> shelf = new ArrayList<>();            // the made up books, most popular first
+    private final HashMap<Book, Borrower> keptFor = new HashMap<>();    // returned books kept for a borrower
+    private final LinkedHashSet<Book> queued = new LinkedHashSet<>();   // books which may have hold requests
+    private int firstLoan;                                              // loans before the run are not counted
+    private boolean madeUp;                                             // running made up circulation, not replaying
+
+    // statistics
+    private long start, end;                    // simulated time
+    private long elapsed;                       // milliseconds the run took
+    private long eventsRun;
+    private int days;
+    private long visits, turnedAway, refused;
+    private long checkouts, returns, renewals, renewalsRefused;
+    private long holdsPlaced, pickedUp, lapsed;
+    private long succeeded, failed;             // commands replayed
+
+    private final int[] queuePositions = new int[101];     // position taken in the queue by each hold, the last for 100 or more
+    private int longestQueue;
+    private final int[] holdWaits = new int[366];          // days from a hold request to the pickup, the last for a year or more
+
+    private long holdsSum, queuedBooksSum, loansOutSum;    // of the measures at the end of each day
+    private int holdsPeak, queuedBooksPeak, loansOutPeak;
+
+    public CirculationSimulation(Library l, long seed)     // para cons.
+    {
+        lib = l;
+        clock = l.getClock();
+        random = new Random(seed);
+    }
+
+    /*------- Made up circulation ---------*/
+
+    // Running the given number of days of circulation by made up borrowers, in a library with the
+    // given numbers of books and borrowers added
+    public void run(int borrowers, int books, int numberOfDays)
+    {
+        synchronized (lib)
+        {
+            long started = System.nanoTime();
+            Calendar c = Calendar.getInstance();
+            c.set(c.get(Calendar.YEAR), Calendar.JANUARY, 1, 0, 0, 0);
+            c.set(Calendar.MILLISECOND, 0);
+
+            begin(c.getTimeInMillis());
+            madeUp = true;
+
+            for (int i = 0; i < books; i++)
+            {
+                Book b = new Book(-1, "Book " + i, "Subject " + (i % 40), "Author " + (i % 5000), false);
+                lib.addBookinLibrary(b);
+                shelf.add(b);
+            }
+
+            for (int i = 0; i < numberOfDays; i++)
+                later.add(null);
+
+            for (int i = 0; i < borrowers; i++)
+            {
+                Borrower b = new Borrower(-1, "Borrower " + i, "Address " + i, 5000000 + i);
+                lib.addBorrower(b);
+                schedule(start + days(random.nextDouble() * VISIT_INTERVAL), VISIT, b, null, null);
+            }
+
+            for (day = 0; day < numberOfDays; day++)
+            {
+                if (later.get(day) != null)
+                    events.addAll(later.set(day, null));
+
+                while (!events.isEmpty())
+                {
+                    Event e = events.poll();
+
+                    clock.setTime(e.time);
+                    eventsRun++;
+
+                    if (e.kind == VISIT)
+                        visit(e.borrower);
+                    else if (e.kind == RETURN)
+                        giveBack(e.loan);
+                    else if (e.kind == RENEW)
+                        renew(e.loan);
+                    else if (e.kind == PICKUP)
+                        pickUp(e.borrower, e.book);
+                    else
+                        lapse(e.borrower, e.book);
+                }
+
+                endDay(start + (day + 1) * DAY);
+            }
+
+            elapsed = (System.nanoTime() - started) / 1000000;
+            finish(start + numberOfDays * DAY);
+        }
+    }
+
+    // A borrower comes and asks for one or two books
+    private void visit(Borrower b)
+    {
+        visits++;
+        int wanted = 1 + random.nextInt(2);
+
+        for (int i = 0; i < wanted && b.getBorrowedBooks().size() < MAX_LOANS; i++)
+        {
+            Book book = shelf.get(popular());
+
+            if (borrow(b, book))
+                continue;
+
+            if (random.nextDouble() < HOLD_PROBABILITY)
+            {
+                try {
+                    book.requestHold(b, clock.now());
+                    held(book);
+                } catch (CirculationException e) {
+                    refused++;      // borrowed or held by them already
+                }
+            }
+            else
+                turnedAway++;
+        }
+
+        schedule(clock.millis() + days(exponential(VISIT_INTERVAL)), VISIT, b, null, null);
+    }
+
+    // A book of the shelf, the first ones much more often: a quarter of the requests are for the
+    // first 1.5% of the books
+    private int popular()
+    {
+        double u = random.nextDouble();
+        return (int) (shelf.size() * u * u * u);
+    }
+
+    // Checking out a book, returning false if it isn't available to the borrower
+    private boolean borrow(Borrower b, Book book)
+    {
+        List<HoldRequest> hrs = book.getHoldRequests();
+        Date requested = !hrs.isEmpty() && hrs.get(0).getBorrower() == b ? hrs.get(0).getRequestDate() : null;
+
+        Loan l;
+
+        try {
+            l = book.checkOut(b, staff, clock.now());
+        } catch (CirculationException e) {
+            return false;
+        }
+
+        checkouts++;
+
+        // their hold request was serviced, unless it had expired
+        long waited = requested == null ? -1 : (clock.millis() - requested.getTime()) / DAY;
+
+        if (waited >= 0 && waited <= lib.getHoldRequestExpiry())
+        {
+            pickedUp++;
+            holdWaits[(int) Math.min(holdWaits.length - 1, waited)]++;
+        }
+
+        keptFor.remove(book);
+        scheduleReturn(l);
+        return true;
+    }
+
+    // In time, late, or renewed at the deadline
+    private void scheduleReturn(Loan l)
+    {
+        double u = random.nextDouble();
+        long issued = l.getIssuedDate().getTime();
+        int deadline = lib.book_return_deadline;
+
+        if (u < RENEW_PROBABILITY)
+            schedule(issued + days(deadline) - DAY / 2, RENEW, null, null, l);
+        else if (u < RENEW_PROBABILITY + LATE_PROBABILITY)
+            schedule(issued + days(deadline + 1 + exponential(LATE_DAYS)), RETURN, null, null, l);
+        else
+            schedule(issued + days(random.nextDouble() * deadline), RETURN, null, null, l);
+    }
+
+    // A loan isn't renewed while others are waiting for the book; it is returned instead
+    private void renew(Loan l)
+    {
+        if (l.getBook().hasHoldRequests())
+        {
+            renewalsRefused++;
+            schedule(clock.millis() + days(random.nextDouble()), RETURN, null, null, l);
+            return;
+        }
+
+        l.renew(clock.now());
+        renewals++;
+        scheduleReturn(l);
+    }
+
+    private void giveBack(Loan l)
+    {
+        Book book = l.getBook();
+
+        book.checkIn(l.getBorrower(), l, staff, clock.now(), random.nextDouble() < FINE_PAID_PROBABILITY);
+        returns++;
+
+        if (book.hasHoldRequests())
+            keep(book);
+    }
+
+    // Keeping an available book for the first borrower in its queue, who comes for it some time later
+    private void keep(Book book)
+    {
+        book.removeExpiredHoldRequests(clock.now());
+        List<HoldRequest> hrs = book.getHoldRequests();
+
+        if (hrs.isEmpty())
+        {
+            keptFor.remove(book);
+            return;
+        }
+
+        Borrower b = hrs.get(0).getBorrower();
+        double delay = exponential(PICKUP_DAYS);
+
+        keptFor.put(book, b);
+
+        if (delay > lib.getPickupExpiry())
+            schedule(clock.millis() + days(lib.getPickupExpiry()), LAPSE, b, book, null);
+        else
+            schedule(clock.millis() + days(delay), PICKUP, b, book, null);
+    }
+
+    private void pickUp(Borrower b, Book book)
+    {
+        if (keptFor.get(book) != b || book.getIssuedStatus())
+            return;         // picked up on a visit already
+
+        if (!borrow(b, book))
+            keep(book);     // their hold request expired meanwhile
+    }
+
+    // Kept for the pickup expiry and not picked up: the hold request is cancelled, and the book is
+    // kept for the next borrower in the queue
+    private void lapse(Borrower b, Book book)
+    {
+        if (keptFor.get(book) != b || book.getIssuedStatus())
+            return;
+
+        book.removeExpiredHoldRequests(clock.now());
+        List<HoldRequest> hrs = book.getHoldRequests();
+
+        if (!hrs.isEmpty() && hrs.get(0).getBorrower() == b)
+        {
+            book.serviceHoldRequest(hrs.get(0));
+            lapsed++;
+        }
+
+        keep(book);
+    }
+    /*-------------------------------------*/
+
+    /*------- Recorded circulation ---------*/
+
+    // Replaying dated commands, writing the result of each to the results file
+    public void replay(String commandFile, String resultFile) throws IOException
+    {
+        BufferedReader in = Files.newBufferedReader(Paths.get(commandFile), StandardCharsets.UTF_8);
+        BufferedWriter out = Files.newBufferedWriter(Paths.get(resultFile), StandardCharsets.UTF_8);
+        BatchRunner runner = new BatchRunner(lib);
+
+        try {
+            synchronized (lib)
+            {
+                long started = System.nanoTime();
+                long dayEnd = -1;
+                long last = 0;
+                String line;
+                int lineNo = 0;
+
+                while ((line = in.readLine()) != null)
+                {
+                    lineNo++;
+                    line = line.trim();
+
+                    if (line.isEmpty() || line.startsWith("#"))
+                        continue;
+
+                    int space = line.indexOf(' ');
+                    long time;
+                    String command = space < 0 ? "" : line.substring(space + 1).trim();
+                    String result;
+
+                    try {
+                        time = parseTime(space < 0 ? line : line.substring(0, space));
+
+                        if (dayEnd == -1)
+                        {
+                            begin(startOfDay(time));
+                            dayEnd = start + DAY;
+                            runner.execute("staff " + staff.getID());
+                        }
+
+                        if (time < last)
+                            throw new CirculationException("Earlier than the line before");
+
+                        while (time >= dayEnd)
+                        {
+                            endDay(dayEnd);
+                            dayEnd += DAY;
+                        }
+
+                        last = time;
+                        clock.setTime(time);
+                        eventsRun++;
+
+                        result = "OK\t" + runner.execute(command);
+                        succeeded++;
+                        replayed(command);
+                    } catch (CirculationException e) {
+                        result = "FAILED\t" + e.getMessage();
+                        failed++;
+                    }
+
+                    out.write(lineNo + "\t" + result);
+                    out.newLine();
+                }
+
+                if (dayEnd == -1)
+                    return;
+
+                endDay(dayEnd);
+                elapsed = (System.nanoTime() - started) / 1000000;
+                finish(dayEnd);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static long parseTime(String s) throws CirculationException
+    {
+        String format = s.length() == 10 ? "yyyy-MM-dd" : s.length() == 16 ? "yyyy-MM-dd'T'HH:mm" : "yyyy-MM-dd'T'HH:mm:ss";
+        SimpleDateFormat f = new SimpleDateFormat(format);
+        f.setLenient(false);
+
+        try {
+            return f.parse(s).getTime();
+        } catch (ParseException e) {
+            throw new CirculationException("Invalid time " + s);
+        }
+    }
+
+    private static long startOfDay(long time)
+    {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(time);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+
+        return c.getTimeInMillis();
+    }
+
+    // Counting a command which was carried out
+    private void replayed(String command)
+    {
+        String[] args = command.split("\\s+");
+
+        if (args[0].equals("issue"))
+            checkouts++;
+        else if (args[0].equals("return"))
+            returns++;
+        else if (args[0].equals("renew"))
+            renewals++;
+        else if (args[0].equals("hold"))
+            held(lib.findBook(Integer.parseInt(args[1])));
+    }
+    /*--------------------------------------*/
+
+    /*------- Measuring ---------*/
+
+    private void begin(long time)
+    {
+        start = time;
+        clock.setTime(time);
+        firstLoan = lib.getLoans().size();
+
+        // ID 0 is never given to a record, so the IDs of a replay are those of the recording
+        Clerk c = new Clerk(0, "Simulation", "-", 0, 0, -1);
+        lib.addClerk(c);
+        staff = c;
+    }
+
+    // A hold request was placed on the book
+    private void held(Book book)
+    {
+        int position = book.getHoldRequests().size();
+
+        holdsPlaced++;
+        queuePositions[Math.min(queuePositions.length - 1, position)]++;
+        longestQueue = Math.max(longestQueue, position);
+        queued.add(book);
+    }
+
+    // Removing the expired hold requests, and measuring the queues and the loans out
+    private void endDay(long time)
+    {
+        clock.setTime(time);
+        Date today = clock.now();
+
+        int holds = 0;
+        int books = 0;
+
+        for (Iterator<Book> it = queued.iterator(); it.hasNext(); )
+        {
+            Book book = it.next();
+            book.removeExpiredHoldRequests(today);
+
+            List<HoldRequest> hrs = book.getHoldRequests();
+
+            if (hrs.isEmpty())
+            {
+                it.remove();
+                continue;
+            }
+
+            holds += hrs.size();
+            books++;
+
+            // the book may have been kept for a borrower whose hold request has just expired
+            if (madeUp && !book.getIssuedStatus() && keptFor.get(book) != hrs.get(0).getBorrower())
+                keep(book);
+        }
+
+        int loansOut = lib.countOpenLoans();
+
+        holdsSum += holds;
+        queuedBooksSum += books;
+        loansOutSum += loansOut;
+        holdsPeak = Math.max(holdsPeak, holds);
+        queuedBooksPeak = Math.max(queuedBooksPeak, books);
+        loansOutPeak = Math.max(loansOutPeak, loansOut);
+        days++;
+    }
+
+    private void finish(long time)
+    {
+        end = time;
+        clock.setTime(time);
+    }
+
+    // Events after the last day are dropped
+    private void schedule(long time, int kind, Borrower b, Book book, Loan l)
+    {
+        int d = (int) ((time - start) / DAY);
+
+        if (d <= day)
+            events.add(new Event(time, eventsMade++, kind, b, book, l));
+        else if (d < later.size())
+        {
+            if (later.get(d) == null)
+                later.set(d, new ArrayList<Event>());
+
+            later.get(d).add(new Event(time, eventsMade++, kind, b, book, l));
+        }
+    }
+
+    private long days(double d)
+    {
+        return (long) (d * DAY);
+    }
+
+    private double exponential(double mean)
+    {
+        return -Math.log(1 - random.nextDouble()) * mean;
+    }
+
+    // The value below which the given share of the counts are
+    private static int percentile(int[] counts, double share)
+    {
+        long total = 0;
+
+        for (int i = 0; i < counts.length; i++)
+            total += counts[i];
+
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+
+            if (seen >= share * total)
+                return i;
+        }
+        return 0;
+    }
+
+    private static double mean(int[] counts)
+    {
+        long total = 0, sum = 0;
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            total += counts[i];
+            sum += (long) i * counts[i];
+        }
+        return total == 0 ? 0 : (double) sum / total;
+    }
+    /*---------------------------*/
+
+    public void printStatistics()
+    {
+        System.out.println("\nSimulated " + days + " days (" + new Date(start) + " to " + new Date(end) + ") in " + elapsed + " ms, "
+                + eventsRun + " events");
+
+        if (succeeded + failed > 0)
+            System.out.println("Commands: " + succeeded + " carried out, " + failed + " failed");
+        else
+            System.out.println("Visits: " + visits + ", " + turnedAway + " requests for a book not available turned away, "
+                    + refused + " hold requests refused");
+
+        System.out.println("Loans: " + checkouts + " checkouts, " + returns + " returns, " + renewals + " renewals"
+                + (renewalsRefused > 0 ? " (" + renewalsRefused + " refused for books on hold)" : "")
+                + ", out at the end of a day " + String.format("%.0f", days == 0 ? 0.0 : (double) loansOutSum / days)
+                + " on average, " + loansOutPeak + " at most");
+
+        // Hold requests
+        long open = 0;
+
+        for (Book book : queued)
+            open += book.getHoldRequests().size();
+
+        System.out.println("Hold requests: " + holdsPlaced + " placed" + (pickedUp + lapsed > 0 ? ", " + pickedUp + " picked up, "
+                + lapsed + " not picked up in time, " + (holdsPlaced - pickedUp - lapsed - open) + " expired in the queue" : "")
+                + ", " + open + " open at the end");
+        System.out.println("Hold queues: position taken " + String.format("%.1f", mean(queuePositions)) + " on average, "
+                + percentile(queuePositions, 0.9) + " at the 90th percentile, " + longestQueue + " at most; at the end of a day "
+                + String.format("%.0f", days == 0 ? 0.0 : (double) holdsSum / days) + " requests on "
+                + String.format("%.0f", days == 0 ? 0.0 : (double) queuedBooksSum / days) + " books on average, "
+                + holdsPeak + " requests on " + queuedBooksPeak + " books at most");
+
+        if (pickedUp > 0)
+            System.out.println("Waits from hold request to pickup: " + String.format("%.1f", mean(holdWaits)) + " days on average, "
+                    + percentile(holdWaits, 0.9) + " days at the 90th percentile");
+
+        // Fines of the loans made during the run
+        ArrayList<Loan> loans = lib.getLoans();
+        Date last = new Date(end);
+        long late = 0, overdue = 0;
+        double assessed = 0, paid = 0, highest = 0, due = 0;
+
+        for (int i = firstLoan; i < loans.size(); i++)
+        {
+            Loan l = loans.get(i);
+
+            if (l.getReturnDate() == null)
+            {
+                double fine = l.fineOn(last);
+
+                if (fine > 0)
+                {
+                    overdue++;
+                    due += fine;
+                }
+                continue;
+            }
+
+            double fine = l.fineOn(l.getReturnDate());
+
+            if (fine > 0)
+            {
+                late++;
+                assessed += fine;
+                highest = Math.max(highest, fine);
+
+                if (l.getFineStatus())
+                    paid += fine;
+            }
+        }
+
+        System.out.println("Fines: " + late + " late returns fined Rs " + String.format("%.0f", assessed) + " ("
+                + String.format("%.0f", late == 0 ? 0.0 : assessed / late) + " on average, " + String.format("%.0f", highest)
+                + " at most), Rs " + String.format("%.0f", paid) + " paid and " + String.format("%.0f", assessed - paid)
+                + " unpaid; " + overdue + " books not returned yet owe Rs " + String.format("%.0f", due));
+    }
+
+}   // CirculationSimulation Class Closed
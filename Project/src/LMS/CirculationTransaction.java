@@ -0,0 +1,137 @@
+package LMS;
+
+import java.util.*;
+
+// Checks out, returns or renews several books of one borrower together, e.g. a pile of books brought
+// to the desk. Every book is checked first and those which can't be handled are reported with the
+// reason; the others are then all handled while holding the library's lock once, and their changes
+// are written to the database in one commit.
+public class CirculationTransaction
+{
+    public static final int CHECK_OUT = 1;
+    public static final int CHECK_IN = 2;
+    public static final int RENEW = 3;
+
+    private final Library lib;
+    private final int kind;
+    private final Borrower borrower;
+    private final Staff staff;
+
+    private final ArrayList<Integer> bookIDs = new ArrayList<>();
+    private final ArrayList<Book> done = new ArrayList<>();
+    private final ArrayList<String> failures = new ArrayList<>();     // "<book ID>: <reason>"
+
+    public CirculationTransaction(Library l, int k, Borrower bor, Staff s)     // para cons.
+    {
+        lib = l;
+        kind = k;
+        borrower = bor;
+        staff = s;
+    }
+
+    public void addBook(int bookID)
+    {
+        bookIDs.add(bookID);
+    }
+
+    // Handling the books, returning how many were handled. A fine on a returned book is recorded as
+    // paid only if finePaid is true.
+    public int run(Date today, boolean finePaid)
+    {
+        synchronized (lib)
+        {
+            ArrayList<Book> books = new ArrayList<>();
+            HashSet<Integer> seen = new HashSet<>();
+
+            for (int i = 0; i < bookIDs.size(); i++)
+            {
+                int id = bookIDs.get(i);
+
+                if (!seen.add(id))
+                {
+                    failures.add(id + ": Given more than once");
+                    continue;
+                }
+
+                Book b = lib.findBook(id);
+
+                if (b == null)
+                {
+                    failures.add(id + ": No book has this ID");
+                    continue;
+                }
+
+                String reason = check(b, today);
+
+                if (reason != null)
+                    failures.add(id + ": " + reason);
+                else
+                    books.add(b);
+            }
+
+            // Nothing can fail from here on
+            lib.beginTransaction();
+
+            try {
+                for (int i = 0; i < books.size(); i++)
+                {
+                    Book b = books.get(i);
+
+                    if (kind == CHECK_OUT)
+                        b.checkOut(borrower, staff, today);
+
+                    else if (kind == CHECK_IN)
+                        b.checkIn(borrower, borrower.getLoanOf(b), staff, today, finePaid);
+
+                    else
+                        borrower.getLoanOf(b).renew(today);
+
+                    done.add(b);
+                }
+            } catch (CirculationException e) {
+                failures.add(e.getMessage());
+            } finally {
+                lib.commitTransaction();
+            }
+
+            return done.size();
+        }
+    }
+
+    // The reason a book can't be handled, null if it can
+    private String check(Book b, Date today)
+    {
+        if (kind == CHECK_OUT)
+        {
+            b.removeExpiredHoldRequests(today);
+
+            if (b.getIssuedStatus())
+                return "The book " + b.getTitle() + " is already issued.";
+
+            List<HoldRequest> hrs = b.getHoldRequests();
+
+            if (!hrs.isEmpty() && hrs.get(0).getBorrower() != borrower)
+                return "Some other users have placed the book " + b.getTitle() + " on hold earlier.";
+
+            return null;
+        }
+
+        if (borrower.getLoanOf(b) == null)
+            return "The book " + b.getTitle() + " isn't borrowed by " + borrower.getName() + ".";
+
+        return null;
+    }
+
+    /*-----------Getter FUNCs.------------*/
+    public List<Book> getBooksDone()
+    {
+        return done;
+    }
+
+    public List<String> getFailures()
+    {
+        return failures;
+    }
+    /*------------------------------------*/
+
+}   // CirculationTransaction Class Closed
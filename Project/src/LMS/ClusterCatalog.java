@@ -0,0 +1,359 @@
+package LMS;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Uses several LMS processes, each serving a shard of the books from its own database (see
+// ShardServer), as one catalog. Books are spread over the shards by a consistent hash of their IDs:
+//
+//      search <field> <query>      asked of all shards at once, and the books found merged
+//      issue, return, renew, hold  sent to the shard owning the book
+//      add-book                    gets an ID above those of every shard, then goes to its owner
+//      staff, add-borrower         sent to every shard, which all keep the same persons
+//
+// Borrowers get the same IDs on every shard as long as they are all added through the cluster. Commands
+// are read from a file in the format of BatchRunner, and the results are written in the same way.
+//
+// Limitations: there is no coordinator across the shards. An add-borrower that fails on some shards
+// is still done on the others, and is reported as partly done with the shards it failed on, which
+// then have to be fixed by hand. Each shard knows only the loans of its own books, so the limit on
+// the books a borrower can have is enforced per shard, not for the whole cluster.
+public class ClusterCatalog
+{
+    // A connection to one shard, used by one request at a time
+    private static class Shard
+    {
+        final String address;
+        final Socket socket;
+        final BufferedReader in;
+        final Writer out;
+
+        Shard(String a) throws IOException      // para cons.
+        {
+            address = a;
+
+            int colon = a.lastIndexOf(':');
+            socket = new Socket(a.substring(0, colon), Integer.parseInt(a.substring(colon + 1)));
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        // Sending a request and reading the lines of its answer
+        synchronized ArrayList<String> call(String request) throws IOException
+        {
+            out.write(request);
+            out.write('\n');
+            out.flush();
+
+            ArrayList<String> lines = new ArrayList<>();
+            String line;
+
+            while ((line = in.readLine()) != null && !line.equals("END"))
+                lines.add(line);
+
+            if (line == null)
+                throw new IOException("Shard " + address + " closed the connection");
+
+            return lines;
+        }
+    }
+
+    private final ConsistentHashRing ring;
+    private final Shard[] shards;
+    private final ExecutorService pool;
+
+    private int succeeded;
+    private int failed;
+
+    // statistics
+    private final long[] requests;
+
+    public ClusterCatalog(List<String> addresses) throws IOException      // para cons.
+    {
+        ring = new ConsistentHashRing(addresses);
+        shards = new Shard[addresses.size()];
+        requests = new long[addresses.size()];
+
+        try {
+            for (int i = 0; i < shards.length; i++)
+                shards[i] = new Shard(addresses.get(i));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        pool = Executors.newFixedThreadPool(shards.length, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Cluster request");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public void close()
+    {
+        if (pool != null)
+            pool.shutdown();
+
+        for (int i = 0; i < shards.length; i++)
+        {
+            try {
+                if (shards[i] != null)
+                    shards[i].socket.close();
+            } catch (IOException e) {
+                // closed already
+            }
+        }
+    }
+
+    // Running the commands of a file against the cluster, writing a result line for each
+    public void run(String commandFile, String resultFile) throws IOException
+    {
+        BufferedReader in = Files.newBufferedReader(Paths.get(commandFile), StandardCharsets.UTF_8);
+        ChannelWriter out = new ChannelWriter(FileChannel.open(Paths.get(resultFile), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        StringBuilder result = new StringBuilder(128);
+
+        try {
+            String line;
+            int lineNo = 0;
+
+            while ((line = in.readLine()) != null)
+            {
+                lineNo++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                result.setLength(0);
+                result.append(lineNo).append('\t');
+
+                try {
+                    execute(line, result);
+                    succeeded++;
+                } catch (CirculationException e) {
+                    result.append("FAILED\t").append(e.getMessage()).append('\n');
+                    failed++;
+                }
+
+                out.write(result);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    public int getSucceeded()
+    {
+        return succeeded;
+    }
+
+    public int getFailed()
+    {
+        return failed;
+    }
+
+    // Carrying out one command, appending its result line(s)
+    private void execute(String line, StringBuilder result) throws IOException, CirculationException
+    {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String rest = space < 0 ? "" : line.substring(space + 1).trim();
+
+        if (command.equals("search"))
+        {
+            List<String> books = search(line);
+            result.append("OK\t").append(books.size()).append(" books\n");
+
+            for (int i = 0; i < books.size(); i++)
+                result.append('\t').append(books.get(i)).append('\n');
+        }
+        else if (command.equals("staff") || command.equals("add-borrower"))
+            result.append(agreedAnswer(everyShard(line)));      // not undone on the shards where it worked
+
+        else if (command.equals("add-book"))
+        {
+            if (rest.split("\\|", -1).length != 3)
+                throw new CirculationException("Expected 3 fields separated by '|'");
+
+            // Above the IDs of all shards, so that it is unique in the cluster
+            int id = 0;
+            List<ArrayList<String>> next = everyShard("next-book-id");
+
+            for (int i = 0; i < next.size(); i++)
+            {
+                String a = answer(next.get(i)).trim();
+
+                try {
+                    id = Math.max(id, Integer.parseInt(a));
+                } catch (NumberFormatException e) {
+                    throw new CirculationException("Invalid book ID " + a + " from " + shards[i].address);
+                }
+            }
+
+            result.append(answer(owner(id).call(line + "|" + id)));
+        }
+        else
+        {
+            String[] args = rest.split("\\s+");
+            int bookID;
+
+            try {
+                bookID = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                throw new CirculationException("Invalid number " + args[0]);
+            }
+
+            result.append(answer(owner(bookID).call(line)));
+        }
+    }
+
+    // Rows "<ID>\t<title>\t<subject>\t<author>\t<issued>" of the books found on all shards, by ID
+    public List<String> search(String request) throws IOException, CirculationException
+    {
+        List<ArrayList<String>> answers = everyShard(request);
+        ArrayList<String> books = new ArrayList<>();
+
+        for (int i = 0; i < answers.size(); i++)
+        {
+            ArrayList<String> a = answers.get(i);
+
+            if (!a.isEmpty() && a.get(0).startsWith("FAILED"))
+                throw new CirculationException(a.get(0).substring("FAILED\t".length()));
+
+            books.addAll(a);
+        }
+
+        Collections.sort(books, new Comparator<String>()
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                return Integer.compare(idOf(a), idOf(b));
+            }
+        });
+
+        return books;
+    }
+
+    private static int idOf(String row)
+    {
+        return Integer.parseInt(row.substring(0, row.indexOf('\t')));
+    }
+
+    private Shard owner(int bookID)
+    {
+        int s = ring.shardOf(bookID);
+        requests[s]++;
+        return shards[s];
+    }
+
+    // Sending a request to all shards in parallel and waiting for all the answers
+    private List<ArrayList<String>> everyShard(final String request) throws IOException
+    {
+        ArrayList<Future<ArrayList<String>>> futures = new ArrayList<>();
+
+        for (int i = 0; i < shards.length; i++)
+        {
+            final Shard s = shards[i];
+            requests[i]++;
+
+            futures.add(pool.submit(new Callable<ArrayList<String>>()
+            {
+                @Override
+                public ArrayList<String> call() throws IOException
+                {
+                    return s.call(request);
+                }
+            }));
+        }
+
+        ArrayList<ArrayList<String>> answers = new ArrayList<>();
+
+        for (int i = 0; i < futures.size(); i++)
+        {
+            try {
+                answers.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for shard " + shards[i].address);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause().getMessage());
+            }
+        }
+
+        return answers;
+    }
+
+    // The result of a command sent to one shard
+    private static String answer(List<String> lines) throws CirculationException
+    {
+        String a = lines.isEmpty() ? "FAILED\tNo answer" : lines.get(0);
+
+        if (a.startsWith("FAILED\t"))
+            throw new CirculationException(a.substring("FAILED\t".length()));
+
+        return a + "\n";
+    }
+
+    // The result of a command sent to every shard, which must have done the same. Names the shards
+    // where it failed when it worked on others.
+    private String agreedAnswer(List<ArrayList<String>> answers) throws CirculationException
+    {
+        String first = null, firstFailure = null;
+        StringBuilder failures = new StringBuilder();
+        int worked = 0;
+
+        for (int i = 0; i < answers.size(); i++)
+        {
+            String a;
+
+            try {
+                a = answer(answers.get(i));
+            } catch (CirculationException e) {
+                if (firstFailure == null)
+                    firstFailure = e.getMessage();
+
+                failures.append(failures.length() > 0 ? ", " : "").append(shards[i].address).append(": ").append(e.getMessage());
+                continue;
+            }
+
+            if (first == null)
+                first = a;
+            else if (!a.equals(first))
+                throw new CirculationException("The shards disagree: " + first.trim() + " and " + a.trim());
+
+            worked++;
+        }
+
+        if (worked == 0)
+            throw new CirculationException(firstFailure);       // nothing was done
+
+        if (failures.length() > 0)
+            throw new CirculationException("Done on " + worked + " of " + answers.size() + " shards only, failed on " + failures);
+
+        return first;
+    }
+
+    public void printStatistics()
+    {
+        System.out.println("Cluster: " + shards.length + " shards");
+
+        for (int i = 0; i < shards.length; i++)
+            System.out.println("  " + shards[i].address + ": " + requests[i] + " requests");
+    }
+
+}   // ClusterCatalog Class Closed
@@ -0,0 +1,59 @@
+package LMS;
+
+import java.util.*;
+
+// Decides which shard of a cluster owns a book. Every shard is put on a ring of hash values at many
+// points, and a book belongs to the first shard at or after the hash of its ID. Adding or removing a
+// shard only moves the books next to its points, about 1/n of them, instead of nearly all of them.
+public class ConsistentHashRing
+{
+    private static final int POINTS_PER_SHARD = 128;    // more points spread the books more evenly
+
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+    private final List<String> shards;
+
+    // Shards are named by their addresses, so the ring doesn't depend on the order they are given in
+    public ConsistentHashRing(List<String> shardNames)      // para cons.
+    {
+        shards = new ArrayList<>(shardNames);
+
+        for (int s = 0; s < shards.size(); s++)
+        {
+            for (int p = 0; p < POINTS_PER_SHARD; p++)
+                ring.put(mix((shards.get(s) + "#" + p).hashCode()), s);
+        }
+    }
+
+    // Index of the shard owning a book
+    public int shardOf(int bookID)
+    {
+        Map.Entry<Integer, Integer> e = ring.ceilingEntry(mix(bookID));
+
+        if (e == null)
+            e = ring.firstEntry();
+
+        return e.getValue();
+    }
+
+    public int size()
+    {
+        return shards.size();
+    }
+
+    public String getShard(int i)
+    {
+        return shards.get(i);
+    }
+
+    // Spreading nearby numbers (IDs are given in order) over the whole ring
+    private static int mix(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+}   // ConsistentHashRing Class Closed
@@ -0,0 +1,117 @@
+package LMS;
+
+import java.util.*;
+
+// Decides which records loaded from the database stay in memory, keeping at most a fixed number of
+// them. It is a segmented LRU: a record starts in the probation segment and moves to the protected
+// segment when it is used again, so records used once (e.g. by a large search) are evicted before
+// those used often. Records which others in memory still refer to can't be evicted, and are skipped.
+// Eviction happens between operations, so during one operation there can be more records.
+public class EntityCache
+{
+    // Removes a record from memory, returning false if it can't be evicted now
+    public interface Evictor
+    {
+        boolean evict(long key);
+    }
+
+    private final LinkedHashMap<Long, Boolean> probation = new LinkedHashMap<>();    // least recently used first
+    private final LinkedHashMap<Long, Boolean> protectedSegment = new LinkedHashMap<>();
+
+    private int capacity;
+    private int protectedCapacity;
+
+    // statistics
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long skipped;
+
+    public EntityCache(int cap)     // para cons.
+    {
+        setCapacity(cap);
+    }
+
+    public void setCapacity(int cap)
+    {
+        capacity = Math.max(1, cap);
+        protectedCapacity = capacity * 4 / 5;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public int size()
+    {
+        return probation.size() + protectedSegment.size();
+    }
+
+    // A record found in memory
+    public void hit(long key)
+    {
+        hits++;
+
+        if (probation.remove(key) != null)
+        {
+            protectedSegment.put(key, Boolean.TRUE);
+
+            // The least recently used protected records go back to probation
+            while (protectedSegment.size() > protectedCapacity)
+            {
+                Long eldest = protectedSegment.keySet().iterator().next();
+                protectedSegment.remove(eldest);
+                probation.put(eldest, Boolean.TRUE);
+            }
+        }
+        else if (protectedSegment.remove(key) != null)
+            protectedSegment.put(key, Boolean.TRUE);
+    }
+
+    // A record loaded from the database
+    public void add(long key)
+    {
+        misses++;
+        probation.put(key, Boolean.TRUE);
+    }
+
+    // A record removed from the library, not only from memory
+    public void remove(long key)
+    {
+        if (probation.remove(key) == null)
+            protectedSegment.remove(key);
+    }
+
+    // Evicting records until there are at most capacity of them, or none of them can be evicted
+    public void evict(Evictor evictor)
+    {
+        // Not looking at every record when most of them can't be evicted
+        int attempts = Math.min(size(), 2 * (size() - capacity) + 64);
+
+        while (size() > capacity && attempts-- > 0)
+        {
+            LinkedHashMap<Long, Boolean> segment = probation.isEmpty() ? protectedSegment : probation;
+            Long key = segment.keySet().iterator().next();
+            segment.remove(key);
+
+            if (evictor.evict(key))
+                evictions++;
+            else
+            {
+                skipped++;
+                probation.put(key, Boolean.TRUE);
+            }
+        }
+    }
+
+    public void printStatistics()
+    {
+        long lookups = hits + misses;
+
+        System.out.println("Record cache: " + size() + "/" + capacity + " records (" + protectedSegment.size() + " protected), "
+                + hits + " hits, " + misses + " loads (hit ratio " + String.format("%.2f", lookups > 0 ? (double) hits / lookups : 0.0)
+                + "), " + evictions + " evictions, " + skipped + " skipped as still in use");
+    }
+
+}   // EntityCache Class Closed
@@ -0,0 +1,187 @@
+package LMS;
+
+import java.util.*;
+
+// Counts how the books of a search result are spread over subjects and authors, and how many of them
+// are available, e.g. "Physics (120), Chemistry (45)". Every book ordinal is mapped to the code of
+// its subject and author beforehand, so counting only walks the ordinals of the result and never
+// looks at the Book objects.
+public class FacetEngine
+{
+    private final StringDictionary subjects = new StringDictionary(true);
+    private final StringDictionary authors = new StringDictionary(true);
+
+    private int[] subjectOf = new int[1024];        // subject code of each ordinal
+    private int[] authorOf = new int[1024];         // author code of each ordinal
+
+    /*------- Maintaining the codes ---------*/
+    public void set(Book b)
+    {
+        int o = b.getOrdinal();
+
+        if (o >= subjectOf.length)
+        {
+            int n = Math.max(o + 1, subjectOf.length * 2);
+            subjectOf = Arrays.copyOf(subjectOf, n);
+            authorOf = Arrays.copyOf(authorOf, n);
+        }
+
+        subjectOf[o] = subjects.encode(b.getSubject());
+        authorOf[o] = authors.encode(b.getAuthor());
+    }
+    /*---------------------------------------*/
+
+    // Facets of the books in result, with at most topN values for subject and for author
+    public Facets compute(BookBitmap result, AvailabilityIndex availability, int topN)
+    {
+        Facets f = new Facets();
+
+        BookBitmap available = BookBitmap.and(result, availability.available());
+
+        int[] ordinals = result.toArray();
+        int[] availableOrdinals = available.toArray();
+
+        f.total = ordinals.length;
+        f.available = availableOrdinals.length;
+        f.subjects = top(subjects, subjectOf, ordinals, availableOrdinals, topN);
+        f.authors = top(authors, authorOf, ordinals, availableOrdinals, topN);
+
+        return f;
+    }
+
+    private static ArrayList<Facet> top(StringDictionary dict, int[] codeOf, int[] ordinals, int[] availableOrdinals, int topN)
+    {
+        if (topN <= 0)
+            return new ArrayList<>();
+
+        int[] counts = new int[dict.size()];
+        int[] availableCounts = new int[dict.size()];
+
+        for (int i = 0; i < ordinals.length; i++)
+            counts[codeOf[ordinals[i]]]++;
+
+        for (int i = 0; i < availableOrdinals.length; i++)
+            availableCounts[codeOf[availableOrdinals[i]]]++;
+
+        // Keeping the topN largest counts in a min-heap of codes
+        final int[] c = counts;
+        PriorityQueue<Integer> best = new PriorityQueue<>(topN + 1, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                return Integer.compare(c[a], c[b]);
+            }
+        });
+
+        for (int code = 0; code < counts.length; code++)
+        {
+            if (counts[code] == 0)
+                continue;
+
+            if (best.size() < topN)
+                best.add(code);
+
+            else if (counts[best.peek()] < counts[code])
+            {
+                best.poll();
+                best.add(code);
+            }
+        }
+
+        ArrayList<Facet> facets = new ArrayList<>();
+
+        while (!best.isEmpty())
+        {
+            int code = best.poll();
+            facets.add(new Facet(dict.decode(code), counts[code], availableCounts[code]));
+        }
+
+        Collections.reverse(facets);
+        return facets;
+    }
+
+    // One value of a facet with the number of books having it
+    public static class Facet
+    {
+        private final String value;
+        private final int count;
+        private final int available;
+
+        Facet(String v, int c, int a)
+        {
+            value = v;
+            count = c;
+            available = a;
+        }
+
+        public String getValue()
+        {
+            return value;
+        }
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        public int getAvailable()
+        {
+            return available;
+        }
+    }
+
+    // Facets of one result
+    public static class Facets
+    {
+        private int total;
+        private int available;
+        private ArrayList<Facet> subjects;
+        private ArrayList<Facet> authors;
+
+        public int getTotal()
+        {
+            return total;
+        }
+
+        public int getAvailable()
+        {
+            return available;
+        }
+
+        public ArrayList<Facet> getSubjects()
+        {
+            return subjects;
+        }
+
+        public ArrayList<Facet> getAuthors()
+        {
+            return authors;
+        }
+
+        public void print()
+        {
+            System.out.println("\nAvailable now: " + available + " of " + total);
+            print("Subjects", subjects);
+            print("Authors", authors);
+        }
+
+        private static void print(String name, ArrayList<Facet> facets)
+        {
+            StringBuilder sb = new StringBuilder(name).append(": ");
+
+            for (int i = 0; i < facets.size(); i++)
+            {
+                Facet f = facets.get(i);
+
+                if (i > 0)
+                    sb.append(", ");
+
+                sb.append(f.value).append(" (").append(f.count).append(", ").append(f.available).append(" available)");
+            }
+
+            System.out.println(sb);
+        }
+    }
+
+}   // FacetEngine Class Closed
@@ -0,0 +1,247 @@
+package LMS;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Gives a returned book to the next borrower in its hold request queue, in the background so that the
+// return itself doesn't wait. A return only puts the book's ID in a queue. The worker thread then
+// reserves the book for the borrower at the head of the queue, writes a notification to the outbox
+// file, and gives the borrower some days to pick the book up. If the book isn't picked up in time the
+// hold request is cancelled and the book is reserved for the next borrower. Reservations are kept in
+// memory only, so once the hold requests are loaded at start every book on the shelf with hold requests
+// is reserved again, and the borrower at the head of its queue notified again.
+//
+// Outbox lines: <time>\tREADY\t<borrower ID>\t<borrower name>\t<book ID>\t<title>\t<pick up by>
+//               <time>\tEXPIRED\t<borrower ID>\t<borrower name>\t<book ID>\t<title>
+public class HoldFulfilment
+{
+    private static final int MAX_BATCH = 1000;      // returns handled at once, holding the library's lock once
+
+    // A book reserved for the borrower of a hold request until a deadline
+    private static class Reservation implements Comparable<Reservation>
+    {
+        final int bookID;
+        final int requestID;
+        final long deadline;
+
+        Reservation(int b, int r, long d)
+        {
+            bookID = b;
+            requestID = r;
+            deadline = d;
+        }
+
+        @Override
+        public int compareTo(Reservation o)
+        {
+            return Long.compare(deadline, o.deadline);
+        }
+    }
+
+    private final Library lib;
+    private final LinkedBlockingQueue<Integer> returns = new LinkedBlockingQueue<>();
+    private final PriorityQueue<Reservation> reservations = new PriorityQueue<>();    // used by the worker only
+    private final HashMap<Integer, Integer> reservedFor = new HashMap<>();              // book ID -> hold request ID
+    private boolean restored;           // whether the books with hold requests have been queued at start
+    private final ChannelWriter outbox;
+    private final StringBuilder line = new StringBuilder(256);
+    private final Thread worker;
+    private volatile boolean stopping;
+
+    // statistics
+    private volatile long returnsHandled;
+    private volatile long reserved;
+    private volatile long expired;
+
+    public HoldFulfilment(Library l, String outboxFile) throws IOException      // para cons.
+    {
+        lib = l;
+        outbox = new ChannelWriter(FileChannel.open(Paths.get(outboxFile), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+
+        worker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                work();
+            }
+        }, "Hold fulfilment");
+
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Called when a book is returned
+    public void bookReturned(Book b)
+    {
+        returns.offer(b.getID());
+    }
+
+    // Handling the returns still queued and stopping the worker. Reservations which haven't expired
+    // yet are left as they are.
+    public void close()
+    {
+        stopping = true;
+
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            outbox.close();
+        } catch (IOException e) {
+            System.out.println("\n" + e.getMessage());
+        }
+    }
+
+    /*------- The worker thread ---------*/
+
+    private void work()
+    {
+        ArrayList<Integer> batch = new ArrayList<>(MAX_BATCH);
+
+        while (true)
+        {
+            // Reserving the books which were returned before the start, once it is known which have hold requests
+            if (!restored && lib.isHoldLoadingDone())
+            {
+                returns.addAll(lib.heldBooksOnShelf());
+                restored = true;
+            }
+
+            long wait = 1000;
+
+            if (!reservations.isEmpty())
+                wait = Math.max(0, Math.min(wait, reservations.peek().deadline - lib.getClock().millis()));
+
+            try {
+                Integer first = returns.poll(wait, TimeUnit.MILLISECONDS);
+
+                if (first != null)
+                {
+                    batch.add(first);
+                    returns.drainTo(batch, MAX_BATCH - 1);
+                }
+            } catch (InterruptedException e) {
+                // checking whether to stop
+            }
+
+            if (batch.isEmpty() && stopping && returns.isEmpty())
+                return;
+
+            synchronized (lib)
+            {
+                for (int i = 0; i < batch.size(); i++)
+                    reserveNext(batch.get(i));
+
+                long now = lib.getClock().millis();
+
+                while (!reservations.isEmpty() && reservations.peek().deadline <= now)
+                    expire(reservations.poll());
+            }
+
+            returnsHandled += batch.size();
+            batch.clear();
+
+            try {
+                outbox.flush();
+            } catch (IOException e) {
+                System.out.println("\nCould not write the hold notifications: " + e.getMessage());
+            }
+        }
+    }
+
+    // Reserving an available book for the first borrower in its queue, if there is one
+    private void reserveNext(int bookID)
+    {
+        Book b = lib.findBook(bookID);
+
+        if (b == null || b.getIssuedStatus())
+            return;
+
+        Date today = lib.today();
+        b.removeExpiredHoldRequests(today);
+
+        List<HoldRequest> hrs = b.getHoldRequests();
+
+        if (hrs.isEmpty())
+            return;
+
+        HoldRequest hr = hrs.get(0);
+
+        Integer before = reservedFor.put(bookID, hr.getID());
+
+        if (before != null && before == hr.getID())
+            return;         // reserved for this borrower already
+
+        long deadline = today.getTime() + TimeUnit.DAYS.toMillis(lib.getPickupExpiry());
+
+        reservations.add(new Reservation(bookID, hr.getID(), deadline));
+        reserved++;
+
+        notice("READY", hr).append('\t').append(new Date(deadline)).append('\n');
+        write();
+    }
+
+    // Cancelling a reservation which wasn't picked up, and reserving the book for the next borrower
+    private void expire(Reservation r)
+    {
+        Integer current = reservedFor.get(r.bookID);
+
+        if (current != null && current == r.requestID)
+            reservedFor.remove(r.bookID);
+
+        Book b = lib.findBook(r.bookID);
+
+        if (b == null || b.getIssuedStatus())
+            return;         // picked up in time
+
+        List<HoldRequest> hrs = b.getHoldRequests();
+
+        if (hrs.isEmpty() || hrs.get(0).getID() != r.requestID)
+            return;         // cancelled or picked up already
+
+        HoldRequest hr = hrs.get(0);
+        b.serviceHoldRequest(hr);
+        expired++;
+
+        notice("EXPIRED", hr).append('\n');
+        write();
+
+        reserveNext(r.bookID);
+    }
+
+    private StringBuilder notice(String what, HoldRequest hr)
+    {
+        line.setLength(0);
+
+        return line.append(lib.today()).append('\t').append(what).append('\t')
+                .append(hr.getBorrower().getID()).append('\t').append(hr.getBorrower().getName()).append('\t')
+                .append(hr.getBook().getID()).append('\t').append(hr.getBook().getTitle());
+    }
+
+    private void write()
+    {
+        try {
+            outbox.write(line);
+        } catch (IOException e) {
+            System.out.println("\nCould not write the hold notifications: " + e.getMessage());
+        }
+    }
+    /*-----------------------------------*/
+
+    public void printStatistics()
+    {
+        System.out.println("Hold fulfilment: " + returnsHandled + " returns handled, " + returns.size() + " waiting, "
+                + reserved + " books reserved, " + expired + " reservations expired");
+    }
+
+}   // HoldFulfilment Class Closed
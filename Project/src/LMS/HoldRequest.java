@@ -4,18 +4,29 @@ import java.util.Date;
 
 public class HoldRequest {
     
+    int reqID;
     Borrower borrower;
     Book book;
     Date requestDate;
     
-    public HoldRequest(Borrower bor, Book b, Date reqDate)  // para cons.
+    public HoldRequest(int id, Borrower bor, Book b, Date reqDate)  // para cons.
     {
+        if(id==-1)
+            reqID = Library.getInstance().nextID(IdAllocator.HOLD_REQUEST);
+        else
+            reqID = id;
+        
         borrower = bor;
         book = b;
         requestDate = reqDate;
     }
     
     /*----- Getter FUNCs.--------*/
+    public int getID()
+    {
+        return reqID;
+    }
+    
     public Borrower getBorrower()
     {
         return borrower;
@@ -0,0 +1,232 @@
+package LMS;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Gives out the IDs of new books, persons, loans and hold requests. Each kind of record has a row in
+// LIBRARY.ID_SEQUENCE holding the first ID not leased yet. Blocks of IDs are leased by advancing it in
+// a transaction of their own, and the IDs of a block are handed out by atomic increments, so making a
+// record waits for nothing but a new lease every BLOCK_SIZE records. An ID once leased is never given
+// again, even if the process stops before using it, so the sequences are never rebuilt from the tables
+// (only once, when Library.migrateSchema creates them).
+//
+// Without a database the blocks are leased from counters in memory.
+public class IdAllocator
+{
+    public static final int BOOK = 0;
+    public static final int PERSON = 1;
+    public static final int LOAN = 2;
+    public static final int HOLD_REQUEST = 3;
+
+    static final String[] NAMES = { "BOOK", "PERSON", "LOAN", "HOLD_REQUEST" };
+
+    private static final int BLOCK_SIZE = 1000;
+
+    // IDs leased and not given yet: next <= ID < end
+    private static class Block
+    {
+        final AtomicInteger next;
+        final int end;
+
+        Block(int start, int e)      // para cons.
+        {
+            next = new AtomicInteger(start);
+            end = e;
+        }
+    }
+
+    private final AtomicReferenceArray<Block> blocks = new AtomicReferenceArray<>(NAMES.length);
+
+    private final Connection con;                   // null if leasing from memory
+    private PreparedStatement advance;
+    private PreparedStatement raise;
+    private PreparedStatement read;
+    private final int[] memoryNext = new int[NAMES.length];
+
+    // statistics
+    private final long[] leases = new long[NAMES.length];
+
+    // Leasing from counters in memory, starting at 1
+    public IdAllocator()
+    {
+        con = null;
+
+        for (int i = 0; i < NAMES.length; i++)
+        {
+            blocks.set(i, new Block(0, 0));
+            memoryNext[i] = 1;
+        }
+    }
+
+    // Leasing from LIBRARY.ID_SEQUENCE, in transactions on a connection of its own
+    public IdAllocator(Connection c) throws SQLException      // para cons.
+    {
+        con = c;
+
+        for (int i = 0; i < NAMES.length; i++)
+            blocks.set(i, new Block(0, 0));
+
+        con.setAutoCommit(false);
+
+        advance = con.prepareStatement("UPDATE LIBRARY.ID_SEQUENCE SET NEXT_ID = NEXT_ID + ? WHERE NAME = ?");
+        raise = con.prepareStatement("UPDATE LIBRARY.ID_SEQUENCE SET NEXT_ID = ? WHERE NAME = ? AND NEXT_ID < ?");
+        read = con.prepareStatement("SELECT NEXT_ID FROM LIBRARY.ID_SEQUENCE WHERE NAME = ?");
+    }
+
+    // A new ID for a record of a kind
+    public int next(int kind)
+    {
+        while (true)
+        {
+            Block b = blocks.get(kind);
+            int id = b.next.getAndIncrement();
+
+            if (id < b.end)
+                return id;
+
+            renew(kind, b);
+        }
+    }
+
+    // The ID the next record of a kind would get
+    public synchronized int peek(int kind)
+    {
+        Block b = blocks.get(kind);
+        int id = b.next.get();
+
+        return id < b.end ? id : sequence(kind);
+    }
+
+    // Making sure an ID given from elsewhere (e.g. by a cluster) is never given here
+    public synchronized void reserve(int kind, int id)
+    {
+        Block b = blocks.get(kind);
+
+        if (id >= b.end)
+        {
+            raise(kind, id + 1);
+            return;
+        }
+
+        int next;
+
+        while ((next = b.next.get()) <= id && !b.next.compareAndSet(next, id + 1));
+    }
+
+    public synchronized void close()
+    {
+        if (con == null)
+            return;
+
+        try {
+            con.close();
+        } catch (SQLException e) {
+            // closed already
+        }
+    }
+
+    /*------- Leasing blocks ---------*/
+
+    // Leasing a new block, unless another thread has done it meanwhile
+    private synchronized void renew(int kind, Block used)
+    {
+        if (blocks.get(kind) != used)
+            return;
+
+        int end;
+
+        if (con == null)
+            end = memoryNext[kind] += BLOCK_SIZE;
+        else
+        {
+            try {
+                advance.setInt(1, BLOCK_SIZE);
+                advance.setString(2, NAMES[kind]);
+
+                if (advance.executeUpdate() != 1)
+                    throw new SQLException("LIBRARY.ID_SEQUENCE has no row " + NAMES[kind]);
+
+                end = sequence(kind);
+                con.commit();
+            } catch (SQLException e) {
+                rollback();
+                throw new IllegalStateException("Could not lease IDs for " + NAMES[kind] + ": " + e.getMessage());
+            }
+        }
+
+        blocks.set(kind, new Block(end - BLOCK_SIZE, end));
+        leases[kind]++;
+    }
+
+    // The first ID not leased yet
+    private int sequence(int kind)
+    {
+        if (con == null)
+            return memoryNext[kind];
+
+        try {
+            read.setString(1, NAMES[kind]);
+            ResultSet rs = read.executeQuery();
+
+            try {
+                if (!rs.next())
+                    throw new SQLException("LIBRARY.ID_SEQUENCE has no row " + NAMES[kind]);
+
+                return rs.getInt(1);
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the IDs of " + NAMES[kind] + ": " + e.getMessage());
+        }
+    }
+
+    private void raise(int kind, int next)
+    {
+        if (con == null)
+        {
+            memoryNext[kind] = Math.max(memoryNext[kind], next);
+            return;
+        }
+
+        try {
+            raise.setInt(1, next);
+            raise.setString(2, NAMES[kind]);
+            raise.setInt(3, next);
+            raise.executeUpdate();
+            con.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IllegalStateException("Could not reserve ID " + (next - 1) + " of " + NAMES[kind] + ": " + e.getMessage());
+        }
+    }
+
+    private void rollback()
+    {
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            // the connection is gone
+        }
+    }
+    /*--------------------------------*/
+
+    public synchronized void printStatistics()
+    {
+        StringBuilder sb = new StringBuilder("IDs: blocks of " + BLOCK_SIZE + (con == null ? " from memory" : " leased from the database"));
+
+        for (int i = 0; i < NAMES.length; i++)
+        {
+            Block b = blocks.get(i);
+            sb.append(", ").append(NAMES[i]).append(' ').append(leases[i]).append(" leases (")
+              .append(Math.max(0, b.end - b.next.get())).append(" left)");
+        }
+
+        System.out.println(sb);
+    }
+
+}   // IdAllocator Class Closed
@@ -0,0 +1,612 @@
+package LMS;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+// Loads books and borrowers from the database when they are first needed, instead of loading every
+// record at start. Only the staff is loaded at start, so starting takes the same time whatever the
+// size of the catalog. Searches and lookups are done by the database with indexed queries, and what
+// they find is added to the library, which then holds the records in use. Changes are written back
+// by the persistence queue.
+//
+// A borrower is loaded without its loans and hold requests; those are loaded when first used. A book
+// is loaded with its hold requests, whose borrowers are loaded the same way. The entity cache limits
+// how many books and borrowers stay in memory; a book or borrower is evicted only when nothing else
+// in memory refers to it, so that it is never in memory twice, and once its changes are in the database.
+// A query about a book or borrower waits only for the changes queued for that one to be written, and a
+// search takes the books changed since their rows were written as they are in memory.
+public class LazyCatalog
+{
+    private static final String BOOK_COLUMNS = "ID,TITLE,AUTHOR,SUBJECT,IS_ISSUED";
+
+    private final Library lib;
+    private final Connection con;
+
+    private final PreparedStatement bookById;
+    private final PreparedStatement booksByTitle;
+    private final PreparedStatement booksBySubject;
+    private final PreparedStatement booksByAuthor;
+    private final PreparedStatement holdsOfBook;
+    private final PreparedStatement borrowerById;
+    private final PreparedStatement loansOfBorrower;
+    private final PreparedStatement holdsOfBorrower;
+    private final PreparedStatement borrowerOfBook;
+
+    private final HashMap<Integer, Loan> loans = new HashMap<>();             // loans in memory
+    private final HashMap<Integer, HoldRequest> holds = new HashMap<>();      // hold requests of the books in memory
+    private final HashMap<Integer, ArrayList<Loan>> loansOfBorrowers = new HashMap<>();
+
+    // How many loans in memory refer to each book, and hold requests to each borrower
+    private final HashMap<Integer, Integer> loansOfBook = new HashMap<>();
+    private final HashMap<Integer, Integer> holdsOfBorrowerCount = new HashMap<>();
+    private final HashSet<Integer> pinned = new HashSet<>();                  // persons logged in
+
+    private static final long BORROWER_KEY = 1L << 32;
+    private final EntityCache cache;
+    private final EntityCache.Evictor evictor = new EntityCache.Evictor()
+    {
+        @Override
+        public boolean evict(long key)
+        {
+            if (unwritten.containsKey(key))
+                return false;
+
+            return key >= BORROWER_KEY ? evictBorrower((int) (key - BORROWER_KEY)) : evictBook((int) key);
+        }
+    };
+
+    // Books and borrowers whose changes may not be in the database yet, with the sequence of the last
+    // change queued for them (see PersistenceQueue)
+    private final HashMap<Long, Long> unwritten = new HashMap<>();
+    private boolean evictionStopped;
+
+    // statistics
+    private long queries;
+    private long booksLoaded;
+    private long borrowersLoaded;
+    private long recordsLoaded;
+
+    public LazyCatalog(Library l, Connection c, int capacity) throws SQLException      // para cons.
+    {
+        lib = l;
+        con = c;
+        cache = new EntityCache(capacity);
+
+        bookById = con.prepareStatement("SELECT " + BOOK_COLUMNS + " FROM LIBRARY.BOOK WHERE ID = ?");
+        booksByTitle = con.prepareStatement("SELECT " + BOOK_COLUMNS + " FROM LIBRARY.BOOK WHERE TITLE_KEY = ?");
+        booksBySubject = con.prepareStatement("SELECT " + BOOK_COLUMNS + " FROM LIBRARY.BOOK WHERE SUBJECT_KEY = ?");
+        booksByAuthor = con.prepareStatement("SELECT " + BOOK_COLUMNS + " FROM LIBRARY.BOOK WHERE AUTHOR_KEY = ?");
+        holdsOfBook = con.prepareStatement("SELECT REQ_ID,BORROWER,REQ_DATE FROM LIBRARY.ON_HOLD_BOOK WHERE BOOK = ? ORDER BY REQ_ID");
+        borrowerById = con.prepareStatement("SELECT ID,PNAME,ADDRESS,PHONE_NO FROM LIBRARY.PERSON INNER JOIN LIBRARY.BORROWER ON ID=B_ID WHERE ID = ?");
+        loansOfBorrower = con.prepareStatement("SELECT L_ID,BOOK,ISSUER,ISS_DATE,RECEIVER,RET_DATE,FINE_PAID FROM LIBRARY.LOAN WHERE BORROWER = ? ORDER BY L_ID");
+        holdsOfBorrower = con.prepareStatement("SELECT REQ_ID,BOOK FROM LIBRARY.ON_HOLD_BOOK WHERE BORROWER = ? ORDER BY REQ_ID");
+        borrowerOfBook = con.prepareStatement("SELECT BORROWER FROM LIBRARY.BORROWED_BOOK WHERE BOOK = ?");
+    }
+
+    // Loading the clerks and the librarian
+    public void start() throws SQLException
+    {
+        Statement stmt = con.createStatement();
+
+        ResultSet rs = stmt.executeQuery("SELECT ID,PNAME,ADDRESS,PHONE_NO,SALARY,DESK_NO FROM LIBRARY.PERSON INNER JOIN LIBRARY.CLERK ON ID=C_ID INNER JOIN LIBRARY.STAFF ON S_ID=C_ID");
+
+        while (rs.next())
+            lib.addClerk(new Clerk(rs.getInt("ID"), rs.getString("PNAME"), rs.getString("ADDRESS"), rs.getInt("PHONE_NO"), rs.getDouble("SALARY"), rs.getInt("DESK_NO")));
+
+        rs = stmt.executeQuery("SELECT ID,PNAME,ADDRESS,PHONE_NO,SALARY,OFFICE_NO FROM LIBRARY.PERSON INNER JOIN LIBRARY.LIBRARIAN ON ID=L_ID INNER JOIN LIBRARY.STAFF ON S_ID=L_ID");
+
+        while (rs.next())
+            lib.addLibrarian(new Librarian(rs.getInt("ID"), rs.getString("PNAME"), rs.getString("ADDRESS"), rs.getInt("PHONE_NO"), rs.getDouble("SALARY"), rs.getInt("OFFICE_NO")));
+
+        stmt.close();
+    }
+
+    // Running a query about the book or borrower of this key, once the changes queued for it are in
+    // the database
+    private ResultSet query(PreparedStatement stmt, long key) throws SQLException
+    {
+        Long sequence = unwritten.get(key);
+
+        if (sequence != null && sequence > lib.changesPersisted())
+            lib.awaitPersisted(sequence);
+
+        queries++;
+
+        return stmt.executeQuery();
+    }
+
+    // Whether changes after the one of the sequence written have been queued for this key
+    private boolean changedSince(long key, long written)
+    {
+        Long sequence = unwritten.get(key);
+        return sequence != null && sequence > written;
+    }
+
+    /*------- Books ---------*/
+
+    // The book with this ID, null if there is none
+    public Book book(int id) throws SQLException
+    {
+        Book b = lib.loadedBook(id);
+
+        if (b != null)
+        {
+            cache.hit(id);
+            return b;
+        }
+
+        bookById.setInt(1, id);
+
+        ArrayList<Book> found = readBooks(query(bookById, id), Long.MAX_VALUE);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // The books whose title, subject or author matches the query, ignoring letter case and extra spaces
+    // as the search of the books in memory does
+    public ArrayList<Book> search(int field, String query) throws SQLException
+    {
+        PreparedStatement stmt = field == Library.BY_TITLE ? booksByTitle : field == Library.BY_SUBJECT ? booksBySubject : booksByAuthor;
+        String q = Library.normalize(query);
+        stmt.setString(1, q);
+
+        queries++;
+
+        long written = lib.changesPersisted();      // the rows read have at least these changes
+        ArrayList<Book> found = readBooks(stmt.executeQuery(), written);
+        ArrayList<Book> books = new ArrayList<>();
+        HashSet<Book> seen = new HashSet<>();
+
+        // A book in memory may have changed since its row was written
+        for (int i = 0; i < found.size(); i++)
+        {
+            Book b = found.get(i);
+
+            if (q.equals(Library.normalize(Library.fieldOf(b, field))) && seen.add(b))
+                books.add(b);
+        }
+
+        // and a book added or changed since may match now
+        for (Map.Entry<Long, Long> e : unwritten.entrySet())
+        {
+            if (e.getKey() >= BORROWER_KEY || e.getValue() <= written)
+                continue;
+
+            Book b = lib.loadedBook((int) (long) e.getKey());
+
+            if (b != null && q.equals(Library.normalize(Library.fieldOf(b, field))) && seen.add(b))
+                books.add(b);
+        }
+
+        return books;
+    }
+
+    // Books of a result, using those already loaded, then loading the hold requests of the new ones.
+    // The rows have the changes up to the sequence written; a book which isn't in memory and has
+    // later ones, such as a deleted one, is read again once they are written.
+    private ArrayList<Book> readBooks(ResultSet rs, long written) throws SQLException
+    {
+        ArrayList<Book> books = new ArrayList<>();
+        ArrayList<Book> loaded = new ArrayList<>();
+        ArrayList<Integer> stale = new ArrayList<>();
+
+        lib.beginLoading();
+
+        try {
+            while (rs.next())
+            {
+                int id = rs.getInt("ID");
+                Book b = lib.loadedBook(id);
+
+                if (b == null && changedSince(id, written))
+                {
+                    stale.add(id);
+                    continue;
+                }
+
+                if (b == null)
+                {
+                    b = new Book(id, rs.getString("TITLE"), rs.getString("SUBJECT"), rs.getString("AUTHOR"), rs.getBoolean("IS_ISSUED"));
+                    lib.addBookinLibrary(b);
+                    loaded.add(b);
+                    cache.add(id);
+                    booksLoaded++;
+                }
+                else
+                    cache.hit(id);
+
+                books.add(b);
+            }
+
+            rs.close();
+
+            for (int i = 0; i < loaded.size(); i++)
+                loadHolds(loaded.get(i));
+        } finally {
+            lib.endLoading();
+        }
+
+        for (int i = 0; i < stale.size(); i++)
+        {
+            Book b = book(stale.get(i));
+
+            if (b != null)
+                books.add(b);
+        }
+
+        return books;
+    }
+
+    private void loadHolds(Book b) throws SQLException
+    {
+        holdsOfBook.setInt(1, b.getID());
+
+        ResultSet rs = query(holdsOfBook, b.getID());
+        ArrayList<int[]> rows = new ArrayList<>();
+        ArrayList<Date> dates = new ArrayList<>();
+
+        while (rs.next())
+        {
+            rows.add(new int[] { rs.getInt("REQ_ID"), rs.getInt("BORROWER") });
+            dates.add(new Date(rs.getDate("REQ_DATE").getTime()));
+        }
+
+        rs.close();
+
+        for (int i = 0; i < rows.size(); i++)
+        {
+            Borrower bor = borrower(rows.get(i)[1]);
+
+            if (bor != null)
+            {
+                b.addHoldRequest(new HoldRequest(rows.get(i)[0], bor, b, dates.get(i)));     // kept by holdAdded
+            }
+        }
+    }
+    /*-----------------------*/
+
+    /*------- Borrowers ---------*/
+
+    // The borrower with this ID, null if there is none. Its loans and hold requests are loaded later.
+    public Borrower borrower(int id) throws SQLException
+    {
+        Person p = lib.loadedPerson(id);
+
+        if (p != null)
+        {
+            if (!(p instanceof Borrower))
+                return null;
+
+            cache.hit(BORROWER_KEY + id);
+            return (Borrower) p;
+        }
+
+        borrowerById.setInt(1, id);
+
+        ResultSet rs = query(borrowerById, BORROWER_KEY + id);
+        Borrower b = null;
+
+        if (rs.next())
+        {
+            b = new Borrower(id, rs.getString("PNAME"), rs.getString("ADDRESS"), rs.getInt("PHONE_NO"));
+            b.setRecordsPending(true);
+
+            lib.beginLoading();
+            lib.addBorrower(b);
+            lib.endLoading();
+
+            cache.add(BORROWER_KEY + id);
+            borrowersLoaded++;
+        }
+
+        rs.close();
+        return b;
+    }
+
+    // Loading the loans (returned ones too, for the fine) and hold requests of a borrower
+    public void loadRecords(Borrower b) throws SQLException
+    {
+        lib.beginLoading();
+
+        try {
+            loansOfBorrower.setInt(1, b.getID());
+
+            ResultSet rs = query(loansOfBorrower, BORROWER_KEY + b.getID());
+            ArrayList<Object[]> rows = new ArrayList<>();
+
+            while (rs.next())
+            {
+                if (loans.containsKey(rs.getInt("L_ID")))
+                    continue;       // made while running, it is being given to the borrower
+
+                rows.add(new Object[] { rs.getInt("L_ID"), rs.getInt("BOOK"), rs.getInt("ISSUER"), rs.getTimestamp("ISS_DATE"),
+                    rs.getObject("RECEIVER"), rs.getTimestamp("RET_DATE"), rs.getBoolean("FINE_PAID") });
+            }
+
+            rs.close();
+
+            for (int i = 0; i < rows.size(); i++)
+            {
+                Object[] r = rows.get(i);
+                Book book = book((Integer) r[1]);
+
+                if (book == null)
+                    continue;       // the book has been removed from the library
+
+                Staff receiver = r[4] != null ? lib.findStaff(((Number) r[4]).intValue()) : null;
+                Date returned = receiver != null ? new Date(((java.sql.Timestamp) r[5]).getTime()) : null;
+
+                Loan l = new Loan((Integer) r[0], b, book, lib.findStaff((Integer) r[2]), receiver,
+                        new Date(((java.sql.Timestamp) r[3]).getTime()), returned, (Boolean) r[6]);
+
+                lib.addLoan(l);     // kept by loanAdded
+
+                if (receiver == null)
+                    b.addBorrowedBook(l);
+            }
+
+            holdsOfBorrower.setInt(1, b.getID());
+
+            rs = query(holdsOfBorrower, BORROWER_KEY + b.getID());
+            ArrayList<int[]> holdRows = new ArrayList<>();
+
+            while (rs.next())
+            {
+                holdRows.add(new int[] { rs.getInt("REQ_ID"), rs.getInt("BOOK") });
+            }
+
+            rs.close();
+
+            // Loading the book loads its hold requests, this borrower's among them
+            for (int i = 0; i < holdRows.size(); i++)
+            {
+                book(holdRows.get(i)[1]);
+
+                HoldRequest hr = holds.get(holdRows.get(i)[0]);
+
+                if (hr != null && hr.getBorrower() == b)
+                    b.addHoldRequest(hr);
+            }
+
+            recordsLoaded++;
+        } finally {
+            lib.endLoading();
+        }
+    }
+
+    // IDs of the books on the shelf which have hold requests
+    public ArrayList<Integer> heldBooksOnShelf() throws SQLException
+    {
+        Statement stmt = con.createStatement();
+        ArrayList<Integer> ids = new ArrayList<>();
+
+        queries++;
+
+        ResultSet rs = stmt.executeQuery("SELECT DISTINCT BOOK FROM LIBRARY.ON_HOLD_BOOK INNER JOIN LIBRARY.BOOK ON ID=BOOK WHERE IS_ISSUED = FALSE");
+
+        while (rs.next())
+            ids.add(rs.getInt("BOOK"));
+
+        stmt.close();
+        return ids;
+    }
+
+    // The ID of the borrower who has a book, -1 if nobody
+    public int borrowerOf(Book b) throws SQLException
+    {
+        borrowerOfBook.setInt(1, b.getID());
+
+        ResultSet rs = query(borrowerOfBook, b.getID());
+        int id = rs.next() ? rs.getInt("BORROWER") : -1;
+        rs.close();
+
+        return id;
+    }
+    /*---------------------------*/
+
+    /*------- Keeping track of what refers to what ---------*/
+
+    // Called for every loan added to the library, loaded or made while running
+    public void loanAdded(Loan l)
+    {
+        loans.put(l.getID(), l);
+        count(loansOfBook, l.getBook().getID(), 1);
+
+        ArrayList<Loan> list = loansOfBorrowers.get(l.getBorrower().getID());
+
+        if (list == null)
+        {
+            list = new ArrayList<>();
+            loansOfBorrowers.put(l.getBorrower().getID(), list);
+        }
+
+        list.add(l);
+    }
+
+    // Called for every hold request added to a book in memory
+    public void holdAdded(HoldRequest hr)
+    {
+        holds.put(hr.getID(), hr);
+        count(holdsOfBorrowerCount, hr.getBorrower().getID(), 1);
+    }
+
+    public void holdRemoved(HoldRequest hr)
+    {
+        if (holds.remove(hr.getID()) != null)
+            count(holdsOfBorrowerCount, hr.getBorrower().getID(), -1);
+    }
+
+    // Called for every change queued for the database, noting the books and borrowers it belongs to
+    public void changed(RowChange change)
+    {
+        int key = change.getKey();
+        long sequence = change.getSequence();
+
+        switch (change.getTable())
+        {
+            case RowChange.BOOK:
+            case RowChange.BORROWED_BOOK:
+                unwritten.put((long) key, sequence);
+                break;
+
+            case RowChange.PERSON:
+            case RowChange.BORROWER:
+                unwritten.put(BORROWER_KEY + key, sequence);
+                break;
+
+            case RowChange.LOAN:
+                Loan l = loans.get(key);
+
+                if (l != null)
+                {
+                    unwritten.put((long) l.getBook().getID(), sequence);
+                    unwritten.put(BORROWER_KEY + l.getBorrower().getID(), sequence);
+                }
+                break;
+
+            case RowChange.ON_HOLD_BOOK:
+                HoldRequest hr = holds.get(key);
+
+                if (hr != null)
+                {
+                    unwritten.put((long) hr.getBook().getID(), sequence);
+                    unwritten.put(BORROWER_KEY + hr.getBorrower().getID(), sequence);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    // Called when a book is deleted from the library
+    public void bookRemoved(Book b)
+    {
+        cache.remove(b.getID());
+    }
+
+    // A person who is logged in stays in memory until logging out
+    public void pin(Person p)
+    {
+        pinned.add(p.getID());
+    }
+
+    public void unpin(Person p)
+    {
+        pinned.remove(p.getID());
+    }
+
+    private static void count(HashMap<Integer, Integer> counts, int id, int d)
+    {
+        Integer c = counts.get(id);
+        int n = (c == null ? 0 : c) + d;
+
+        if (n > 0)
+            counts.put(id, n);
+        else
+            counts.remove(id);
+    }
+    /*------------------------------------------------------*/
+
+    /*------- Evicting books and borrowers ---------*/
+
+    // Called between operations. Only records whose changes are in the database are evicted, without
+    // waiting for the others to be written; they are evicted by a later call.
+    public void evict()
+    {
+        if (cache.size() <= cache.getCapacity())
+            return;
+
+        long written = lib.changesPersisted();
+
+        if (written < 0)
+        {
+            // An evicted record would be loaded again without the changes that were lost
+            if (!evictionStopped)
+                System.out.println("\nSome changes could not be saved to the database, records are no longer evicted from memory.");
+
+            evictionStopped = true;
+            return;
+        }
+
+        Iterator<Map.Entry<Long, Long>> it = unwritten.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            if (it.next().getValue() <= written)
+                it.remove();
+        }
+
+        cache.evict(evictor);
+    }
+
+    public void setCapacity(int capacity)
+    {
+        cache.setCapacity(capacity);
+    }
+
+    // A book can be evicted when no loan in memory refers to it, and the borrowers of its hold
+    // requests don't have them in their lists
+    private boolean evictBook(int id)
+    {
+        Book b = lib.loadedBook(id);
+
+        if (b == null)
+            return true;
+
+        if (loansOfBook.containsKey(id))
+            return false;
+
+        List<HoldRequest> hrs = b.getHoldRequests();
+
+        for (int i = 0; i < hrs.size(); i++)
+        {
+            if (!hrs.get(i).getBorrower().isRecordsPending())
+                return false;
+        }
+
+        for (int i = 0; i < hrs.size(); i++)
+            holdRemoved(hrs.get(i));
+
+        lib.evictBook(b);
+        return true;
+    }
+
+    // A borrower can be evicted when no hold request in memory refers to it, and it isn't logged in
+    private boolean evictBorrower(int id)
+    {
+        Person p = lib.loadedPerson(id);
+
+        if (!(p instanceof Borrower))
+            return true;
+
+        if (holdsOfBorrowerCount.containsKey(id) || pinned.contains(id))
+            return false;
+
+        ArrayList<Loan> list = loansOfBorrowers.remove(id);
+
+        if (list == null)
+            list = new ArrayList<>();
+
+        for (int i = 0; i < list.size(); i++)
+        {
+            loans.remove(list.get(i).getID());
+            count(loansOfBook, list.get(i).getBook().getID(), -1);
+        }
+
+        lib.evictBorrower((Borrower) p, list);
+        return true;
+    }
+    /*----------------------------------------------*/
+
+    public void printStatistics()
+    {
+        System.out.println("Lazy catalog: " + booksLoaded + " books and " + borrowersLoaded + " borrowers loaded ("
+                + recordsLoaded + " with their loans and hold requests) in " + queries + " queries");
+        cache.printStatistics();
+    }
+
+}   // LazyCatalog Class Closed
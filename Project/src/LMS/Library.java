@@ -22,14 +22,55 @@ public class Library {
     private String name;                                // name of library
     private Librarian librarian;                        // object of Librarian (only one)                       
     private ArrayList <Person> persons;                 // all clerks and borrowers  
+    private HashMap <Integer, Person> personsById;      // all persons by their ID
+    private BorrowerDirectory borrowerDirectory;        // borrowers by name and phone number
     private ArrayList <Book> booksInLibrary;            // all books in library are here!
     
     private ArrayList <Loan> loans;                     // history of all books which have been issued
+    private HashMap <Integer, Loan> openLoans;          // loans not returned yet, by the ID of their book
         
     public int book_return_deadline;                   //return deadline after which fine will be generated each day
     public double per_day_fine;
     
     public int hold_request_expiry;                    //number of days after which a hold request will expire
+    public int pickup_expiry;                          //number of days a returned book is kept for the next borrower in its queue
+    
+    public int report_page_size;                       //rows shown per page in reports, 0 for no paging
+    public boolean machine_readable_reports;           //reports are printed as plain tab separated values
+    
+    private SearchCache searchCache;                   // results of recent searches
+    private HashMap <Integer, Book> booksById;         // books in library by their ID
+    private TrigramIndex titleTrigrams;                // for searching titles which are misspelt
+    private TrigramIndex authorTrigrams;               // for searching authors which are misspelt
+    private PrefixTrie titleTrie;                      // for suggesting titles, authors and subjects
+    private PrefixTrie authorTrie;                     // while they are being typed
+    private PrefixTrie subjectTrie;
+    private BrowseIndex titleOrder;                    // books in shelf order, for browsing
+    private BrowseIndex authorOrder;
+    private BrowseIndex subjectOrder;
+    private ArrayList <Book> booksByOrdinal;           // books by their ordinal, null where a book was removed
+    private AvailabilityIndex availability;            // bitmaps of issued and held books, per subject and author
+    private FacetEngine facetEngine;                   // for counting search results per subject and author
+    private PersistenceQueue persistence;              // writes changes to the database as they are made, null if not
+    private LazyCatalog lazyCatalog;                   // loads records when first needed, null if all are loaded at start
+    private int loading;                               // above 0 while records read from the database are being added
+    private StagedLoader stagedLoader;                 // loads the loans and hold requests after start, null if not
+    private int record_cache_size;                     // books and borrowers the lazy catalog keeps in memory
+    private HoldFulfilment fulfilment;                 // reserves returned books for their hold requests, null if not
+    private ArrayList<RowChange> transactionChanges;   // changes of the transaction being run, null if none
+    private ReplicationLeader replication;             // sends every change to the followers, null if not
+    private Checkpointer checkpoints;                  // journals the changes not in the database yet, null if not
+    private boolean journalKept;                       // a journal left by a crash could not be recovered
+    public int checkpoint_interval;                    //seconds of changes a crash can lose
+    public int checkpoint_compaction;                  //changes in the journal after which it is compacted
+    private String database_url = "jdbc:derby://localhost:1527/LMS";   // each shard of a cluster has a database of its own
+    private IdAllocator ids;                           // gives out the IDs of new records
+    private LibraryClock clock;                        // the time loans and hold requests are dated by
+    
+    // fields on which books can be searched
+    public static final int BY_TITLE = 1;
+    public static final int BY_SUBJECT = 2;
+    public static final int BY_AUTHOR = 3;
     
     
     /*----Following Singleton Design Pattern (Lazy Instantiation)------------*/
@@ -51,9 +92,28 @@ public class Library {
         name = null;
         librarian = null;
         persons = new ArrayList();
+        personsById = new HashMap<>();
+        borrowerDirectory = new BorrowerDirectory();
     
         booksInLibrary = new ArrayList();
         loans = new ArrayList();
+        openLoans = new HashMap<>();
+        
+        searchCache = new SearchCache(1024);
+        booksById = new HashMap<>();
+        titleTrigrams = new TrigramIndex(BY_TITLE);
+        authorTrigrams = new TrigramIndex(BY_AUTHOR);
+        titleTrie = new PrefixTrie();
+        authorTrie = new PrefixTrie();
+        subjectTrie = new PrefixTrie();
+        titleOrder = new BrowseIndex(BY_TITLE);
+        authorOrder = new BrowseIndex(BY_AUTHOR);
+        subjectOrder = new BrowseIndex(BY_SUBJECT);
+        booksByOrdinal = new ArrayList<>();
+        availability = new AvailabilityIndex();
+        facetEngine = new FacetEngine();
+        ids = new IdAllocator();
+        clock = new LibraryClock();
     }
 
     
@@ -73,6 +133,44 @@ public class Library {
     {
         hold_request_expiry = hrExpiry;
     }
+    
+    public void setCheckpointInterval(int seconds)
+    {
+        checkpoint_interval = seconds;
+    }
+    
+    public void setCheckpointCompaction(int changes)
+    {
+        checkpoint_compaction = changes;
+    }
+    
+    public void setDatabaseURL(String url)
+    {
+        database_url = url;
+    }
+    
+    public void setPickupExpiry(int days)
+    {
+        pickup_expiry = days;
+    }
+    
+    public void setReportPageSize(int pageSize)
+    {
+        report_page_size = pageSize;
+    }
+    
+    public void setMachineReadableReports(boolean machine)
+    {
+        machine_readable_reports = machine;
+    }
+    
+    public void setRecordCacheSize(int size)
+    {
+        record_cache_size = size;
+        
+        if (lazyCatalog != null)
+            lazyCatalog.setCapacity(size);
+    }
     /*--------------------------------------*/    
     
     
@@ -90,6 +188,22 @@ public class Library {
         return hold_request_expiry;
     }
     
+    public int getPickupExpiry()
+    {
+        return pickup_expiry;
+    }
+    
+    public LibraryClock getClock()
+    {
+        return clock;
+    }
+    
+    // The date of today by the library's clock
+    public Date today()
+    {
+        return clock.now();
+    }
+    
     public ArrayList<Person> getPersons()
     {
         return persons;
@@ -110,6 +224,22 @@ public class Library {
         return booksInLibrary;
     }
     
+    public ArrayList<Loan> getLoans()
+    {
+        return loans;
+    }
+    
+    // Books borrowed and not returned yet
+    public int countOpenLoans()
+    {
+        return openLoans.size();
+    }
+    
+    public SearchCache getSearchCache()
+    {
+        return searchCache;
+    }
+    
     /*---------------------------------------*/
     
     /*-----Adding all People in Library----*/
@@ -120,6 +250,8 @@ public class Library {
         {
             librarian = lib;
             persons.add(librarian);
+            personsById.put(lib.getID(), lib);
+            personAdded(lib);
             return true;
         }
         else
@@ -130,17 +262,28 @@ public class Library {
     public void addClerk(Clerk c) 
     {
         persons.add(c);
+        personsById.put(c.getID(), c);
+        personAdded(c);
     }
 
     public void addBorrower(Borrower b)
     {
         persons.add(b);
+        personsById.put(b.getID(), b);
+        borrowerDirectory.add(b);
+        personAdded(b);
     }
 
     
     public void addLoan(Loan l)
     {
         loans.add(l);
+        
+        if (lazyCatalog != null)
+            lazyCatalog.loanAdded(l);
+        
+        recordChange(RowChange.of(l));
+        recordChange(RowChange.borrowed(l));
     }
     
     /*----------------------------------------------*/
@@ -148,27 +291,148 @@ public class Library {
     /*-----------Finding People in Library--------------*/
     public Borrower findBorrower()
     {
-        System.out.println("\nEnter Borrower's ID: ");
+        // With the lazy catalog only the borrowers in memory could be found by name or phone number
+        if (lazyCatalog != null)
+            System.out.println("\nEnter Borrower's ID: ");
+        else
+            System.out.println("\nEnter Borrower's ID, or the start of the Name or Phone Number (#digits): ");
         
-        int id = 0;
+        String input = "";
         
         Scanner scanner = new Scanner(System.in);
         
-        try{
-            id = scanner.nextInt();
+        while (input.isEmpty() && scanner.hasNextLine())
+            input = scanner.nextLine().trim();
+        
+        ArrayList<Borrower> found;
+        
+        if (input.startsWith("#"))
+        {
+            synchronized (this)
+            {
+                found = findBorrowersByPhone(input.substring(1), 20);
+            }
         }
-        catch (java.util.InputMismatchException e)
+        
+        else if (!input.isEmpty() && !input.matches("[0-9]+"))
         {
-            System.out.println("\nInvalid Input");
+            synchronized (this)
+            {
+                found = findBorrowersByName(input, 20);
+            }
         }
-
-        for (int i = 0; i < persons.size(); i++)
+        
+        else
         {
-            if (persons.get(i).getID() == id && persons.get(i).getClass().getSimpleName().equals("Borrower"))
-                return (Borrower)(persons.get(i));
+            Borrower b = null;
+            
+            try {
+                int id = Integer.parseInt(input);
+                
+                synchronized (this)
+                {
+                    b = findBorrower(id);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("\nInvalid Input");
+            }
+            
+            if (b != null)
+                return b;
+            
+            System.out.println("\nSorry this ID didn't match any Borrower's ID.");
+            return null;
+        }
+        
+        if (found == null)
+        {
+            System.out.println("\nBorrowers can only be found by ID while records are loaded on demand.");
+            return null;
+        }
+        
+        if (found.isEmpty())
+        {
+            System.out.println("\nSorry no Borrower was found.");
+            return null;
+        }
+        
+        System.out.println("\nNo.\tID\tName\t\t\tPhone No");
+        
+        for (int i = 0; i < found.size(); i++)
+            System.out.println(i + "-\t" + found.get(i).getID() + "\t" + found.get(i).getName() + "\t\t\t" + found.get(i).getPhoneNumber());
+        
+        System.out.println("\nEnter the No. of the Borrower: ");
+        
+        try {
+            int i = scanner.nextInt();
+            
+            if (i >= 0 && i < found.size())
+                return found.get(i);
+        } catch (java.util.InputMismatchException e) {
+            // handled below
+        }
+        
+        System.out.println("\nInvalid Input");
+        return null;
+    }
+    
+    // The lookups by name and phone number return null when records are loaded on demand, as only the
+    // borrowers in memory would be found.
+    
+    // Up to limit borrowers whose name starts with the prefix
+    public ArrayList<Borrower> findBorrowersByName(String prefix, int limit)
+    {
+        return lazyCatalog == null ? borrowerDirectory.findByName(prefix, limit) : null;
+    }
+    
+    // The borrowers with this phone number
+    public ArrayList<Borrower> findBorrowersByPhone(int phone)
+    {
+        return lazyCatalog == null ? borrowerDirectory.findByPhone(phone) : null;
+    }
+    
+    // Up to limit borrowers whose phone number starts with these digits, those with exactly this number first
+    public ArrayList<Borrower> findBorrowersByPhone(String digits, int limit)
+    {
+        return lazyCatalog == null ? borrowerDirectory.findByPhonePrefix(digits, limit) : null;
+    }
+    
+    // Finding a borrower by ID without asking, null if there is none
+    public Borrower findBorrower(int id)
+    {
+        Person p = findPerson(id);
+        
+        if (p != null && p.getClass().getSimpleName().equals("Borrower"))
+            return (Borrower) p;
+        
+        return null;
+    }
+    
+    // Finding anyone by ID, loading a borrower from the database if needed
+    public Person findPerson(int id)
+    {
+        Person p = personsById.get(id);
+        
+        if (p == null && lazyCatalog != null)
+        {
+            try {
+                p = lazyCatalog.borrower(id);
+            } catch (SQLException e) {
+                System.out.println("\nCould not load borrower " + id + ": " + e.getMessage());
+            }
         }
         
-        System.out.println("\nSorry this ID didn't match any Borrower's ID.");
+        return p;
+    }
+    
+    // Finding a clerk or the librarian by ID, null if there is none
+    public Staff findStaff(int id)
+    {
+        Person p = personsById.get(id);
+        
+        if (p instanceof Staff)
+            return (Staff) p;
+        
         return null;
     }
     
@@ -188,20 +452,52 @@ public class Library {
             System.out.println("\nInvalid Input");
         }
 
-        for (int i = 0; i < persons.size(); i++)
+        synchronized (this)
         {
-            if (persons.get(i).getID() == id && persons.get(i).getClass().getSimpleName().equals("Clerk"))
-                return (Clerk)(persons.get(i));
+            for (int i = 0; i < persons.size(); i++)
+            {
+                if (persons.get(i).getID() == id && persons.get(i).getClass().getSimpleName().equals("Clerk"))
+                    return (Clerk)(persons.get(i));
+            }
         }
         
         System.out.println("\nSorry this ID didn't match any Clerk's ID.");
         return null;
     }
     
+    // Finding a book in library by its ID, null if there is none
+    public Book findBook(int id)
+    {
+        Book b = booksById.get(id);
+        
+        if (b == null && lazyCatalog != null)
+        {
+            try {
+                b = lazyCatalog.book(id);
+            } catch (SQLException e) {
+                System.out.println("\nCould not load book " + id + ": " + e.getMessage());
+            }
+        }
+        
+        return b;
+    }
+    
+    // The book or person with this ID if it is in memory, without loading it
+    public Book loadedBook(int id)
+    {
+        return booksById.get(id);
+    }
+    
+    public Person loadedPerson(int id)
+    {
+        return personsById.get(id);
+    }
+    
     /*------- FUNCS. on Books In Library--------------*/
     public void addBookinLibrary(Book b)
     {
         booksInLibrary.add(b);
+        bookAdded(b);
     }
     
     //When this function is called, only the pointer of the book placed in booksInLibrary is removed. But the real object of book
@@ -211,74 +507,113 @@ public class Library {
     //pointing to that book. In this way the book will be really removed from memory.
     public void removeBookfromLibrary(Book b)  
     {
-        boolean delete = true;
+        String borrower = null;
+        boolean holds;
         
-        //Checking if this book is currently borrowed by some borrower
-        for (int i = 0; i < persons.size() && delete; i++)
+        synchronized (this)
         {
-            if (persons.get(i).getClass().getSimpleName().equals("Borrower"))
+            //Checking if this book is currently borrowed by some borrower
+            if (b.getIssuedStatus())
             {
-                ArrayList<Loan> borBooks = ((Borrower)(persons.get(i))).getBorrowedBooks();
-                
-                for (int j = 0; j < borBooks.size() && delete; j++)
-                {
-                    if (borBooks.get(j).getBook() == b)
-                    {
-                        delete = false;
-                        System.out.println("This particular book is currently borrowed by some borrower.");
-                    }
-                }              
+                Loan l = openLoan(b);
+                borrower = l != null ? l.getBorrower().getName() : "some borrower";
             }
+            
+            holds = !b.getHoldRequests().isEmpty();
+        }
+        
+        if (borrower != null)
+        {
+            System.out.println("This particular book is currently borrowed by " + borrower + ".");
+            System.out.println("\nDelete Unsuccessful.");
+            return;
         }
         
-        if (delete)
+        System.out.println("\nCurrently this book is not borrowed by anyone.");
+        
+        // Asking without holding the lock
+        if (holds)
         {
-            System.out.println("\nCurrently this book is not borrowed by anyone.");
-            ArrayList<HoldRequest> hRequests = b.getHoldRequests();
+            System.out.println("\nThis book might be on hold requests by some borrowers. Deleting this book will delete the relevant hold requests too.");
+            System.out.println("Do you still want to delete the book? (y/n)");
             
-            if(!hRequests.isEmpty())
+            Scanner sc = new Scanner(System.in);
+            
+            String choice = sc.next();
+            
+            while (!choice.equals("y") && !choice.equals("n"))
             {
-                System.out.println("\nThis book might be on hold requests by some borrowers. Deleting this book will delete the relevant hold requests too.");
-                System.out.println("Do you still want to delete the book? (y/n)");
-                
-                Scanner sc = new Scanner(System.in);
-                
-                while (true)
-                {
-                    String choice = sc.next();
-                    
-                    if(choice.equals("y") || choice.equals("n"))
-                    {
-                        if(choice.equals("n"))
-                        {
-                            System.out.println("\nDelete Unsuccessful.");
-                            return;
-                        }                            
-                        else
-                        {
-                            //Empty the books hold request array
-                            //Delete the hold request from the borrowers too
-                            for (int i = 0; i < hRequests.size() && delete; i++)
-                            {
-                                HoldRequest hr = hRequests.get(i);
-                                hr.getBorrower().removeHoldRequest(hr);
-                                b.removeHoldRequest();                                                                
-                            }
-                        }
-                    }
-                    else
-                        System.out.println("Invalid Input. Enter (y/n): ");
-                }
-                
+                System.out.println("Invalid Input. Enter (y/n): ");
+                choice = sc.next();
+            }
+            
+            if(choice.equals("n"))
+            {
+                System.out.println("\nDelete Unsuccessful.");
+                return;
             }
-            else
-                System.out.println("This book has no hold requests.");
-                
-            booksInLibrary.remove(b);
-            System.out.println("The book is successfully removed.");
         }
         else
-            System.out.println("\nDelete Unsuccessful.");
+            System.out.println("This book has no hold requests.");
+        
+        boolean changed;
+        
+        synchronized (this)
+        {
+            // It may have been issued, or placed on hold, by another desk meanwhile
+            changed = b.getIssuedStatus() || (!holds && !b.getHoldRequests().isEmpty());
+            
+            if (!changed)
+            {
+                //Empty the books hold request array
+                //Delete the hold request from the borrowers too
+                List<HoldRequest> cancelled = b.cancelHoldRequests();
+            
+                for (int i = 0; i < cancelled.size(); i++)
+                    cancelled.get(i).getBorrower().removeHoldRequest(cancelled.get(i));
+            
+                booksInLibrary.remove(b);
+                bookRemoved(b);
+            }
+        }
+        
+        if (changed)
+            System.out.println("\nThe book was issued or placed on hold meanwhile. Delete Unsuccessful.");
+        else
+            System.out.println("The book is successfully removed.");
+    }
+    
+    // Removing a book which isn't borrowed without asking anything, along with its hold requests
+    public void removeBook(Book b)
+    {
+        List<HoldRequest> hRequests = b.getHoldRequests();
+        
+        while (!hRequests.isEmpty())
+            b.serviceHoldRequest(hRequests.get(0));
+        
+        booksInLibrary.remove(b);
+        bookRemoved(b);
+    }
+    
+    // Removing many books which aren't borrowed and have no hold requests, in one pass over the
+    // catalog and over the lists of the trigram indexes
+    public void removeBooks(List<Book> books)
+    {
+        booksInLibrary.removeAll(new HashSet<Book>(books));
+        
+        titleTrigrams.removeAll(books);
+        authorTrigrams.removeAll(books);
+        
+        for (int i = 0; i < books.size(); i++)
+        {
+            Book b = books.get(i);
+            
+            unindexFields(b);
+            recordChange(RowChange.deleted(RowChange.BOOK, b.getID()));
+            
+            if (lazyCatalog != null)
+                lazyCatalog.bookRemoved(b);
+        }
     }
     
     
@@ -287,7 +622,7 @@ public class Library {
     public ArrayList<Book> searchForBooks() throws IOException
     {
         String choice;
-        String title = "", subject = "", author = "";
+        String query;
                 
         Scanner sc = new Scanner(System.in);  
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
@@ -304,49 +639,58 @@ public class Library {
         }
 
         if (choice.equals("1"))
-        {
-            System.out.println("\nEnter the Title of the Book: ");              
-            title = reader.readLine();  
-        }
+            System.out.println("\nEnter the Title of the Book (or its beginning followed by '*' for suggestions): ");              
 
         else if (choice.equals("2"))
-        {
-            System.out.println("\nEnter the Subject of the Book: ");              
-            subject = reader.readLine();  
-        }
+            System.out.println("\nEnter the Subject of the Book (or its beginning followed by '*' for suggestions): ");              
         
         else
-        {
-            System.out.println("\nEnter the Author of the Book: ");              
-            author = reader.readLine();              
-        }
+            System.out.println("\nEnter the Author of the Book (or its beginning followed by '*' for suggestions): ");              
         
-        ArrayList<Book> matchedBooks = new ArrayList();
+        query = reader.readLine();
         
-        //Retrieving all the books which matched the user's search query
-        for(int i = 0; i < booksInLibrary.size(); i++)
+        if (query != null && query.trim().endsWith("*"))
         {
-            Book b = booksInLibrary.get(i);
+            String prefix = query.trim();
+            ArrayList<String> suggestions;
             
-            if (choice.equals("1"))
-            { 
-                if (b.getTitle().equals(title))
-                    matchedBooks.add(b);
-            }
-            else if (choice.equals("2"))
-            { 
-                if (b.getSubject().equals(subject))
-                    matchedBooks.add(b);
+            synchronized (this)
+            {
+                suggestions = suggest(Integer.parseInt(choice), prefix.substring(0, prefix.length() - 1), 10);
             }
-            else
+            
+            if (suggestions.isEmpty())
             {
-                if (b.getAuthor().equals(author))
-                    matchedBooks.add(b);                
+                System.out.println("\nSorry. Nothing starts with " + prefix);
+                return null;
             }
+            
+            System.out.println("\nSuggestions are: \n");
+            
+            for (int i = 0; i < suggestions.size(); i++)
+                System.out.println(i + "-\t" + suggestions.get(i));
+            
+            query = suggestions.get(Main.takeInput(-1, suggestions.size()));
+        }
+        
+        // The lock is held while searching, not while printing
+        ArrayList<Book> matchedBooks;
+        FacetEngine.Facets facets = null;
+        
+        synchronized (this)
+        {
+            matchedBooks = searchBooks(Integer.parseInt(choice), query);
+            
+            if (!matchedBooks.isEmpty())
+                facets = facets(matchedBooks, 5);
+            
+            // Nothing matched exactly, so looking for titles or authors spelt similarly
+            else if (!choice.equals("2"))
+                matchedBooks = fuzzySearchBooks(Integer.parseInt(choice), query, 10);
         }
         
         //Printing all the matched Books
-        if (!matchedBooks.isEmpty())
+        if (facets != null)
         {
             System.out.println("\nThese books are found: \n");
                         
@@ -361,63 +705,1055 @@ public class Library {
                 System.out.print("\n");
             }
             
+            facets.print();
+            
+            return matchedBooks;
+        }
+        
+        if (!matchedBooks.isEmpty())
+        {
+            System.out.println("\nNo exact match was found. Did you mean: \n");
+            
+            System.out.println("------------------------------------------------------------------------------");            
+            System.out.println("No.\t\tTitle\t\t\tAuthor\t\t\tSubject");
+            System.out.println("------------------------------------------------------------------------------");
+            
+            for (int i = 0; i < matchedBooks.size(); i++)
+            {                      
+                System.out.print(i + "-" + "\t\t");
+                matchedBooks.get(i).printInfo();
+                System.out.print("\n");
+            }
+            
             return matchedBooks;
         }
+        
+        System.out.println("\nSorry. No Books were found related to your query.");
+        return null;
+    }
+    
+    // Retrieving up to limit books whose title or author (given by field) is spelt similarly to the query,
+    // most similar first.
+    public ArrayList<Book> fuzzySearchBooks(int field, String query, int limit)
+    {
+        TrigramIndex index = (field == BY_AUTHOR) ? authorTrigrams : titleTrigrams;
+        
+        return index.search(query, limit, 0.3);
+    }
+    
+    // IDs of the books which are on the shelf and have hold requests, read from the database when
+    // records are loaded on demand
+    public synchronized ArrayList<Integer> heldBooksOnShelf()
+    {
+        ArrayList<Integer> ids = new ArrayList<>();
+        
+        if (lazyCatalog != null)
+        {
+            try {
+                return lazyCatalog.heldBooksOnShelf();
+            } catch (SQLException e) {
+                System.out.println("\nCould not find the books with hold requests: " + e.getMessage());
+                return ids;
+            }
+        }
+        
+        completeHoldLoading();
+        
+        int[] ordinals = BookBitmap.andNot(availability.onHold(), availability.issued()).toArray();
+        
+        for (int i = 0; i < ordinals.length; i++)
+            ids.add(booksByOrdinal.get(ordinals[i]).getID());
+        
+        return ids;
+    }
+    
+    // Retrieving the books of a subject or author (given by field) which are neither issued nor
+    // waited for by anyone
+    public ArrayList<Book> availableBooks(int field, String value)
+    {
+        completeHoldLoading();
+        
+        ArrayList<Book> available = new ArrayList<>();
+        int[] ordinals = BookBitmap.and(booksWith(field, value), availability.available()).toArray();
+        
+        for (int i = 0; i < ordinals.length; i++)
+            available.add(booksByOrdinal.get(ordinals[i]));
+        
+        return available;
+    }
+    
+    // Counting the books of a subject or author (given by field) which are available now
+    public int countAvailableBooks(int field, String value)
+    {
+        completeHoldLoading();
+        return availability.countAvailable(booksWith(field, value));
+    }
+    
+    private BookBitmap booksWith(int field, String value)
+    {
+        if (field == BY_SUBJECT)
+            return availability.subject(value);
+        else if (field == BY_AUTHOR)
+            return availability.author(value);
+        
+        // titles have no bitmap of their own, so one is made from the search result
+        BookBitmap titled = new BookBitmap();
+        ArrayList<Book> matched = searchBooks(BY_TITLE, value);
+        
+        for (int i = 0; i < matched.size(); i++)
+            titled.add(matched.get(i).getOrdinal());
+        
+        return titled;
+    }
+    
+    // Counting the books of a result per subject and per author, keeping the topN most frequent of each
+    public FacetEngine.Facets facets(ArrayList<Book> result, int topN)
+    {
+        BookBitmap books = new BookBitmap();
+        
+        for (int i = 0; i < result.size(); i++)
+            books.add(result.get(i).getOrdinal());
+        
+        return facets(books, topN);
+    }
+    
+    public FacetEngine.Facets facets(BookBitmap result, int topN)
+    {
+        completeHoldLoading();
+        return facetEngine.compute(result, availability, topN);
+    }
+    
+    public Book getBookByOrdinal(int ordinal)
+    {
+        return booksByOrdinal.get(ordinal);
+    }
+    
+    public AvailabilityIndex getAvailability()
+    {
+        completeHoldLoading();
+        return availability;
+    }
+    
+    // Returning up to k titles, subjects or authors (given by field) starting with the prefix,
+    // those of the most often issued books first
+    public ArrayList<String> suggest(int field, String prefix, int k)
+    {
+        return trieOf(field).complete(prefix, k);
+    }
+    
+    private PrefixTrie trieOf(int field)
+    {
+        if (field == BY_TITLE)
+            return titleTrie;
+        else if (field == BY_SUBJECT)
+            return subjectTrie;
+        else
+            return authorTrie;
+    }
+    
+    // Retrieving the books whose title, subject or author (given by field) matches the query.
+    // Letter case and extra spaces are ignored. The returned list is shared with the search cache
+    // and must not be modified.
+    public ArrayList<Book> searchBooks(int field, String query)
+    {
+        // The database does the search, on the indexes of BOOK
+        if (lazyCatalog != null)
+        {
+            try {
+                return lazyCatalog.search(field, query);
+            } catch (SQLException e) {
+                System.out.println("\nCould not search the books: " + e.getMessage());
+                return new ArrayList<>();
+            }
+        }
+        
+        String q = normalize(query);
+        String key = SearchCache.key(field, q);
+        
+        ArrayList<Book> matchedBooks = searchCache.get(key);
+        
+        if (matchedBooks != null)
+            return matchedBooks;
+        
+        if (field == BY_TITLE)
+            matchedBooks = titleOrder.equalTo(q);
+        else
+        {
+            // Comparing the codes of the subjects or authors, without decoding them for every book
+            boolean subject = field == BY_SUBJECT;
+            BitSet codes = (subject ? Book.getSubjects() : Book.getAuthors()).matching(q);
+            
+            matchedBooks = new ArrayList<>();
+            
+            for (int i = 0; !codes.isEmpty() && i < booksInLibrary.size(); i++)
+            {
+                Book b = booksInLibrary.get(i);
+                
+                if (codes.get(subject ? b.getSubjectCode() : b.getAuthorCode()))
+                    matchedBooks.add(b);
+            }
+        }
+        
+        searchCache.put(key, matchedBooks);
+        return matchedBooks;
+    }
+    
+    // Value of a book's title, subject or author
+    public static String fieldOf(Book b, int field)
+    {
+        if (field == BY_TITLE)
+            return b.getTitle();
+        else if (field == BY_SUBJECT)
+            return b.getSubject();
+        else
+            return b.getAuthor();
+    }
+    
+    // Lower case form of a search text with spaces trimmed and collapsed
+    public static String normalize(String s)
+    {
+        if (s == null)
+            return "";
+        
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            
+            if (Character.isWhitespace(c))
+                space = sb.length() > 0;
+            else
+            {
+                if (space)
+                    sb.append(' ');
+                
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            }
+        }
+        
+        return sb.toString();
+    }
+    
+    
+    /*------- Keeping the catalog indexes up to date --------------*/
+    
+    // Called when a book is added to the library
+    public void bookAdded(Book b)
+    {
+        b.setOrdinal(booksByOrdinal.size());
+        booksByOrdinal.add(b);
+        availability.add(b);
+        facetEngine.set(b);
+        
+        booksById.put(b.getID(), b);
+        searchCache.invalidate(b);
+        titleTrigrams.add(b);
+        authorTrigrams.add(b);
+        titleOrder.add(b);
+        authorOrder.add(b);
+        subjectOrder.add(b);
+        
+        titleTrie.add(b.getTitle());
+        authorTrie.add(b.getAuthor());
+        subjectTrie.add(b.getSubject());
+        
+        recordChange(RowChange.of(b));
+    }
+    
+    // Called when a book is removed from the library
+    public void bookRemoved(Book b)
+    {
+        unindexBook(b);
+        recordChange(RowChange.deleted(RowChange.BOOK, b.getID()));
+        
+        if (lazyCatalog != null)
+            lazyCatalog.bookRemoved(b);
+    }
+    
+    private void unindexBook(Book b)
+    {
+        titleTrigrams.remove(b);
+        authorTrigrams.remove(b);
+        unindexFields(b);
+    }
+    
+    // Removing a book from every index but the trigram ones
+    private void unindexFields(Book b)
+    {
+        availability.remove(b);
+        booksByOrdinal.set(b.getOrdinal(), null);
+        b.setOrdinal(-1);
+        
+        booksById.remove(b.getID());
+        searchCache.invalidate(b);
+        titleOrder.remove(b);
+        authorOrder.remove(b);
+        subjectOrder.remove(b);
+        
+        titleTrie.remove(b.getTitle());
+        authorTrie.remove(b.getAuthor());
+        subjectTrie.remove(b.getSubject());
+    }
+    
+    // Called when the title, subject or author of a book is changed, with the values it had before
+    public void bookInfoChanged(Book b, String oldTitle, String oldSubject, String oldAuthor)
+    {
+        searchCache.invalidate(oldTitle, oldSubject, oldAuthor);
+        searchCache.invalidate(b);
+        
+        titleOrder.change(b, oldTitle, oldSubject, oldAuthor);
+        authorOrder.change(b, oldTitle, oldSubject, oldAuthor);
+        subjectOrder.change(b, oldTitle, oldSubject, oldAuthor);
+        
+        if (!normalize(oldTitle).equals(normalize(b.getTitle())))
+        {
+            titleTrigrams.remove(b.getID(), oldTitle);
+            titleTrigrams.add(b);
+            titleTrie.remove(oldTitle);
+            titleTrie.add(b.getTitle());
+        }
+        
+        if (!normalize(oldAuthor).equals(normalize(b.getAuthor())))
+        {
+            authorTrigrams.remove(b.getID(), oldAuthor);
+            authorTrigrams.add(b);
+            authorTrie.remove(oldAuthor);
+            authorTrie.add(b.getAuthor());
+            availability.changeAuthor(b, oldAuthor);
+            facetEngine.set(b);
+        }
+        
+        if (!normalize(oldSubject).equals(normalize(b.getSubject())))
+        {
+            subjectTrie.remove(oldSubject);
+            subjectTrie.add(b.getSubject());
+            availability.changeSubject(b, oldSubject);
+            facetEngine.set(b);
+        }
+        
+        recordChange(RowChange.of(b));
+    }
+    
+    // Called when a book is issued or returned
+    public void bookStatusChanged(Book b)
+    {
+        searchCache.invalidate(b);
+        
+        if (b.getOrdinal() >= 0)
+            availability.setIssued(b);
+        
+        if (b.getIssuedStatus())
+            bookUsed(b);
+        
+        recordChange(RowChange.of(b));
+    }
+    
+    // Called when a hold request is added to or removed from a book
+    private void bookHoldsChanged(Book b)
+    {
+        if (b.getOrdinal() >= 0)
+            availability.setOnHold(b);
+    }
+    
+    public void holdAdded(HoldRequest hr)
+    {
+        bookHoldsChanged(hr.getBook());
+        
+        if (lazyCatalog != null)
+            lazyCatalog.holdAdded(hr);
+        
+        recordChange(RowChange.of(hr));
+    }
+    
+    public void holdRemoved(HoldRequest hr)
+    {
+        bookHoldsChanged(hr.getBook());
+        recordChange(RowChange.deleted(RowChange.ON_HOLD_BOOK, hr.getID()));
+        
+        if (lazyCatalog != null)
+            lazyCatalog.holdRemoved(hr);
+    }
+    
+    // Counting an issue of a book towards the popularity of its title, author and subject
+    private void bookUsed(Book b)
+    {
+        titleTrie.use(b.getTitle());
+        authorTrie.use(b.getAuthor());
+        subjectTrie.use(b.getSubject());
+    }
+    
+    /*-------------------------------------------------------------*/
+    
+    
+    /*------- Loading records when they are first needed --------*/
+    
+    // Using the lazy catalog instead of populateLibrary. Changes must be written by the persistence
+    // queue, since fillItBack would only write the records in memory.
+    public void openLazyCatalog(Connection con) throws SQLException
+    {
+        lazyCatalog = new LazyCatalog(this, con, record_cache_size);
+        
+        beginLoading();
+        
+        try {
+            lazyCatalog.start();
+        } finally {
+            endLoading();
+        }
+    }
+    
+    public boolean isLazyCatalog()
+    {
+        return lazyCatalog != null;
+    }
+    
+    // Records added between these calls come from the database, so they aren't written back
+    public void beginLoading()
+    {
+        loading++;
+    }
+    
+    public void endLoading()
+    {
+        loading--;
+    }
+    
+    // Evicting records from memory if there are too many. Called between operations, when nothing
+    // but the library refers to the records.
+    public void trimRecords()
+    {
+        if (lazyCatalog != null)
+            lazyCatalog.evict();
+    }
+    
+    // Removing a book or borrower from memory only; it is still in the database
+    public void evictBook(Book b)
+    {
+        booksInLibrary.remove(b);
+        unindexBook(b);
+        b.release();
+    }
+    
+    public void evictBorrower(Borrower b, ArrayList<Loan> itsLoans)
+    {
+        persons.remove(b);
+        personsById.remove(b.getID());
+        borrowerDirectory.remove(b);
+        loans.removeAll(new HashSet<Loan>(itsLoans));
+        
+        for (int i = 0; i < itsLoans.size(); i++)
+            loanClosed(itsLoans.get(i));
+    }
+    
+    // Called when someone logs out
+    public void logout(Person p)
+    {
+        if (lazyCatalog != null)
+            lazyCatalog.unpin(p);
+    }
+    
+    // Called by a borrower whose loans and hold requests haven't been loaded yet
+    public void loadBorrowerRecords(Borrower b)
+    {
+        try {
+            if (stagedLoader != null)
+                stagedLoader.loadBorrower(b);
+            else
+                lazyCatalog.loadRecords(b);
+        } catch (SQLException e) {
+            System.out.println("\nCould not load the loans of " + b.getName() + ": " + e.getMessage());
+        }
+    }
+    
+    // Called by a book whose hold requests haven't been loaded yet
+    public void loadBookHolds(Book b)
+    {
+        try {
+            stagedLoader.loadBook(b);
+        } catch (SQLException e) {
+            System.out.println("\nCould not load the hold requests of " + b.getTitle() + ": " + e.getMessage());
+        }
+    }
+    
+    /*-------------------------------------------------------------*/
+    
+    
+    /*------- IDs of new records --------*/
+    
+    // Leasing the IDs of new records from LIBRARY.ID_SEQUENCE instead of from memory. False if it can't be read.
+    public boolean openIdSequences()
+    {
+        Connection c = makeConnection();
+        
+        if (c == null)
+            return false;
+        
+        try {
+            ids = new IdAllocator(c);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("\nCould not read the ID sequences: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    public void closeIdSequences()
+    {
+        ids.close();
+    }
+    
+    // The ID of a new record of a kind (IdAllocator.BOOK, PERSON, LOAN or HOLD_REQUEST)
+    public int nextID(int kind)
+    {
+        return ids.next(kind);
+    }
+    
+    // The ID the next new record of a kind would get
+    public int peekID(int kind)
+    {
+        return ids.peek(kind);
+    }
+    
+    // Called before making a record with an ID given from elsewhere, so it is never given again
+    public void reserveID(int kind, int id)
+    {
+        ids.reserve(kind, id);
+    }
+    
+    /*-------------------------------------------------------------*/
+    
+    
+    /*------- Loading the loans and hold requests after start --------*/
+    
+    // Starting to load in the background what populateLibrary left in the database
+    public void startStagedLoading()
+    {
+        if (stagedLoader != null)
+            stagedLoader.start();
+    }
+    
+    // Called by what needs every record: loading the rest now. False if some could not be loaded.
+    public synchronized boolean completeLoading()
+    {
+        return stagedLoader == null || stagedLoader.finish();
+    }
+    
+    // Whether the hold requests of every book are in memory, without loading them
+    public boolean isHoldLoadingDone()
+    {
+        return stagedLoader == null || stagedLoader.isHoldsDone();
+    }
+    
+    // Called by what needs to know which books have hold requests
+    private synchronized void completeHoldLoading()
+    {
+        if (stagedLoader != null)
+            stagedLoader.finishHolds();
+    }
+    
+    public void stopStagedLoading()
+    {
+        if (stagedLoader != null)
+            stagedLoader.close();
+    }
+    
+    // Adding a loan read from the database to the history
+    public void loanLoaded(Loan l)
+    {
+        loans.add(l);
+        bookUsed(l.getBook());
+    }
+    
+    /*-------------------------------------------------------------*/
+    
+    
+    /*------- Loans not returned yet, by book --------*/
+    
+    // Called when a loan is given to its borrower, made now or loaded
+    public void loanOpened(Loan l)
+    {
+        openLoans.put(l.getBook().getID(), l);
+    }
+    
+    // Called when a loan is taken from its borrower: returned, or evicted from memory
+    public void loanClosed(Loan l)
+    {
+        openLoans.remove(l.getBook().getID(), l);
+    }
+    
+    // The loan of a book which hasn't been returned yet if it is in memory, without loading it
+    public Loan loadedOpenLoan(Book b)
+    {
+        return openLoans.get(b.getID());
+    }
+    
+    // The loan of a book which hasn't been returned yet, null if the book isn't issued. Its borrower's
+    // loans are loaded if they aren't yet.
+    public Loan openLoan(Book b)
+    {
+        if (!b.getIssuedStatus())
+            return null;
+        
+        Loan l = openLoans.get(b.getID());
+        
+        if (l != null)
+            return l;
+        
+        try {
+            int id = -1;
+            
+            if (stagedLoader != null && !stagedLoader.isDone())
+                id = stagedLoader.borrowerOf(b);
+            else if (lazyCatalog != null)
+                id = lazyCatalog.borrowerOf(b);
+            
+            Borrower bor = id != -1 ? findBorrower(id) : null;
+            
+            return bor != null ? bor.getLoanOf(b) : null;
+        } catch (SQLException e) {
+            System.out.println("\nCould not load the loan of " + b.getTitle() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /*-------------------------------------------------------------*/
+    
+    
+    /*------- Writing changes to the database as they are made --------*/
+    
+    // Called when a clerk, librarian or borrower is added to the library
+    private void personAdded(Person p)
+    {
+        recordChange(RowChange.of(p));
+        
+        if (p instanceof Staff)
+            recordChange(RowChange.staffOf((Staff) p));
+        
+        recordChange(RowChange.roleOf(p));
+    }
+    
+    // Called when the name, address or phone number of a person is changed
+    public void personChanged(Person p)
+    {
+        if (p instanceof Borrower && personsById.get(p.getID()) == p)
+            borrowerDirectory.update((Borrower) p);
+        
+        recordChange(RowChange.of(p));
+    }
+    
+    // Called when a loan is renewed, returned or its fine is paid
+    public void loanChanged(Loan l)
+    {
+        recordChange(RowChange.of(l));
+    }
+    
+    // Called when the book of a loan is returned
+    public void loanReturned(Loan l)
+    {
+        recordChange(RowChange.of(l));
+        recordChange(RowChange.deleted(RowChange.BORROWED_BOOK, l.getBook().getID()));
+        
+        if (fulfilment != null)
+            fulfilment.bookReturned(l.getBook());
+    }
+    
+    private void recordChange(RowChange change)
+    {
+        if (loading > 0)
+            return;
+        
+        if (replication != null)
+            replication.publish(change);
+        
+        if (persistence == null)
+        {
+            if (checkpoints != null)
+                checkpoints.record(change);
+            return;
+        }
+        
+        if (transactionChanges != null)
+        {
+            transactionChanges.add(change);
+            return;
+        }
+        
+        persistence.add(change);
+        
+        if (checkpoints != null)
+            checkpoints.record(change);
+        
+        if (lazyCatalog != null)
+            lazyCatalog.changed(change);
+    }
+    
+    // Keeping the changes made until commitTransaction, so that they are written in one commit
+    public void beginTransaction()
+    {
+        transactionChanges = new ArrayList<>();
+    }
+    
+    public void commitTransaction()
+    {
+        ArrayList<RowChange> changes = transactionChanges;
+        transactionChanges = null;
+        
+        if (persistence != null && changes != null && !changes.isEmpty())
+        {
+            persistence.addAll(changes);
+            
+            for (int i = 0; checkpoints != null && i < changes.size(); i++)
+                checkpoints.record(changes.get(i));
+            
+            for (int i = 0; lazyCatalog != null && i < changes.size(); i++)
+                lazyCatalog.changed(changes.get(i));
+        }
+    }
+    
+    // Starting to write changes to the database as they are made, on a connection of their own.
+    // Returns false if that isn't possible, and then everything is written by fillItBack at exit.
+    public boolean startPersistence()
+    {
+        Connection con = makeConnection();
+        
+        if (con == null)
+            return false;
+        
+        try {
+            persistence = new PersistenceQueue(con);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("\n" + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Whether changes are written to the database as they are made
+    public boolean isPersisting()
+    {
+        return persistence != null;
+    }
+    
+    // Waiting until the changes made so far are in the database. Returns false if some change
+    // could not be written, or if changes aren't being written as they are made.
+    public boolean awaitPersisted()
+    {
+        return persistence != null && persistence.await();
+    }
+    
+    // Waiting only until the changes up to the one of this sequence (see changesQueued) are in the database
+    public boolean awaitPersisted(long sequence)
+    {
+        return persistence != null && persistence.await(sequence);
+    }
+    
+    // Sequence of the last change queued for the database, 0 if changes aren't being written as they are made
+    public long changesQueued()
+    {
+        return persistence != null ? persistence.queued() : 0;
+    }
+    
+    // Sequence of the last change in the database, -1 if some change could not be written or if
+    // changes aren't being written as they are made
+    public long changesPersisted()
+    {
+        return persistence != null ? persistence.committed() : -1;
+    }
+    
+    // Writing the remaining changes and stopping. Returns true only if every change was written,
+    // otherwise the records have to be written again with fillItBack.
+    public boolean stopPersistence()
+    {
+        if (persistence == null)
+            return false;
+        
+        boolean ok = persistence.close();
+        persistence = null;
+        
+        return ok;
+    }
+    
+    // Writing the changes a crash left in the journal to the database, before the records are loaded
+    public void recoverCheckpoint(String journal, Connection con)
+    {
+        int n = Checkpointer.recover(this, journal, con);
+        
+        if (n > 0)
+            System.out.println("\nRecovered " + n + " changes which were not saved before the last crash.");
+        else if (n < 0)
+        {
+            System.out.println("\nThe changes which were not saved before the last crash could not be recovered, they are kept in " + journal + ".");
+            journalKept = true;
+        }
+    }
+    
+    // Taking checkpoints of the changes into the journal while the library is used
+    public boolean startCheckpoints(String journal)
+    {
+        if (journalKept)
+            return false;       // it would be overwritten
+        
+        try {
+            checkpoints = new Checkpointer(this, journal, System.currentTimeMillis(), checkpoint_interval, checkpoint_compaction);
+            
+            if (persistence != null)
+                persistence.setRunID(checkpoints.getRunID());
+            
+            return true;
+        } catch (IOException e) {
+            System.out.println("\nCould not start the checkpoints: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Taking a last checkpoint. If saved is true every change is in the database, and the journal
+    // is removed; otherwise it is kept for a recovery at the next start.
+    public void stopCheckpoints(boolean saved)
+    {
+        if (checkpoints != null)
+        {
+            checkpoints.close(saved);
+            checkpoints = null;
+        }
+    }
+    
+    // Sending every change to follower processes which connect to the port, so that they can answer
+    // searches from copies of the library. Not possible when records are loaded on demand, as a
+    // follower starts from a copy of all of them.
+    public boolean startReplication(int port)
+    {
+        if (lazyCatalog != null)
+        {
+            System.out.println("\nThe library can't be replicated while records are loaded on demand.");
+            return false;
+        }
+        
+        try {
+            replication = new ReplicationLeader(this, port);
+            return true;
+        } catch (IOException e) {
+            System.out.println("\nCould not start replication on port " + port + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    public void stopReplication()
+    {
+        if (replication != null)
+        {
+            replication.close();
+            replication = null;
+        }
+    }
+    
+    // All records as changes, in an order in which a follower can add them. Called holding the lock
+    // of the library.
+    public ArrayList<RowChange> replicationSnapshot()
+    {
+        completeLoading();
+        
+        ArrayList<RowChange> rows = new ArrayList<>();
+        
+        for (int i = 0; i < persons.size(); i++)
+        {
+            Person p = persons.get(i);
+            rows.add(RowChange.of(p));
+            
+            if (p instanceof Staff)
+                rows.add(RowChange.staffOf((Staff) p));
+            
+            rows.add(RowChange.roleOf(p));
+        }
+        
+        for (int i = 0; i < booksInLibrary.size(); i++)
+            rows.add(RowChange.of(booksInLibrary.get(i)));
+        
+        for (int i = 0; i < loans.size(); i++)
+        {
+            rows.add(RowChange.of(loans.get(i)));
+            
+            if (loans.get(i).getReceiver() == null)
+                rows.add(RowChange.borrowed(loans.get(i)));
+        }
+        
+        for (int i = 0; i < booksInLibrary.size(); i++)
+        {
+            List<HoldRequest> hrs = booksInLibrary.get(i).getHoldRequests();
+            
+            for (int j = 0; j < hrs.size(); j++)
+                rows.add(RowChange.of(hrs.get(j)));
+        }
+        
+        return rows;
+    }
+    
+    // Starting to reserve returned books for the borrowers who have requested them, writing their
+    // notifications to the outbox file
+    public boolean startHoldFulfilment(String outboxFile)
+    {
+        try {
+            fulfilment = new HoldFulfilment(this, outboxFile);
+            return true;
+        } catch (IOException e) {
+            System.out.println("\nCould not open the outbox " + outboxFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Reserving the books returned so far and stopping. Must not be called while holding the lock
+    // of the library, which the worker needs.
+    public void stopHoldFulfilment()
+    {
+        if (fulfilment != null)
+        {
+            fulfilment.close();
+            fulfilment = null;
+        }
+    }
+    
+    /*-------------------------------------------------------------*/
+    
+    
+    
+    // View Info of all Books in Library. Not possible when records are loaded on demand, as only
+    // some of the books are in memory.
+     public void viewAllBooks()
+    {
+        if (lazyCatalog != null)
+        {
+            System.out.println("\nAll books can't be listed while records are loaded on demand, search for them instead.");
+            return;
+        }
+        
+        final ArrayList<Book> books;
+        
+        synchronized (this)
+        {
+            books = new ArrayList<>(booksInLibrary);    // shown a page at a time without holding the lock
+        }
+        
+        if (!books.isEmpty())
+        { 
+            newReportWriter().show(new ReportWriter.Rows()
+            {
+                @Override
+                public int size()
+                {
+                    return books.size();
+                }
+                
+                @Override
+                public void header(StringBuilder sb, boolean machine)
+                {
+                    if (machine)
+                        sb.append("NO\tID\tTITLE\tAUTHOR\tSUBJECT\tIS_ISSUED\n");
+                    else
+                    {
+                        sb.append("\nBooks are: \n");
+                        sb.append("------------------------------------------------------------------------------\n");            
+                        sb.append("No.\t\tTitle\t\t\tAuthor\t\t\tSubject\n");
+                        sb.append("------------------------------------------------------------------------------\n");
+                    }
+                }
+                
+                @Override
+                public void row(int i, StringBuilder sb, boolean machine)
+                {
+                    Book b = books.get(i);
+                    
+                    if (machine)
+                        sb.append(i).append('\t').append(b.getID()).append('\t').append(b.getTitle()).append('\t').append(b.getAuthor())
+                          .append('\t').append(b.getSubject()).append('\t').append(b.getIssuedStatus());
+                    else
+                        sb.append(i).append("-\t\t").append(b.getTitle()).append("\t\t\t").append(b.getAuthor()).append("\t\t\t").append(b.getSubject()).append('\n');
+                }
+            });
+        }
         else
-        {
-            System.out.println("\nSorry. No Books were found related to your query.");
-            return null;
-        }
+            System.out.println("\nCurrently, Library has no books.");                
     }
     
-    
-    
-    // View Info of all Books in Library
-     public void viewAllBooks()
+    // Report writer using the library's report settings
+    public ReportWriter newReportWriter()
     {
-        if (!booksInLibrary.isEmpty())
-        { 
-            System.out.println("\nBooks are: ");
-            
-            System.out.println("------------------------------------------------------------------------------");            
-            System.out.println("No.\t\tTitle\t\t\tAuthor\t\t\tSubject");
-            System.out.println("------------------------------------------------------------------------------");
-            
-            for (int i = 0; i < booksInLibrary.size(); i++)
-            {                      
-                System.out.print(i + "-" + "\t\t");
-                booksInLibrary.get(i).printInfo();
-                System.out.print("\n");
-            }
-        }
-        else
-            System.out.println("\nCurrently, Library has no books.");                
+        return new ReportWriter(report_page_size, machine_readable_reports);
     }
 
      
     //Computes total fine for all loans of a borrower
     public double computeFine2(Borrower borrower)
     {
-        System.out.println("---------------------------------------------------------------------------------------------------------------------------------------------------------------------");            
-        System.out.println("No.\t\tBook's Title\t\tBorrower's Name\t\t\tIssued Date\t\t\tReturned Date\t\t\t\tFine(Rs)");
-        System.out.println("-------------------------------------------------------------------------------------------------------------------------------------------------------------------");        
-        
         double totalFine = 0;        
-        double per_loan_fine = 0;
         
-        for (int i = 0; i < loans.size(); i++)
+        // positions of this borrower's loans in the history, and their fines, found while holding the
+        // lock; the report is shown without it
+        int[] found = new int[16];
+        final ArrayList<Loan> itsLoans = new ArrayList<>();
+        final ArrayList<Double> fines = new ArrayList<>();
+        
+        synchronized (this)
         {
-            Loan l = loans.get(i);
+            borrower.loadRecords();     // its loans may still be in the database only
             
-            if ((l.getBorrower() == borrower))
+            for (int i = 0; i < loans.size(); i++)
             {
-                per_loan_fine = l.computeFine1();
-                System.out.print(i + "-" + "\t\t" + loans.get(i).getBook().getTitle() + "\t\t\t" + loans.get(i).getBorrower().getName() + "\t\t" + loans.get(i).getIssuedDate() +  "\t\t\t" + loans.get(i).getReturnDate() + "\t\t\t\t" + per_loan_fine  + "\n");                
+                Loan l = loans.get(i);
                 
-                totalFine += per_loan_fine;
-            }            
+                if ((l.getBorrower() == borrower))
+                {
+                    if (itsLoans.size() == found.length)
+                        found = Arrays.copyOf(found, found.length * 2);
+                    
+                    found[itsLoans.size()] = i;
+                    itsLoans.add(l);
+                    double fine = l.computeFine1();
+                    fines.add(fine);
+                    totalFine += fine;
+                }            
+            }
         }
         
+        final int[] positions = found;
+        final int n = itsLoans.size();
+        
+        new ReportWriter(0, machine_readable_reports).show(new ReportWriter.Rows()
+        {
+            @Override
+            public int size()
+            {
+                return n;
+            }
+            
+            @Override
+            public void header(StringBuilder sb, boolean machine)
+            {
+                if (machine)
+                    sb.append("NO\tTITLE\tBORROWER\tISS_DATE\tRET_DATE\tFINE\n");
+                else
+                {
+                    sb.append("---------------------------------------------------------------------------------------------------------------------------------------------------------------------\n");            
+                    sb.append("No.\t\tBook's Title\t\tBorrower's Name\t\t\tIssued Date\t\t\tReturned Date\t\t\t\tFine(Rs)\n");
+                    sb.append("-------------------------------------------------------------------------------------------------------------------------------------------------------------------\n");        
+                }
+            }
+            
+            @Override
+            public void row(int i, StringBuilder sb, boolean machine)
+            {
+                Loan l = itsLoans.get(i);
+                
+                if (machine)
+                    sb.append(positions[i]).append('\t').append(l.getBook().getTitle()).append('\t').append(l.getBorrower().getName()).append('\t')
+                      .append(l.getIssuedDate()).append('\t').append(l.getReturnDate()).append('\t').append(fines.get(i));
+                else
+                    sb.append(positions[i]).append("-\t\t").append(l.getBook().getTitle()).append("\t\t\t").append(l.getBorrower().getName()).append("\t\t")
+                      .append(l.getIssuedDate()).append("\t\t\t").append(l.getReturnDate()).append("\t\t\t\t").append(fines.get(i));
+            }
+        });
+        
         return totalFine;
     }
     
@@ -468,7 +1804,11 @@ public class Library {
             }
             
             Clerk c = new Clerk(-1,n,address,phone,salary,-1);            
-            addClerk(c);
+            
+            synchronized (this)
+            {
+                addClerk(c);
+            }
             
             System.out.println("\nClerk with name " + n + " created successfully.");
             System.out.println("\nYour ID is : " + c.getID());
@@ -489,7 +1829,14 @@ public class Library {
             }
             
             Librarian l = new Librarian(-1,n,address,phone,salary,-1); 
-            if(addLibrarian(l))
+            boolean added;
+            
+            synchronized (this)
+            {
+                added = addLibrarian(l);
+            }
+            
+            if(added)
             {
                 System.out.println("\nLibrarian with name " + n + " created successfully.");
                 System.out.println("\nYour ID is : " + l.getID());
@@ -501,7 +1848,11 @@ public class Library {
         else
         {
             Borrower b = new Borrower(-1,n,address,phone);
-            addBorrower(b);            
+            
+            synchronized (this)
+            {
+                addBorrower(b);
+            }
             System.out.println("\nBorrower with name " + n + " created successfully.");
 
             System.out.println("\nYour ID is : " + b.getID());
@@ -515,7 +1866,10 @@ public class Library {
     {
         Book b = new Book(-1,title,subject,author,false);
         
-        addBookinLibrary(b);
+        synchronized (this)
+        {
+            addBookinLibrary(b);
+        }
         
         System.out.println("\nBook with Title " + b.getTitle() + " is successfully created.");
     }
@@ -543,22 +1897,27 @@ public class Library {
         System.out.println("Enter Password: ");
         password = input.next();
         
-        for (int i = 0; i < persons.size(); i++)
+        Person p;
+        
+        synchronized (this)
         {
-            if (persons.get(i).getID() == id && persons.get(i).getPassword().equals(password))
+            p = findPerson(id);
+            
+            if (p != null && p.getPassword().equals(password))
             {
-                System.out.println("\nLogin Successful");
-                return persons.get(i);
+                if (lazyCatalog != null)
+                    lazyCatalog.pin(p);     // kept in memory while logged in
             }
+            else if (librarian != null && librarian.getID() == id && librarian.getPassword().equals(password))
+                p = librarian;
+            else
+                p = null;
         }
         
-        if(librarian!=null)
+        if (p != null)
         {
-            if (librarian.getID() == id && librarian.getPassword().equals(password))
-            {
-                System.out.println("\nLogin Successful");
-                return librarian;
-            }
+            System.out.println("\nLogin Successful");
+            return p;
         }
         
         System.out.println("\nSorry! Wrong ID or Password");        
@@ -566,35 +1925,187 @@ public class Library {
     }
     
     
-    // History when a Book was Issued and was Returned!
+    // History when a Book was Issued and was Returned! Not possible when records are loaded on demand,
+    // as only the loans of the borrowers in memory are.
     public void viewHistory()
     {
-        if (!loans.isEmpty())
+        if (lazyCatalog != null)
+        {
+            System.out.println("\nThe history can't be viewed while records are loaded on demand.");
+            return;
+        }
+        
+        final ArrayList<Loan> history;
+        
+        synchronized (this)
+        {
+            completeLoading();
+            history = new ArrayList<>(loans);       // shown a page at a time without holding the lock
+        }
+        
+        if (!history.isEmpty())
         { 
-            System.out.println("\nIssued Books are: ");
-            
-            System.out.println("------------------------------------------------------------------------------------------------------------------------------------------------------");            
-            System.out.println("No.\tBook's Title\tBorrower's Name\t  Issuer's Name\t\tIssued Date\t\t\tReceiver's Name\t\tReturned Date\t\tFine Paid");
-            System.out.println("------------------------------------------------------------------------------------------------------------------------------------------------------");
-            
-            for (int i = 0; i < loans.size(); i++)
-            {    
-                if(loans.get(i).getIssuer()!=null)
-                    System.out.print(i + "-" + "\t" + loans.get(i).getBook().getTitle() + "\t\t\t" + loans.get(i).getBorrower().getName() + "\t\t" + loans.get(i).getIssuer().getName() + "\t    " + loans.get(i).getIssuedDate());
+            newReportWriter().show(new ReportWriter.Rows()
+            {
+                @Override
+                public int size()
+                {
+                    return history.size();
+                }
                 
-                if (loans.get(i).getReceiver() != null)
+                @Override
+                public void header(StringBuilder sb, boolean machine)
                 {
-                    System.out.print("\t" + loans.get(i).getReceiver().getName() + "\t\t" + loans.get(i).getReturnDate() +"\t   " + loans.get(i).getFineStatus() + "\n");
+                    if (machine)
+                        sb.append("NO\tTITLE\tBORROWER\tISSUER\tISS_DATE\tRECEIVER\tRET_DATE\tFINE_PAID\n");
+                    else
+                    {
+                        sb.append("\nIssued Books are: \n");
+                        sb.append("------------------------------------------------------------------------------------------------------------------------------------------------------\n");            
+                        sb.append("No.\tBook's Title\tBorrower's Name\t  Issuer's Name\t\tIssued Date\t\t\tReceiver's Name\t\tReturned Date\t\tFine Paid\n");
+                        sb.append("------------------------------------------------------------------------------------------------------------------------------------------------------\n");
+                    }
                 }
-                else
-                    System.out.print("\t\t" + "--" + "\t\t\t" + "--" + "\t\t" + "--" + "\n");
-            }
+                
+                @Override
+                public void row(int i, StringBuilder sb, boolean machine)
+                {
+                    Loan l = history.get(i);
+                    
+                    if (machine)
+                    {
+                        sb.append(i).append('\t').append(l.getBook().getTitle()).append('\t').append(l.getBorrower().getName()).append('\t')
+                          .append(l.getIssuer() != null ? l.getIssuer().getName() : "").append('\t').append(l.getIssuedDate()).append('\t');
+                        
+                        if (l.getReceiver() != null)
+                            sb.append(l.getReceiver().getName()).append('\t').append(l.getReturnDate()).append('\t').append(l.getFineStatus());
+                        else
+                            sb.append("\t\t");
+                        return;
+                    }
+                    
+                    if (l.getIssuer() != null)
+                        sb.append(i).append("-\t").append(l.getBook().getTitle()).append("\t\t\t").append(l.getBorrower().getName()).append("\t\t")
+                          .append(l.getIssuer().getName()).append("\t    ").append(l.getIssuedDate());
+                    
+                    if (l.getReceiver() != null)
+                        sb.append('\t').append(l.getReceiver().getName()).append("\t\t").append(l.getReturnDate()).append("\t   ").append(l.getFineStatus());
+                    else
+                        sb.append("\t\t--\t\t\t--\t\t--");
+                }
+            });
         }
         else
             System.out.println("\nNo issued books.");                        
     }
     
     
+    // Browsing the books in shelf order by title, author or subject (Library.BY_TITLE, BY_AUTHOR or
+    // BY_SUBJECT), from the given text on. Null when records are loaded on demand, as only the books
+    // in memory would be browsed.
+    public BrowseIndex.Cursor browse(int field, String from, int pageSize)
+    {
+        if (lazyCatalog != null)
+            return null;
+        
+        BrowseIndex index = field == BY_TITLE ? titleOrder : field == BY_AUTHOR ? authorOrder : subjectOrder;
+        return index.seek(from, pageSize);
+    }
+    
+    
+    // Printing statistics of the library's caches and indexes
+    public synchronized void viewStatistics()     // nothing is asked, so the numbers are printed together
+    {
+        System.out.println("\nStatistics: \n");
+        System.out.println("Books: " + booksInLibrary.size() + ", Persons: " + persons.size() + ", Loans: " + loans.size());
+        
+        searchCache.printStatistics();
+        borrowerDirectory.printStatistics();
+        titleOrder.printStatistics();
+        authorOrder.printStatistics();
+        subjectOrder.printStatistics();
+        System.out.println("Availability: " + availability.issued().cardinality() + " issued, " + availability.onHold().cardinality() + " with hold requests, "
+                + availability.available().cardinality() + " available");
+        
+        if (persistence != null)
+            persistence.printStatistics();
+        
+        if (lazyCatalog != null)
+            lazyCatalog.printStatistics();
+        
+        if (fulfilment != null)
+            fulfilment.printStatistics();
+        
+        if (replication != null)
+            replication.printStatistics();
+        
+        if (checkpoints != null)
+            checkpoints.printStatistics();
+        
+        if (stagedLoader != null)
+            stagedLoader.printStatistics();
+        
+        ids.printStatistics();
+        Book.getRecords().printStatistics();
+    }
+    
+    
+    // Exporting all records to files for auditing. Not possible when records are loaded on demand.
+    public void exportRecords()
+    {
+        if (lazyCatalog != null)
+        {
+            System.out.println("\nThe records can't be exported while they are loaded on demand.");
+            return;
+        }
+        
+        Scanner sc = new Scanner(System.in);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        
+        String directory = "";
+        
+        System.out.println("\nEnter Directory for the Export: ");
+        try {
+            directory = reader.readLine();
+        } catch (IOException ex) {
+            Logger.getLogger(Library.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        String choice;
+        
+        while (true)
+        {
+            System.out.println("\nEnter either '1' or '2' for CSV or JSON Lines format respectively: ");
+            choice = sc.next();
+            
+            if (choice.equals("1") || choice.equals("2"))
+                break;
+            else
+                System.out.println("\nWrong Input!");
+        }
+        
+        int format = choice.equals("1") ? LibraryExport.CSV : LibraryExport.JSON_LINES;
+        
+        System.out.println("\nCompress the files with gzip? (y/n)");
+        boolean gzip = sc.next().equals("y");
+        
+        LibraryExport export = new LibraryExport(this, format, gzip);
+        
+        long start = System.nanoTime();
+        
+        try {
+            export.exportAll(directory);        // copies the rows holding the lock, writes them after
+        } catch (IOException ex) {
+            System.out.println("\nExport failed: " + ex.getMessage());
+            return;
+        }
+        
+        long millis = (System.nanoTime() - start) / 1000000;
+        
+        System.out.println("\n" + export.getRowsWritten() + " records (" + export.getBytesWritten() + " bytes) exported to " + directory + " in " + millis + " ms.");
+    }
+    
+    
     
     
     
@@ -610,7 +2121,7 @@ public class Library {
     {        
         try
         {
-            String host = "jdbc:derby://localhost:1527/LMS";
+            String host = database_url;
             String uName = "haris";
             String uPass= "123";
             Connection con = DriverManager.getConnection( host, uName, uPass );
@@ -624,7 +2135,79 @@ public class Library {
     }
     
     
-    // Loading all info in code via Database.
+    // Adding the search keys of the books, the indexes used by the lazy catalog and by lookups of loans and
+    // hold requests, the table of checkpoints and the ID sequences, if the database doesn't have them yet.
+    // The statements after the first of a step are run only when it has made something new.
+    public void migrateSchema(Connection con)
+    {
+        // The title, author and subject of each book as normalize gives them, which SQL can't compute
+        try {
+            Statement stmt = con.createStatement();
+            
+            stmt.executeUpdate("ALTER TABLE LIBRARY.BOOK ADD COLUMN TITLE_KEY VARCHAR(30)");
+            stmt.executeUpdate("ALTER TABLE LIBRARY.BOOK ADD COLUMN AUTHOR_KEY VARCHAR(20)");
+            stmt.executeUpdate("ALTER TABLE LIBRARY.BOOK ADD COLUMN SUBJECT_KEY VARCHAR(20)");
+            
+            ResultSet rs = stmt.executeQuery("SELECT ID,TITLE,AUTHOR,SUBJECT FROM LIBRARY.BOOK");
+            PreparedStatement update = con.prepareStatement("UPDATE LIBRARY.BOOK SET TITLE_KEY = ?, AUTHOR_KEY = ?, SUBJECT_KEY = ? WHERE ID = ?");
+            
+            while (rs.next())
+            {
+                update.setString(1, normalize(rs.getString("TITLE")));
+                update.setString(2, normalize(rs.getString("AUTHOR")));
+                update.setString(3, normalize(rs.getString("SUBJECT")));
+                update.setInt(4, rs.getInt("ID"));
+                update.addBatch();
+            }
+            
+            rs.close();
+            update.executeBatch();
+            update.close();
+            stmt.close();
+        } catch (SQLException e) {
+            if (!"X0Y32".equals(e.getSQLState()))     // they exist already
+                System.out.println("\nCould not update the schema: " + e.getMessage());
+        }
+        
+        String[][] steps = {
+            { "CREATE INDEX LIBRARY.LOAN_BORROWER ON LIBRARY.LOAN (BORROWER)" },
+            { "CREATE INDEX LIBRARY.LOAN_BOOK ON LIBRARY.LOAN (BOOK)" },
+            { "CREATE INDEX LIBRARY.ON_HOLD_BOOK_BOOK ON LIBRARY.ON_HOLD_BOOK (BOOK)" },
+            { "CREATE INDEX LIBRARY.BOOK_TITLE_KEY ON LIBRARY.BOOK (TITLE_KEY)" },
+            { "CREATE INDEX LIBRARY.BOOK_SUBJECT_KEY ON LIBRARY.BOOK (SUBJECT_KEY)" },
+            { "CREATE INDEX LIBRARY.BOOK_AUTHOR_KEY ON LIBRARY.BOOK (AUTHOR_KEY)" },
+            
+            // The one row of the checkpoint table
+            { "CREATE TABLE LIBRARY.CHECKPOINT (RUN_ID BIGINT NOT NULL, SEQ BIGINT NOT NULL)",
+              "INSERT INTO LIBRARY.CHECKPOINT VALUES (0, 0)" },
+            
+            // The first ID not given yet of each kind of record: the only time the tables are scanned for it
+            { "CREATE TABLE LIBRARY.ID_SEQUENCE (NAME VARCHAR(16) NOT NULL PRIMARY KEY, NEXT_ID INTEGER NOT NULL)",
+              "INSERT INTO LIBRARY.ID_SEQUENCE SELECT 'BOOK', COALESCE(MAX(ID), 0) + 1 FROM LIBRARY.BOOK",
+              "INSERT INTO LIBRARY.ID_SEQUENCE SELECT 'PERSON', COALESCE(MAX(ID), 0) + 1 FROM LIBRARY.PERSON",
+              "INSERT INTO LIBRARY.ID_SEQUENCE SELECT 'LOAN', COALESCE(MAX(L_ID), 0) + 1 FROM LIBRARY.LOAN",
+              "INSERT INTO LIBRARY.ID_SEQUENCE SELECT 'HOLD_REQUEST', COALESCE(MAX(REQ_ID), 0) + 1 FROM LIBRARY.ON_HOLD_BOOK" }
+        };
+        
+        for (int i = 0; i < steps.length; i++)
+        {
+            try {
+                Statement stmt = con.createStatement();
+                
+                for (int j = 0; j < steps[i].length; j++)
+                    stmt.executeUpdate(steps[i][j]);
+                
+                stmt.close();
+            } catch (SQLException e) {
+                if (!"X0Y32".equals(e.getSQLState()))     // it exists already
+                    System.out.println("\nCould not update the schema: " + e.getMessage());
+            }
+        }
+    }
+    
+    
+    // Loading all info in code via Database. The persons and books are loaded here, the loans and hold
+    // requests by the staged loader once startStagedLoading is called.
     public void populateLibrary(Connection con) throws SQLException, IOException
     {       
             Library lib = this;
@@ -640,8 +2223,6 @@ public class Library {
             }
             else
             {
-                int maxID = 0;
-                
                 do
                 {
                     if(rs.getString("TITLE") !=null && rs.getString("AUTHOR")!=null && rs.getString("SUBJECT")!=null && rs.getInt("ID")!=0)
@@ -653,14 +2234,8 @@ public class Library {
                         boolean issue=rs.getBoolean("IS_ISSUED");
                         Book b = new Book(id,title,subject,author,issue);
                         addBookinLibrary(b);
-                        
-                        if (maxID < id)
-                            maxID = id;
                     }
                 }while(rs.next());
-                
-                // setting Book Count
-                Book.setIDCount(maxID);              
             }
             
             /* ----Populating Clerks----*/
@@ -743,234 +2318,39 @@ public class Library {
                                 
             }
             
-            /*----Populating Loan----*/
-            
-            SQL="SELECT * FROM LOAN";
-            
-            rs=stmt.executeQuery(SQL);
-            if(!rs.next())
-            {
-               System.out.println("No Books Issued Yet!"); 
-            }
-            else
-            {
-                do
-                    {
-                        int borid=rs.getInt("BORROWER");
-                        int bokid=rs.getInt("BOOK");
-                        int iid=rs.getInt("ISSUER");
-                        Integer rid=(Integer)rs.getObject("RECEIVER");
-                        int rd=0;
-                        Date rdate;
-                        
-                        Date idate=new Date (rs.getTimestamp("ISS_DATE").getTime());
-                        
-                        if(rid!=null)    // if there is a receiver 
-                        {
-                            rdate=new Date (rs.getTimestamp("RET_DATE").getTime()); 
-                            rd=(int)rid;
-                        }
-                        else
-                        {
-                            rdate=null;
-                        }
-                        
-                        boolean fineStatus = rs.getBoolean("FINE_PAID");
-                        
-                        boolean set=true;
-                        
-                        Borrower bb = null;
-                       
-                        
-                        for(int i=0;i<getPersons().size() && set;i++)
-                        {
-                            if(getPersons().get(i).getID()==borid)
-                            {
-                                set=false;
-                                bb=(Borrower)(getPersons().get(i));
-                            }
-                        }
-                        
-                        set =true;
-                        Staff s[]=new Staff[2];
-                        
-                        if(iid==getLibrarian().getID())
-                        {
-                            s[0]=getLibrarian();
-                        }
-                            
-                        else
-                        {                                
-                            for(int k=0;k<getPersons().size() && set;k++)
-                            {
-                                if(getPersons().get(k).getID()==iid && getPersons().get(k).getClass().getSimpleName().equals("Clerk"))
-                                {
-                                    set=false;
-                                    s[0]=(Clerk)(getPersons().get(k));
-                                }
-                            }
-                        }       
-                        
-                        set=true;
-                        // If not returned yet...
-                        if(rid==null)
-                        {
-                            s[1]=null;  // no reciever 
-                            rdate=null;      
-                        }
-                        else
-                        {
-                            if(rd==getLibrarian().getID())
-                                s[1]=getLibrarian();
-
-                            else
-                            {    //System.out.println("ff");
-                                 for(int k=0;k<getPersons().size() && set;k++)
-                                {
-                                    if(getPersons().get(k).getID()==rd && getPersons().get(k).getClass().getSimpleName().equals("Clerk"))
-                                    {
-                                        set=false;
-                                        s[1]=(Clerk)(getPersons().get(k));
-                                    }
-                                }
-                            }     
-                        }
-                        
-                        set=true;
-                        
-                        ArrayList<Book> books = getBooks();
-                        
-                        for(int k=0;k<books.size() && set;k++)
-                        {
-                            if(books.get(k).getID()==bokid)
-                            {
-                              set=false;   
-                              Loan l = new Loan(bb,books.get(k),s[0],s[1],idate,rdate,fineStatus);
-                              loans.add(l);
-                            }
-                        }
-                        
-                    }while(rs.next());
-            }
-            
-            /*----Populationg Hold Books----*/
+            ArrayList<Person> persons = lib.getPersons();
             
-            SQL="SELECT * FROM ON_HOLD_BOOK";
+            stmt.close();
             
-            rs=stmt.executeQuery(SQL);
-            if(!rs.next())
-            {
-               System.out.println("No Books on Hold Yet!"); 
-            }
-            else
-            {
-                do
-                    {
-                        int borid=rs.getInt("BORROWER");
-                        int bokid=rs.getInt("BOOK");
-                        Date off=new Date (rs.getDate("REQ_DATE").getTime());
-                        
-                        boolean set=true;
-                        Borrower bb =null;
-                        
-                        ArrayList<Person> persons = lib.getPersons();
-                        
-                        for(int i=0;i<persons.size() && set;i++)
-                        {
-                            if(persons.get(i).getID()==borid)
-                            {
-                                set=false;
-                                bb=(Borrower)(persons.get(i));
-                            }
-                        }
-                                              
-                        set=true;
-                        
-                        ArrayList<Book> books = lib.getBooks();
-                        
-                        for(int i=0;i<books.size() && set;i++)
-                        {
-                            if(books.get(i).getID()==bokid)
-                            {
-                              set=false;   
-                              HoldRequest hbook= new HoldRequest(bb,books.get(i),off);
-                              books.get(i).addHoldRequest(hbook);
-                              bb.addHoldRequest(hbook);
-                            }
-                        }
-                        }while(rs.next());
-            }
+            /*----Loans and Hold Requests: loaded in the background once the library is open----*/
             
-            /* --- Populating Borrower's Remaining Info----*/
+            // Every record in the database has an ID below the next one to be given
+            int maxLoan = peekID(IdAllocator.LOAN) - 1;
+            int maxHold = peekID(IdAllocator.HOLD_REQUEST) - 1;
             
-            // Borrowed Books
-            SQL="SELECT ID,BOOK FROM PERSON INNER JOIN BORROWER ON ID=B_ID INNER JOIN BORROWED_BOOK ON B_ID=BORROWER ";
+            for (int i = 0; i < booksInLibrary.size(); i++)
+                booksInLibrary.get(i).setHoldsPending(true);
             
-            rs=stmt.executeQuery(SQL);
-                      
-            if(!rs.next())
-            {
-               System.out.println("No Borrower has borrowed yet from Library"); 
-            }
-            else
+            for (int i = 0; i < persons.size(); i++)
             {
-                
-                do
-                    {
-                        int id=rs.getInt("ID");      // borrower
-                        int bid=rs.getInt("BOOK");   // book
-                        
-                        Borrower bb=null;
-                        boolean set=true;
-                        boolean okay=true;
-                        
-                        for(int i=0;i<lib.getPersons().size() && set;i++)
-                        {
-                            if(lib.getPersons().get(i).getClass().getSimpleName().equals("Borrower"))
-                            {
-                                if(lib.getPersons().get(i).getID()==id)
-                                {
-                                   set =false;
-                                    bb=(Borrower)(lib.getPersons().get(i));
-                                }
-                            }
-                        }
-                        
-                        set=true;
-                        
-                        ArrayList<Loan> books = loans;
-                        
-                        for(int i=0;i<books.size() && set;i++)
-                        {
-                            if(books.get(i).getBook().getID()==bid &&books.get(i).getReceiver()==null )
-                            {
-                              set=false;   
-                              Loan bBook= new Loan(bb,books.get(i).getBook(),books.get(i).getIssuer(),null,books.get(i).getIssuedDate(),null,books.get(i).getFineStatus());
-                              bb.addBorrowedBook(bBook);
-                            }
-                        }
-                                 
-                    }while(rs.next());               
+                if (persons.get(i) instanceof Borrower)
+                    ((Borrower) persons.get(i)).setRecordsPending(true);
             }
-                      
-            ArrayList<Person> persons = lib.getPersons();
             
-            /* Setting Person ID Count */
-            int max=0;
-            
-            for(int i=0;i<persons.size();i++)
-            {
-                if (max < persons.get(i).getID())
-                    max=persons.get(i).getID();
-            }
-
-            Person.setIDCount(max);  
+            stagedLoader = new StagedLoader(this, con, maxLoan, maxHold);
     }
     
     
-    // Filling Changes back to Database
-    public void fillItBack(Connection con) throws SQLException,SQLIntegrityConstraintViolationException
+    // Filling Changes back to Database. Returns false if they could not be written.
+    public boolean fillItBack(Connection con) throws SQLException,SQLIntegrityConstraintViolationException
     {
+            // With the lazy catalog only some records are in memory, rewriting the tables would lose the others
+            if (lazyCatalog != null || !completeLoading())
+            {
+                System.out.println("\nSome changes could not be saved.");
+                return false;
+            }
+            
             /*-----------Loan Table Cleared------------*/
             
             String template = "DELETE FROM LIBRARY.LOAN";
@@ -1115,7 +2495,7 @@ public class Library {
         /*Filling Book's Table*/
         for(int i=0;i<books.size();i++)
         {
-            template = "INSERT INTO LIBRARY.BOOK (ID,TITLE,AUTHOR,SUBJECT,IS_ISSUED) values (?,?,?,?,?)";
+            template = "INSERT INTO LIBRARY.BOOK (ID,TITLE,AUTHOR,SUBJECT,IS_ISSUED,TITLE_KEY,AUTHOR_KEY,SUBJECT_KEY) values (?,?,?,?,?,?,?,?)";
             PreparedStatement stmt = con.prepareStatement(template);
             
             stmt.setInt(1,books.get(i).getID());
@@ -1123,6 +2503,9 @@ public class Library {
             stmt.setString(3, books.get(i).getAuthor());
             stmt.setString(4, books.get(i).getSubject());
             stmt.setBoolean(5, books.get(i).getIssuedStatus());
+            stmt.setString(6, normalize(books.get(i).getTitle()));
+            stmt.setString(7, normalize(books.get(i).getAuthor()));
+            stmt.setString(8, normalize(books.get(i).getSubject()));
             stmt.executeUpdate();
             
         }
@@ -1133,7 +2516,7 @@ public class Library {
             template = "INSERT INTO LIBRARY.LOAN(L_ID,BORROWER,BOOK,ISSUER,ISS_DATE,RECEIVER,RET_DATE,FINE_PAID) values (?,?,?,?,?,?,?,?)";
             PreparedStatement stmt = con.prepareStatement(template);
             
-            stmt.setInt(1,i+1);
+            stmt.setInt(1,loans.get(i).getID());
             stmt.setInt(2,loans.get(i).getBorrower().getID());
             stmt.setInt(3,loans.get(i).getBook().getID());
             stmt.setInt(4,loans.get(i).getIssuer().getID());
@@ -1156,7 +2539,6 @@ public class Library {
        
         /* Filling On_Hold_ Table*/
         
-        int x=1;
         for(int i=0;i<lib.getBooks().size();i++)
         {
             for(int j=0;j<lib.getBooks().get(i).getHoldRequests().size();j++)
@@ -1164,58 +2546,32 @@ public class Library {
             template = "INSERT INTO LIBRARY.ON_HOLD_BOOK(REQ_ID,BOOK,BORROWER,REQ_DATE) values (?,?,?,?)";
             PreparedStatement stmt = con.prepareStatement(template);
             
-            stmt.setInt(1,x);
+            stmt.setInt(1,lib.getBooks().get(i).getHoldRequests().get(j).getID());
             stmt.setInt(3,lib.getBooks().get(i).getHoldRequests().get(j).getBorrower().getID());
             stmt.setInt(2,lib.getBooks().get(i).getHoldRequests().get(j).getBook().getID());
             stmt.setDate(4,new java.sql.Date(lib.getBooks().get(i).getHoldRequests().get(j).getRequestDate().getTime()));
                     
             stmt.executeUpdate(); 
-            x++;
             
             }
         }
-        /*for(int i=0;i<lib.getBooks().size();i++)
-        {
-            for(int j=0;j<lib.getBooks().get(i).getHoldRequests().size();j++)
-            {
-            template = "INSERT INTO LIBRARY.ON_HOLD_BOOK(REQ_ID,BOOK,BORROWER,REQ_DATE) values (?,?,?,?)";
-            PreparedStatement stmt = con.prepareStatement(template);
-            
-            stmt.setInt(1,i+1);
-            stmt.setInt(3,lib.getBooks().get(i).getHoldRequests().get(j).getBorrower().getID());
-            stmt.setInt(2,lib.getBooks().get(i).getHoldRequests().get(j).getBook().getID());
-            stmt.setDate(4,new java.sql.Date(lib.getBooks().get(i).getHoldRequests().get(j).getRequestDate().getTime()));
-                    
-            stmt.executeUpdate(); 
-            }
-        }*/
             
         /* Filling Borrowed Book Table*/
         for(int i=0;i<lib.getBooks().size();i++)
           {
-              if(lib.getBooks().get(i).getIssuedStatus()==true)
+              Loan l = loadedOpenLoan(lib.getBooks().get(i));
+              
+              if(lib.getBooks().get(i).getIssuedStatus()==true && l!=null)
               {
-                  boolean set=true;
-                  for(int j=0;j<loans.size() && set ;j++)
-                  {
-                      if(lib.getBooks().get(i).getID()==loans.get(j).getBook().getID())
-                      {
-                          if(loans.get(j).getReceiver()==null)
-                          {
-                            template = "INSERT INTO LIBRARY.BORROWED_BOOK(BOOK,BORROWER) values (?,?)";
-                            PreparedStatement stmt = con.prepareStatement(template);
-                            stmt.setInt(1,loans.get(j).getBook().getID());
-                            stmt.setInt(2,loans.get(j).getBorrower().getID());
-                  
-                            stmt.executeUpdate();
-                            set=false;
-                          }
-                      }
-                      
-                  }
-                  
+                  template = "INSERT INTO LIBRARY.BORROWED_BOOK(BOOK,BORROWER) values (?,?)";
+                  PreparedStatement stmt = con.prepareStatement(template);
+                  stmt.setInt(1,l.getBook().getID());
+                  stmt.setInt(2,l.getBorrower().getID());
+        
+                  stmt.executeUpdate();
               }
           }   
+          return true;
     } // Filling Done!  
     
     
@@ -0,0 +1,46 @@
+package LMS;
+
+import java.util.Date;
+
+// The time by which loans, fines and hold requests are dated. It is the system's time, unless it is
+// set: it then stands still and moves only when it is set again or advanced, e.g. by a simulation
+// (see CirculationSimulation) running months of circulation in seconds.
+public class LibraryClock
+{
+    private volatile long virtualTime = -1;        // milliseconds, -1 while on the system's time
+
+    public long millis()
+    {
+        long t = virtualTime;
+        return t < 0 ? System.currentTimeMillis() : t;
+    }
+
+    public Date now()
+    {
+        return new Date(millis());
+    }
+
+    // Stopping the clock at a time
+    public void setTime(long millis)
+    {
+        virtualTime = millis;
+    }
+
+    // Moving a stopped clock on
+    public void advance(long millis)
+    {
+        setTime(millis() + millis);
+    }
+
+    // Going back to the system's time
+    public void useSystemTime()
+    {
+        virtualTime = -1;
+    }
+
+    public boolean isVirtual()
+    {
+        return virtualTime >= 0;
+    }
+
+}   // LibraryClock Class Closed
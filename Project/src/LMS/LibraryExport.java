@@ -0,0 +1,341 @@
+package LMS;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+// Exports the records of the library (catalog, borrowers, active loans, hold requests and the full
+// loan history) to CSV or JSON Lines files. The values of every row are copied while the library is
+// locked, so that the five files describe it at one moment; the rows are then formatted into one
+// reusable StringBuilder and streamed to the file channels with circulation going on.
+public class LibraryExport
+{
+    public static final int CSV = 1;
+    public static final int JSON_LINES = 2;
+
+    private static final String[] BOOK_COLUMNS = { "ID", "TITLE", "AUTHOR", "SUBJECT", "IS_ISSUED" };
+    private static final String[] BORROWER_COLUMNS = { "ID", "NAME", "ADDRESS", "PHONE_NO", "BORROWED", "ON_HOLD" };
+    private static final String[] LOAN_COLUMNS = { "NO", "BOOK", "TITLE", "BORROWER", "ISSUER", "ISS_DATE", "RECEIVER", "RET_DATE", "FINE_PAID" };
+    private static final String[] HOLD_COLUMNS = { "BOOK", "TITLE", "POSITION", "BORROWER", "REQ_DATE" };
+
+    private final Library lib;
+    private final int format;
+    private final boolean gzip;
+
+    // The values of the rows of each file, as copied from the library
+    private final ArrayList<Object[]> books = new ArrayList<>();
+    private final ArrayList<Object[]> borrowers = new ArrayList<>();
+    private final ArrayList<Object[]> activeLoans = new ArrayList<>();
+    private final ArrayList<Object[]> holds = new ArrayList<>();
+    private final ArrayList<Object[]> history = new ArrayList<>();
+
+    private final StringBuilder row = new StringBuilder(256);
+    private long rowsWritten;
+    private long bytesWritten;
+
+    public LibraryExport(Library l, int f, boolean gz)     // para cons.
+    {
+        lib = l;
+        format = f;
+        gzip = gz;
+    }
+
+    /*------------ Exporting all records in a directory ------------*/
+    public void exportAll(String directory) throws IOException
+    {
+        Path dir = Paths.get(directory);
+        dir.toFile().mkdirs();
+
+        synchronized (lib)
+        {
+            lib.completeLoading();      // the loans still in the database only
+            snapshot();
+        }
+
+        write(dir, "books", BOOK_COLUMNS, books);
+        write(dir, "borrowers", BORROWER_COLUMNS, borrowers);
+        write(dir, "active_loans", LOAN_COLUMNS, activeLoans);
+        write(dir, "holds", HOLD_COLUMNS, holds);
+        write(dir, "history", LOAN_COLUMNS, history);
+    }
+
+    public long getRowsWritten()
+    {
+        return rowsWritten;
+    }
+
+    // Bytes of text written, before compression
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /*------------ Copying the rows, holding the library's lock ------------*/
+
+    private void snapshot()
+    {
+        for (Book b : lib.getBooks())
+        {
+            books.add(new Object[] { b.getID(), b.getTitle(), b.getAuthor(), b.getSubject(), b.getIssuedStatus() });
+
+            List<HoldRequest> hRequests = b.getHoldRequests();
+
+            for (int j = 0; j < hRequests.size(); j++)
+            {
+                HoldRequest hr = hRequests.get(j);
+                holds.add(new Object[] { b.getID(), b.getTitle(), j, hr.getBorrower().getID(), copy(hr.getRequestDate()) });
+            }
+        }
+
+        for (Person p : lib.getPersons())
+        {
+            if (!p.getClass().getSimpleName().equals("Borrower"))
+                continue;
+
+            Borrower b = (Borrower) p;
+
+            borrowers.add(new Object[] { b.getID(), b.getName(), b.getAddress(), b.getPhoneNumber(),
+                    b.getBorrowedBooks().size(), b.getOnHoldBooks().size() });
+        }
+
+        ArrayList<Loan> loans = lib.getLoans();
+
+        for (int i = 0; i < loans.size(); i++)
+        {
+            Loan l = loans.get(i);
+
+            Object[] values = { i + 1, l.getBook().getID(), l.getBook().getTitle(), l.getBorrower().getID(),
+                    id(l.getIssuer()), copy(l.getIssuedDate()), id(l.getReceiver()), copy(l.getReturnDate()),
+                    l.getFineStatus() };
+
+            // With the book not returned yet the loan is active as well
+            if (l.getReceiver() == null)
+                activeLoans.add(values);
+
+            history.add(values);
+        }
+    }
+
+    // Staff members are written by their ID
+    private static Integer id(Person p)
+    {
+        return p != null ? p.getID() : null;
+    }
+
+    private static Date copy(Date d)
+    {
+        return d != null ? new Date(d.getTime()) : null;
+    }
+
+    /*------------ Writing the rows of a file ------------*/
+
+    private void write(Path dir, String name, String[] columns, ArrayList<Object[]> rows) throws IOException
+    {
+        ChannelWriter out = open(dir, name);
+
+        try {
+            header(out, columns);
+
+            for (Object[] values : rows)
+            {
+                begin();
+
+                for (int j = 0; j < columns.length; j++)
+                    field(columns[j], values[j]);
+
+                end(out);
+            }
+        } finally {
+            close(out);
+        }
+
+        rows.clear();
+    }
+
+    /*------------ Formatting a row ------------*/
+
+    private ChannelWriter open(Path dir, String name) throws IOException
+    {
+        String fileName = name + (format == CSV ? ".csv" : ".jsonl") + (gzip ? ".gz" : "");
+
+        FileChannel file = FileChannel.open(dir.resolve(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        WritableByteChannel ch = file;
+
+        if (gzip)
+            ch = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(file), 64 * 1024));
+
+        return new ChannelWriter(ch);
+    }
+
+    private void close(ChannelWriter out) throws IOException
+    {
+        out.close();
+        bytesWritten += out.getBytesWritten();
+    }
+
+    private void header(ChannelWriter out, String[] columns) throws IOException
+    {
+        if (format == CSV)
+        {
+            row.setLength(0);
+
+            for (int j = 0; j < columns.length; j++)
+                row.append(j > 0 ? "," : "").append(columns[j]);
+
+            row.append('\n');
+            out.write(row);
+        }
+    }
+
+    private void begin()
+    {
+        row.setLength(0);
+
+        if (format == JSON_LINES)
+            row.append('{');
+    }
+
+    private void end(ChannelWriter out) throws IOException
+    {
+        if (format == JSON_LINES)
+            row.append('}');
+        else
+            row.setLength(row.length() - 1);        // trailing comma
+
+        row.append('\n');
+        out.write(row);
+
+        rowsWritten++;
+    }
+
+    private void key(String name)
+    {
+        if (format == JSON_LINES)
+        {
+            if (row.length() > 1)
+                row.append(',');
+
+            row.append('"').append(name).append("\":");
+        }
+    }
+
+    private void field(String name, int value)
+    {
+        key(name);
+        row.append(value);
+
+        if (format == CSV)
+            row.append(',');
+    }
+
+    private void field(String name, boolean value)
+    {
+        key(name);
+        row.append(value);
+
+        if (format == CSV)
+            row.append(',');
+    }
+
+    private void field(String name, Object value)
+    {
+        if (value instanceof Integer)
+            field(name, ((Integer) value).intValue());
+        else if (value instanceof Boolean)
+            field(name, ((Boolean) value).booleanValue());
+        else if (value instanceof Date)
+            field(name, (Date) value);
+        else
+            field(name, (String) value);
+    }
+
+    private void field(String name, Date value)
+    {
+        field(name, value != null ? new java.sql.Timestamp(value.getTime()).toString() : null);
+    }
+
+    private void field(String name, String value)
+    {
+        key(name);
+
+        if (format == CSV)
+        {
+            if (value != null)
+                csvQuote(value);
+
+            row.append(',');
+        }
+        else if (value == null)
+            row.append("null");
+        else
+            jsonQuote(value);
+    }
+
+    private void csvQuote(String value)
+    {
+        boolean quote = false;
+
+        for (int i = 0; i < value.length() && !quote; i++)
+        {
+            char c = value.charAt(i);
+
+            if (c == ',' || c == '"' || c == '\n' || c == '\r')
+                quote = true;
+        }
+
+        if (!quote)
+        {
+            row.append(value);
+            return;
+        }
+
+        row.append('"');
+
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+
+            if (c == '"')
+                row.append('"');
+
+            row.append(c);
+        }
+
+        row.append('"');
+    }
+
+    private void jsonQuote(String value)
+    {
+        row.append('"');
+
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+
+            switch (c)
+            {
+                case '"':  row.append("\\\""); break;
+                case '\\': row.append("\\\\"); break;
+                case '\n': row.append("\\n"); break;
+                case '\r': row.append("\\r"); break;
+                case '\t': row.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        row.append(String.format("\\u%04x", (int) c));
+                    else
+                        row.append(c);
+            }
+        }
+
+        row.append('"');
+    }
+
+}   // LibraryExport Class Closed
@@ -7,6 +7,7 @@ import java.util.Scanner;
 
 public class Loan 
 {
+    private int loanID;             // ID of the loan, the key of its row in the database
     private Borrower borrower;      
     private Book book;
     
@@ -18,8 +19,13 @@ public class Loan
     
     private boolean finePaid;
        
-    public Loan(Borrower bor, Book b, Staff i, Staff r, Date iDate, Date rDate, boolean fPaid)  // Para cons.
+    public Loan(int id, Borrower bor, Book b, Staff i, Staff r, Date iDate, Date rDate, boolean fPaid)  // Para cons.
     {
+        if(id==-1)
+            loanID = Library.getInstance().nextID(IdAllocator.LOAN);
+        else
+            loanID = id;
+        
         borrower = bor;
         book = b;
         issuer = i;
@@ -32,6 +38,11 @@ public class Loan
     
     /*----- Getter FUNCs.------------*/
     
+    public int getID()          //Returns the ID of the loan
+    {
+        return loanID;
+    }
+    
     public Book getBook()       //Returns the book
     {
         return book;
@@ -73,16 +84,19 @@ public class Loan
     public void setReturnedDate(Date dReturned)
     {
         dateReturned = dReturned;
+        Library.getInstance().loanChanged(this);
     }
     
     public void setFineStatus(boolean fStatus)
     {
         finePaid = fStatus;
+        Library.getInstance().loanChanged(this);
     }    
     
     public void setReceiver(Staff r)
     {
         receiver = r;
+        Library.getInstance().loanChanged(this);
     }
     /*-------------------------------------------*/
     
@@ -93,25 +107,29 @@ public class Loan
     public double computeFine1()
     {
 
-        //-----------Computing Fine-----------        
+        //-----------Computing Fine-----------
         double totalFine = 0;
-        
+
         if (!finePaid)
-        {    
-            Date iDate = issuedDate;
-            Date rDate = new Date();                
+            totalFine = fineOn(Library.getInstance().today());
 
-            long days =  ChronoUnit.DAYS.between(rDate.toInstant(), iDate.toInstant());        
-            days=0-days;
+        return totalFine;
+    }
 
-            days = days - Library.getInstance().book_return_deadline;
+    // The fine for keeping the book until a day, whether it is paid or not
+    public double fineOn(Date rDate)
+    {
+        Date iDate = issuedDate;
 
-            if(days>0)
-                totalFine = days * Library.getInstance().per_day_fine;
-            else
-                totalFine=0;
-        }
-        return totalFine;
+        long days =  ChronoUnit.DAYS.between(rDate.toInstant(), iDate.toInstant());
+        days=0-days;
+
+        days = days - Library.getInstance().book_return_deadline;
+
+        if(days>0)
+            return days * Library.getInstance().per_day_fine;
+        else
+            return 0;
     }
     
     
@@ -119,8 +137,16 @@ public class Loan
     {
         //-----------Computing Fine-----------//
         
-        double totalFine = computeFine1();
+        Library lib = Library.getInstance();
+        double totalFine;
+        boolean paid = finePaid;
+        
+        synchronized (lib)
+        {
+            totalFine = computeFine1();
+        }
                 
+        // Asking without holding the library's lock
         if (totalFine > 0)
         {
             System.out.println("\nTotal Fine generated: Rs " + totalFine);
@@ -132,27 +158,44 @@ public class Loan
             String choice = input.next();
             
             if(choice.equals("y") || choice.equals("Y"))
-                finePaid = true; 
+                paid = true; 
             
             if(choice.equals("n") || choice.equals("N"))
-                finePaid = false; 
+                paid = false; 
         }
         else
         {
             System.out.println("\nNo fine is generated.");
-            finePaid = true;
+            paid = true;
         }        
+        
+        synchronized (lib)
+        {
+            finePaid = paid;
+            lib.loanChanged(this);
+        }
     }
 
 
     // Extending issued Date 
     public void renewIssuedBook(Date iDate)
     {        
-        issuedDate = iDate;
+        synchronized (Library.getInstance())
+        {
+            renew(iDate);
+        }
         
         System.out.println("\nThe deadline of the book " + getBook().getTitle() + " has been extended.");
         System.out.println("Issued Book is successfully renewed!\n");
     }
+    
+    // Extending issued Date without printing anything
+    public void renew(Date iDate)
+    {
+        issuedDate = iDate;
+        Library.getInstance().loanChanged(this);
+    }
+    
 
 
 
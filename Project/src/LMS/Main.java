@@ -38,6 +38,69 @@ public class Main
           
     }
 
+    // Browsing the catalog in shelf order, a page at a time
+    public static void browseCatalog(Library lib) throws IOException
+    {
+        if (lib.isLazyCatalog())
+        {
+            System.out.println("\nThe catalog can't be browsed while records are loaded on demand, search for the books instead.");
+            return;
+        }
+        
+        System.out.println("\n1- By Title");
+        System.out.println("2- By Author");
+        System.out.println("3- By Subject and Title");
+        
+        int kind = takeInput(0,4);
+        int field = kind == 1 ? Library.BY_TITLE : kind == 2 ? Library.BY_AUTHOR : Library.BY_SUBJECT;
+        
+        System.out.println(kind == 3 ? "\nEnter the Subject (and |Title) to start from, or nothing for the beginning:"
+                                     : "\nEnter where to start from, or nothing for the beginning:");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String from = reader.readLine();
+        
+        BrowseIndex.Cursor cursor;
+        ArrayList<Book> page;
+        
+        synchronized (lib)
+        {
+            cursor = lib.browse(field, from == null ? "" : from, lib.report_page_size > 0 ? lib.report_page_size : 20);
+            page = cursor.next();
+        }
+        
+        Scanner scanner = new Scanner(System.in);
+        
+        while (true)
+        {
+            if (page.isEmpty())
+                System.out.println("\nNo more Books this way.");
+            else
+            {
+                System.out.println("\nID\tTitle\t\t\tAuthor\t\t\tSubject");
+                
+                for (int i = 0; i < page.size(); i++)
+                    System.out.println(page.get(i).getID() + "\t" + page.get(i).getTitle() + "\t\t\t" + page.get(i).getAuthor() + "\t\t\t" + page.get(i).getSubject());
+            }
+            
+            System.out.println("\nn- Next Page, p- Previous Page, q- Quit");
+            String choice = scanner.next();
+            
+            if (choice.equals("q"))
+                return;
+            
+            synchronized (lib)
+            {
+                if (choice.equals("n"))
+                    page = cursor.next();
+                else if (choice.equals("p"))
+                    page = cursor.previous();
+            }
+            
+            if (!choice.equals("n") && !choice.equals("p"))
+                System.out.println("\nInvalid Input.");
+        }
+    }
+
     // Functionalities of all Persons
     public static void allFunctionalities(Person person, int choice) throws IOException
     {
@@ -148,7 +211,12 @@ public class Main
             if(bor!=null)
             {
                 bor.printBorrowedBooks();
-                ArrayList<Loan> loans = bor.getBorrowedBooks();
+                ArrayList<Loan> loans;
+                
+                synchronized (lib)
+                {
+                    loans = new ArrayList<>(bor.getBorrowedBooks());
+                }
                 
                 if (!loans.isEmpty())
                 {
@@ -170,13 +238,18 @@ public class Main
             if(bor!=null)
             {
                 bor.printBorrowedBooks();
-                ArrayList<Loan> loans = bor.getBorrowedBooks();
+                ArrayList<Loan> loans;
+                
+                synchronized (lib)
+                {
+                    loans = new ArrayList<>(bor.getBorrowedBooks());
+                }
                 
                 if (!loans.isEmpty())
                 {
                     input = takeInput(-1,loans.size());
  
-                    loans.get(input).renewIssuedBook(new java.util.Date()); 
+                    loans.get(input).renewIssuedBook(lib.today()); 
                 }
                 else
                     System.out.println("\nThis borrower " + bor.getName() + " has no issued book which can be renewed.");                    
@@ -250,6 +323,130 @@ public class Main
                 clerk.printInfo();
         }
         
+        //Check out, check in or renew several Books of a Borrower at once
+        else if (choice == 15)
+        {
+            Borrower bor = lib.findBorrower();
+
+            if(bor!=null)
+            {
+                System.out.println("\n1- Check out Books");
+                System.out.println("2- Check in Books");
+                System.out.println("3- Renew Books");
+                
+                int kind = takeInput(0,4);
+                
+                System.out.println("\nEnter the IDs of the Books, separated by spaces:");
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                String line = reader.readLine();
+                
+                boolean finePaid = false;
+                
+                if (kind == CirculationTransaction.CHECK_IN)
+                {
+                    System.out.println("\nAre the fines, if any, paid? (y/n)");
+                    finePaid = scanner.next().equalsIgnoreCase("y");
+                }
+                
+                CirculationTransaction t = new CirculationTransaction(lib, kind, bor, (Staff)person);
+                ArrayList<String> invalid = new ArrayList<>();
+                
+                for (String id : (line == null ? "" : line.trim()).split("\\s+"))
+                {
+                    if (id.isEmpty())
+                        continue;
+                    
+                    try {
+                        t.addBook(Integer.parseInt(id));
+                    } catch (NumberFormatException e) {
+                        invalid.add(id + ": Invalid ID");
+                    }
+                }
+                
+                t.run(lib.today(), finePaid);
+                
+                System.out.println("\n" + t.getBooksDone().size() + " Books done for " + bor.getName() + ":");
+                
+                for (Book b : t.getBooksDone())
+                    System.out.println(b.getID() + "\t" + b.getTitle());
+                
+                invalid.addAll(t.getFailures());
+                
+                if (!invalid.isEmpty())
+                {
+                    System.out.println("\n" + invalid.size() + " could not be done:");
+                    
+                    for (String f : invalid)
+                        System.out.println(f);
+                }
+                
+                System.out.println("\nBy: " + person.getName());
+            }
+        }
+        
+        //Browse the catalog in shelf order
+        else if (choice == 17)
+        {
+            browseCatalog(lib);
+        }
+        
+        //Remove many Books at once, by ID or by subject
+        else if (choice == 16)
+        {
+            System.out.println("\n1- Books given by ID");
+            System.out.println("2- Books of a Subject not borrowed since a Year");
+            
+            int kind = takeInput(0,3);
+            
+            WeedingJob job = new WeedingJob(lib);
+            ArrayList<String> invalid = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            
+            if (kind == 1)
+            {
+                System.out.println("\nEnter the IDs of the Books, separated by spaces:");
+                String line = reader.readLine();
+                
+                for (String id : (line == null ? "" : line.trim()).split("\\s+"))
+                {
+                    if (id.isEmpty())
+                        continue;
+                    
+                    try {
+                        job.addBook(Integer.parseInt(id));
+                    } catch (NumberFormatException e) {
+                        invalid.add(id + ": Invalid ID");
+                    }
+                }
+            }
+            else
+            {
+                System.out.println("\nEnter Subject:");
+                String subject = reader.readLine();
+                
+                System.out.println("\nEnter the Year since which they haven't been borrowed:");
+                int year = takeInput(0,10000);
+                
+                job.chooseBySubject(subject, year);
+            }
+            
+            long start = System.nanoTime();
+            job.run();
+            long millis = (System.nanoTime() - start) / 1000000;
+            
+            System.out.println("\n" + job.getBooksRemoved().size() + " Books removed and " + job.getHoldsCancelled() + " hold requests cancelled in " + millis + " ms.");
+            
+            invalid.addAll(job.getFailures());
+            
+            if (!invalid.isEmpty())
+            {
+                System.out.println("\n" + invalid.size() + " could not be removed:");
+                
+                for (String f : invalid)
+                    System.out.println(f);
+            }
+        }
+        
         // Functionality Performed.
         System.out.println("\nPress any key to continue..\n");
         scanner.next();
@@ -260,6 +457,21 @@ public class Main
     
    
     
+    // Stopping the work done in the background, and saving what isn't in the database yet
+    private static void shutDown(Library lib, Connection con) throws SQLException
+    {
+        lib.stopHoldFulfilment();
+        lib.stopReplication();
+        
+        //Loading back all the records in database, unless every change has been written already
+        boolean saved = lib.stopPersistence() || lib.fillItBack(con);
+        
+        lib.stopStagedLoading();
+        lib.stopCheckpoints(saved);     // a journal which isn't removed is recovered at the next start
+        lib.closeIdSequences();
+    }
+    
+    
     /*-------------------------------------MAIN---------------------------------------------------*/
     
     public static void main(String[] args)
@@ -273,9 +485,112 @@ public class Main
         // Setting some by default information like name of library ,fine, deadline and limit of hold request
         lib.setFine(20);
         lib.setRequestExpiry(7);
+        lib.setPickupExpiry(3);
         lib.setReturnDeadline(5);
+        lib.setReportPageSize(20);
+        lib.setMachineReadableReports(false);
+        lib.setRecordCacheSize(50000);
+        lib.setCheckpointInterval(5);
+        lib.setCheckpointCompaction(100000);
         lib.setName("FAST Library");
         
+        List<String> options = Arrays.asList(args);
+        
+        // Keeping the records of books outside the heap, for very large catalogs: --off-heap
+        if (options.contains("--off-heap"))
+            Book.useOffHeapRecords();
+        
+        // Using the books of several LMS processes started with --shard-server as one catalog:
+        // --cluster <host:port,host:port,...> <commands file> <results file>
+        int cluster = options.indexOf("--cluster");
+        
+        if (cluster >= 0 && cluster + 3 < args.length)
+        {
+            try {
+                ClusterCatalog catalog = new ClusterCatalog(Arrays.asList(args[cluster + 1].split(",")));
+                
+                try {
+                    catalog.run(args[cluster + 2], args[cluster + 3]);
+                    
+                    System.out.println("\n" + (catalog.getSucceeded() + catalog.getFailed()) + " commands run, " + catalog.getFailed()
+                            + " failed. Results are in " + args[cluster + 3] + ".");
+                    catalog.printStatistics();
+                } finally {
+                    catalog.close();
+                }
+            } catch (IOException e) {
+                System.out.println("\nCluster error: " + e.getMessage());
+            }
+            return;
+        }
+        
+        // Running months of circulation in memory on a clock of its own, without the database:
+        // --simulate <borrowers> <books> <days> [<seed>], or --replay <dated commands file> <results file>
+        int simulate = options.indexOf("--simulate");
+        int replay = options.indexOf("--replay");
+
+        if ((simulate >= 0 && simulate + 3 < args.length) || (replay >= 0 && replay + 2 < args.length))
+        {
+            try {
+                if (simulate >= 0)
+                {
+                    long seed = simulate + 4 < args.length && args[simulate + 4].matches("\\d+") ? Long.parseLong(args[simulate + 4]) : 1;
+                    CirculationSimulation sim = new CirculationSimulation(lib, seed);
+
+                    sim.run(Integer.parseInt(args[simulate + 1]), Integer.parseInt(args[simulate + 2]), Integer.parseInt(args[simulate + 3]));
+                    sim.printStatistics();
+                }
+                else
+                {
+                    CirculationSimulation sim = new CirculationSimulation(lib, 1);
+
+                    sim.replay(args[replay + 1], args[replay + 2]);
+                    sim.printStatistics();
+                    System.out.println("Results are in " + args[replay + 2] + ".");
+                }
+            } catch (IOException e) {
+                System.out.println("\nSimulation error: " + e.getMessage());
+            } catch (NumberFormatException e) {
+                System.out.println("\nInvalid number: " + e.getMessage());
+            }
+            return;
+        }
+
+        // The shard servers listen on the loopback interface only, unless given another: --bind <address>
+        int bind = options.indexOf("--bind");
+        String bindAddress = bind >= 0 && bind + 1 < args.length ? args[bind + 1] : null;
+        
+        // Answering searches from a copy of another LMS process started with --replicate:
+        // --follow <host:port> --shard-server <port> [--max-staleness <ms>], searches being refused
+        // while the copy is further behind than that (2000 ms if not given)
+        int follow = options.indexOf("--follow");
+        int serve = options.indexOf("--shard-server");
+        int staleness = options.indexOf("--max-staleness");
+        
+        if (follow >= 0 && follow + 1 < args.length && serve >= 0 && serve + 1 < args.length)
+        {
+            try {
+                long maxStaleness = staleness >= 0 && staleness + 1 < args.length ? Long.parseLong(args[staleness + 1]) : 2000;
+                ReplicationFollower replica = new ReplicationFollower(lib, args[follow + 1], maxStaleness);
+                
+                if (replica.awaitCopy())
+                    new ShardServer(lib, bindAddress, Integer.parseInt(args[serve + 1]), replica).serve();
+                
+                replica.close();
+            } catch (IOException e) {
+                System.out.println("\nReplication error: " + e.getMessage());
+            } catch (NumberFormatException e) {
+                System.out.println("\nInvalid number: " + e.getMessage());
+            }
+            return;
+        }
+        
+        // Each shard of a cluster has a database of its own: --db <JDBC URL>
+        int db = options.indexOf("--db");
+        
+        if (db >= 0 && db + 1 < args.length)
+            lib.setDatabaseURL(args[db + 1]);
+        
         // Making connection with Database.
         Connection con = lib.makeConnection();
         
@@ -287,8 +602,82 @@ public class Main
         
         try {
 
-        lib.populateLibrary(con);   // Populating Library with all Records
-         
+        lib.migrateSchema(con);
+        lib.recoverCheckpoint("checkpoint.journal", con);
+        
+        // New records get their IDs from blocks leased from the database
+        if (!lib.openIdSequences())
+        {
+            System.out.println("\nThe IDs of new records can't be given. Exiting.");
+            return;
+        }
+        
+        // With --lazy records are loaded from the database when first needed
+        if (options.contains("--lazy"))
+        {
+            if (!lib.startPersistence())
+            {
+                System.out.println("\nThe records can't be loaded on demand without saving changes as they are made. Exiting.");
+                return;
+            }
+            
+            lib.openLazyCatalog(con);
+        }
+        else
+        {
+            lib.populateLibrary(con);   // Populating Library with all Records
+
+            // Writing changes to the database as they are made
+            if (!lib.startPersistence())
+                System.out.println("\nChanges will be saved at exit only.");
+        }
+        
+        // Keeping the changes not in the database yet in a journal, in case of a crash
+        lib.startCheckpoints("checkpoint.journal");
+        
+        // Reserving returned books for the next borrower in their queues in the background
+        lib.startHoldFulfilment("outbox.txt");
+        
+        // Sending every change to followers answering searches: --replicate <port>
+        int replicate = options.indexOf("--replicate");
+        
+        if (replicate >= 0 && replicate + 1 < args.length)
+            lib.startReplication(Integer.parseInt(args[replicate + 1]));
+        
+        // Loading the loans and hold requests in the background while the desks are open
+        lib.startStagedLoading();
+
+        // Running a command file instead of the menus: --batch <commands file> <results file>
+        int batch = options.indexOf("--batch");
+        
+        if (batch >= 0 && batch + 2 < args.length)
+        {
+            BatchRunner runner = new BatchRunner(lib);
+            long start = System.nanoTime();
+
+            runner.run(args[batch + 1], args[batch + 2]);
+
+            long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+            int total = runner.getSucceeded() + runner.getFailed();
+
+            System.out.println("\n" + total + " commands run in " + millis + " ms (" + (total * 1000L / millis) + " per second), "
+                    + runner.getFailed() + " failed. Results are in " + args[batch + 2] + ".");
+
+            shutDown(lib, con);
+            return;
+        }
+
+        // Serving the books of this database as a shard of a cluster: --shard-server <port>
+        int shard = options.indexOf("--shard-server");
+        
+        if (shard >= 0 && shard + 1 < args.length)
+        {
+            new ShardServer(lib, bindAddress, Integer.parseInt(args[shard + 1]), null).serve();
+            
+            shutDown(lib, con);
+            return;
+        }
+        
         boolean stop = false;
         while(!stop)
         {   
@@ -330,15 +719,20 @@ public class Main
                         System.out.println("2- Add Librarian"); 
                         System.out.println("3- View Issued Books History");  
                         System.out.println("4- View All Books in Library"); 
-                        System.out.println("5- Logout"); 
+                        System.out.println("5- Export Records"); 
+                        System.out.println("6- View Statistics"); 
+                        System.out.println("7- Browse Catalog"); 
+                        System.out.println("8- Logout"); 
 
                         System.out.println("---------------------------------------------");
 
-                        choice = takeInput(0,6);
+                        choice = takeInput(0,9);
 
-                        if (choice == 5)
+                        if (choice == 8)
                             break;
 
+                        // Each of these asks what it needs first, and holds the library's lock only while it
+                        // reads or changes the records, as the workers in the background change them too
                         if (choice == 1)
                             lib.createPerson('c');
                         else if (choice == 2)
@@ -349,6 +743,15 @@ public class Main
 
                         else if (choice == 4)
                             lib.viewAllBooks();
+
+                        else if (choice == 5)
+                            lib.exportRecords();
+
+                        else if (choice == 6)
+                            lib.viewStatistics();
+
+                        else if (choice == 7)
+                            browseCatalog(lib);
                         
                         System.out.println("\nPress any key to continue..\n");
                         admin.next();                        
@@ -379,15 +782,24 @@ public class Main
                         System.out.println("3- Check Personal Info of Borrower");
                         System.out.println("4- Check Total Fine of Borrower"); 
                         System.out.println("5- Check Hold Requests Queue of a Book");                         
-                        System.out.println("6- Logout");
+                        System.out.println("6- Browse Catalog");
+                        System.out.println("7- Logout");
                         System.out.println("--------------------------------------------------------");
                         
-                        choice = takeInput(0,7);
+                        choice = takeInput(0,8);
 
-                        if (choice == 6)
+                        if (choice == 7)
                             break;
                         
+                        if (choice == 6)
+                            choice = 17;    // the librarian's number of it
+                        
                         allFunctionalities(person,choice);
+                        
+                        synchronized (lib)
+                        {
+                            lib.trimRecords();
+                        }
                     }
                 }
                 
@@ -411,15 +823,28 @@ public class Main
                         System.out.println("8- Renew a Book");
                         System.out.println("9- Add a new Borrower");
                         System.out.println("10- Update a Borrower's Info");
-                        System.out.println("11- Logout");
+                        System.out.println("11- Several Books at once");
+                        System.out.println("12- Browse Catalog");
+                        System.out.println("13- Logout");
                         System.out.println("--------------------------------------------------------");                    
                         
-                        choice = takeInput(0,12);
+                        choice = takeInput(0,14);
 
-                        if (choice == 11)
+                        if (choice == 13)
                             break;
+                        
+                        if (choice == 11)
+                            choice = 15;    // the librarian's number of it
+                        
+                        if (choice == 12)
+                            choice = 17;
                                             
-                        allFunctionalities(person,choice);                        
+                        allFunctionalities(person,choice);
+                        
+                        synchronized (lib)
+                        {
+                            lib.trimRecords();
+                        }
                     }                    
                 }
                 
@@ -447,18 +872,33 @@ public class Main
                         System.out.println("12- Remove a Book");
                         System.out.println("13- Change a Book's Info");
                         System.out.println("14- Check Personal Info of Clerk");                        
-                        System.out.println("15- Logout");
+                        System.out.println("15- Several Books at once");
+                        System.out.println("16- Weed Books");
+                        System.out.println("17- Browse Catalog");
+                        System.out.println("18- Logout");
                         System.out.println("--------------------------------------------------------");
                         
-                        choice = takeInput(0,16);
+                        choice = takeInput(0,19);
 
-                        if (choice == 15)
+                        if (choice == 18)
                             break;
                                                
-                        allFunctionalities(person,choice);                        
+                        allFunctionalities(person,choice);
+                        
+                        synchronized (lib)
+                        {
+                            lib.trimRecords();
+                        }
                     }                    
                 }
                 
+                if (person != null)
+                {
+                    synchronized (lib)
+                    {
+                        lib.logout(person);
+                    }
+                }
             }
 
             else
@@ -469,11 +909,16 @@ public class Main
             scanner.next();            
         }
         
-        //Loading back all the records in database
-        lib.fillItBack(con);
+        shutDown(lib, con);
         }
         catch(Exception e)
         {
+            lib.stopHoldFulfilment();
+            lib.stopReplication();
+            lib.stopPersistence();
+            lib.stopStagedLoading();
+            lib.stopCheckpoints(false);     // the journal is recovered at the next start
+            lib.closeIdSequences();
             System.out.println("\nExiting...\n");
         }   // System Closed!
        
@@ -0,0 +1,472 @@
+package LMS;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Writes changes of the library to the database while it is being used, instead of only at exit.
+// Changes are put in a bounded queue and return at once; a writer thread takes them in groups, keeps
+// only the last change of each row, and writes a group with batched statements in one transaction.
+// At most the changes in the queue and the group being written can be lost if the program stops.
+// When the queue is full, whoever makes a change waits until the writer has made room.
+public class PersistenceQueue
+{
+    private static final int CAPACITY = 10000;          // changes waiting to be written
+    private static final int MAX_GROUP = 1000;          // changes written in one transaction
+    private static final long LINGER_NANOS = 5000000;   // time a group waits for more changes
+
+    private final Connection con;
+    private final ArrayBlockingQueue<RowChange> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread writer;
+    private volatile boolean stopping;
+
+    private final Object queueLock = new Object();      // keeps sequence numbers in the order of the queue
+    private long queued;                                // sequence of the last change queued
+
+    private long committed;                             // sequence of the last change written (guarded by this)
+    private int failedGroups;
+
+    // Prepared statements of each table, made when first needed
+    private final PreparedStatement[] updates = new PreparedStatement[RowChange.TABLES.length];
+    private final PreparedStatement[] inserts = new PreparedStatement[RowChange.TABLES.length];
+    private final PreparedStatement[] deletes = new PreparedStatement[RowChange.TABLES.length];
+    private final PreparedStatement[] selects = new PreparedStatement[RowChange.TABLES.length];
+    private PreparedStatement checkpoint;
+
+    private volatile long runID;                        // recorded with the sequence reached in each commit, 0 if not
+
+    // statistics
+    private volatile long groups;
+    private volatile long changesWritten;
+    private volatile long rowsWritten;
+    private volatile long commitNanos;
+    private volatile long fullWaits;
+
+    public PersistenceQueue(Connection c) throws SQLException      // para cons.
+    {
+        con = c;
+        con.setAutoCommit(false);
+
+        writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeGroups();
+            }
+        }, "Persistence writer");
+
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Recording in LIBRARY.CHECKPOINT, with every commit, how far this run has got (see Checkpointer)
+    public void setRunID(long run)
+    {
+        runID = run;
+    }
+
+    // Queueing a change, returning its sequence number
+    public long add(RowChange change)
+    {
+        synchronized (queueLock)
+        {
+            change.setContinued(false);
+            enqueue(change);
+
+            return queued;
+        }
+    }
+
+    // Queueing the changes of a transaction, which are written in the same commit. Returns the
+    // sequence number of the last one.
+    public long addAll(List<RowChange> changes)
+    {
+        synchronized (queueLock)
+        {
+            for (int i = 0; i < changes.size(); i++)
+            {
+                changes.get(i).setContinued(i < changes.size() - 1);
+                enqueue(changes.get(i));
+            }
+
+            return queued;
+        }
+    }
+
+    // Called holding queueLock
+    private void enqueue(RowChange change)
+    {
+        change.setSequence(++queued);
+
+        if (!queue.offer(change))
+        {
+            fullWaits++;
+
+            boolean interrupted = false;
+
+            while (true)
+            {
+                try {
+                    queue.put(change);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waiting until every change queued so far has been written. Returns false if some change
+    // could not be written.
+    public boolean await()
+    {
+        return await(queued());
+    }
+
+    // Waiting until the changes up to the one of this sequence have been written
+    public boolean await(long target)
+    {
+        synchronized (this)
+        {
+            while (committed < target && writer.isAlive())
+            {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            return failedGroups == 0 && committed >= target;
+        }
+    }
+
+    // Sequence of the last change queued
+    public long queued()
+    {
+        synchronized (queueLock)
+        {
+            return queued;
+        }
+    }
+
+    // Sequence of the last change written, -1 if some change could not be written
+    public synchronized long committed()
+    {
+        return failedGroups == 0 ? committed : -1;
+    }
+
+    // Writing what is left in the queue and stopping the writer. Returns false if some change
+    // could not be written.
+    public boolean close()
+    {
+        stopping = true;
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            con.close();
+        } catch (SQLException e) {
+            System.out.println("\n" + e.getMessage());
+        }
+
+        synchronized (this)
+        {
+            return failedGroups == 0 && queue.isEmpty();
+        }
+    }
+
+    /*------- The writer thread ---------*/
+
+    private void writeGroups()
+    {
+        ArrayList<RowChange> group = new ArrayList<>(MAX_GROUP);
+
+        while (true)
+        {
+            RowChange first;
+
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+
+            if (first == null)
+            {
+                if (stopping && queue.isEmpty())
+                    return;
+
+                continue;
+            }
+
+            // Collecting more changes for a short while, so that one commit covers them all
+            group.add(first);
+            long deadline = System.nanoTime() + LINGER_NANOS;
+
+            while (group.size() < MAX_GROUP)
+            {
+                queue.drainTo(group, MAX_GROUP - group.size());
+
+                long left = deadline - System.nanoTime();
+
+                if (group.size() >= MAX_GROUP || left <= 0 || stopping)
+                    break;
+
+                try {
+                    RowChange next = queue.poll(left, TimeUnit.NANOSECONDS);
+
+                    if (next != null)
+                        group.add(next);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+
+            // A group doesn't end in the middle of a transaction, whose changes are queued together
+            while (group.get(group.size() - 1).isContinued())
+            {
+                try {
+                    group.add(queue.take());
+                } catch (InterruptedException e) {
+                    // the rest of the transaction is being queued
+                }
+            }
+
+            write(group);
+            group.clear();
+        }
+    }
+
+    private void write(ArrayList<RowChange> group)
+    {
+        long start = System.nanoTime();
+
+        // Only the last change of each row is written
+        LinkedHashMap<Long, RowChange> latest = new LinkedHashMap<>();
+
+        for (int i = 0; i < group.size(); i++)
+            latest.put(group.get(i).getRowKey(), group.get(i));
+
+        ArrayList<ArrayList<RowChange>> byTable = new ArrayList<>();
+
+        for (int t = 0; t < RowChange.TABLES.length; t++)
+            byTable.add(new ArrayList<RowChange>());
+
+        for (RowChange c : latest.values())
+            byTable.get(c.getTable()).add(c);
+
+        boolean ok = true;
+
+        try {
+            // Deleting children before parents, then writing parents before children
+            for (int t = RowChange.TABLES.length - 1; t >= 0; t--)
+                delete(t, byTable.get(t));
+
+            for (int t = 0; t < RowChange.TABLES.length; t++)
+                upsert(t, byTable.get(t));
+
+            // After a failed commit the database misses some changes before the ones committed now,
+            // so a recovery has to write everything after the sequence reached until then
+            if (runID != 0 && failedGroups == 0)
+            {
+                if (checkpoint == null)
+                    checkpoint = con.prepareStatement("UPDATE LIBRARY.CHECKPOINT SET RUN_ID = ?, SEQ = ?");
+
+                checkpoint.setLong(1, runID);
+                checkpoint.setLong(2, group.get(group.size() - 1).getSequence());
+                checkpoint.executeUpdate();
+            }
+
+            con.commit();
+        } catch (SQLException e) {
+            ok = false;
+            System.out.println("\nCould not save " + latest.size() + " changes: " + e.getMessage());
+
+            try {
+                con.rollback();
+            } catch (SQLException ex) {
+                System.out.println("\n" + ex.getMessage());
+            }
+        }
+
+        groups++;
+        changesWritten += group.size();
+        rowsWritten += latest.size();
+        commitNanos += System.nanoTime() - start;
+
+        synchronized (this)
+        {
+            if (!ok)
+                failedGroups++;
+
+            committed = group.get(group.size() - 1).getSequence();
+            notifyAll();
+        }
+    }
+
+    private void delete(int t, ArrayList<RowChange> changes) throws SQLException
+    {
+        PreparedStatement stmt = null;
+
+        for (int i = 0; i < changes.size(); i++)
+        {
+            RowChange c = changes.get(i);
+
+            if (!c.isDelete())
+                continue;
+
+            if (stmt == null)
+                stmt = statement(deletes, t, "DELETE FROM LIBRARY." + RowChange.TABLES[t] + " WHERE " + RowChange.COLUMNS[t][0] + " = ?");
+
+            stmt.setInt(1, c.getKey());
+            stmt.addBatch();
+        }
+
+        if (stmt != null)
+            stmt.executeBatch();
+    }
+
+    // Updating the rows which are there already and inserting the others
+    private void upsert(int t, ArrayList<RowChange> changes) throws SQLException
+    {
+        String[] columns = RowChange.COLUMNS[t];
+        ArrayList<RowChange> rows = new ArrayList<>();
+
+        for (int i = 0; i < changes.size(); i++)
+        {
+            if (!changes.get(i).isDelete())
+                rows.add(changes.get(i));
+        }
+
+        if (rows.isEmpty())
+            return;
+
+        boolean[] present = new boolean[rows.size()];
+
+        if (columns.length > 1)
+        {
+            PreparedStatement stmt = statement(updates, t, updateSQL(t));
+
+            for (int i = 0; i < rows.size(); i++)
+            {
+                Object[] v = rows.get(i).getValues();
+
+                for (int j = 1; j < columns.length; j++)
+                    set(stmt, j, v[j], RowChange.TYPES[t][j]);
+
+                stmt.setInt(columns.length, rows.get(i).getKey());
+                stmt.addBatch();
+            }
+
+            int[] counts = stmt.executeBatch();
+
+            for (int i = 0; i < rows.size(); i++)
+                present[i] = counts[i] != 0;
+        }
+        else
+        {
+            // Nothing to update in a table having only the key, only checking if the row is there
+            PreparedStatement stmt = statement(selects, t, "SELECT " + columns[0] + " FROM LIBRARY." + RowChange.TABLES[t] + " WHERE " + columns[0] + " = ?");
+
+            for (int i = 0; i < rows.size(); i++)
+            {
+                stmt.setInt(1, rows.get(i).getKey());
+
+                ResultSet rs = stmt.executeQuery();
+                present[i] = rs.next();
+                rs.close();
+            }
+        }
+
+        PreparedStatement stmt = null;
+
+        for (int i = 0; i < rows.size(); i++)
+        {
+            if (present[i])
+                continue;
+
+            if (stmt == null)
+                stmt = statement(inserts, t, insertSQL(t));
+
+            Object[] v = rows.get(i).getValues();
+
+            for (int j = 0; j < columns.length; j++)
+                set(stmt, j + 1, v[j], RowChange.TYPES[t][j]);
+
+            stmt.addBatch();
+        }
+
+        if (stmt != null)
+            stmt.executeBatch();
+    }
+
+    private PreparedStatement statement(PreparedStatement[] cache, int t, String sql) throws SQLException
+    {
+        if (cache[t] == null)
+            cache[t] = con.prepareStatement(sql);
+
+        return cache[t];
+    }
+
+    private static String updateSQL(int t)
+    {
+        String[] columns = RowChange.COLUMNS[t];
+        StringBuilder sb = new StringBuilder("UPDATE LIBRARY.").append(RowChange.TABLES[t]).append(" SET ");
+
+        for (int j = 1; j < columns.length; j++)
+            sb.append(j > 1 ? ", " : "").append(columns[j]).append(" = ?");
+
+        return sb.append(" WHERE ").append(columns[0]).append(" = ?").toString();
+    }
+
+    private static String insertSQL(int t)
+    {
+        String[] columns = RowChange.COLUMNS[t];
+        StringBuilder sb = new StringBuilder("INSERT INTO LIBRARY.").append(RowChange.TABLES[t]).append(" (");
+
+        for (int j = 0; j < columns.length; j++)
+            sb.append(j > 0 ? "," : "").append(columns[j]);
+
+        sb.append(") values (");
+
+        for (int j = 0; j < columns.length; j++)
+            sb.append(j > 0 ? "," : "").append('?');
+
+        return sb.append(')').toString();
+    }
+
+    private static void set(PreparedStatement stmt, int i, Object v, int type) throws SQLException
+    {
+        if (v == null)
+            stmt.setNull(i, type);
+        else
+            stmt.setObject(i, v, type);
+    }
+    /*-----------------------------------*/
+
+    public void printStatistics()
+    {
+        long g = groups;
+        int waiting = queue.size();
+
+        System.out.println("Persistence: " + changesWritten + " changes written as " + rowsWritten + " rows in " + g + " commits"
+                + (g > 0 ? " (" + (changesWritten / g) + " changes, " + (commitNanos / g / 1000) + " us per commit)" : "")
+                + ", " + waiting + " waiting, " + fullWaits + " waits for a full queue"
+                + (failedGroups > 0 ? ", " + failedGroups + " commits FAILED" : ""));
+    }
+
+}   // PersistenceQueue Class Closed
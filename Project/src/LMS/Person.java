@@ -8,17 +8,12 @@ public abstract class Person
     protected String name;      // Name of every person related to library
     protected String address;   // Address of every person related to library
     protected int phoneNo;      // PhoneNo of every person related to library
-    
-    static int currentIdNumber = 0;     //This will be unique for every person, since it will be incremented when everytime
-                                       //when a person is created
 
     public Person(int dd, String n, String a, int p)   // para cons.
     {
-        currentIdNumber++;
-        
         if(dd==-1)
         {
-            id = currentIdNumber;
+            id = Library.getInstance().nextID(IdAllocator.PERSON);
         }
         else
             id = dd;
@@ -44,16 +39,19 @@ public abstract class Person
     public void setAddress(String a)
     {
         address = a;
+        Library.getInstance().personChanged(this);
     }
     
     public void setPhone(int p)
     {
         phoneNo = p;
+        Library.getInstance().personChanged(this);
     }
     
     public void setName(String n)
     {
         name = n;
+        Library.getInstance().personChanged(this);
     }
     /*----------------------------*/
     
@@ -82,10 +80,5 @@ public abstract class Person
         return id;
     }
     /*---------------------------*/
-    
-     public static void setIDCount(int n)
-    {
-        currentIdNumber=n;
-    }
    
 } // Person Class Closed
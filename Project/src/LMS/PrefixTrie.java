@@ -0,0 +1,250 @@
+package LMS;
+
+import java.util.*;
+
+// Trie over the normalized titles, authors or subjects of the books, for suggesting completions while
+// something is being typed. Each node keeps the best score found anywhere below it, so the k most
+// popular completions of a prefix are found by always expanding the most promising node first,
+// without visiting the rest of the subtree.
+public class PrefixTrie
+{
+    private final Node root = new Node();
+    private int terms;
+
+    /*------- Maintaining the trie ---------*/
+
+    // Adding one book having the given text
+    public void add(String text)
+    {
+        String key = Library.normalize(text);
+
+        if (key.isEmpty())
+            return;
+
+        Node[] path = path(key, true);
+        Node n = path[key.length()];
+
+        if (n.books == 0)
+        {
+            n.display = text.trim();
+            terms++;
+        }
+        n.books++;
+
+        update(path);
+    }
+
+    // Removing one book having the given text
+    public void remove(String text)
+    {
+        String key = Library.normalize(text);
+        Node[] path = path(key, false);
+
+        if (path == null || path[key.length()].books == 0)
+            return;
+
+        Node n = path[key.length()];
+        n.books--;
+
+        if (n.books == 0)
+        {
+            n.display = null;
+            n.popularity = 0;
+            terms--;
+
+            // Cutting off the nodes which lead to nothing any more
+            for (int i = key.length(); i > 0 && path[i].display == null && path[i].labels.length == 0; i--)
+                path[i - 1].removeChild(key.charAt(i - 1));
+        }
+
+        update(path);
+    }
+
+    // Making a text more popular, e.g. when a book having it is issued
+    public void use(String text)
+    {
+        String key = Library.normalize(text);
+        Node[] path = path(key, false);
+
+        if (path == null || path[key.length()].books == 0)
+            return;
+
+        path[key.length()].popularity++;
+        update(path);
+    }
+    /*--------------------------------------*/
+
+    // Returning up to k completions of a prefix, most popular first
+    public ArrayList<String> complete(String prefix, int k)
+    {
+        ArrayList<String> completions = new ArrayList<>();
+        String key = Library.normalize(prefix);
+
+        Node n = root;
+        for (int i = 0; i < key.length() && n != null; i++)
+            n = n.child(key.charAt(i));
+
+        if (n == null)
+            return completions;
+
+        // Nodes are ordered by the best score below them; a node's own text is queued as a
+        // separate entry (with a null node) once the node has been expanded.
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        queue.add(new Entry(n, null, n.best, 0));
+
+        while (!queue.isEmpty() && completions.size() < k)
+        {
+            Entry e = queue.poll();
+
+            if (e.node == null)
+            {
+                completions.add(e.display);
+                continue;
+            }
+
+            if (e.node.display != null)
+                queue.add(new Entry(null, e.node.display, e.node.score(), e.depth));
+
+            for (int i = 0; i < e.node.children.length; i++)
+                queue.add(new Entry(e.node.children[i], null, e.node.children[i].best, e.depth + 1));
+        }
+
+        return completions;
+    }
+
+    public int size()
+    {
+        return terms;
+    }
+
+    // Nodes from the root to the node of the key, creating missing ones if create is true
+    private Node[] path(String key, boolean create)
+    {
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+
+        for (int i = 0; i < key.length(); i++)
+        {
+            Node next = path[i].child(key.charAt(i));
+
+            if (next == null)
+            {
+                if (!create)
+                    return null;
+
+                next = path[i].addChild(key.charAt(i));
+            }
+            path[i + 1] = next;
+        }
+
+        return path;
+    }
+
+    // Recomputing the best scores along a path, bottom up
+    private void update(Node[] path)
+    {
+        for (int i = path.length - 1; i >= 0; i--)
+        {
+            Node n = path[i];
+            long best = n.display != null ? n.score() : -1;
+
+            for (int j = 0; j < n.children.length; j++)
+                best = Math.max(best, n.children[j].best);
+
+            n.best = best;
+        }
+    }
+
+    private static class Node
+    {
+        char[] labels = new char[0];        // sorted
+        Node[] children = new Node[0];
+
+        String display;                     // text ending here, null if none
+        int books;                          // books having that text
+        int popularity;
+        long best = -1;                     // best score in this subtree
+
+        // Popularity first, then number of books
+        long score()
+        {
+            return ((long) popularity << 20) + Math.min(books, (1 << 20) - 1);
+        }
+
+        Node child(char c)
+        {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node addChild(char c)
+        {
+            int i = -(Arrays.binarySearch(labels, c) + 1);
+            Node n = new Node();
+
+            char[] l = new char[labels.length + 1];
+            Node[] ch = new Node[children.length + 1];
+
+            System.arraycopy(labels, 0, l, 0, i);
+            System.arraycopy(children, 0, ch, 0, i);
+            l[i] = c;
+            ch[i] = n;
+            System.arraycopy(labels, i, l, i + 1, labels.length - i);
+            System.arraycopy(children, i, ch, i + 1, children.length - i);
+
+            labels = l;
+            children = ch;
+            return n;
+        }
+
+        void removeChild(char c)
+        {
+            int i = Arrays.binarySearch(labels, c);
+
+            if (i < 0)
+                return;
+
+            char[] l = new char[labels.length - 1];
+            Node[] ch = new Node[children.length - 1];
+
+            System.arraycopy(labels, 0, l, 0, i);
+            System.arraycopy(children, 0, ch, 0, i);
+            System.arraycopy(labels, i + 1, l, i, labels.length - i - 1);
+            System.arraycopy(children, i + 1, ch, i, children.length - i - 1);
+
+            labels = l;
+            children = ch;
+        }
+    }
+
+    private static class Entry implements Comparable<Entry>
+    {
+        final Node node;
+        final String display;
+        final long score;
+        final int depth;
+
+        Entry(Node n, String d, long s, int dp)
+        {
+            node = n;
+            display = d;
+            score = s;
+            depth = dp;
+        }
+
+        // Highest score first. On equal scores texts come before nodes and deeper nodes before
+        // shallower ones, so that ties are settled by going down instead of across the trie.
+        @Override
+        public int compareTo(Entry o)
+        {
+            if (score != o.score)
+                return Long.compare(o.score, score);
+
+            if ((node == null) != (o.node == null))
+                return node == null ? -1 : 1;
+
+            return Integer.compare(o.depth, depth);
+        }
+    }
+
+}   // PrefixTrie Class Closed
@@ -0,0 +1,353 @@
+package LMS;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.*;
+
+// Keeps this library a copy of a leader's (see ReplicationLeader), applying its changes in order with
+// the same methods the desk uses, so that the indexes stay right for searches. The copy is as old as
+// the time since the last heartbeat was applied; queries are refused when that is more than the
+// allowed staleness.
+public class ReplicationFollower
+{
+    private static final int MAX_BATCH = 1000;      // changes applied holding the library's lock once
+
+    private final Library lib;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final Thread receiver;
+    private final long maxStalenessMillis;
+
+    // Records as the leader's rows refer to them
+    private final HashMap<Integer, Object[]> newPersons = new HashMap<>();     // PERSON rows waiting for their role
+    private final HashMap<Integer, Double> salaries = new HashMap<>();
+    private final HashMap<Integer, Loan> loansById = new HashMap<>();
+    private final HashMap<Integer, HoldRequest> holdsById = new HashMap<>();
+    private final HashMap<Integer, Loan> openLoans = new HashMap<>();         // by book ID
+
+    private volatile long applied;                  // sequence of the last change applied
+    private volatile long freshAt;                  // when the last heartbeat was applied, 0 before the copy is complete
+    private volatile long changesApplied;
+    private volatile long skipped;
+    private volatile boolean connected = true;
+
+    public ReplicationFollower(Library l, String leader, long maxStaleness) throws IOException     // para cons.
+    {
+        lib = l;
+        maxStalenessMillis = maxStaleness;
+
+        int colon = leader.lastIndexOf(':');
+        socket = new Socket(leader.substring(0, colon), Integer.parseInt(leader.substring(colon + 1)));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+
+        receiver = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                receive();
+            }
+        }, "Replication follower");
+
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    // Waiting until the first copy of the library has been received
+    public boolean awaitCopy()
+    {
+        while (freshAt == 0 && connected)
+        {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return connected;
+    }
+
+    // Milliseconds by which the copy may be behind the leader
+    public long getStaleness()
+    {
+        return freshAt == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - freshAt;
+    }
+
+    // null if queries can be answered, otherwise the reason they can't
+    public String checkFresh()
+    {
+        long staleness = getStaleness();
+
+        if (!connected)
+            return "The replica has lost its leader";
+
+        if (staleness > maxStalenessMillis)
+            return "The replica is " + (staleness == Long.MAX_VALUE ? "still being copied" : staleness + " ms behind its leader");
+
+        return null;
+    }
+
+    public void close()
+    {
+        connected = false;
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed already
+        }
+    }
+
+    /*------- The receiving thread ---------*/
+
+    private void receive()
+    {
+        ArrayList<RowChange> batch = new ArrayList<>(MAX_BATCH);
+
+        try {
+            while (true)
+            {
+                // Decoding the frames which have arrived without the lock, waiting for the first one only
+                long sequence = -1;
+                boolean heartbeat = false;
+
+                do
+                {
+                    int type = in.readByte();
+
+                    if (type == 'H')
+                    {
+                        sequence = in.readLong();
+                        heartbeat = true;
+                    }
+                    else
+                    {
+                        if (type == 'C')
+                            sequence = in.readLong();
+
+                        batch.add(RowChange.readFrom(in));
+                    }
+                } while (in.available() > 0 && batch.size() < MAX_BATCH);
+
+                // then applying them holding the lock once
+                synchronized (lib)
+                {
+                    for (int i = 0; i < batch.size(); i++)
+                        apply(batch.get(i));
+                }
+
+                changesApplied += batch.size();
+                batch.clear();
+
+                if (sequence >= 0)
+                    applied = sequence;
+
+                if (heartbeat)
+                    freshAt = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            System.out.println("\nLost the connection to the leader: " + e.getMessage());
+        } finally {
+            connected = false;
+        }
+    }
+
+    private void apply(RowChange c)
+    {
+        Object[] v = c.getValues();
+        int key = c.getKey();
+
+        switch (c.getTable())
+        {
+            case RowChange.PERSON:
+                Person p = lib.findPerson(key);
+
+                if (p == null)
+                    newPersons.put(key, v);
+                else if (v != null)
+                {
+                    if (!p.getName().equals(v[1]))
+                        p.setName((String) v[1]);
+
+                    if (!p.getAddress().equals(v[3]))
+                        p.setAddress((String) v[3]);
+
+                    if (v[4] != null && p.getPhoneNumber() != (Integer) v[4])
+                        p.setPhone((Integer) v[4]);
+                }
+                break;
+
+            case RowChange.STAFF:
+                if (v != null)
+                    salaries.put(key, (Double) v[2]);
+                break;
+
+            case RowChange.CLERK:
+            case RowChange.LIBRARIAN:
+            case RowChange.BORROWER:
+                addPerson(c.getTable(), key, v);
+                break;
+
+            case RowChange.BOOK:
+                applyBook(key, v);
+                break;
+
+            case RowChange.LOAN:
+                if (v != null)
+                    applyLoan(key, v);
+                break;
+
+            case RowChange.ON_HOLD_BOOK:
+                applyHold(key, v);
+                break;
+
+            case RowChange.BORROWED_BOOK:
+                applyBorrowed(key, v);
+                break;
+        }
+    }
+
+    private void addPerson(int table, int id, Object[] role)
+    {
+        Object[] v = newPersons.remove(id);
+
+        if (v == null || role == null)
+            return;             // there already
+
+        String name = (String) v[1], address = (String) v[3];
+        int phone = v[4] == null ? 0 : (Integer) v[4];
+        Double salary = salaries.remove(id);
+        double s = salary == null ? 0 : salary;
+
+        if (table == RowChange.CLERK)
+            lib.addClerk(new Clerk(id, name, address, phone, s, (Integer) role[1]));
+        else if (table == RowChange.LIBRARIAN)
+            lib.addLibrarian(new Librarian(id, name, address, phone, s, (Integer) role[1]));
+        else
+            lib.addBorrower(new Borrower(id, name, address, phone));
+    }
+
+    // BOOK columns: ID, TITLE, AUTHOR, SUBJECT, IS_ISSUED
+    private void applyBook(int id, Object[] v)
+    {
+        Book b = lib.findBook(id);
+
+        if (v == null)
+        {
+            if (b != null)
+                lib.removeBook(b);
+        }
+        else if (b == null)
+            lib.addBookinLibrary(new Book(id, (String) v[1], (String) v[3], (String) v[2], (Boolean) v[4]));
+
+        else
+        {
+            if (!b.getTitle().equals(v[1]) || !b.getSubject().equals(v[3]) || !b.getAuthor().equals(v[2]))
+                b.setInfo((String) v[1], (String) v[3], (String) v[2]);
+
+            if (b.getIssuedStatus() != (Boolean) v[4])
+                b.setIssuedStatus((Boolean) v[4]);
+        }
+    }
+
+    // LOAN columns: L_ID, BORROWER, BOOK, ISSUER, ISS_DATE, RECEIVER, RET_DATE, FINE_PAID
+    private void applyLoan(int id, Object[] v)
+    {
+        Loan l = loansById.get(id);
+        Staff receiver = v[5] == null ? null : lib.findStaff((Integer) v[5]);
+        Date returned = v[6] == null ? null : new Date(((Date) v[6]).getTime());
+
+        if (l == null)
+        {
+            Borrower bor = lib.findBorrower((Integer) v[1]);
+            Book b = lib.findBook((Integer) v[2]);
+            Staff issuer = lib.findStaff((Integer) v[3]);
+
+            if (bor == null || b == null || issuer == null)
+            {
+                skipped++;      // e.g. a loan of a book removed before the copy was made
+                return;
+            }
+
+            l = new Loan(id, bor, b, issuer, receiver, new Date(((Date) v[4]).getTime()), returned, (Boolean) v[7]);
+            loansById.put(id, l);
+            lib.addLoan(l);
+
+            if (receiver == null)
+                openLoans.put(b.getID(), l);
+            return;
+        }
+
+        if (l.getIssuedDate().getTime() != ((Date) v[4]).getTime())
+            l.renew(new Date(((Date) v[4]).getTime()));
+
+        if (receiver != null && l.getReceiver() == null)
+        {
+            l.setReturnedDate(returned);
+            l.setReceiver(receiver);
+        }
+
+        if (l.getFineStatus() != (Boolean) v[7])
+            l.setFineStatus((Boolean) v[7]);
+    }
+
+    // ON_HOLD_BOOK columns: REQ_ID, BOOK, BORROWER, REQ_DATE
+    private void applyHold(int id, Object[] v)
+    {
+        if (v == null)
+        {
+            HoldRequest hr = holdsById.remove(id);
+
+            if (hr != null)
+            {
+                hr.getBook().removeHoldRequest(hr);
+                hr.getBorrower().removeHoldRequest(hr);
+            }
+            return;
+        }
+
+        if (holdsById.containsKey(id))
+            return;
+
+        Book b = lib.findBook((Integer) v[1]);
+        Borrower bor = lib.findBorrower((Integer) v[2]);
+
+        if (b == null || bor == null)
+        {
+            skipped++;
+            return;
+        }
+
+        HoldRequest hr = new HoldRequest(id, bor, b, new Date(((Date) v[3]).getTime()));
+        holdsById.put(id, hr);
+        bor.addHoldRequest(hr);
+        b.addHoldRequest(hr);
+    }
+
+    // BORROWED_BOOK columns: BOOK, BORROWER; the row of a book out on a loan
+    private void applyBorrowed(int bookID, Object[] v)
+    {
+        Loan l = v == null ? openLoans.remove(bookID) : openLoans.get(bookID);
+
+        if (l == null)
+            return;
+
+        if (v == null)
+            l.getBorrower().removeBorrowedBook(l);
+
+        else if (l.getBorrower().getLoanOf(l.getBook()) == null)
+            l.getBorrower().addBorrowedBook(l);
+    }
+    /*-----------------------------------*/
+
+    public void printStatistics()
+    {
+        long staleness = getStaleness();
+
+        System.out.println("Replica: " + changesApplied + " changes applied up to " + applied + ", "
+                + (staleness == Long.MAX_VALUE ? "copying" : staleness + " ms behind the leader") + ", " + skipped + " skipped"
+                + (connected ? "" : ", DISCONNECTED"));
+    }
+
+}   // ReplicationFollower Class Closed
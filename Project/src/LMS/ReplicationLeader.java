@@ -0,0 +1,220 @@
+package LMS;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Sends the changes of the library, in the order they are made, to follower processes which keep
+// copies of it to answer searches (see ReplicationFollower). A follower first gets all records, then
+// every change after them. Each follower has a bounded queue and a thread of its own, so a slow
+// follower never holds up the desk; one which falls too far behind is disconnected and has to start
+// again.
+//
+// Messages: 'S' <row change> (a record of the first copy), 'C' <sequence> <row change>, and
+// 'H' <sequence>, sent at least every HEARTBEAT_MILLIS, telling that everything up to the sequence
+// has been sent.
+public class ReplicationLeader
+{
+    static final int HEARTBEAT_MILLIS = 200;
+    private static final int QUEUE_CAPACITY = 100000;      // changes a follower may be behind
+
+    // A change with its place in the log
+    private static class Entry
+    {
+        final long sequence;
+        final RowChange change;
+
+        Entry(long s, RowChange c)
+        {
+            sequence = s;
+            change = c;
+        }
+    }
+
+    // A connected follower
+    private class Follower implements Runnable
+    {
+        final Socket socket;
+        final ArrayBlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        ArrayList<RowChange> snapshot;
+        long snapshotSequence;
+        volatile long sent;         // sequence of the last change sent
+        volatile boolean dropped;
+
+        Follower(Socket s)      // para cons.
+        {
+            socket = s;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+
+                for (int i = 0; i < snapshot.size(); i++)
+                {
+                    out.writeByte('S');
+                    snapshot.get(i).writeTo(out);
+                }
+
+                snapshot = null;
+                sent = snapshotSequence;
+                heartbeat(out);
+
+                while (!dropped && !stopping)
+                {
+                    Entry e = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+
+                    if (e == null)
+                    {
+                        heartbeat(out);
+                        continue;
+                    }
+
+                    do {
+                        out.writeByte('C');
+                        out.writeLong(e.sequence);
+                        e.change.writeTo(out);
+                        sent = e.sequence;
+                    } while ((e = queue.poll()) != null);
+
+                    heartbeat(out);
+                }
+            } catch (IOException | InterruptedException e) {
+                // the follower has gone
+            } finally {
+                followers.remove(this);
+                close();
+            }
+        }
+
+        private void heartbeat(DataOutputStream out) throws IOException
+        {
+            out.writeByte('H');
+            out.writeLong(sent);
+            out.flush();
+        }
+
+        void close()
+        {
+            dropped = true;
+
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // closed already
+            }
+        }
+    }
+
+    private final Library lib;
+    private final ServerSocket server;
+    private final CopyOnWriteArrayList<Follower> followers = new CopyOnWriteArrayList<>();
+    private final Thread acceptor;
+    private volatile boolean stopping;
+
+    private long sequence;          // of the last change published (guarded by the library's lock)
+
+    // statistics
+    private volatile long published;
+    private volatile long dropouts;
+
+    public ReplicationLeader(Library l, int port) throws IOException       // para cons.
+    {
+        lib = l;
+        server = new ServerSocket(port);
+
+        acceptor = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                accept();
+            }
+        }, "Replication leader");
+
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Called holding the library's lock for every change
+    public void publish(RowChange change)
+    {
+        sequence++;
+        published++;
+
+        if (followers.isEmpty())
+            return;
+
+        Entry e = new Entry(sequence, change);
+
+        for (Follower f : followers)
+        {
+            if (!f.queue.offer(e))
+            {
+                dropouts++;
+                followers.remove(f);
+                f.close();
+            }
+        }
+    }
+
+    private void accept()
+    {
+        while (!stopping)
+        {
+            try {
+                Socket s = server.accept();
+                s.setTcpNoDelay(true);
+
+                Follower f = new Follower(s);
+
+                // Taking the copy and joining the log at the same point
+                synchronized (lib)
+                {
+                    f.snapshot = lib.replicationSnapshot();
+                    f.snapshotSequence = sequence;
+                    followers.add(f);
+                }
+
+                Thread t = new Thread(f, "Replication to " + s.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!stopping)
+                    System.out.println("\n" + e.getMessage());
+            }
+        }
+    }
+
+    public void close()
+    {
+        stopping = true;
+
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.out.println("\n" + e.getMessage());
+        }
+
+        for (Follower f : followers)
+            f.close();
+    }
+
+    public void printStatistics()
+    {
+        StringBuilder sb = new StringBuilder("Replication: " + published + " changes published, " + followers.size() + " followers, "
+                + dropouts + " dropped for falling behind");
+
+        for (Follower f : followers)
+            sb.append("\n  ").append(f.socket.getRemoteSocketAddress()).append(": ").append(f.queue.size()).append(" changes behind");
+
+        System.out.println(sb);
+    }
+
+}   // ReplicationLeader Class Closed
@@ -0,0 +1,118 @@
+package LMS;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Scanner;
+
+// Prints reports (all books, loan history, fines, hold requests) a page at a time. Rows are formatted
+// into one reusable StringBuilder and written to standard output through a large buffer, instead of
+// several System.out.print calls per row. In machine readable mode rows are printed as plain
+// tab separated values with a header line, without any decoration.
+public class ReportWriter
+{
+    // The rows of one report
+    public interface Rows
+    {
+        int size();
+
+        // Column titles, written once at the top of the report
+        void header(StringBuilder sb, boolean machine);
+
+        // Row number i, without the line break
+        void row(int i, StringBuilder sb, boolean machine);
+    }
+
+    private static final FileChannel stdout = new FileOutputStream(FileDescriptor.out).getChannel();
+
+    // One buffer for every report, locked while a page is written
+    private static final ChannelWriter out = new ChannelWriter(stdout);
+    private final StringBuilder line = new StringBuilder(256);
+
+    private int pageSize;               // 0 for no paging
+    private boolean machine;
+
+    public ReportWriter(int ps, boolean m)      // para cons.
+    {
+        pageSize = ps;
+        machine = m;
+    }
+
+    // Printing a report, asking for the page to show next when it doesn't fit on one page
+    public void show(Rows rows)
+    {
+        int size = rows.size();
+
+        if (pageSize <= 0 || size <= pageSize)
+        {
+            write(rows, 0, size);
+            return;
+        }
+
+        Scanner sc = new Scanner(System.in);
+        int offset = 0;
+
+        while (true)
+        {
+            write(rows, offset, pageSize);
+
+            int last = Math.min(offset + pageSize, size);
+            System.out.println("\nRows " + (offset + 1) + "-" + last + " of " + size
+                    + ". Enter 'n' (next), 'p' (previous), a row number to go to, 'm' (toggle machine readable) or 'q' (quit): ");
+
+            String choice = sc.next();
+
+            if (choice.equals("q"))
+                return;
+            else if (choice.equals("n"))
+            {
+                if (last < size)
+                    offset += pageSize;
+            }
+            else if (choice.equals("p"))
+                offset = Math.max(0, offset - pageSize);
+            else if (choice.equals("m"))
+                machine = !machine;
+            else if (choice.matches("[0-9]{1,9}"))
+                offset = Math.max(0, Math.min(Integer.parseInt(choice) - 1, size - 1));     // rows are numbered from 1
+            else
+                System.out.println("\nInvalid Input.");
+        }
+    }
+
+    // Writing count rows starting from offset, with the header
+    public void write(Rows rows, int offset, int count)
+    {
+        System.out.flush();     // whatever was printed before the report comes first
+
+        synchronized (out)
+        {
+            try {
+                line.setLength(0);
+                rows.header(line, machine);
+                out.write(line);
+
+                int end = Math.min(rows.size(), offset + count);
+
+                for (int i = offset; i < end; i++)
+                {
+                    line.setLength(0);
+                    rows.row(i, line, machine);
+                    line.append('\n');
+                    out.write(line);
+                }
+
+                out.flush();
+            } catch (IOException ex) {
+                System.out.println("\nCould not print the report: " + ex.getMessage());
+            }
+        }
+    }
+
+    public boolean isMachineReadable()
+    {
+        return machine;
+    }
+
+}   // ReportWriter Class Closed
@@ -0,0 +1,249 @@
+package LMS;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+// A change of one row of the database: the new values of the row, or its deletion. The values are
+// copied when the change is made, so the change can be written later by another thread without
+// looking at the objects of the library again.
+public class RowChange
+{
+    // Tables, in an order in which rows can be inserted without breaking the foreign keys
+    public static final int PERSON = 0;
+    public static final int STAFF = 1;
+    public static final int CLERK = 2;
+    public static final int LIBRARIAN = 3;
+    public static final int BORROWER = 4;
+    public static final int BOOK = 5;
+    public static final int LOAN = 6;
+    public static final int ON_HOLD_BOOK = 7;
+    public static final int BORROWED_BOOK = 8;
+
+    static final String[] TABLES = { "PERSON", "STAFF", "CLERK", "LIBRARIAN", "BORROWER", "BOOK", "LOAN", "ON_HOLD_BOOK", "BORROWED_BOOK" };
+
+    // Columns of each table, the key first
+    static final String[][] COLUMNS = {
+        { "ID", "PNAME", "PASSWORD", "ADDRESS", "PHONE_NO" },
+        { "S_ID", "TYPE", "SALARY" },
+        { "C_ID", "DESK_NO" },
+        { "L_ID", "OFFICE_NO" },
+        { "B_ID" },
+        { "ID", "TITLE", "AUTHOR", "SUBJECT", "IS_ISSUED", "TITLE_KEY", "AUTHOR_KEY", "SUBJECT_KEY" },
+        { "L_ID", "BORROWER", "BOOK", "ISSUER", "ISS_DATE", "RECEIVER", "RET_DATE", "FINE_PAID" },
+        { "REQ_ID", "BOOK", "BORROWER", "REQ_DATE" },
+        { "BOOK", "BORROWER" }
+    };
+
+    static final int[][] TYPES = {
+        { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER },
+        { Types.INTEGER, Types.VARCHAR, Types.DOUBLE },
+        { Types.INTEGER, Types.INTEGER },
+        { Types.INTEGER, Types.INTEGER },
+        { Types.INTEGER },
+        { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BOOLEAN, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR },
+        { Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.TIMESTAMP, Types.INTEGER, Types.TIMESTAMP, Types.BOOLEAN },
+        { Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DATE },
+        { Types.INTEGER, Types.INTEGER }
+    };
+
+    private final int table;
+    private final int key;
+    private final Object[] values;      // null when the row is deleted
+    private long sequence;              // given when the change is queued
+    private boolean continued;          // more changes of the same transaction follow it in the queue
+
+    private RowChange(int t, int k, Object[] v)     // para cons.
+    {
+        table = t;
+        key = k;
+        values = v;
+    }
+
+    /*------- Making changes from the objects of the library ---------*/
+
+    public static RowChange deleted(int table, int key)
+    {
+        return new RowChange(table, key, null);
+    }
+
+    public static RowChange of(Person p)
+    {
+        return new RowChange(PERSON, p.getID(), new Object[] { p.getID(), p.getName(), p.getPassword(), p.getAddress(), p.getPhoneNumber() });
+    }
+
+    // The row of a person in STAFF, CLERK, LIBRARIAN or BORROWER
+    public static RowChange roleOf(Person p)
+    {
+        if (p instanceof Clerk)
+            return new RowChange(CLERK, p.getID(), new Object[] { p.getID(), ((Clerk) p).deskNo });
+
+        if (p instanceof Librarian)
+            return new RowChange(LIBRARIAN, p.getID(), new Object[] { p.getID(), ((Librarian) p).officeNo });
+
+        return new RowChange(BORROWER, p.getID(), new Object[] { p.getID() });
+    }
+
+    public static RowChange staffOf(Staff s)
+    {
+        return new RowChange(STAFF, s.getID(), new Object[] { s.getID(), s.getClass().getSimpleName(), s.getSalary() });
+    }
+
+    // With the title, author and subject normalized as well, for the searches of the lazy catalog
+    public static RowChange of(Book b)
+    {
+        String title = b.getTitle(), author = b.getAuthor(), subject = b.getSubject();
+
+        return new RowChange(BOOK, b.getID(), new Object[] { b.getID(), title, author, subject, b.getIssuedStatus(),
+            Library.normalize(title), Library.normalize(author), Library.normalize(subject) });
+    }
+
+    public static RowChange of(Loan l)
+    {
+        Staff r = l.getReceiver();
+
+        return new RowChange(LOAN, l.getID(), new Object[] { l.getID(), l.getBorrower().getID(), l.getBook().getID(), l.getIssuer().getID(),
+            new Timestamp(l.getIssuedDate().getTime()), r != null ? r.getID() : null,
+            r != null ? new Timestamp(l.getReturnDate().getTime()) : null, l.getFineStatus() });
+    }
+
+    public static RowChange of(HoldRequest hr)
+    {
+        return new RowChange(ON_HOLD_BOOK, hr.getID(), new Object[] { hr.getID(), hr.getBook().getID(), hr.getBorrower().getID(),
+            new java.sql.Date(hr.getRequestDate().getTime()) });
+    }
+
+    // The BORROWED_BOOK row of a book which is out on a loan
+    public static RowChange borrowed(Loan l)
+    {
+        return new RowChange(BORROWED_BOOK, l.getBook().getID(), new Object[] { l.getBook().getID(), l.getBorrower().getID() });
+    }
+    /*----------------------------------------------------------------*/
+
+    /*------- Sending changes to the followers of a replicated library ---------*/
+
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeByte(table);
+        out.writeInt(key);
+        out.writeShort(values == null ? -1 : values.length);
+
+        for (int i = 0; values != null && i < values.length; i++)
+        {
+            Object v = values[i];
+
+            if (v == null)
+                out.writeByte(0);
+            else if (v instanceof Integer)
+            {
+                out.writeByte(1);
+                out.writeInt((Integer) v);
+            }
+            else if (v instanceof String)
+            {
+                out.writeByte(2);
+                out.writeUTF((String) v);
+            }
+            else if (v instanceof Double)
+            {
+                out.writeByte(3);
+                out.writeDouble((Double) v);
+            }
+            else if (v instanceof Boolean)
+            {
+                out.writeByte(4);
+                out.writeBoolean((Boolean) v);
+            }
+            else if (v instanceof Timestamp)
+            {
+                out.writeByte(5);
+                out.writeLong(((Timestamp) v).getTime());
+            }
+            else
+            {
+                out.writeByte(6);
+                out.writeLong(((java.sql.Date) v).getTime());
+            }
+        }
+    }
+
+    public static RowChange readFrom(DataInput in) throws IOException
+    {
+        int t = in.readByte();
+        int k = in.readInt();
+        int n = in.readShort();
+
+        if (n < 0)
+            return new RowChange(t, k, null);
+
+        Object[] v = new Object[n];
+
+        for (int i = 0; i < n; i++)
+        {
+            switch (in.readByte())
+            {
+                case 1: v[i] = in.readInt(); break;
+                case 2: v[i] = in.readUTF(); break;
+                case 3: v[i] = in.readDouble(); break;
+                case 4: v[i] = in.readBoolean(); break;
+                case 5: v[i] = new Timestamp(in.readLong()); break;
+                case 6: v[i] = new java.sql.Date(in.readLong()); break;
+                default: v[i] = null;
+            }
+        }
+
+        return new RowChange(t, k, v);
+    }
+    /*----------------------------------------------------------------*/
+
+    /*----- Getter FUNCs.--------*/
+    public int getTable()
+    {
+        return table;
+    }
+
+    public int getKey()
+    {
+        return key;
+    }
+
+    // Table and key together, the same for all changes of a row
+    public long getRowKey()
+    {
+        return ((long) table << 32) | (key & 0xffffffffL);
+    }
+
+    public Object[] getValues()
+    {
+        return values;
+    }
+
+    public boolean isDelete()
+    {
+        return values == null;
+    }
+
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public boolean isContinued()
+    {
+        return continued;
+    }
+    /*--------------------------*/
+
+    void setSequence(long s)
+    {
+        sequence = s;
+    }
+
+    void setContinued(boolean c)
+    {
+        continued = c;
+    }
+
+}   // RowChange Class Closed
@@ -0,0 +1,135 @@
+package LMS;
+
+import java.util.*;
+
+// Remembers the results of recent book searches, so that searching the same title, subject or author
+// again costs one hash lookup instead of a scan of all the books in the library.
+// Entries are evicted in least recently used order once the cache is full, and only the entries
+// that a changed book could belong to are dropped when the catalog changes.
+public class SearchCache
+{
+    private final int capacity;
+    private final LinkedHashMap<String, ArrayList<Book>> results;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public SearchCache(int cap)     // para cons.
+    {
+        capacity = cap;
+
+        // access ordered, so the eldest entry is the least recently used one
+        results = new LinkedHashMap<String, ArrayList<Book>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ArrayList<Book>> eldest)
+            {
+                if (size() > capacity)
+                {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Key of a query, e.g. "1:harry potter" for a search by title
+    public static String key(int field, String normalizedQuery)
+    {
+        return field + ":" + normalizedQuery;
+    }
+
+    // Returns the cached result of a query, or null if it isn't cached.
+    // The returned list is shared with the cache and must not be modified.
+    public ArrayList<Book> get(String key)
+    {
+        ArrayList<Book> matched = results.get(key);
+
+        if (matched != null)
+            hits++;
+        else
+            misses++;
+
+        return matched;
+    }
+
+    public void put(String key, ArrayList<Book> matched)
+    {
+        results.put(key, matched);
+    }
+
+    /*------- Invalidation ---------*/
+
+    // Dropping every query the given book matches by title, subject or author
+    public void invalidate(Book b)
+    {
+        invalidate(b.getTitle(), b.getSubject(), b.getAuthor());
+    }
+
+    public void invalidate(String title, String subject, String author)
+    {
+        invalidate(key(Library.BY_TITLE, Library.normalize(title)));
+        invalidate(key(Library.BY_SUBJECT, Library.normalize(subject)));
+        invalidate(key(Library.BY_AUTHOR, Library.normalize(author)));
+    }
+
+    private void invalidate(String key)
+    {
+        if (results.remove(key) != null)
+            invalidations++;
+    }
+
+    public void clear()
+    {
+        results.clear();
+    }
+    /*------------------------------*/
+
+    /*----- Getter FUNCs.--------*/
+    public int size()
+    {
+        return results.size();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    public long getInvalidations()
+    {
+        return invalidations;
+    }
+
+    public double getHitRatio()
+    {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+    /*--------------------------*/
+
+    public void printStatistics()
+    {
+        System.out.println("Search Cache: " + size() + "/" + capacity + " queries, " + hits + " hits, " + misses + " misses (hit ratio "
+                + String.format("%.2f", getHitRatio()) + "), " + evictions + " evictions, " + invalidations + " invalidations");
+    }
+
+}   // SearchCache Class Closed
@@ -0,0 +1,193 @@
+package LMS;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Serves the books of this library as one shard of a cluster (see ClusterCatalog). Requests are lines
+// sent over TCP, and every answer is some lines followed by a line "END":
+//
+//      search <field> <query>      a line "<ID>\t<title>\t<subject>\t<author>\t<issued>" per book found,
+//                                  field being 1 (title), 2 (subject) or 3 (author)
+//      next-book-id                the ID the next new book would get here
+//      shutdown                    stops the server
+//      <any batch command>         "OK\t<details>" or "FAILED\t<reason>" (see BatchRunner)
+//
+// Each connection has its own staff member, set with "staff <ID>". A replica of a library (see
+// ReplicationFollower) answers only searches, and only while its copy is recent enough. Requests are
+// not authenticated, so the server listens on the loopback interface unless given another address.
+public class ShardServer
+{
+    private final Library lib;
+    private final ServerSocket server;
+    private final ReplicationFollower replica;     // null if this library is not a replica
+    private volatile boolean stopping;
+
+    public ShardServer(Library l, int port) throws IOException     // para cons.
+    {
+        this(l, null, port, null);
+    }
+
+    // Listening on the address given, the loopback interface if it is null
+    public ShardServer(Library l, String address, int port, ReplicationFollower r) throws IOException      // para cons.
+    {
+        lib = l;
+        replica = r;
+        server = new ServerSocket(port, 50, address != null ? InetAddress.getByName(address) : InetAddress.getLoopbackAddress());
+    }
+
+    // Accepting connections until a client sends "shutdown"
+    public void serve()
+    {
+        System.out.println("\nServing shard on " + server.getInetAddress().getHostAddress() + " port " + server.getLocalPort() + ".");
+
+        while (!stopping)
+        {
+            try {
+                final Socket s = server.accept();
+
+                Thread t = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        session(s);
+                    }
+                }, "Shard session " + s.getRemoteSocketAddress());
+
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!stopping)
+                    System.out.println("\n" + e.getMessage());
+            }
+        }
+    }
+
+    private void session(Socket s)
+    {
+        BatchRunner runner = new BatchRunner(lib);
+        StringBuilder answer = new StringBuilder(256);
+
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+
+            String line;
+
+            while ((line = in.readLine()) != null)
+            {
+                answer.setLength(0);
+
+                if (line.equals("shutdown"))
+                {
+                    out.write("END\n");
+                    out.flush();
+                    stop();
+                    break;
+                }
+
+                synchronized (lib)
+                {
+                    lib.beginTransaction();
+
+                    try {
+                        answer(runner, line.trim(), answer);
+                    } finally {
+                        lib.commitTransaction();
+                    }
+
+                    lib.trimRecords();
+                }
+
+                // Answering once the changes are in the database, as the batch runner does
+                if (!lib.awaitPersisted() && lib.isPersisting() && answer.indexOf("OK\t") == 0)
+                {
+                    answer.setLength(0);
+                    answer.append("FAILED\tCould not be saved to the database\n");
+                }
+
+                out.append(answer).append("END\n");
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client has gone
+        } finally {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // closed already
+            }
+        }
+    }
+
+    private void answer(BatchRunner runner, String line, StringBuilder answer)
+    {
+        if (replica != null)
+        {
+            String reason = line.startsWith("search ") ? replica.checkFresh() : "Read-only replica";
+
+            if (reason != null)
+            {
+                answer.append("FAILED\t").append(reason).append('\n');
+                return;
+            }
+        }
+
+        if (line.startsWith("search "))
+        {
+            String[] f = line.split(" ", 3);
+
+            try {
+                int field = Integer.parseInt(f[1]);
+
+                if (field < Library.BY_TITLE || field > Library.BY_AUTHOR)
+                    throw new NumberFormatException();
+
+                ArrayList<Book> books = lib.searchBooks(field, f.length > 2 ? f[2] : "");
+
+                for (int i = 0; i < books.size(); i++)
+                {
+                    Book b = books.get(i);
+                    answer.append(b.getID()).append('\t').append(clean(b.getTitle())).append('\t').append(clean(b.getSubject()))
+                            .append('\t').append(clean(b.getAuthor())).append('\t').append(b.getIssuedStatus()).append('\n');
+                }
+            } catch (NumberFormatException e) {
+                answer.append("FAILED\tInvalid field ").append(f[1]).append('\n');
+            }
+        }
+        else if (line.equals("next-book-id"))
+            answer.append(lib.peekID(IdAllocator.BOOK)).append('\n');
+
+        else
+        {
+            try {
+                String details = runner.execute(line);
+                answer.append("OK\t").append(clean(details)).append('\n');
+            } catch (CirculationException e) {
+                answer.append("FAILED\t").append(clean(e.getMessage())).append('\n');
+            }
+        }
+    }
+
+    // Tabs and line breaks would break the answer into wrong fields or lines
+    private static String clean(String s)
+    {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    public void stop()
+    {
+        stopping = true;
+
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.out.println("\n" + e.getMessage());
+        }
+    }
+
+}   // ShardServer Class Closed
@@ -0,0 +1,360 @@
+package LMS;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+// Loads the hold requests and loans in the background once populateLibrary has loaded the persons and
+// the catalog, so that the desks can log in and search without waiting for the whole history. The
+// hold requests are loaded first, since they tell which books are available, then the loans, a chunk
+// of rows at a time while holding the library's lock. The desks take the lock only around each change,
+// never while waiting for input, so the pass keeps going between their actions.
+//
+// Until then every borrower and book is marked pending. A borrower touched before the background pass
+// has reached it gets its loans and hold requests loaded first, and a book its hold requests, by
+// indexed queries. Records are loaded once whichever way comes first; those made while running have
+// IDs above the ones in the database at start, and are never loaded.
+public class StagedLoader
+{
+    private static final int CHUNK = 2000;         // rows loaded each time the lock is taken
+
+    private static final int HOLDS = 0, LOANS = 1, DONE = 2;
+
+    private final Library lib;
+    private final Connection scanCon;               // the background pass has a connection of its own
+    private final Statement scan;
+    private ResultSet rows;
+    private volatile int stage = HOLDS;             // read by isDone() from the desks' threads
+    private boolean failed;
+
+    private final PreparedStatement loansOfBorrower;
+    private final PreparedStatement holdsOfBorrower;
+    private final PreparedStatement holdsOfBook;
+    private final PreparedStatement borrowerOfBook;
+
+    private final int maxLoanID;                    // the records in the database at start
+    private final int maxHoldID;
+    private final BitSet loansLoaded = new BitSet();
+    private final BitSet holdsLoaded = new BitSet();
+
+    private Thread thread;
+    private volatile boolean stopping;
+
+    // statistics
+    private final long started = System.nanoTime();
+    private volatile long finishedMillis = -1;
+    private volatile long loansDone;
+    private volatile long holdsDone;
+    private long borrowersFirst;
+    private long booksFirst;
+
+    public StagedLoader(Library l, Connection con, int maxLoan, int maxHold) throws SQLException      // para cons.
+    {
+        lib = l;
+        maxLoanID = maxLoan;
+        maxHoldID = maxHold;
+
+        loansOfBorrower = con.prepareStatement("SELECT L_ID,BORROWER,BOOK,ISSUER,ISS_DATE,RECEIVER,RET_DATE,FINE_PAID FROM LIBRARY.LOAN WHERE BORROWER = ? ORDER BY L_ID");
+        holdsOfBorrower = con.prepareStatement("SELECT DISTINCT BOOK FROM LIBRARY.ON_HOLD_BOOK WHERE BORROWER = ?");
+        holdsOfBook = con.prepareStatement("SELECT REQ_ID,BOOK,BORROWER,REQ_DATE FROM LIBRARY.ON_HOLD_BOOK WHERE BOOK = ? ORDER BY REQ_ID");
+        borrowerOfBook = con.prepareStatement("SELECT BORROWER FROM LIBRARY.BORROWED_BOOK WHERE BOOK = ?");
+
+        scanCon = lib.makeConnection();
+
+        if (scanCon == null)
+            throw new SQLException("No connection for loading in the background");
+
+        scan = scanCon.createStatement();
+        rows = scan.executeQuery("SELECT REQ_ID,BOOK,BORROWER,REQ_DATE FROM LIBRARY.ON_HOLD_BOOK ORDER BY REQ_ID");
+    }
+
+    // Starting the background pass
+    public void start()
+    {
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                work();
+            }
+        }, "Staged loader");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void work()
+    {
+        while (!stopping)
+        {
+            synchronized (lib)
+            {
+                if (!loadChunk())
+                    break;
+            }
+
+            Thread.yield();     // letting the desk in between chunks
+        }
+    }
+
+    public boolean isDone()
+    {
+        return stage == DONE;
+    }
+
+    // Whether every book's hold request queue is known
+    public boolean isHoldsDone()
+    {
+        return stage != HOLDS;
+    }
+
+    // Called holding the library's lock: loading the rest now. False if some records could not be loaded.
+    public boolean finish()
+    {
+        while (loadChunk());
+
+        return !failed;
+    }
+
+    // Called holding the library's lock: loading the hold requests still left, so every book's queue is known
+    public boolean finishHolds()
+    {
+        while (stage == HOLDS && loadChunk());
+
+        return !failed;
+    }
+
+    // Stopping the background pass, between two chunks
+    public void close()
+    {
+        synchronized (lib)
+        {
+            stopping = true;
+
+            try {
+                scanCon.close();
+            } catch (SQLException e) {
+                // closed already
+            }
+        }
+    }
+
+    /*------- The background pass ---------*/
+
+    // Called holding the library's lock. False once there is nothing left to load.
+    private boolean loadChunk()
+    {
+        if (stage == DONE || failed || stopping)
+            return false;
+
+        lib.beginLoading();
+
+        try {
+            for (int n = 0; n < CHUNK; n++)
+            {
+                if (!rows.next())
+                {
+                    rows.close();
+
+                    if (stage == HOLDS)
+                    {
+                        stage = LOANS;
+                        rows = scan.executeQuery("SELECT L_ID,BORROWER,BOOK,ISSUER,ISS_DATE,RECEIVER,RET_DATE,FINE_PAID FROM LIBRARY.LOAN ORDER BY L_ID");
+                        holdsFinished();
+                        continue;
+                    }
+
+                    loadingFinished();
+                    return false;
+                }
+
+                if (stage == HOLDS)
+                    readHold(rows);
+                else
+                    readLoan(rows);
+            }
+        } catch (SQLException e) {
+            System.out.println("\nCould not load the loans and hold requests: " + e.getMessage());
+            failed = true;
+            return false;
+        } finally {
+            lib.endLoading();
+        }
+
+        return true;
+    }
+
+    // Every book's hold requests are loaded now
+    private void holdsFinished()
+    {
+        ArrayList<Book> books = lib.getBooks();
+
+        for (int i = 0; i < books.size(); i++)
+            books.get(i).setHoldsPending(false);
+    }
+
+    private void loadingFinished()
+    {
+        stage = DONE;
+
+        ArrayList<Person> persons = lib.getPersons();
+
+        for (int i = 0; i < persons.size(); i++)
+        {
+            if (persons.get(i) instanceof Borrower)
+                ((Borrower) persons.get(i)).setRecordsPending(false);
+        }
+
+        finishedMillis = (System.nanoTime() - started) / 1000000;
+
+        try {
+            scanCon.close();
+        } catch (SQLException e) {
+            // the records are loaded anyway
+        }
+    }
+    /*-------------------------------------*/
+
+    /*------- Loading first what is needed now ---------*/
+
+    // Called for a borrower touched before its loans and hold requests have been loaded
+    public void loadBorrower(Borrower b) throws SQLException
+    {
+        lib.beginLoading();
+
+        try {
+            loansOfBorrower.setInt(1, b.getID());
+            ResultSet rs = loansOfBorrower.executeQuery();
+
+            while (rs.next())
+                readLoan(rs);
+
+            rs.close();
+
+            // Loading the queues of its books loads its hold requests, in their places
+            holdsOfBorrower.setInt(1, b.getID());
+            rs = holdsOfBorrower.executeQuery();
+            ArrayList<Integer> bookIDs = new ArrayList<>();
+
+            while (rs.next())
+                bookIDs.add(rs.getInt("BOOK"));
+
+            rs.close();
+
+            for (int i = 0; i < bookIDs.size(); i++)
+            {
+                Book book = lib.loadedBook(bookIDs.get(i));
+
+                if (book != null)
+                    book.loadHolds();
+            }
+
+            borrowersFirst++;
+        } finally {
+            lib.endLoading();
+        }
+    }
+
+    // Called for a book touched before its hold requests have been loaded
+    public void loadBook(Book b) throws SQLException
+    {
+        lib.beginLoading();
+
+        try {
+            holdsOfBook.setInt(1, b.getID());
+            ResultSet rs = holdsOfBook.executeQuery();
+
+            while (rs.next())
+                readHold(rs);
+
+            rs.close();
+            booksFirst++;
+        } finally {
+            lib.endLoading();
+        }
+    }
+
+    // The ID of the borrower who had a book at start, -1 if nobody. Loading that borrower's loans
+    // then loads the book's.
+    public int borrowerOf(Book b) throws SQLException
+    {
+        borrowerOfBook.setInt(1, b.getID());
+        ResultSet rs = borrowerOfBook.executeQuery();
+
+        try {
+            return rs.next() ? rs.getInt("BORROWER") : -1;
+        } finally {
+            rs.close();
+        }
+    }
+    /*--------------------------------------------------*/
+
+    /*------- Making the records of rows ---------*/
+
+    // Columns: REQ_ID, BOOK, BORROWER, REQ_DATE
+    private void readHold(ResultSet rs) throws SQLException
+    {
+        int id = rs.getInt("REQ_ID");
+
+        if (id > maxHoldID || holdsLoaded.get(id))
+            return;
+
+        holdsLoaded.set(id);
+
+        Book book = lib.loadedBook(rs.getInt("BOOK"));
+        Person p = lib.loadedPerson(rs.getInt("BORROWER"));
+
+        if (book == null || !(p instanceof Borrower))
+            return;
+
+        HoldRequest hr = new HoldRequest(id, (Borrower) p, book, new Date(rs.getDate("REQ_DATE").getTime()));
+        book.addLoadedHoldRequest(hr);
+        ((Borrower) p).addLoadedHoldRequest(hr);
+        holdsDone++;
+    }
+
+    // Columns: L_ID, BORROWER, BOOK, ISSUER, ISS_DATE, RECEIVER, RET_DATE, FINE_PAID
+    private void readLoan(ResultSet rs) throws SQLException
+    {
+        int id = rs.getInt("L_ID");
+
+        if (id > maxLoanID || loansLoaded.get(id))
+            return;
+
+        loansLoaded.set(id);
+
+        Person p = lib.loadedPerson(rs.getInt("BORROWER"));
+        Book book = lib.loadedBook(rs.getInt("BOOK"));
+
+        if (book == null || !(p instanceof Borrower))
+            return;         // the book has been removed from the library
+
+        Object r = rs.getObject("RECEIVER");
+        Staff receiver = r != null ? lib.findStaff(((Number) r).intValue()) : null;
+        Date returned = receiver != null ? new Date(rs.getTimestamp("RET_DATE").getTime()) : null;
+
+        Loan l = new Loan(id, (Borrower) p, book, lib.findStaff(rs.getInt("ISSUER")), receiver,
+                new Date(rs.getTimestamp("ISS_DATE").getTime()), returned, rs.getBoolean("FINE_PAID"));
+
+        lib.loanLoaded(l);
+
+        if (receiver == null)
+            ((Borrower) p).addLoadedBorrowedBook(l);
+
+        loansDone++;
+    }
+    /*--------------------------------------------*/
+
+    public void printStatistics()
+    {
+        String state = failed ? "FAILED" : stage == DONE ? "done in " + finishedMillis + " ms" : stage == HOLDS ? "loading hold requests" : "loading loans";
+
+        System.out.println("Staged loading: " + state + ", " + holdsDone + " hold requests and " + loansDone + " loans loaded, "
+                + borrowersFirst + " borrowers and " + booksFirst + " books loaded first on demand");
+    }
+
+}   // StagedLoader Class Closed
@@ -0,0 +1,72 @@
+package LMS;
+
+import java.util.*;
+
+// Gives every distinct value (e.g. every subject or author) a small int code, so that books can refer
+// to the code instead of keeping their own copy of the text. A normalized dictionary matches values
+// ignoring letter case and extra spaces, and decodes them as they were first written.
+public class StringDictionary
+{
+    private final boolean normalized;
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private final ArrayList<String> values = new ArrayList<>();
+
+    public StringDictionary(boolean n)      // para cons.
+    {
+        normalized = n;
+    }
+
+    // Code of a value, giving it a new code if it hasn't got one yet
+    public synchronized int encode(String value)
+    {
+        String key = keyOf(value);
+        Integer code = codes.get(key);
+
+        if (code == null)
+        {
+            code = values.size();
+            codes.put(key, code);
+            values.add(value);
+        }
+
+        return code;
+    }
+
+    // Code of a value, -1 if it hasn't got one
+    public synchronized int lookup(String value)
+    {
+        Integer code = codes.get(keyOf(value));
+        return code != null ? code : -1;
+    }
+
+    // Codes of the values which are the same as this one ignoring letter case and extra spaces
+    public synchronized BitSet matching(String value)
+    {
+        String key = Library.normalize(value);
+        BitSet found = new BitSet();
+
+        for (int i = 0; i < values.size(); i++)
+        {
+            if (Library.normalize(values.get(i)).equals(key))
+                found.set(i);
+        }
+
+        return found;
+    }
+
+    public synchronized String decode(int code)
+    {
+        return values.get(code);
+    }
+
+    public synchronized int size()
+    {
+        return values.size();
+    }
+
+    private String keyOf(String value)
+    {
+        return normalized ? Library.normalize(value) : value;
+    }
+
+}   // StringDictionary Class Closed
@@ -0,0 +1,352 @@
+package LMS;
+
+import java.util.*;
+
+// Index of the three letter pieces (trigrams) of a book field, used to find books whose title or
+// author is spelled only roughly like the query, e.g. "Harry Poter" for "Harry Potter".
+// Every trigram keeps the IDs of the books containing it. A query counts, for the books on its
+// trigrams' lists, how many trigrams they share with it, and only the best few candidates are then
+// ranked by their exact similarity to the query.
+public class TrigramIndex
+{
+    private static final int MAX_CANDIDATES = 256;     // candidates whose similarity is computed
+    private static final int POSTINGS_BUDGET = 100000; // book IDs read per query before common trigrams are skipped
+
+    private final int field;                            // Library.BY_TITLE or Library.BY_AUTHOR
+    private final HashMap<Long, Postings> index;
+
+    public TrigramIndex(int f)      // para cons.
+    {
+        field = f;
+        index = new HashMap<>();
+    }
+
+    /*------- Maintaining the index ---------*/
+    public void add(Book b)
+    {
+        add(b.getID(), Library.fieldOf(b, field));
+    }
+
+    public void remove(Book b)
+    {
+        remove(b.getID(), Library.fieldOf(b, field));
+    }
+
+    // Removing many books at once, going through the list of each of their trigrams only once
+    public void removeAll(List<Book> books)
+    {
+        HashSet<Integer> ids = new HashSet<>();
+        HashSet<Long> touched = new HashSet<>();
+
+        for (int i = 0; i < books.size(); i++)
+        {
+            ids.add(books.get(i).getID());
+
+            long[] grams = trigrams(Library.normalize(Library.fieldOf(books.get(i), field)));
+
+            for (int j = 0; j < grams.length; j++)
+                touched.add(grams[j]);
+        }
+
+        for (Long gram : touched)
+        {
+            Postings p = index.get(gram);
+
+            if (p != null)
+            {
+                p.removeAll(ids);
+
+                if (p.size == 0)
+                    index.remove(gram);
+            }
+        }
+    }
+
+    public void add(int bookID, String text)
+    {
+        long[] grams = trigrams(Library.normalize(text));
+
+        for (int i = 0; i < grams.length; i++)
+        {
+            Postings p = index.get(grams[i]);
+
+            if (p == null)
+            {
+                p = new Postings();
+                index.put(grams[i], p);
+            }
+            p.add(bookID, grams.length);
+        }
+    }
+
+    public void remove(int bookID, String text)
+    {
+        long[] grams = trigrams(Library.normalize(text));
+
+        for (int i = 0; i < grams.length; i++)
+        {
+            Postings p = index.get(grams[i]);
+
+            if (p != null)
+            {
+                p.remove(bookID);
+
+                if (p.size == 0)
+                    index.remove(grams[i]);
+            }
+        }
+    }
+    /*---------------------------------------*/
+
+    // Returning up to limit books that are most similar to the query, best first.
+    // Only books with a similarity of at least minSimilarity (0 to 1) are returned.
+    public ArrayList<Book> search(String query, int limit, double minSimilarity)
+    {
+        ArrayList<Book> matched = new ArrayList<>();
+
+        long[] grams = trigrams(Library.normalize(query));
+
+        if (grams.length == 0)
+            return matched;
+
+        // Looking at the rarest trigrams first, and leaving out the most common ones once the budget
+        // is used up, as long as at least two trigrams are looked at.
+        Postings[] lists = new Postings[grams.length];
+        int n = 0;
+
+        for (int i = 0; i < grams.length; i++)
+        {
+            Postings p = index.get(grams[i]);
+
+            if (p != null)
+                lists[n++] = p;
+        }
+
+        if (n == 0)
+            return matched;
+
+        Arrays.sort(lists, 0, n, new Comparator<Postings>()
+        {
+            @Override
+            public int compare(Postings a, Postings b)
+            {
+                return Integer.compare(a.size, b.size);
+            }
+        });
+
+        int used = 0;
+        long read = 0;
+
+        while (used < n && (read + lists[used].size <= POSTINGS_BUDGET || used < 2))
+        {
+            read += lists[used].size;
+            used++;
+        }
+
+        // Counting shared trigrams for every candidate, along with its number of trigrams
+        HashMap<Integer, int[]> shared = new HashMap<>();
+
+        for (int i = 0; i < used; i++)
+        {
+            Postings p = lists[i];
+
+            for (int j = 0; j < p.size; j++)
+            {
+                int[] count = shared.get(p.ids[j]);
+
+                if (count == null)
+                    shared.put(p.ids[j], new int[] {1, p.lengths[j] & 0xff});
+                else
+                    count[0]++;
+            }
+        }
+
+        // A book sharing s of the query's q trigrams has a similarity of at most s / q,
+        // so books sharing too few of them can't reach minSimilarity.
+        final int q = grams.length;
+        int minShared = Math.max(1, (int) Math.ceil(minSimilarity * q) - (n - used));
+
+        // Keeping the candidates with the best estimated similarity
+        PriorityQueue<double[]> best = new PriorityQueue<>(MAX_CANDIDATES + 1, new Comparator<double[]>()
+        {
+            @Override
+            public int compare(double[] a, double[] b)
+            {
+                return Double.compare(a[1], b[1]);
+            }
+        });
+
+        for (Map.Entry<Integer, int[]> e : shared.entrySet())
+        {
+            int count = e.getValue()[0];
+
+            if (count < minShared)
+                continue;
+
+            double estimate = (double) count / (q + e.getValue()[1] - count);
+
+            if (best.size() < MAX_CANDIDATES)
+                best.add(new double[] {e.getKey(), estimate});
+
+            else if (best.peek()[1] < estimate)
+            {
+                best.poll();
+                best.add(new double[] {e.getKey(), estimate});
+            }
+        }
+
+        // Ranking the candidates by their real similarity with the query
+        Library lib = Library.getInstance();
+        final HashMap<Book, Double> similarity = new HashMap<>();
+
+        for (double[] c : best)
+        {
+            Book b = lib.findBook((int) c[0]);
+
+            if (b == null)
+                continue;
+
+            double sim = similarity(grams, trigrams(Library.normalize(Library.fieldOf(b, field))));
+
+            if (sim >= minSimilarity)
+            {
+                similarity.put(b, sim);
+                matched.add(b);
+            }
+        }
+
+        Collections.sort(matched, new Comparator<Book>()
+        {
+            @Override
+            public int compare(Book a, Book b)
+            {
+                return Double.compare(similarity.get(b), similarity.get(a));
+            }
+        });
+
+        while (matched.size() > limit)
+            matched.remove(matched.size() - 1);
+
+        return matched;
+    }
+
+    public int size()
+    {
+        return index.size();
+    }
+
+    /*------- Trigrams of a text ---------*/
+
+    // Distinct trigrams of a normalized text, sorted. The text is padded with two spaces in front and
+    // one at the end so that its beginning and end count as well.
+    public static long[] trigrams(String s)
+    {
+        if (s.isEmpty())
+            return new long[0];
+
+        String padded = "  " + s + " ";
+        long[] grams = new long[padded.length() - 2];
+
+        for (int i = 0; i < grams.length; i++)
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+
+        Arrays.sort(grams);
+
+        int n = 0;
+        for (int i = 0; i < grams.length; i++)
+        {
+            if (n == 0 || grams[n - 1] != grams[i])
+                grams[n++] = grams[i];
+        }
+
+        return Arrays.copyOf(grams, n);
+    }
+
+    // Jaccard similarity of two sorted trigram sets
+    public static double similarity(long[] a, long[] b)
+    {
+        int i = 0, j = 0, common = 0;
+
+        while (i < a.length && j < b.length)
+        {
+            if (a[i] == b[j])
+            {
+                common++;
+                i++;
+                j++;
+            }
+            else if (a[i] < b[j])
+                i++;
+            else
+                j++;
+        }
+
+        int union = a.length + b.length - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    // List of book IDs containing a trigram, sorted so that a book is found by binary search, with the
+    // number of trigrams of each book. Books are mostly added in the order of their IDs, at the end.
+    private static class Postings
+    {
+        int[] ids = new int[4];
+        byte[] lengths = new byte[4];
+        int size;
+
+        void add(int id, int length)
+        {
+            int i = size == 0 || ids[size - 1] < id ? size : Arrays.binarySearch(ids, 0, size, id);
+
+            if (i < 0)
+                i = -i - 1;
+            else if (i < size)
+            {
+                lengths[i] = (byte) Math.min(length, 255);     // there already
+                return;
+            }
+
+            if (size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            System.arraycopy(lengths, i, lengths, i + 1, size - i);
+
+            ids[i] = id;
+            lengths[i] = (byte) Math.min(length, 255);
+            size++;
+        }
+
+        void remove(int id)
+        {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+
+            if (i < 0)
+                return;
+
+            size--;
+            System.arraycopy(ids, i + 1, ids, i, size - i);
+            System.arraycopy(lengths, i + 1, lengths, i, size - i);
+        }
+
+        void removeAll(Set<Integer> removed)
+        {
+            int n = 0;
+
+            for (int i = 0; i < size; i++)
+            {
+                if (!removed.contains(ids[i]))
+                {
+                    ids[n] = ids[i];
+                    lengths[n] = lengths[i];
+                    n++;
+                }
+            }
+
+            size = n;
+        }
+    }
+
+}   // TrigramIndex Class Closed
@@ -0,0 +1,186 @@
+package LMS;
+
+import java.util.*;
+
+// Removes many books from the library at once, e.g. the yearly weeding of the catalog. The books are
+// given by their IDs, or chosen by subject among those not borrowed since the start of a year. Books
+// borrowed now are reported and kept. The hold requests of the others are cancelled, on the books and
+// on their borrowers together, and the books are removed from every index while holding the library's
+// lock once; their changes are written to the database in one commit.
+public class WeedingJob
+{
+    private final Library lib;
+
+    private final ArrayList<Integer> bookIDs = new ArrayList<>();
+    private String subject;                     // choosing by subject too, null if not
+    private int year;                           // choosing books not borrowed since the start of this year
+
+    private final ArrayList<Book> removed = new ArrayList<>();
+    private final ArrayList<String> failures = new ArrayList<>();     // "<book ID>: <reason>"
+    private int holdsCancelled;
+
+    public WeedingJob(Library l)       // para cons.
+    {
+        lib = l;
+    }
+
+    public void addBook(int bookID)
+    {
+        bookIDs.add(bookID);
+    }
+
+    // Choosing also the books of a subject which haven't been borrowed since the start of a year
+    public void chooseBySubject(String s, int notBorrowedSince)
+    {
+        subject = s;
+        year = notBorrowedSince;
+    }
+
+    // Removing the books, returning how many were removed
+    public int run()
+    {
+        synchronized (lib)
+        {
+            ArrayList<Book> books = new ArrayList<>();
+            HashSet<Integer> seen = new HashSet<>();
+
+            for (int i = 0; i < bookIDs.size(); i++)
+            {
+                int id = bookIDs.get(i);
+
+                if (!seen.add(id))
+                {
+                    failures.add(id + ": Given more than once");
+                    continue;
+                }
+
+                Book b = lib.findBook(id);
+
+                if (b == null)
+                    failures.add(id + ": No book has this ID");
+                else
+                    books.add(b);
+            }
+
+            if (subject != null)
+                choose(books, seen);
+
+            // Books borrowed now are kept
+            ArrayList<Book> weeded = new ArrayList<>();
+
+            for (int i = 0; i < books.size(); i++)
+            {
+                Book b = books.get(i);
+
+                if (b.getIssuedStatus())
+                {
+                    Loan l = lib.openLoan(b);
+                    failures.add(b.getID() + ": The book " + b.getTitle() + " is borrowed by " + (l != null ? l.getBorrower().getName() : "some borrower") + ".");
+                }
+                else
+                    weeded.add(b);
+            }
+
+            // Nothing can fail from here on
+            lib.beginTransaction();
+
+            try {
+                HashMap<Borrower, HashSet<HoldRequest>> holdsOf = new HashMap<>();
+
+                for (int i = 0; i < weeded.size(); i++)
+                {
+                    List<HoldRequest> cancelled = weeded.get(i).cancelHoldRequests();
+
+                    for (int j = 0; j < cancelled.size(); j++)
+                    {
+                        HoldRequest hr = cancelled.get(j);
+                        HashSet<HoldRequest> hrs = holdsOf.get(hr.getBorrower());
+
+                        if (hrs == null)
+                        {
+                            hrs = new HashSet<>();
+                            holdsOf.put(hr.getBorrower(), hrs);
+                        }
+                        hrs.add(hr);
+                    }
+
+                    holdsCancelled += cancelled.size();
+                }
+
+                for (Map.Entry<Borrower, HashSet<HoldRequest>> e : holdsOf.entrySet())
+                    e.getKey().removeHoldRequests(e.getValue());
+
+                lib.removeBooks(weeded);
+                removed.addAll(weeded);
+            } finally {
+                lib.commitTransaction();
+            }
+
+            return removed.size();
+        }
+    }
+
+    // Adding the books of the subject not borrowed since the start of the year, in one pass over the
+    // loans and one over the catalog
+    private void choose(ArrayList<Book> books, HashSet<Integer> seen)
+    {
+        if (lib.isLazyCatalog())
+        {
+            failures.add(subject + ": Books can't be chosen by subject when they are loaded on demand");
+            return;
+        }
+
+        if (!lib.completeLoading())
+        {
+            failures.add(subject + ": Some loans could not be loaded");
+            return;
+        }
+
+        int code = Book.getSubjects().lookup(subject);
+
+        if (code == -1)
+            return;
+
+        Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(year, Calendar.JANUARY, 1);
+        Date since = c.getTime();
+
+        HashSet<Integer> borrowed = new HashSet<>();
+        ArrayList<Loan> loans = lib.getLoans();
+
+        for (int i = 0; i < loans.size(); i++)
+        {
+            if (!loans.get(i).getIssuedDate().before(since))
+                borrowed.add(loans.get(i).getBook().getID());
+        }
+
+        ArrayList<Book> all = lib.getBooks();
+
+        for (int i = 0; i < all.size(); i++)
+        {
+            Book b = all.get(i);
+
+            if (b.getSubjectCode() == code && !borrowed.contains(b.getID()) && seen.add(b.getID()))
+                books.add(b);
+        }
+    }
+
+    /*-----------Getter FUNCs.------------*/
+    public List<Book> getBooksRemoved()
+    {
+        return removed;
+    }
+
+    public int getHoldsCancelled()
+    {
+        return holdsCancelled;
+    }
+
+    public List<String> getFailures()
+    {
+        return failures;
+    }
+    /*------------------------------------*/
+
+}   // WeedingJob Class Closed
@@ -0,0 +1,84 @@
+package LMS;
+
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AvailabilityIndexTest
+{
+    private static final int FIRST_ID = 920000;         // clear of the IDs used by other tests
+
+    private static Book book(int n, String subject, String author)
+    {
+        Book b = new Book(FIRST_ID + n, "Title " + n, subject, author, false);
+        b.setOrdinal(n);
+        return b;
+    }
+
+    @Test
+    public void groupsBooksBySubjectAndAuthor()
+    {
+        AvailabilityIndex index = new AvailabilityIndex();
+        Book a = book(0, "History", "Gibbon"), b = book(1, "history ", "Tuchman"), c = book(2, "Poetry", "Gibbon");
+
+        index.add(a);
+        index.add(b);
+        index.add(c);
+
+        assertArrayEquals(new int[] {0, 1}, index.subject("HISTORY").toArray());
+        assertArrayEquals(new int[] {0, 2}, index.author("Gibbon").toArray());
+        assertTrue(index.subject("Cooking").isEmpty());
+        assertEquals(3, index.available().cardinality());
+
+        index.remove(a);
+
+        assertArrayEquals(new int[] {1}, index.subject("History").toArray());
+        assertEquals(2, index.available().cardinality());
+    }
+
+    @Test
+    public void changingSubjectMovesTheBook()
+    {
+        AvailabilityIndex index = new AvailabilityIndex();
+        Book a = book(0, "Poetry", "Gibbon");
+
+        index.add(a);
+        index.changeSubject(a, "History");      // as if it had been History before
+
+        assertTrue(index.subject("History").isEmpty());
+        assertArrayEquals(new int[] {0}, index.subject("Poetry").toArray());
+        assertFalse(index.subjects().containsKey(Library.normalize("History")));
+    }
+
+    // Through the library, which updates its index as books are issued, returned and held
+    @Test
+    public void availableFollowsIssuesAndHolds()
+    {
+        Library lib = Library.getInstance();
+        String subject = "Availability test subject";
+
+        Book a = new Book(FIRST_ID + 10, "Issued", subject, "A", false);
+        Book b = new Book(FIRST_ID + 11, "Held", subject, "A", false);
+        Book c = new Book(FIRST_ID + 12, "Free", subject, "A", false);
+        Borrower bor = new Borrower(FIRST_ID + 13, "Reader", "Street", 1);
+
+        lib.addBookinLibrary(a);
+        lib.addBookinLibrary(b);
+        lib.addBookinLibrary(c);
+
+        assertEquals(3, lib.countAvailableBooks(Library.BY_SUBJECT, subject));
+
+        a.setIssuedStatus(true);
+        b.addLoadedHoldRequest(new HoldRequest(FIRST_ID + 14, bor, b, new Date()));
+
+        assertEquals(1, lib.countAvailableBooks(Library.BY_SUBJECT, subject));
+        assertEquals(1, lib.availableBooks(Library.BY_SUBJECT, subject).size());
+        assertSame(c, lib.availableBooks(Library.BY_SUBJECT, subject).get(0));
+
+        a.setIssuedStatus(false);
+        b.removeHoldRequest();
+
+        assertEquals(3, lib.countAvailableBooks(Library.BY_SUBJECT, subject));
+    }
+
+}   // AvailabilityIndexTest Class Closed
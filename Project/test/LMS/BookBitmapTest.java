@@ -0,0 +1,108 @@
+package LMS;
+
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BookBitmapTest
+{
+    // Ordinals in three chunks, one of them dense enough to be stored as a bitmap
+    private static BitSet randomSet(Random r)
+    {
+        BitSet s = new BitSet();
+
+        for (int i = 0; i < 6000; i++)
+            s.set(r.nextInt(8000));
+
+        for (int i = 0; i < 300; i++)
+            s.set(65536 + r.nextInt(65536));
+
+        for (int i = 0; i < 50; i++)
+            s.set(5 * 65536 + r.nextInt(1000));
+
+        return s;
+    }
+
+    private static BookBitmap bitmapOf(BitSet s)
+    {
+        BookBitmap b = new BookBitmap();
+
+        for (int i = s.nextSetBit(0); i >= 0; i = s.nextSetBit(i + 1))
+            b.add(i);
+
+        return b;
+    }
+
+    private static BitSet bitSetOf(BookBitmap b)
+    {
+        BitSet s = new BitSet();
+
+        for (int o : b.toArray())
+            s.set(o);
+
+        return s;
+    }
+
+    @Test
+    public void combinesLikeBitSets()
+    {
+        Random r = new Random(30);
+
+        for (int round = 0; round < 5; round++)
+        {
+            BitSet x = randomSet(r), y = randomSet(r);
+            BookBitmap a = bitmapOf(x), b = bitmapOf(y);
+
+            assertEquals(x, bitSetOf(a));
+            assertEquals(x.cardinality(), a.cardinality());
+
+            BitSet and = (BitSet) x.clone();
+            and.and(y);
+            assertEquals(and, bitSetOf(BookBitmap.and(a, b)));
+            assertEquals(and.cardinality(), BookBitmap.andCardinality(a, b));
+
+            BitSet or = (BitSet) x.clone();
+            or.or(y);
+            assertEquals(or, bitSetOf(BookBitmap.or(a, b)));
+
+            BitSet andNot = (BitSet) x.clone();
+            andNot.andNot(y);
+            assertEquals(andNot, bitSetOf(BookBitmap.andNot(a, b)));
+        }
+    }
+
+    @Test
+    public void removingShrinksADenseChunk()
+    {
+        BookBitmap b = new BookBitmap();
+
+        for (int o = 0; o < 10000; o++)
+            b.add(o);
+
+        for (int o = 0; o < 10000; o += 2)
+            b.remove(o);
+
+        assertEquals(5000, b.cardinality());
+        assertFalse(b.contains(0));
+        assertTrue(b.contains(9999));
+
+        for (int o = 1; o < 10000; o += 2)
+            b.set(o, false);
+
+        assertTrue(b.isEmpty());
+    }
+
+    @Test
+    public void toArrayIsSorted()
+    {
+        BookBitmap b = new BookBitmap();
+
+        b.add(70000);
+        b.add(3);
+        b.add(65535);
+
+        assertArrayEquals(new int[] {3, 65535, 70000}, b.toArray());
+    }
+
+}   // BookBitmapTest Class Closed
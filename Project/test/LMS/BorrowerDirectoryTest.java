@@ -0,0 +1,82 @@
+package LMS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BorrowerDirectoryTest
+{
+    private static final int FIRST_ID = 950000;         // clear of the IDs used by other tests
+
+    private static ArrayList<Integer> ids(ArrayList<Borrower> borrowers)
+    {
+        ArrayList<Integer> ids = new ArrayList<>();
+
+        for (Borrower b : borrowers)
+            ids.add(b.getID() - FIRST_ID);
+
+        return ids;
+    }
+
+    private static BorrowerDirectory directory(Borrower... borrowers)
+    {
+        BorrowerDirectory d = new BorrowerDirectory();
+
+        for (Borrower b : borrowers)
+            d.add(b);
+
+        return d;
+    }
+
+    @Test
+    public void findsNamesByPrefixInOrder()
+    {
+        BorrowerDirectory d = directory(new Borrower(FIRST_ID + 1, "Anne Smith", "a", 111),
+                new Borrower(FIRST_ID + 2, "Ann Lee", "a", 222),
+                new Borrower(FIRST_ID + 3, "Bob Stone", "a", 333),
+                new Borrower(FIRST_ID + 4, "ann  lee", "a", 444));
+
+        assertEquals(Arrays.asList(2, 4, 1), ids(d.findByName("ANN", 10)));
+        assertEquals(Arrays.asList(2, 4), ids(d.findByName("ann lee", 10)));
+        assertEquals(1, d.findByName("ann", 1).size());
+        assertTrue(d.findByName("carl", 10).isEmpty());
+        assertEquals(4, d.findByName("", 10).size());
+    }
+
+    @Test
+    public void findsPhoneNumbersExactlyOrByPrefix()
+    {
+        BorrowerDirectory d = directory(new Borrower(FIRST_ID + 1, "A", "a", 1234),
+                new Borrower(FIRST_ID + 2, "B", "a", 123),
+                new Borrower(FIRST_ID + 3, "C", "a", 1299),
+                new Borrower(FIRST_ID + 4, "D", "a", 123));
+
+        assertEquals(Arrays.asList(2, 4), ids(d.findByPhone(123)));
+        assertEquals(Arrays.asList(2, 4, 1), ids(d.findByPhonePrefix("123", 10)));     // exact numbers first
+        assertEquals(4, d.findByPhonePrefix("12", 10).size());
+        assertTrue(d.findByPhone(12).isEmpty());
+    }
+
+    @Test
+    public void followsChangesOfNameAndPhone()
+    {
+        Borrower b = new Borrower(FIRST_ID + 1, "Old Name", "a", 555);
+        BorrowerDirectory d = directory(b);
+
+        b.setName("New Name");      // not in the library, which would update its own directory
+        b.setPhone(777);
+        d.update(b);
+
+        assertTrue(d.findByName("old", 10).isEmpty());
+        assertEquals(1, d.findByName("new", 10).size());
+        assertTrue(d.findByPhone(555).isEmpty());
+        assertEquals(1, d.findByPhone(777).size());
+
+        d.remove(b);
+
+        assertEquals(0, d.size());
+        assertTrue(d.findByName("new", 10).isEmpty());
+    }
+
+}   // BorrowerDirectoryTest Class Closed
@@ -0,0 +1,118 @@
+package LMS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BrowseIndexTest
+{
+    private static final int FIRST_ID = 960000;         // clear of the IDs used by other tests
+
+    private static List<String> titles(ArrayList<Book> books)
+    {
+        ArrayList<String> t = new ArrayList<>();
+
+        for (Book b : books)
+            t.add(b.getTitle());
+
+        return t;
+    }
+
+    // An index of books with the titles given, added in that order
+    private static BrowseIndex index(int field, String... titles)
+    {
+        BrowseIndex index = new BrowseIndex(field);
+
+        for (int i = 0; i < titles.length; i++)
+            index.add(new Book(FIRST_ID + i, titles[i], "S", "Author", false));
+
+        return index;
+    }
+
+    @Test
+    public void pagesForwardAndBack()
+    {
+        BrowseIndex index = index(Library.BY_TITLE, "E", "C", "A", "D", "B");
+        BrowseIndex.Cursor c = index.seek("", 2);
+
+        assertEquals(Arrays.asList("A", "B"), titles(c.next()));
+        assertEquals(Arrays.asList("C", "D"), titles(c.next()));
+        assertEquals(Arrays.asList("E"), titles(c.next()));
+        assertTrue(c.next().isEmpty());
+
+        // the empty page leaves the cursor on the last one shown
+        assertEquals(Arrays.asList("C", "D"), titles(c.previous()));
+        assertEquals(Arrays.asList("A", "B"), titles(c.previous()));
+        assertTrue(c.previous().isEmpty());
+    }
+
+    @Test
+    public void seeksToTheFirstBookFromAText()
+    {
+        BrowseIndex index = index(Library.BY_TITLE, "Apple", "Banana", "Cherry");
+
+        assertEquals(Arrays.asList("Banana", "Cherry"), titles(index.seek("b", 5).next()));
+        assertEquals(Arrays.asList("Apple"), titles(index.seek("b", 5).previous()));
+        assertTrue(index.seek("zzz", 5).next().isEmpty());
+    }
+
+    @Test
+    public void keepsBooksWithTheSameTitle()
+    {
+        BrowseIndex index = index(Library.BY_TITLE, "Same", "Same", "Same");
+
+        assertEquals(3, index.size());
+        assertEquals(3, index.seek("same", 10).next().size());
+    }
+
+    @Test
+    public void staysRightWhileBooksChange()
+    {
+        BrowseIndex index = index(Library.BY_TITLE, "A", "B", "C", "D");
+        BrowseIndex.Cursor c = index.seek("", 2);
+
+        assertEquals(Arrays.asList("A", "B"), titles(c.next()));
+
+        Book bb = new Book(FIRST_ID + 10, "BB", "S", "Author", false);
+        index.add(bb);          // after the page shown, so it comes next
+
+        assertEquals(Arrays.asList("BB", "C"), titles(c.next()));
+
+        index.remove(bb);
+        assertEquals(Arrays.asList("D"), titles(c.next()));
+    }
+
+    @Test
+    public void followsChangedTitles()
+    {
+        BrowseIndex index = index(Library.BY_TITLE, "A", "B");
+        Book z = new Book(FIRST_ID + 20, "Z", "S", "Author", false);
+
+        index.add(z);
+        index.change(z, "Z", "S", "Author");        // nothing changed
+        assertEquals(3, index.size());
+
+        Book renamed = new Book(FIRST_ID + 21, "AA", "S", "Author", false);
+        index.add(new Book(FIRST_ID + 21, "Old", "S", "Author", false));
+        index.change(renamed, "Old", "S", "Author");    // same ID, now titled AA
+
+        assertEquals(Arrays.asList("A", "AA", "B", "Z"), titles(index.seek("", 10).next()));
+    }
+
+    @Test
+    public void subjectsAreOrderedByTitleWithin()
+    {
+        BrowseIndex index = new BrowseIndex(Library.BY_SUBJECT);
+
+        index.add(new Book(FIRST_ID + 30, "Zebra", "Animals", "X", false));
+        index.add(new Book(FIRST_ID + 31, "Ant", "Animals", "X", false));
+        index.add(new Book(FIRST_ID + 32, "Apple", "Botany", "X", false));
+
+        assertEquals(Arrays.asList("Ant", "Zebra", "Apple"), titles(index.seek("", 10).next()));
+        assertEquals(Arrays.asList("Zebra", "Apple"), titles(index.seek("animals|b", 10).next()));
+        assertEquals(Arrays.asList("Apple"), titles(index.seek("botany", 10).next()));
+    }
+
+}   // BrowseIndexTest Class Closed
@@ -0,0 +1,129 @@
+package LMS;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+// Recovering the changes a crash left in the journal, into a database reached through DriverManager
+public class CheckpointerTest
+{
+    private static final int FIRST_ID = 940000;         // clear of the IDs used by other tests
+    private static final String URL = "jdbc:lmstest:checkpointer";
+
+    private static final FakeDatabase db = new FakeDatabase();
+    private static FakeDatabase.Driver driver;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void useFakeDatabase() throws SQLException
+    {
+        driver = new FakeDatabase.Driver(URL, db);
+        DriverManager.registerDriver(driver);
+        Library.getInstance().setDatabaseURL(URL);
+    }
+
+    @AfterClass
+    public static void removeFakeDatabase() throws SQLException
+    {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    // A journal of run 7 holding a change to each of the borrowers, with sequences 1, 2, ...
+    private String journal(Borrower... borrowers) throws IOException
+    {
+        String f = new File(folder.getRoot(), "checkpoint.journal").getPath();
+        Checkpointer cp = new Checkpointer(Library.getInstance(), f, 7, 3600, 1000);
+
+        for (int i = 0; i < borrowers.length; i++)
+        {
+            RowChange c = RowChange.of(borrowers[i]);
+            c.setSequence(i + 1);
+            cp.record(c);
+        }
+
+        cp.close(false);        // as after a crash, the changes are in the journal only
+        return f;
+    }
+
+    private static Borrower borrower(int n)
+    {
+        return new Borrower(FIRST_ID + n, "Borrower " + n, "Street", n);
+    }
+
+    @Test
+    public void writesOnlyTheChangesAfterTheSequenceReached() throws IOException
+    {
+        Borrower a = borrower(0), b = borrower(1), c = borrower(2);
+        String f = journal(a, b, c);
+
+        db.setCheckpoint(7, 2);
+
+        assertEquals(1, Checkpointer.recover(Library.getInstance(), f, db.connect()));
+        assertNull(db.row("PERSON", a.getID()));
+        assertNull(db.row("PERSON", b.getID()));
+        assertNotNull(db.row("PERSON", c.getID()));
+        assertFalse(new File(f).exists());
+    }
+
+    @Test
+    public void writesEverythingOfAnotherRun() throws IOException
+    {
+        Borrower a = borrower(10), b = borrower(11);
+        String f = journal(a, b);
+
+        db.setCheckpoint(6, 100);       // the database has reached further, but in an older run
+
+        assertEquals(2, Checkpointer.recover(Library.getInstance(), f, db.connect()));
+        assertNotNull(db.row("PERSON", a.getID()));
+        assertNotNull(db.row("PERSON", b.getID()));
+    }
+
+    @Test
+    public void ignoresAChangeCutShortByTheCrash() throws IOException
+    {
+        Borrower a = borrower(20), b = borrower(21);
+        String f = journal(a, b);
+
+        FileOutputStream out = new FileOutputStream(f, true);
+        out.write(new byte[] { 0, 0, 0, 0, 0, 0, 0, 3, 0 });     // a sequence and one byte of a change
+        out.close();
+
+        db.setCheckpoint(7, 0);
+
+        assertEquals(2, Checkpointer.recover(Library.getInstance(), f, db.connect()));
+        assertNotNull(db.row("PERSON", b.getID()));
+    }
+
+    @Test
+    public void keepsTheJournalWhenWritingFails() throws IOException
+    {
+        String f = journal(borrower(30));
+
+        db.setCheckpoint(7, 0);
+        db.setFailCommits(true);
+
+        try {
+            assertEquals(-1, Checkpointer.recover(Library.getInstance(), f, db.connect()));
+            assertTrue(new File(f).exists());
+        } finally {
+            db.setFailCommits(false);
+        }
+    }
+
+    @Test
+    public void nothingToRecoverWithoutAJournal()
+    {
+        assertEquals(0, Checkpointer.recover(Library.getInstance(), new File(folder.getRoot(), "none").getPath(), db.connect()));
+    }
+
+}   // CheckpointerTest Class Closed
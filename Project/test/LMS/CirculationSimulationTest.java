@@ -0,0 +1,127 @@
+package LMS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class CirculationSimulationTest
+{
+    private static final int FIRST_ID = 970000;         // clear of the IDs used by other tests
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final Library lib = Library.getInstance();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setPolicy()
+    {
+        lib.setReturnDeadline(5);
+        lib.setFine(20);
+        lib.setRequestExpiry(7);
+    }
+
+    // The other tests run on the system's time
+    @After
+    public void restoreClock()
+    {
+        lib.getClock().useSystemTime();
+    }
+
+    private List<String> replay(String... lines) throws IOException
+    {
+        File commands = folder.newFile();
+        File results = folder.newFile();
+
+        Files.write(commands.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        new CirculationSimulation(lib, 1).replay(commands.getPath(), results.getPath());
+
+        return Files.readAllLines(results.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void replayDatesLoansAndFinesByTheCommands() throws IOException
+    {
+        lib.addBorrower(new Borrower(FIRST_ID + 2, "Reader", "Street", 1));
+
+        List<String> results = replay("2026-01-01 add-book Late Book|Subject|Author|" + (FIRST_ID + 1),
+                "2026-01-01T10:00 issue " + (FIRST_ID + 1) + " " + (FIRST_ID + 2),
+                "2026-01-15T10:00 return " + (FIRST_ID + 1) + " " + (FIRST_ID + 2),       // 14 days, 9 late
+                "2026-01-16T10:00 issue " + (FIRST_ID + 1) + " " + (FIRST_ID + 2),
+                "2026-01-18T10:00 return " + (FIRST_ID + 1) + " " + (FIRST_ID + 2) + " paid",
+                "2026-01-17 issue " + (FIRST_ID + 1) + " " + (FIRST_ID + 2));
+
+        assertEquals(6, results.size());
+        assertTrue(results.get(1), results.get(1).startsWith("2\tOK"));
+        assertTrue(results.get(2), results.get(2).endsWith("fine unpaid"));
+        assertFalse(results.get(4), results.get(4).endsWith("fine unpaid"));
+        assertTrue(results.get(5), results.get(5).startsWith("6\tFAILED\tEarlier"));
+
+        // The fine of the late loan is that of the day it was returned on, not of the day the run ended
+        ArrayList<Loan> loans = lib.getLoans();
+        Loan late = loans.get(loans.size() - 2);
+
+        assertEquals(FIRST_ID + 1, late.getBook().getID());
+        assertEquals(9 * 20.0, late.fineOn(late.getReturnDate()), 1e-9);
+        assertFalse(late.getFineStatus());
+        assertTrue(loans.get(loans.size() - 1).getFineStatus());
+    }
+
+    // A check-in dated in the past is fined as of that day, whatever the clock says
+    @Test
+    public void checkInIsFinedOnTheDayGiven() throws CirculationException
+    {
+        Book book = new Book(FIRST_ID + 10, "Old Book", "Subject", "Author", false);
+        Borrower reader = new Borrower(FIRST_ID + 11, "Reader", "Street", 1);
+        Clerk clerk = new Clerk(FIRST_ID + 12, "Clerk", "Street", 1, 100, 1);
+
+        lib.addBookinLibrary(book);
+        lib.addBorrower(reader);
+
+        long issued = 1577836800000L;       // 2020-01-01, years before the clock's time
+        Loan l = book.checkOut(reader, clerk, new Date(issued));
+        book.checkIn(reader, l, clerk, new Date(issued + 2 * DAY), false);
+
+        assertTrue(l.getFineStatus());      // returned in time, so nothing is left to pay
+    }
+
+    @Test
+    public void madeUpCirculationRunsOnTheClock()
+    {
+        int loansBefore = lib.getLoans().size();
+        CirculationSimulation sim = new CirculationSimulation(lib, 42);
+
+        sim.run(100, 40, 30);
+
+        LibraryClock clock = lib.getClock();
+        assertTrue(clock.isVirtual());
+
+        long end = clock.millis();
+        ArrayList<Loan> loans = lib.getLoans();
+
+        assertTrue(loans.size() > loansBefore);
+
+        for (int i = loansBefore; i < loans.size(); i++)
+        {
+            long issued = loans.get(i).getIssuedDate().getTime();
+
+            assertTrue(issued <= end && issued >= end - 30 * DAY);
+
+            if (loans.get(i).getReturnDate() != null)
+                assertTrue(loans.get(i).getReturnDate().getTime() <= end);
+        }
+    }
+
+}   // CirculationSimulationTest Class Closed
@@ -0,0 +1,151 @@
+package LMS;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Handling a pile of books at the desk when some of them can't be handled, with the changes written to
+// a database reached through DriverManager
+public class CirculationTransactionTest
+{
+    private static final int FIRST_ID = 990000;         // clear of the IDs used by other tests
+    private static final String URL = "jdbc:lmstest:circulation";
+
+    private static final FakeDatabase db = new FakeDatabase();
+    private static FakeDatabase.Driver driver;
+
+    private static final Library lib = Library.getInstance();
+    private static Clerk clerk;
+
+    @BeforeClass
+    public static void useFakeDatabase() throws SQLException
+    {
+        driver = new FakeDatabase.Driver(URL, db);
+        DriverManager.registerDriver(driver);
+        lib.setDatabaseURL(URL);
+        assertTrue(lib.startPersistence());
+
+        clerk = new Clerk(FIRST_ID, "Desk Clerk", "Street", 1, 100, -1);
+        lib.addClerk(clerk);
+    }
+
+    // The other tests run without writing changes as they are made
+    @AfterClass
+    public static void removeFakeDatabase() throws SQLException
+    {
+        lib.stopPersistence();
+        DriverManager.deregisterDriver(driver);
+    }
+
+    private static Book book(int n)
+    {
+        Book b = new Book(FIRST_ID + n, "Desk Title " + n, "Desk Subject", "Desk Author", false);
+        lib.addBookinLibrary(b);
+        return b;
+    }
+
+    private static Borrower borrower(int n)
+    {
+        Borrower b = new Borrower(FIRST_ID + n, "Desk Reader " + n, "Street", n);
+        lib.addBorrower(b);
+        return b;
+    }
+
+    @Test
+    public void checksOutTheBooksItCanAndReportsTheOthers() throws CirculationException
+    {
+        Book free = book(10), issued = book(11), held = book(12);
+        Borrower reader = borrower(13), other = borrower(14);
+        Date today = new Date();
+
+        issued.checkOut(other, clerk, today);
+        held.requestHold(other, today);
+
+        CirculationTransaction t = new CirculationTransaction(lib, CirculationTransaction.CHECK_OUT, reader, clerk);
+        t.addBook(free.getID());
+        t.addBook(issued.getID());
+        t.addBook(held.getID());
+        t.addBook(FIRST_ID + 19);           // no such book
+        t.addBook(free.getID());
+
+        assertEquals(1, t.run(today, false));
+        assertSame(free, t.getBooksDone().get(0));
+        assertNotNull(reader.getLoanOf(free));
+
+        // The others are left as they were
+        assertNotNull(other.getLoanOf(issued));
+        assertFalse(held.getIssuedStatus());
+        assertTrue(held.hasHoldRequest(other));
+
+        List<String> failures = t.getFailures();
+
+        assertEquals(4, failures.size());
+        assertTrue(failures.get(0), failures.get(0).startsWith(issued.getID() + ": "));
+        assertTrue(failures.get(1), failures.get(1).startsWith(held.getID() + ": "));
+        assertTrue(failures.get(2), failures.get(2).startsWith((FIRST_ID + 19) + ": "));
+        assertTrue(failures.get(3), failures.get(3).startsWith(free.getID() + ": Given more than once"));
+    }
+
+    @Test
+    public void returnsOnlyTheBooksTheBorrowerHas() throws CirculationException
+    {
+        Book mine = book(20), theirs = book(21);
+        Borrower reader = borrower(22), other = borrower(23);
+        Date today = new Date();
+
+        mine.checkOut(reader, clerk, today);
+        theirs.checkOut(other, clerk, today);
+
+        CirculationTransaction t = new CirculationTransaction(lib, CirculationTransaction.CHECK_IN, reader, clerk);
+        t.addBook(mine.getID());
+        t.addBook(theirs.getID());
+
+        assertEquals(1, t.run(today, true));
+        assertFalse(mine.getIssuedStatus());
+        assertNull(reader.getLoanOf(mine));
+        assertNotNull(other.getLoanOf(theirs));
+        assertEquals(1, t.getFailures().size());
+        assertTrue(t.getFailures().get(0), t.getFailures().get(0).startsWith(theirs.getID() + ": "));
+    }
+
+    @Test
+    public void changesOfTheBooksHandledAreWrittenInOneCommit() throws CirculationException
+    {
+        ArrayList<Book> books = new ArrayList<>();
+        Borrower reader = borrower(30), other = borrower(31);
+        Date today = new Date();
+
+        for (int n = 32; n <= 35; n++)
+            books.add(book(n));
+
+        books.get(3).checkOut(other, clerk, today);
+
+        assertTrue(lib.awaitPersisted());
+
+        int commits = db.getCommits();
+
+        CirculationTransaction t = new CirculationTransaction(lib, CirculationTransaction.CHECK_OUT, reader, clerk);
+
+        for (Book b : books)
+            t.addBook(b.getID());
+
+        assertEquals(3, t.run(today, false));
+        assertTrue(lib.awaitPersisted());
+        assertEquals(commits + 1, db.getCommits());
+
+        for (int i = 0; i < 3; i++)
+        {
+            Loan l = reader.getLoanOf(books.get(i));
+
+            assertNotNull(db.row("LOAN", l.getID()));
+            assertEquals(Boolean.TRUE, db.row("BOOK", books.get(i).getID())[4]);
+        }
+    }
+
+}   // CirculationTransactionTest Class Closed
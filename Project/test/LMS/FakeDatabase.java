@@ -0,0 +1,328 @@
+package LMS;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The tables of the library in memory, behind just enough of JDBC for the statements PersistenceQueue,
+// Checkpointer and IdAllocator run. Rows are kept by table and key as the values of RowChange.COLUMNS.
+// Changes are applied as they are executed; a commit can be made to fail to see how failures are handled.
+class FakeDatabase
+{
+    private static final Pattern TABLE = Pattern.compile("LIBRARY\\.(\\w+)");
+
+    private final HashMap<String, TreeMap<Integer, Object[]>> tables = new HashMap<>();
+    private final HashMap<String, Integer> sequences = new HashMap<>();    // LIBRARY.ID_SEQUENCE
+    private long checkpointRun, checkpointSeq;
+    private int commits;
+    private boolean failCommits;
+
+    /*------- Looking at the tables ---------*/
+    synchronized TreeMap<Integer, Object[]> table(String name)
+    {
+        TreeMap<Integer, Object[]> t = tables.get(name);
+
+        if (t == null)
+        {
+            t = new TreeMap<>();
+            tables.put(name, t);
+        }
+
+        return t;
+    }
+
+    synchronized Object[] row(String table, int key)
+    {
+        return table(table).get(key);
+    }
+
+    synchronized int getCommits()
+    {
+        return commits;
+    }
+
+    synchronized long getCheckpointSeq()
+    {
+        return checkpointSeq;
+    }
+
+    synchronized void setCheckpoint(long run, long seq)
+    {
+        checkpointRun = run;
+        checkpointSeq = seq;
+    }
+
+    synchronized void setSequence(String name, int next)
+    {
+        sequences.put(name, next);
+    }
+
+    synchronized void setFailCommits(boolean fail)
+    {
+        failCommits = fail;
+    }
+    /*---------------------------------------*/
+
+    Connection connect()
+    {
+        return (Connection) proxy(Connection.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object p, Method m, Object[] a) throws Throwable
+            {
+                String n = m.getName();
+
+                if (n.equals("prepareStatement"))
+                    return statement((String) a[0]);
+
+                if (n.equals("createStatement"))
+                    return statement(null);
+
+                if (n.equals("commit"))
+                {
+                    synchronized (FakeDatabase.this)
+                    {
+                        if (failCommits)
+                            throw new SQLException("Commit failed");
+
+                        commits++;
+                    }
+                }
+
+                return defaultValue(m);
+            }
+        });
+    }
+
+    // The statement of the sql given, or of the one given to executeQuery when sql is null
+    private Object statement(final String sql)
+    {
+        final Object[][] params = { new Object[32] };
+        final ArrayList<Object[]> batch = new ArrayList<>();
+
+        return proxy(PreparedStatement.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object p, Method m, Object[] a) throws Throwable
+            {
+                String n = m.getName();
+
+                synchronized (FakeDatabase.this)
+                {
+                    if (n.startsWith("set") && a != null && a.length >= 2 && a[0] instanceof Integer)
+                        params[0][(Integer) a[0]] = n.equals("setNull") ? null : a[1];
+
+                    else if (n.equals("addBatch"))
+                    {
+                        batch.add(params[0]);
+                        params[0] = new Object[32];
+                    }
+                    else if (n.equals("executeBatch"))
+                    {
+                        int[] counts = new int[batch.size()];
+
+                        for (int i = 0; i < batch.size(); i++)
+                            counts[i] = execute(sql, batch.get(i));
+
+                        batch.clear();
+                        return counts;
+                    }
+                    else if (n.equals("executeUpdate"))
+                        return execute(sql, params[0]);
+
+                    else if (n.equals("executeQuery"))
+                        return query(a != null && a.length > 0 ? (String) a[0] : sql, params[0]);
+
+                    return defaultValue(m);
+                }
+            }
+        });
+    }
+
+    // Called holding this. Parameters are numbered from 1.
+    private int execute(String sql, Object[] v)
+    {
+        if (sql.startsWith("UPDATE LIBRARY.CHECKPOINT"))
+        {
+            checkpointRun = ((Number) v[1]).longValue();
+            checkpointSeq = ((Number) v[2]).longValue();
+            return 1;
+        }
+
+        if (sql.startsWith("UPDATE LIBRARY.ID_SEQUENCE"))
+        {
+            Integer next = sequences.get((String) v[2]);
+
+            if (next == null)
+                return 0;
+
+            if (sql.contains("NEXT_ID + ?"))
+                sequences.put((String) v[2], next + (Integer) v[1]);
+            else if (next < (Integer) v[3])
+                sequences.put((String) v[2], (Integer) v[1]);
+            else
+                return 0;
+
+            return 1;
+        }
+
+        String name = tableOf(sql);
+        String[] columns = RowChange.COLUMNS[Arrays.asList(RowChange.TABLES).indexOf(name)];
+        TreeMap<Integer, Object[]> t = table(name);
+
+        if (sql.startsWith("DELETE"))
+            return t.remove((Integer) v[1]) != null ? 1 : 0;
+
+        if (sql.startsWith("INSERT"))
+        {
+            t.put((Integer) v[1], Arrays.copyOfRange(v, 1, columns.length + 1));
+            return 1;
+        }
+
+        // UPDATE ... SET <the other columns> WHERE <key> = ?
+        Object[] row = t.get((Integer) v[columns.length]);
+
+        if (row == null)
+            return 0;
+
+        for (int j = 1; j < columns.length; j++)
+            row[j] = v[j];
+
+        return 1;
+    }
+
+    private Object query(String sql, Object[] v)
+    {
+        ArrayList<Object[]> rows = new ArrayList<>();
+
+        if (sql.contains("LIBRARY.CHECKPOINT"))
+            rows.add(new Object[] { checkpointRun, checkpointSeq });
+
+        else if (sql.contains("LIBRARY.ID_SEQUENCE"))
+        {
+            if (sequences.containsKey((String) v[1]))
+                rows.add(new Object[] { sequences.get((String) v[1]) });
+        }
+        else if (table(tableOf(sql)).containsKey((Integer) v[1]))
+            rows.add(new Object[] { v[1] });
+
+        return results(rows);
+    }
+
+    private static Object results(final List<Object[]> rows)
+    {
+        final int[] at = { -1 };
+
+        return proxy(ResultSet.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object p, Method m, Object[] a) throws Throwable
+            {
+                String n = m.getName();
+
+                if (n.equals("next"))
+                    return ++at[0] < rows.size();
+
+                if (n.equals("getLong"))
+                    return ((Number) rows.get(at[0])[(Integer) a[0] - 1]).longValue();
+
+                if (n.equals("getInt"))
+                    return ((Number) rows.get(at[0])[(Integer) a[0] - 1]).intValue();
+
+                return defaultValue(m);
+            }
+        });
+    }
+
+    private static String tableOf(String sql)
+    {
+        Matcher m = TABLE.matcher(sql);
+        m.find();
+        return m.group(1);
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler h)
+    {
+        return Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[] { type }, h);
+    }
+
+    private static Object defaultValue(Method m)
+    {
+        Class<?> t = m.getReturnType();
+
+        if (t == boolean.class)
+            return false;
+
+        if (t == int.class)
+            return 0;
+
+        if (t == long.class)
+            return 0L;
+
+        return null;
+    }
+
+    /*------- Reaching the database through DriverManager ---------*/
+
+    // A driver giving connections to one database for the URLs starting with its prefix
+    static class Driver implements java.sql.Driver
+    {
+        private final String prefix;
+        private final FakeDatabase db;
+
+        Driver(String p, FakeDatabase d)     // para cons.
+        {
+            prefix = p;
+            db = d;
+        }
+
+        @Override
+        public Connection connect(String url, Properties info)
+        {
+            return acceptsURL(url) ? db.connect() : null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url)
+        {
+            return url.startsWith(prefix);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+        {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion()
+        {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion()
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant()
+        {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException
+        {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+    /*-------------------------------------------------------------*/
+
+}   // FakeDatabase Class Closed
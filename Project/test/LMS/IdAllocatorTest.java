@@ -0,0 +1,97 @@
+package LMS;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IdAllocatorTest
+{
+    @Test
+    public void startsAtOneInMemory()
+    {
+        IdAllocator ids = new IdAllocator();
+
+        assertEquals(1, ids.peek(IdAllocator.BOOK));
+        assertEquals(1, ids.next(IdAllocator.BOOK));
+        assertEquals(2, ids.next(IdAllocator.BOOK));
+        assertEquals(1, ids.next(IdAllocator.LOAN));      // every kind has its own IDs
+        assertEquals(3, ids.peek(IdAllocator.BOOK));
+    }
+
+    @Test
+    public void threadsNeverGetTheSameID() throws InterruptedException
+    {
+        final IdAllocator ids = new IdAllocator();
+        final Set<Integer> given = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < 5000; i++)
+                        given.add(ids.next(IdAllocator.PERSON));
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(8 * 5000, given.size());
+        assertEquals(8 * 5000 + 1, ids.peek(IdAllocator.PERSON));     // blocks are used up before new ones are leased
+    }
+
+    @Test
+    public void reservedIDsAreSkipped()
+    {
+        IdAllocator ids = new IdAllocator();
+
+        ids.next(IdAllocator.BOOK);
+        ids.reserve(IdAllocator.BOOK, 10);         // within the block leased
+        assertEquals(11, ids.next(IdAllocator.BOOK));
+
+        ids.reserve(IdAllocator.BOOK, 5000);       // beyond it
+        ids.reserve(IdAllocator.BOOK, 3);          // given already, nothing changes
+
+        for (int i = 12; i < 1001; i++)
+            ids.next(IdAllocator.BOOK);
+
+        assertEquals(5001, ids.next(IdAllocator.BOOK));
+    }
+
+    @Test
+    public void leasesFromTheDatabaseAreNeverGivenAgain() throws SQLException
+    {
+        FakeDatabase db = new FakeDatabase();
+        db.setSequence("BOOK", 100);
+
+        IdAllocator first = new IdAllocator(db.connect());
+        assertEquals(100, first.next(IdAllocator.BOOK));
+        first.close();              // stopping with most of its block unused
+
+        IdAllocator second = new IdAllocator(db.connect());
+        HashSet<Integer> given = new HashSet<>();
+
+        for (int i = 0; i < 2500; i++)
+            given.add(second.next(IdAllocator.BOOK));
+
+        assertEquals(2500, given.size());
+        assertFalse(given.contains(100));
+        assertTrue(given.contains(1100));         // the second's first block starts after the first's
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsWithoutASequenceRow() throws SQLException
+    {
+        new IdAllocator(new FakeDatabase().connect()).next(IdAllocator.LOAN);
+    }
+
+}   // IdAllocatorTest Class Closed
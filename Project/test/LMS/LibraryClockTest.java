@@ -0,0 +1,48 @@
+package LMS;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LibraryClockTest
+{
+    @Test
+    public void followsTheSystemUntilSet()
+    {
+        LibraryClock clock = new LibraryClock();
+        long before = System.currentTimeMillis();
+        long now = clock.millis();
+
+        assertFalse(clock.isVirtual());
+        assertTrue(now >= before && now <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void standsStillOnceSet() throws InterruptedException
+    {
+        LibraryClock clock = new LibraryClock();
+
+        clock.setTime(1000);
+        Thread.sleep(5);
+
+        assertTrue(clock.isVirtual());
+        assertEquals(1000, clock.millis());
+        assertEquals(1000, clock.now().getTime());
+
+        clock.advance(500);
+        assertEquals(1500, clock.millis());
+    }
+
+    @Test
+    public void goesBackToTheSystemTime()
+    {
+        LibraryClock clock = new LibraryClock();
+
+        clock.setTime(0);               // the epoch is a time like any other
+        assertTrue(clock.isVirtual());
+
+        clock.useSystemTime();
+        assertFalse(clock.isVirtual());
+        assertTrue(clock.millis() > 0);
+    }
+
+}   // LibraryClockTest Class Closed
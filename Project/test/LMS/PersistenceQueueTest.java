@@ -0,0 +1,102 @@
+package LMS;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PersistenceQueueTest
+{
+    private static final int FIRST_ID = 930000;         // clear of the IDs used by other tests
+
+    private static ArrayList<Borrower> borrowers(int first, int n)
+    {
+        ArrayList<Borrower> list = new ArrayList<>();
+
+        for (int i = 0; i < n; i++)
+            list.add(new Borrower(first + i, "Borrower " + i, "Street 0", i));
+
+        return list;
+    }
+
+    @Test
+    public void coalescesChangesIntoFewCommits() throws SQLException
+    {
+        FakeDatabase db = new FakeDatabase();
+        PersistenceQueue queue = new PersistenceQueue(db.connect());
+        ArrayList<Borrower> list = borrowers(FIRST_ID, 50);
+        int changes = 0;
+
+        for (int round = 1; round <= 20; round++)
+        {
+            for (Borrower b : list)
+            {
+                b.setAddress("Street " + round);
+                queue.add(RowChange.of(b));
+                changes++;
+            }
+        }
+
+        assertTrue(queue.await());
+        assertEquals(queue.queued(), queue.committed());
+        assertTrue("commits " + db.getCommits(), db.getCommits() < changes);
+
+        // Only the last change of each row counts
+        for (Borrower b : list)
+            assertEquals("Street 20", db.row("PERSON", b.getID())[3]);
+
+        assertTrue(queue.close());
+    }
+
+    @Test
+    public void writesDeletesAfterInserts() throws SQLException
+    {
+        FakeDatabase db = new FakeDatabase();
+        PersistenceQueue queue = new PersistenceQueue(db.connect());
+        Borrower b = borrowers(FIRST_ID + 100, 1).get(0);
+
+        queue.add(RowChange.of(b));
+        queue.add(RowChange.roleOf(b));
+        assertTrue(queue.await());
+        assertNotNull(db.row("BORROWER", b.getID()));
+
+        queue.addAll(Arrays.asList(RowChange.deleted(RowChange.BORROWER, b.getID()), RowChange.deleted(RowChange.PERSON, b.getID())));
+        assertTrue(queue.await());
+
+        assertNull(db.row("BORROWER", b.getID()));
+        assertNull(db.row("PERSON", b.getID()));
+        assertTrue(queue.close());
+    }
+
+    @Test
+    public void recordsTheSequenceReachedWithEachCommit() throws SQLException
+    {
+        FakeDatabase db = new FakeDatabase();
+        PersistenceQueue queue = new PersistenceQueue(db.connect());
+
+        queue.setRunID(42);
+
+        for (Borrower b : borrowers(FIRST_ID + 200, 10))
+            queue.add(RowChange.of(b));
+
+        assertTrue(queue.await());
+        assertEquals(queue.queued(), db.getCheckpointSeq());
+        assertTrue(queue.close());
+    }
+
+    @Test
+    public void reportsFailedCommits() throws SQLException
+    {
+        FakeDatabase db = new FakeDatabase();
+        PersistenceQueue queue = new PersistenceQueue(db.connect());
+
+        db.setFailCommits(true);
+        queue.add(RowChange.of(borrowers(FIRST_ID + 300, 1).get(0)));
+
+        assertFalse(queue.await());
+        assertEquals(-1, queue.committed());
+        assertFalse(queue.close());
+    }
+
+}   // PersistenceQueueTest Class Closed
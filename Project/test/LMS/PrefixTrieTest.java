@@ -0,0 +1,96 @@
+package LMS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PrefixTrieTest
+{
+    @Test
+    public void completesMostPopularFirst()
+    {
+        PrefixTrie trie = new PrefixTrie();
+
+        trie.add("Harry Potter");
+        trie.add("Hamlet");
+        trie.add("Hard Times");
+        trie.add("Emma");
+
+        trie.use("Hamlet");
+        trie.use("Hamlet");
+        trie.use("Hard Times");
+
+        assertEquals(Arrays.asList("Hamlet", "Hard Times"), trie.complete("ha", 2));
+        assertEquals(3, trie.complete("ha", 10).size());
+    }
+
+    @Test
+    public void moreBooksBreakTies()
+    {
+        PrefixTrie trie = new PrefixTrie();
+
+        trie.add("Dune");
+        trie.add("Dracula");
+        trie.add("Dracula");
+
+        assertEquals("Dracula", trie.complete("d", 1).get(0));
+    }
+
+    @Test
+    public void prefixIsNormalized()
+    {
+        PrefixTrie trie = new PrefixTrie();
+
+        trie.add("The  Hobbit");
+
+        ArrayList<String> found = trie.complete("  THE h", 5);
+
+        assertEquals(1, found.size());
+        assertEquals("The  Hobbit", found.get(0));      // shown as it was first added
+    }
+
+    @Test
+    public void textStaysUntilItsLastBookIsRemoved()
+    {
+        PrefixTrie trie = new PrefixTrie();
+
+        trie.add("Emma");
+        trie.add("Emma");
+        trie.remove("Emma");
+
+        assertEquals(1, trie.size());
+        assertEquals(1, trie.complete("em", 5).size());
+
+        trie.remove("Emma");
+
+        assertEquals(0, trie.size());
+        assertTrue(trie.complete("em", 5).isEmpty());
+        assertTrue(trie.complete("", 5).isEmpty());
+    }
+
+    @Test
+    public void removingAWordKeepsLongerOnes()
+    {
+        PrefixTrie trie = new PrefixTrie();
+
+        trie.add("Emma");
+        trie.add("Emmanuel");
+        trie.remove("Emma");
+
+        assertEquals(Arrays.asList("Emmanuel"), trie.complete("emm", 5));
+    }
+
+    @Test
+    public void unknownPrefixHasNoCompletions()
+    {
+        PrefixTrie trie = new PrefixTrie();
+
+        trie.add("Emma");
+        trie.remove("Nothing");     // ignored
+
+        assertTrue(trie.complete("x", 5).isEmpty());
+        assertEquals(1, trie.size());
+    }
+
+}   // PrefixTrieTest Class Closed
@@ -0,0 +1,86 @@
+package LMS;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SearchCacheTest
+{
+    private static String title(String t)
+    {
+        return SearchCache.key(Library.BY_TITLE, Library.normalize(t));
+    }
+
+    private static ArrayList<Book> result(Book... books)
+    {
+        ArrayList<Book> list = new ArrayList<>();
+
+        for (Book b : books)
+            list.add(b);
+
+        return list;
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        SearchCache cache = new SearchCache(2);
+
+        cache.put(title("a"), result());
+        cache.put(title("b"), result());
+        cache.get(title("a"));              // b is now the least recently used
+        cache.put(title("c"), result());
+
+        assertNotNull(cache.get(title("a")));
+        assertNull(cache.get(title("b")));
+        assertNotNull(cache.get(title("c")));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void invalidatesOnlyTheQueriesOfABook()
+    {
+        SearchCache cache = new SearchCache(10);
+        Book b = new Book(900001, "Dune", "Fiction", "Herbert", false);
+
+        cache.put(title("Dune"), result(b));
+        cache.put(SearchCache.key(Library.BY_SUBJECT, Library.normalize("Fiction")), result(b));
+        cache.put(SearchCache.key(Library.BY_AUTHOR, Library.normalize("Herbert")), result(b));
+        cache.put(title("Emma"), result());
+
+        cache.invalidate(b);
+
+        assertNull(cache.get(title("Dune")));
+        assertNull(cache.get(SearchCache.key(Library.BY_SUBJECT, Library.normalize("Fiction"))));
+        assertNull(cache.get(SearchCache.key(Library.BY_AUTHOR, Library.normalize("Herbert"))));
+        assertNotNull(cache.get(title("Emma")));
+        assertEquals(3, cache.getInvalidations());
+    }
+
+    @Test
+    public void keysAreNormalized()
+    {
+        SearchCache cache = new SearchCache(10);
+
+        cache.put(title("Dune"), result());
+        cache.invalidate("  DUNE ", "x", "y");
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void countsHitsAndMisses()
+    {
+        SearchCache cache = new SearchCache(10);
+
+        cache.put(title("a"), result());
+        cache.get(title("a"));
+        cache.get(title("b"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 1e-9);
+    }
+
+}   // SearchCacheTest Class Closed
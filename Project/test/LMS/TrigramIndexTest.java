@@ -0,0 +1,111 @@
+package LMS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TrigramIndexTest
+{
+    private static final int FIRST_ID = 910000;         // clear of the IDs used by other tests
+
+    private static Book potter, poker, hobbit;
+
+    @BeforeClass
+    public static void addBooks()
+    {
+        Library lib = Library.getInstance();
+
+        potter = new Book(FIRST_ID, "Harry Potter", "Fantasy", "Rowling", false);
+        poker = new Book(FIRST_ID + 1, "Harry Poker Nights", "Games", "Smith", false);
+        hobbit = new Book(FIRST_ID + 2, "The Hobbit", "Fantasy", "Tolkien", false);
+
+        lib.addBookinLibrary(potter);
+        lib.addBookinLibrary(poker);
+        lib.addBookinLibrary(hobbit);
+    }
+
+    private static TrigramIndex titles(Book... books)
+    {
+        TrigramIndex index = new TrigramIndex(Library.BY_TITLE);
+
+        for (Book b : books)
+            index.add(b);
+
+        return index;
+    }
+
+    @Test
+    public void trigramsAreDistinctAndSorted()
+    {
+        long[] grams = TrigramIndex.trigrams("aaaa");
+
+        assertEquals(4, grams.length);     // "  a", " aa", "aaa" (only once) and "aa "
+
+        for (int i = 1; i < grams.length; i++)
+            assertTrue(grams[i - 1] < grams[i]);
+
+        assertEquals(0, TrigramIndex.trigrams("").length);
+    }
+
+    @Test
+    public void similarityOfEqualAndDisjointTexts()
+    {
+        long[] a = TrigramIndex.trigrams("potter");
+
+        assertEquals(1.0, TrigramIndex.similarity(a, a), 1e-9);
+        assertEquals(0.0, TrigramIndex.similarity(a, TrigramIndex.trigrams("xyz")), 1e-9);
+    }
+
+    @Test
+    public void findsMisspelledTitleFirst()
+    {
+        ArrayList<Book> found = titles(potter, poker, hobbit).search("Harry Poter", 10, 0.3);
+
+        assertFalse(found.isEmpty());
+        assertSame(potter, found.get(0));
+        assertFalse(found.contains(hobbit));
+    }
+
+    @Test
+    public void removedBooksAreNotFound()
+    {
+        TrigramIndex index = titles(potter, poker, hobbit);
+
+        index.remove(potter);
+
+        assertFalse(index.search("Harry Potter", 10, 0.3).contains(potter));
+        assertTrue(index.search("Harry Poker", 10, 0.3).contains(poker));
+    }
+
+    @Test
+    public void removeAllDropsEmptyTrigrams()
+    {
+        TrigramIndex index = titles(potter, poker, hobbit);
+
+        index.removeAll(Arrays.asList(potter, poker, hobbit));
+
+        assertEquals(0, index.size());
+        assertTrue(index.search("Hobbit", 10, 0.1).isEmpty());
+    }
+
+    @Test
+    public void booksAddedOutOfOrderCanBeRemoved()
+    {
+        TrigramIndex index = new TrigramIndex(Library.BY_TITLE);
+
+        // The postings are kept sorted by ID, whatever the order the books come in
+        for (int id = 20; id >= 1; id--)
+            index.add(id, "same title");
+
+        for (int id = 1; id <= 20; id += 2)
+            index.remove(id, "same title");
+
+        for (int id = 2; id <= 20; id += 2)
+            index.remove(id, "same title");
+
+        assertEquals(0, index.size());
+    }
+
+}   // TrigramIndexTest Class Closed
@@ -0,0 +1,163 @@
+package LMS;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Weeding books out of the library, with the changes written to a database reached through DriverManager
+public class WeedingJobTest
+{
+    private static final int FIRST_ID = 980000;         // clear of the IDs used by other tests
+    private static final String URL = "jdbc:lmstest:weeding";
+
+    private static final FakeDatabase db = new FakeDatabase();
+    private static FakeDatabase.Driver driver;
+
+    private static final Library lib = Library.getInstance();
+    private static Clerk clerk;
+
+    @BeforeClass
+    public static void useFakeDatabase() throws SQLException
+    {
+        driver = new FakeDatabase.Driver(URL, db);
+        DriverManager.registerDriver(driver);
+        lib.setDatabaseURL(URL);
+        assertTrue(lib.startPersistence());
+
+        clerk = new Clerk(FIRST_ID, "Weeding Clerk", "Street", 1, 100, -1);
+        lib.addClerk(clerk);
+    }
+
+    // The other tests run without writing changes as they are made
+    @AfterClass
+    public static void removeFakeDatabase() throws SQLException
+    {
+        lib.stopPersistence();
+        DriverManager.deregisterDriver(driver);
+    }
+
+    private static Book book(int n)
+    {
+        Book b = new Book(FIRST_ID + n, "Weeded Title " + n, "Weeded Subject " + n, "Weeded Author " + n, false);
+        lib.addBookinLibrary(b);
+        return b;
+    }
+
+    private static Borrower borrower(int n)
+    {
+        Borrower b = new Borrower(FIRST_ID + n, "Weeded Reader " + n, "Street", n);
+        lib.addBorrower(b);
+        return b;
+    }
+
+    private static int run(int... bookIDs)
+    {
+        WeedingJob job = new WeedingJob(lib);
+
+        for (int id : bookIDs)
+            job.addBook(id);
+
+        return job.run();
+    }
+
+    @Test
+    public void borrowedAndUnknownBooksAreReportedAndKept() throws CirculationException
+    {
+        Book borrowed = book(10), shelved = book(11);
+        Borrower reader = borrower(12);
+
+        borrowed.checkOut(reader, clerk, new Date());
+
+        WeedingJob job = new WeedingJob(lib);
+        job.addBook(borrowed.getID());
+        job.addBook(shelved.getID());
+        job.addBook(FIRST_ID + 19);         // no such book
+
+        assertEquals(1, job.run());
+        assertSame(shelved, job.getBooksRemoved().get(0));
+        assertSame(borrowed, lib.findBook(borrowed.getID()));
+
+        List<String> failures = job.getFailures();
+
+        // Unknown IDs are found before the books borrowed
+        assertEquals(2, failures.size());
+        assertTrue(failures.get(0), failures.get(0).startsWith((FIRST_ID + 19) + ": "));
+        assertTrue(failures.get(1), failures.get(1).startsWith(borrowed.getID() + ": "));
+        assertTrue(failures.get(1), failures.get(1).contains(reader.getName()));
+    }
+
+    @Test
+    public void holdsAreCancelledOnTheBooksAndTheirBorrowers() throws CirculationException
+    {
+        Book a = book(20), b = book(21);
+        Borrower reader = borrower(22), other = borrower(23);
+
+        a.requestHold(reader, new Date());
+        a.requestHold(other, new Date());
+        b.requestHold(reader, new Date());
+
+        WeedingJob job = new WeedingJob(lib);
+        job.addBook(a.getID());
+        job.addBook(b.getID());
+
+        assertEquals(2, job.run());
+        assertEquals(3, job.getHoldsCancelled());
+        assertTrue(a.getHoldRequests().isEmpty());
+        assertTrue(b.getHoldRequests().isEmpty());
+        assertTrue(reader.getOnHoldBooks().isEmpty());
+        assertTrue(other.getOnHoldBooks().isEmpty());
+    }
+
+    @Test
+    public void weededBooksAreGoneFromEveryIndex()
+    {
+        Book b = book(30);
+
+        assertEquals(1, run(b.getID()));
+
+        assertNull(lib.findBook(b.getID()));
+        assertFalse(lib.getBooks().contains(b));
+        assertFalse(lib.searchBooks(Library.BY_TITLE, b.getTitle()).contains(b));
+        assertFalse(lib.searchBooks(Library.BY_SUBJECT, b.getSubject()).contains(b));
+        assertFalse(lib.searchBooks(Library.BY_AUTHOR, b.getAuthor()).contains(b));
+        assertFalse(lib.fuzzySearchBooks(Library.BY_TITLE, b.getTitle(), 10).contains(b));
+        assertFalse(lib.fuzzySearchBooks(Library.BY_AUTHOR, b.getAuthor(), 10).contains(b));
+
+        assertFalse(lib.browse(Library.BY_TITLE, b.getTitle(), 10).next().contains(b));
+        assertFalse(lib.browse(Library.BY_AUTHOR, b.getAuthor(), 10).next().contains(b));
+        assertFalse(lib.browse(Library.BY_SUBJECT, b.getSubject(), 10).next().contains(b));
+    }
+
+    @Test
+    public void changesAreWrittenInOneCommit() throws CirculationException
+    {
+        ArrayList<Book> books = new ArrayList<>();
+        Borrower reader = borrower(40);
+
+        for (int n = 41; n <= 45; n++)
+        {
+            Book b = book(n);
+            b.requestHold(reader, new Date());
+            books.add(b);
+        }
+
+        assertTrue(lib.awaitPersisted());
+        assertNotNull(db.row("BOOK", books.get(0).getID()));
+
+        int commits = db.getCommits();
+
+        assertEquals(5, run(FIRST_ID + 41, FIRST_ID + 42, FIRST_ID + 43, FIRST_ID + 44, FIRST_ID + 45));
+        assertTrue(lib.awaitPersisted());
+        assertEquals(commits + 1, db.getCommits());
+
+        for (Book b : books)
+            assertNull(db.row("BOOK", b.getID()));
+    }
+
+}   // WeedingJobTest Class Closed